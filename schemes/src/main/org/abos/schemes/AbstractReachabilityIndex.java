@@ -0,0 +1,188 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Collection;
+
+/**
+ * An abstract implementation of the {@link ReachabilityIndex} interface,
+ * taking care of the snapshot of the families and of the invalidation.
+ * While valid, the index is registered as {@link FamilyListener} at all its
+ * components, so any change of a family invalidates it. Subclasses only
+ * compute their labels from the snapshot and answer queries on ids.<br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ */
+abstract class AbstractReachabilityIndex implements ReachabilityIndex {
+
+    /**
+     * The snapshot this index was built on, <code>null</code> if it was never
+     * built or was cleared.
+     *
+     * @since 1.0.0
+     */
+    CompactGraph graph = null;
+
+    /**
+     * If this index is valid.
+     *
+     * @since 1.0.0
+     */
+    private boolean valid = false;
+
+    /**
+     * Invalidates this index on any change of a family.
+     *
+     * @since 1.0.0
+     */
+    private final FamilyListener invalidator = new FamilyListener() {
+        @Override
+        public void relativeAdding(SchemeComponent source, int type,
+                SchemeComponent relative) {}
+
+        @Override
+        public void familyChanged(SchemeComponent source, int type,
+                SchemeComponent relative, boolean added) {
+            invalidate();
+        }
+    };
+
+    /**
+     * Computes the labels of this index from {@link #graph}.
+     *
+     * @since 1.0.0
+     */
+    abstract void build();
+
+    /**
+     * Releases the labels of this index.
+     *
+     * @since 1.0.0
+     */
+    abstract void release();
+
+    /**
+     * Tells if the component with the first id is an ancestor of the
+     * component with the second id. Only called while this index is valid.
+     * @param from the id of the possible ancestor
+     * @param to the id of the possible descendant
+     * @return <code>true</code> if <code>from</code> is an ancestor of
+     * <code>to</code>
+     *
+     * @since 1.0.0
+     */
+    abstract boolean reaches(int from, int to);
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.ReachabilityIndex#rebuild(java.util.Collection)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void rebuild(Collection<? extends SchemeComponent> components) {
+        clear();
+        graph = new CompactGraph(components);
+        for (SchemeComponent c : graph.nodes)
+            c.addFamilyListener(invalidator);
+        build();
+        valid = true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.ReachabilityIndex#isValid()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean isValid() {
+        return valid;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.ReachabilityIndex#invalidate()
+     */
+    /**
+     * {@inheritDoc} The labels are kept until the next rebuild.
+     * @since 1.0.0
+     */
+    @Override
+    public void invalidate() {
+        valid = false;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.ReachabilityIndex#clear()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void clear() {
+        valid = false;
+        if (graph == null)
+            return;
+        for (SchemeComponent c : graph.nodes)
+            c.removeFamilyListener(invalidator);
+        graph = null;
+        release();
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.ReachabilityIndex#isAncestorOf(org.abos.schemes.
+     * SchemeComponent, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} The index covers all associated components too, but a
+     * component unknown to it may still list a known one as relative on 
+     * its side only, or may have been linked after the index was built. 
+     * So the families are searched if either component is unknown.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean isAncestorOf(SchemeComponent ancestor,
+            SchemeComponent descendant) {
+        if (ancestor == null || descendant == null)
+            return false;
+        if (!valid)
+            return ancestor.isAncestorOf(descendant);
+        int from = graph.idOf(ancestor);
+        int to = graph.idOf(descendant);
+        if (from < 0 || to < 0)
+            return ancestor.isAncestorOf(descendant);
+        return reaches(from, to);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.ReachabilityIndex#isDescendantOf(org.abos.schemes.
+     * SchemeComponent, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean isDescendantOf(SchemeComponent descendant,
+            SchemeComponent ancestor) {
+        return isAncestorOf(ancestor, descendant);
+    }
+
+}
@@ -1,11 +1,14 @@
 // LICENSE
 package org.abos.schemes;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * An abstract implementation of the {@link SchemeComponent} interface,
@@ -13,10 +16,15 @@ import java.util.List;
  * except the family is carried, so this class does not overwrite 
  * {@link #equals(Object)} or {@link #hashCode()}, furthermore {@link #clone()}
  * will still throw an <code>CloneNotSupportedException</code>. <br>
- * This class is not thread-safe.
+ * Registered {@link FamilyListener}s are notified by the add/remove 
+ * Parent/Child methods, and asked before additions, so subclasses should use 
+ * them instead of changing {@link #parents} and {@link #children} 
+ * directly.<br>
+ * This class is not thread-safe, except that family listeners may be
+ * registered and unregistered concurrently.
  * 
  * @author Sebastian Koch
- * @version 1.1.0
+ * @version 1.3.0
  * @since 1.0.0
  * 
  * @see SchemeComponent
@@ -37,6 +45,40 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	 */
 	protected List<SchemeComponent> children;
 	
+	/**
+	 * The family listeners of this component, <code>null</code> if there
+	 * are none. The array is replaced on every change, so listeners can
+	 * unregister themselves while being notified, and threads changing the
+	 * family concurrently always see a complete array. Listeners are 
+	 * registered and unregistered atomically, so this may happen 
+	 * concurrently as well.
+	 * 
+	 * @since 1.2.0
+	 * 
+	 * @see #addFamilyListener(FamilyListener)
+	 * @see ConcurrentSchemeComponent
+	 */
+	private volatile FamilyListener[] familyListeners = null;
+	
+	/**
+	 * Swaps {@link #familyListeners} by compare-and-set.
+	 * 
+	 * @since 1.3.0
+	 */
+	private static final AtomicReferenceFieldUpdater<AbstractSchemeComponent,
+	        FamilyListener[]> FAMILY_LISTENERS = AtomicReferenceFieldUpdater
+	    .newUpdater(AbstractSchemeComponent.class, FamilyListener[].class,
+	        "familyListeners");
+	
+	/**
+	 * The epoch of the last search visiting this component, see
+	 * {@link EpochTraversal}. Only used by the search currently owning the
+	 * epochs.
+	 * 
+	 * @since 1.3.0
+	 */
+	transient long visitEpoch = 0;
+	
 	/**
 	 * Creates an empty component. Initializes {@link #parents} and
 	 * {@link #children} with an empty <code>LinkedList</code> of type
@@ -48,6 +90,26 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	    parents = new LinkedList<SchemeComponent>();
         children = new LinkedList<SchemeComponent>();
 	}
+	
+	/**
+	 * Creates an empty component using the given lists for its family. This
+	 * way subclasses can choose how parents and children are stored.
+	 * @param parents an empty list for {@link #parents}
+	 * @param children an empty list for {@link #children}
+	 * @throws NullPointerException If <code>parents</code> or 
+	 * <code>children</code> is <code>null</code>.
+	 * 
+	 * @since 1.2.0
+	 * 
+	 * @see CompactSchemeComponent
+	 */
+	protected AbstractSchemeComponent(List<SchemeComponent> parents, 
+	        List<SchemeComponent> children) {
+	    if (parents == null || children == null)
+	        throw new NullPointerException();
+	    this.parents = parents;
+	    this.children = children;
+	}
 
     /* 
 	 * (non-JavaDoc)
@@ -57,7 +119,10 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	// still throws an exception as documented in the class documentation
 	@Override
 	public Object clone() throws CloneNotSupportedException {
-	    return super.clone();
+	    AbstractSchemeComponent clone = (AbstractSchemeComponent)super.clone();
+	    clone.familyListeners = null; // listeners belong to the original
+	    clone.visitEpoch = 0;
+	    return clone;
 	}
 
 	/* 
@@ -107,7 +172,11 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	 * @return <code>true</code> if the component <code>c</code> could be found
 	 * in <code>superCollection</code> or any super collection of type 
 	 * <code>type</code> thereof. 
+	 * Each component is visited once by identity, and the search doesn't
+	 * allocate anything unless another search runs at the same time, see
+	 * {@link EpochTraversal}.
 	 * 
+	 * @version 1.1.0
 	 * @since 1.0.0
 	 * 
 	 * @see #iterator(int)
@@ -119,30 +188,89 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	        Collection<? extends SchemeComponent> superCollection, int type) {
         if (c == null || superCollection == null)
             return false;
-        HashSet<SchemeComponent> checked = new HashSet<SchemeComponent>();
-        HashSet<SchemeComponent> toCheck = new HashSet<SchemeComponent>();
-        SchemeComponent checking = null; // component currently in check
-        Iterator<? extends SchemeComponent> it = null; // to get more components
-        SchemeComponent next = null;
-        toCheck.addAll(superCollection); 
-        // check complete super collection
-        while (!toCheck.isEmpty()) {
-            // get a component to check
-            checking = toCheck.iterator().next(); 
-            if (c.equals(checking))
-                return true;
-            // get more components of right type to check through
-            it = checking.iterator(type); 
-            while (it.hasNext()) {
-                next = it.next();
-                if (!checked.contains(next))
-                    toCheck.add(next);
-            }
-            // check of current component is completed
-            toCheck.remove(checking);
-            checked.add(checking);
-        }
-        return false;
+        return EpochTraversal.search(c, superCollection, type);
+	}
+
+	/**
+	 * Returns the parents or children of this component, without copying
+	 * them.
+	 * @param type {@link #PARENT} or {@link #CHILD}
+	 * @return {@link #parents} or {@link #children}
+	 * @throws IndexOutOfBoundsException If <code>type</code> is invalid.
+	 * 
+	 * @since 1.3.0
+	 */
+	List<SchemeComponent> family(int type) {
+	    if (type == PARENT)
+	        return parents;
+	    if (type == CHILD)
+	        return children;
+	    throw new IndexOutOfBoundsException("Illegal iterator type!");
+	}
+
+	/**
+	 * Inserts a parent or child at the given position, asking and notifying
+	 * the family listeners like {@link #addParent(SchemeComponent)} and 
+	 * {@link #addChild(SchemeComponent)} do. Used to restore a family 
+	 * exactly.
+	 * @param type {@link #PARENT} or {@link #CHILD}
+	 * @param index the position of the new relative
+	 * @param c the new relative
+	 * @throws IndexOutOfBoundsException If <code>type</code> or 
+	 * <code>index</code> is invalid.
+	 * @throws SchemeException If a listener prevents the addition.
+	 * 
+	 * @since 1.3.0
+	 */
+	void insertRelative(int type, int index, SchemeComponent c) {
+	    List<SchemeComponent> family = family(type);
+	    if (index < 0 || index > family.size())
+	        throw new IndexOutOfBoundsException("Illegal index!");
+	    fireRelativeAdding(type, c);
+	    family.add(index, c);
+	    fireFamilyChanged(type, c, true, index);
+	}
+	
+	/**
+	 * Removes the parent or child at the given position, notifying the 
+	 * family listeners like {@link #removeParent(SchemeComponent)} and
+	 * {@link #removeChild(SchemeComponent)} do.
+	 * @param type {@link #PARENT} or {@link #CHILD}
+	 * @param index the position of the relative
+	 * @return the removed relative
+	 * @throws IndexOutOfBoundsException If <code>type</code> or 
+	 * <code>index</code> is invalid.
+	 * 
+	 * @since 1.3.0
+	 */
+	SchemeComponent removeRelative(int type, int index) {
+	    SchemeComponent c = family(type).remove(index);
+	    fireFamilyChanged(type, c, false, index);
+	    return c;
+	}
+	
+	/**
+	 * Finds a parent or child by identity, looking at the given position 
+	 * first.
+	 * @param type {@link #PARENT} or {@link #CHILD}
+	 * @param index the expected position, may be invalid
+	 * @param c the relative to look for
+	 * @return the position of <code>c</code>, the last one if it isn't
+	 * at <code>index</code>, or <code>-1</code> if it isn't a relative
+	 * @throws IndexOutOfBoundsException If <code>type</code> is invalid.
+	 * 
+	 * @since 1.3.0
+	 */
+	int indexOfRelative(int type, int index, SchemeComponent c) {
+	    List<SchemeComponent> family = family(type);
+	    int size = family.size();
+	    if (index >= 0 && index < size && family.get(index) == c)
+	        return index;
+	    ListIterator<SchemeComponent> it = family.listIterator(size);
+	    while (it.hasPrevious())
+	        if (it.previous() == c)
+	            return it.nextIndex();
+	    return -1;
 	}
 
 	/* 
@@ -279,8 +407,12 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	@Override
 	public boolean addParent(SchemeComponent c) {
 		if (c == null)
+		    return false;
+		fireRelativeAdding(PARENT, c);
+		if (!parents.add(c))
 			return false;
-		return parents.add(c);
+		fireFamilyChanged(PARENT, c, true, parents.size() - 1);
+		return true;
 	}
 
 	/*
@@ -296,8 +428,12 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
 	@Override
 	public boolean addChild(SchemeComponent c) {
 		if (c == null)
+		    return false;
+		fireRelativeAdding(CHILD, c);
+		if (!children.add(c))
 			return false;
-		return children.add(c);
+		fireFamilyChanged(CHILD, c, true, children.size() - 1);
+		return true;
 	}
 
 	/*
@@ -312,7 +448,12 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
      */
 	@Override
 	public boolean removeParent(SchemeComponent c) {
-		return parents.remove(c);
+		int index = parents.indexOf(c);
+		if (index < 0)
+		    return false;
+		// tell the very relative removed, which may just equal c
+		fireFamilyChanged(PARENT, parents.remove(index), false, index);
+		return true;
 	}
 
 	/*
@@ -327,7 +468,140 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
      */
 	@Override
 	public boolean removeChild(SchemeComponent c) {
-		return children.remove(c);
+		int index = children.indexOf(c);
+		if (index < 0)
+		    return false;
+		// tell the very relative removed, which may just equal c
+		fireFamilyChanged(CHILD, children.remove(index), false, index);
+		return true;
+	}
+	
+	/*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.SchemeComponent#addFamilyListener(org.abos.
+     * schemes.FamilyListener)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.2.0
+     */
+	@Override
+	public void addFamilyListener(FamilyListener l) {
+	    if (l == null)
+	        return;
+	    FamilyListener[] current;
+	    FamilyListener[] listeners;
+	    do {
+	        current = familyListeners;
+	        if (current == null)
+	            listeners = new FamilyListener[] {l};
+	        else {
+	            for (FamilyListener listener : current)
+	                if (listener == l)
+	                    return;
+	            listeners = Arrays.copyOf(current, current.length + 1);
+	            listeners[current.length] = l;
+	        }
+	    } while (!FAMILY_LISTENERS.compareAndSet(this, current, listeners));
+	}
+	
+	/*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.SchemeComponent#removeFamilyListener(org.abos.
+     * schemes.FamilyListener)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.2.0
+     */
+	@Override
+	public void removeFamilyListener(FamilyListener l) {
+	    FamilyListener[] current;
+	    FamilyListener[] listeners;
+	    do {
+	        current = familyListeners;
+	        if (current == null)
+	            return;
+	        int i = 0;
+	        while (i < current.length && current[i] != l)
+	            i++;
+	        if (i == current.length)
+	            return;
+	        if (current.length == 1)
+	            listeners = null;
+	        else {
+	            listeners = new FamilyListener[current.length - 1];
+	            System.arraycopy(current, 0, listeners, 0, i);
+	            System.arraycopy(current, i + 1, listeners, i, 
+	                listeners.length - i);
+	        }
+	    } while (!FAMILY_LISTENERS.compareAndSet(this, current, listeners));
+	}
+	
+	/**
+	 * Asks all registered family listeners if a parent or child may be 
+	 * added. Any listener can prevent the addition by throwing an exception.
+	 * @param type {@link SchemeComponent#PARENT} or 
+	 * {@link SchemeComponent#CHILD}
+	 * @param relative the parent or child about to be added
+	 * @throws SchemeException If a listener prevents the addition.
+	 * 
+	 * @since 1.2.0
+	 * 
+	 * @see FamilyListener#relativeAdding(SchemeComponent, int, SchemeComponent)
+	 */
+	protected void fireRelativeAdding(int type, SchemeComponent relative) {
+	    FamilyListener[] listeners = familyListeners;
+	    if (listeners == null)
+	        return;
+	    for (FamilyListener l : listeners)
+	        l.relativeAdding(this, type, relative);
+	}
+	
+	/**
+	 * Notifies all registered family listeners about a change of the family.
+	 * @param type {@link SchemeComponent#PARENT} or 
+	 * {@link SchemeComponent#CHILD}
+	 * @param relative the parent or child which was added or removed
+	 * @param added <code>true</code> if <code>relative</code> was added
+	 * 
+	 * @since 1.2.0
+	 * 
+	 * @see FamilyListener#familyChanged(SchemeComponent, int, SchemeComponent, boolean)
+	 */
+	protected void fireFamilyChanged(int type, SchemeComponent relative, 
+	        boolean added) {
+	    fireFamilyChanged(type, relative, added, -1);
+	}
+	
+	/**
+	 * Notifies all registered family listeners about a change of the family
+	 * at a known position.
+	 * @param type {@link SchemeComponent#PARENT} or 
+	 * {@link SchemeComponent#CHILD}
+	 * @param relative the parent or child which was added or removed
+	 * @param added <code>true</code> if <code>relative</code> was added
+	 * @param index the position of <code>relative</code> right after the 
+	 * addition or right before the removal, <code>-1</code> if unknown
+	 * 
+	 * @since 1.3.0
+	 * 
+	 * @see SchemeEvent#getIndex()
+	 */
+	protected void fireFamilyChanged(int type, SchemeComponent relative, 
+	        boolean added, int index) {
+	    FamilyListener[] listeners = familyListeners;
+	    if (listeners == null)
+	        return;
+	    for (FamilyListener l : listeners) {
+	        if (l instanceof PositionalFamilyListener)
+	            ((PositionalFamilyListener)l).familyChanged(this, type, 
+	                relative, added, index);
+	        else
+	            l.familyChanged(this, type, relative, added);
+	    }
 	}
 	
 	/**
@@ -389,30 +663,28 @@ public abstract class AbstractSchemeComponent implements SchemeComponent {
      */
     /**
      * {@inheritDoc} <br>
-     * This method is realized by using the <code>deepEquals</code> methods
-     * of {@link ArrayScheme}.
+     * The descendants and ancestors of both components are hashed 
+     * structurally and compared without recursion, like in 
+     * {@link ArrayScheme#deepEquals(Scheme)}.
      * 
+     * @version 1.1.0
      * @since 1.0.0
      * 
-     * 
-     * @see ArrayScheme#deepEqualsRecursiveDown(SchemeComponent, SchemeComponent, HashSet)
-     * @see ArrayScheme#deepCopyRecursiveUp(SchemeComponent, SchemeComponent, ArrayScheme, java.util.HashMap)
+     * @see StructuralHashes
      */
-	// Javadoc Change params according to final form of the given methods in ArrayScheme
     @Override
 	public boolean deepEquals(SchemeComponent other)  {
         if (other == null)
             return false;
         if (!this.equals(other))
             return false;
-        // use deepEquals of ArrayScheme
-        ArrayScheme<AbstractSchemeComponent> as = 
-                new ArrayScheme<AbstractSchemeComponent>();
-        if (!as.deepEqualsRecursiveDown(this, other, 
-                new HashSet<SchemeComponent>()))
-            return false;
-        return as.deepEqualsRecursiveUp(this, other, 
-                new HashSet<SchemeComponent>());
+        StructuralHashes own = new StructuralHashes(
+            Collections.singleton(this));
+        StructuralHashes others = new StructuralHashes(
+            Collections.singleton(other));
+        int[] start = {0}; // the first id is the given component
+        return own.matches(start, others, start, true)
+                && own.matches(start, others, start, false);
     }
     
 }
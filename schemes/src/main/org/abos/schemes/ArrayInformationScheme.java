@@ -8,12 +8,14 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -31,10 +33,12 @@ import javax.xml.stream.XMLStreamWriter;
  * can be searched through by Strings, printed and hierarchically ordered.
  * By implementation of the appropriate interfaces, XML import/export 
  * and DOT export are supported, too. <br>
+ * Changes of the name or description of a component are reported to 
+ * scheme listeners by {@link SchemeEvent#CHANGED} events. <br>
  * This class is not thread-safe.
  * 
  * @author Sebastian Koch
- * @version 1.1.1
+ * @version 1.2.0
  * @since 1.0.0
  * 
  * @see ArrayScheme
@@ -45,6 +49,25 @@ public class ArrayInformationScheme<E extends InformationComponent>
 extends ArrayScheme<E> implements InformationScheme<E>, 
 XMLSerializable, XMLSchemeConstants, DOTWriter {
 
+    /**
+     * Tells this scheme whenever the name or description of one of its 
+     * components changes.
+     * 
+     * @since 1.2.0
+     * 
+     * @see #componentChanged(SchemeComponent, Object)
+     */
+    private final transient InformationListener informationTracker = 
+            new InformationListener() {
+        @SuppressWarnings("unchecked") // only components of this are tracked
+        @Override
+        public void informationChanged(InformationComponent source,
+                String formerName, String formerDescription) {
+            componentChanged((E)source, 
+                new InformationComponent(formerName, formerDescription));
+        }
+    };
+
     /**
      * Constructs an empty array information scheme with the specified initial 
      * capacity.
@@ -77,6 +100,31 @@ XMLSerializable, XMLSchemeConstants, DOTWriter {
      */
     public ArrayInformationScheme(Collection<? extends E> c) {
         super(c);
+        // the tracker didn't exist while the super constructor added them
+        for (E e : this)
+            e.addInformationListener(informationTracker);
+    }
+
+    /**
+     * {@inheritDoc} Changes of its name or description will be tracked as 
+     * well.
+     * @since 1.2.0
+     */
+    @Override
+    protected void addRootOrLeaf(E e) {
+        super.addRootOrLeaf(e);
+        e.addInformationListener(informationTracker);
+    }
+
+    /**
+     * {@inheritDoc} Changes of its name or description won't be tracked 
+     * anymore.
+     * @since 1.2.0
+     */
+    @Override
+    protected void removeRootOrLeaf(E e) {
+        super.removeRootOrLeaf(e);
+        e.removeInformationListener(informationTracker);
     }
 
     /*
@@ -492,7 +540,9 @@ XMLSerializable, XMLSchemeConstants, DOTWriter {
      * boolean)
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Components connected to the roots are searched breadth
+     * first, each once.
+     * @version 1.1.0
      * @since 1.0.0
      */
     @SuppressWarnings("unchecked") // XXX proper documentation and error warning
@@ -505,22 +555,25 @@ XMLSerializable, XMLSchemeConstants, DOTWriter {
                     result.add(e);
             }
         } else { // all elements connected to roots
-            HashSet<E> toCheck = new HashSet<E>(roots);
-            HashSet<E> checked = new HashSet<E>();
+            Set<E> checked = Collections.newSetFromMap(
+                new IdentityHashMap<E, Boolean>());
+            ArrayDeque<E> toCheck = new ArrayDeque<E>();
+            for (E root : roots)
+                if (checked.add(root))
+                    toCheck.add(root);
             E check = null;
             Iterator<SchemeComponent> it = null;
             E e = null;
             while (!toCheck.isEmpty()) {
                 // check one element
-                check = toCheck.iterator().next();
-                if (check.getName() == null && check.getName().equals(name))
+                check = toCheck.poll();
+                if (check.getName() != null && check.getName().equals(name))
                     result.add(check);
-                checked.add(check);
                 it = check.childrenIterator();
                 // add its children to search
                 while (it.hasNext()) {
                     e = (E)it.next();
-                    if (!checked.contains(e))
+                    if (e != null && checked.add(e))
                         toCheck.add(e);
                 } //-> while (children to look through)
             } //-> while (elements to check)
@@ -538,8 +591,9 @@ XMLSerializable, XMLSchemeConstants, DOTWriter {
      * boolean)
      */
     /**
-     * {@inheritDoc}
-     * @version 1.0.1
+     * {@inheritDoc} Components connected to the roots are searched breadth
+     * first, each once.
+     * @version 1.1.0
      * @since 1.0.0
      */
     @SuppressWarnings("unchecked") // XXX proper documentation and error warning
@@ -558,22 +612,26 @@ XMLSerializable, XMLSchemeConstants, DOTWriter {
                     result.add(e);
             }
         } else { // all elements connected to roots
-            HashSet<E> toCheck = new HashSet<E>(roots);
-            HashSet<E> checked = new HashSet<E>();
+            Set<E> checked = Collections.newSetFromMap(
+                new IdentityHashMap<E, Boolean>());
+            ArrayDeque<E> toCheck = new ArrayDeque<E>();
+            for (E root : roots)
+                if (checked.add(root))
+                    toCheck.add(root);
             E check = null;
             Iterator<SchemeComponent> it = null;
             E e = null;
             while (!toCheck.isEmpty()) {
                 // check one element
-                check = toCheck.iterator().next();
-                if (check.getName() == null && check.getName().matches(regex))
+                check = toCheck.poll();
+                if (check.getName() != null
+                        && p.matcher(check.getName()).matches())
                     result.add(check);
-                checked.add(check);
                 it = check.childrenIterator();
                 // add its children to search
                 while (it.hasNext()) {
                     e = (E)it.next();
-                    if (!checked.contains(e))
+                    if (e != null && checked.add(e))
                         toCheck.add(e);
                 } //-> while (children to look through)
             } //-> while (elements to check)
@@ -587,15 +645,16 @@ XMLSerializable, XMLSchemeConstants, DOTWriter {
      * @see org.abos.schemes.InformationScheme#halfsortHierachially()
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} This implementation doesn't use 
+     * {@link InformationComponent#compareTo(InformationComponent)} anymore,
+     * but sorts topologically in linear time, see 
+     * {@link #sortHierarchically()}.
+     * @version 1.1.0
      * @since 1.0.0
      */
+    @Override
     public void halfsortHierarchically() {
-        Object[] arr = this.toArray();
-        Arrays.sort(arr);
-        this.clear();
-        for (Object ic : arr)
-            add((E)ic); // XXX code better document better
+        sortHierarchically();
     }
 
     /*
@@ -1,21 +1,41 @@
 // LICENSE
 package org.abos.schemes;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Resizable-array implementation of the {@link Scheme} interface using an
  * {@link ArrayList}. <code>null</code>-entries are not permitted and will
  * simply be ignored.<br>
+ * Since lookups in an <code>ArrayList</code> take linear time, a hash index
+ * can be kept next to the list by {@link #setMembershipIndexed(boolean)}.
+ * Then {@link #contains(Object)}, {@link #indexOf(Object)} and the lookup
+ * part of {@link #remove(Object)} take constant time, while the list 
+ * semantics are kept. In this case the components must not change their hash
+ * code while they are in the scheme.<br>
+ * Likewise, ancestor and descendant queries can be answered by a 
+ * {@link ReachabilityIndex} set by 
+ * {@link #setReachabilityIndex(ReachabilityIndex)}, and cycles can be
+ * rejected right away by {@link #setCycleChecked(boolean)}.<br>
+ * Changes are reported to {@link SchemeListener}s, a batch edit by
+ * {@link #edit(SchemeEdit)} is reported once after it succeeded.<br>
  * This class is not thread-safe.
  * 
  * @author Sebastian Koch
- * @version 1.0.0
+ * @version 1.1.0
  * @since 1.0.0
  * 
  * @see Scheme
@@ -26,16 +46,129 @@ public class ArrayScheme<E extends SchemeComponent> extends ArrayList<E>
 implements Scheme<E> {
 
     /**
-     * The roots of this scheme.
+     * The roots of this scheme, in the order they became roots.
+     * @version 1.1.0
      * @since 1.0.0
      */
-    protected final ArrayList<E> roots;
+    protected final LinkedIdentitySet<E> roots;
 
     /**
-     * The leaves of this scheme.
+     * The leaves of this scheme, in the order they became leaves.
+     * @version 1.1.0
      * @since 1.0.0
      */
-    protected final ArrayList<E> leaves;
+    protected final LinkedIdentitySet<E> leaves;
+
+    /**
+     * Keeps {@link #roots} and {@link #leaves} up to date whenever the family
+     * of a component of this scheme changes.
+     * @since 1.1.0
+     * 
+     * @see #addRootOrLeaf(SchemeComponent)
+     */
+    private final transient FamilyListener rootLeafTracker = 
+            new PositionalFamilyListener() {
+        @Override
+        public void relativeAdding(SchemeComponent source, int type,
+                SchemeComponent relative) {}
+
+        @Override
+        public void familyChanged(SchemeComponent source, int type,
+                SchemeComponent relative, boolean added) {
+            familyChanged(source, type, relative, added, -1);
+        }
+
+        @SuppressWarnings("unchecked") // only components of this are tracked
+        @Override
+        public void familyChanged(SchemeComponent source, int type,
+                SchemeComponent relative, boolean added, int index) {
+            E e = (E)source;
+            if (touched != null)
+                touched.add(source);
+            else if (type == SchemeComponent.PARENT) {
+                if (e.isRoot())
+                    roots.add(e);
+                else
+                    roots.remove(e);
+            }
+            else if (type == SchemeComponent.CHILD) {
+                if (e.isLeaf())
+                    leaves.add(e);
+                else
+                    leaves.remove(e);
+            }
+            if (schemeListeners != null)
+                report(Collections.singletonList(new SchemeEvent(
+                    ArrayScheme.this, added ? SchemeEvent.LINKED 
+                        : SchemeEvent.UNLINKED, source, type, relative, 
+                    index)));
+        }
+    };
+
+    /**
+     * The components whose families changed during an edit, 
+     * <code>null</code> if there is no edit going on. Their roots and leaves
+     * are updated once the edit is applied.
+     * @since 1.1.0
+     * 
+     * @see #edit(SchemeEdit)
+     */
+    private transient Set<SchemeComponent> touched = null;
+
+    /**
+     * The membership index of this scheme, <code>null</code> if there is
+     * none. 
+     * @since 1.1.0
+     * 
+     * @see #setMembershipIndexed(boolean)
+     */
+    private transient MembershipIndex membership = null;
+
+    /**
+     * The reachability index of this scheme, <code>null</code> if there is
+     * none.
+     * @since 1.1.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
+     */
+    private transient ReachabilityIndex reachability = null;
+
+    /**
+     * The topological order rejecting cycles, <code>null</code> if cycles
+     * aren't checked.
+     * @since 1.1.0
+     * 
+     * @see #setCycleChecked(boolean)
+     */
+    private transient DynamicTopologicalOrder cycleCheck = null;
+
+    /**
+     * The depths and heights kept up to date, <code>null</code> if they
+     * aren't tracked.
+     * @since 1.1.0
+     * 
+     * @see #setDepthsTracked(boolean)
+     */
+    private transient DynamicDepths depths = null;
+
+    /**
+     * The scheme listeners of this scheme, <code>null</code> if there are
+     * none. The array is replaced on every change, so listeners can 
+     * unregister themselves while being notified.
+     * @since 1.1.0
+     * 
+     * @see #addSchemeListener(SchemeListener)
+     */
+    private transient SchemeListener[] schemeListeners = null;
+
+    /**
+     * The events collected during an edit, <code>null</code> if there is no
+     * edit going on. They are reported once the edit succeeded.
+     * @since 1.1.0
+     * 
+     * @see #report(List)
+     */
+    private transient List<SchemeEvent> pendingEvents = null;
 
     /**
      * Constructs an empty array scheme with the specified initial capacity.
@@ -47,8 +180,8 @@ implements Scheme<E> {
      */
     public ArrayScheme(int initialCapacity) {
         super(initialCapacity);
-        roots = new ArrayList<E>();
-        leaves = new ArrayList<E>();
+        roots = new LinkedIdentitySet<E>();
+        leaves = new LinkedIdentitySet<E>();
     }
 
     /**
@@ -59,8 +192,8 @@ implements Scheme<E> {
      */
     public ArrayScheme() {
         super();
-        roots = new ArrayList<E>();
-        leaves = new ArrayList<E>();
+        roots = new LinkedIdentitySet<E>();
+        leaves = new LinkedIdentitySet<E>();
     }
 
     /**
@@ -74,19 +207,26 @@ implements Scheme<E> {
      */
     public ArrayScheme(Collection<? extends E> c) {
         super(c);
-        roots = new ArrayList<E>();
-        leaves = new ArrayList<E>();
+        roots = new LinkedIdentitySet<E>();
+        leaves = new LinkedIdentitySet<E>();
         validateRootsAndLeaves();
     }
 
     /**
      * Adds a scheme component to the roots or leaves, depending on it 
-     * being a root or a leaf or both.
+     * being a root or a leaf or both. From then on, changes of its family
+     * will be tracked.
      * @param e the scheme component to add
      * 
+     * @version 1.1.0
      * @since 1.0.0
      */
     protected void addRootOrLeaf(E e) {
+        if (reachability != null)
+            reachability.invalidate();
+        e.addFamilyListener(rootLeafTracker);
+        if (depths != null)
+            depths.track(Collections.singleton(e));
         if (e.isRoot())
             roots.add(e);
         if (e.isLeaf())
@@ -95,15 +235,673 @@ implements Scheme<E> {
 
     /**
      * Removes a scheme component from the roots or leaves, if it is any of it.
+     * Changes of its family won't be tracked anymore.
      * @param e the scheme component to remove
      * 
+     * @version 1.1.0
      * @since 1.0.0
      */
     protected void removeRootOrLeaf(E e) {
+        if (reachability != null)
+            reachability.invalidate();
+        e.removeFamilyListener(rootLeafTracker);
         roots.remove(e);
         leaves.remove(e);
     }
 
+    /**
+     * Tells if this scheme contains the very same object, not just an 
+     * equal one.
+     * @param o the object to look up
+     * @return <code>true</code> if <code>o</code> is an element of this scheme
+     * 
+     * @since 1.1.0
+     */
+    private boolean containsIdentical(Object o) {
+        if (membership != null && !membership.contains(o))
+            return false;
+        int size = size();
+        for (int i = 0; i < size; i++)
+            if (get(i) == o)
+                return true;
+        return false;
+    }
+
+    /**
+     * Calls {@link #removeRootOrLeaf(SchemeComponent)} for all of the given 
+     * former elements that aren't in this scheme anymore, and reports them
+     * at their first former positions. 
+     * @param formerElements all elements before a bulk removal
+     * 
+     * @since 1.1.0
+     */
+    @SuppressWarnings("unchecked") // former elements are of type E
+    private void removeRootsOrLeaves(Object[] formerElements) {
+        Set<Object> remaining = identities();
+        List<SchemeEvent> events = schemeListeners == null ? null
+                : new ArrayList<SchemeEvent>();
+        for (int i = 0; i < formerElements.length; i++) {
+            Object o = formerElements[i];
+            if (!remaining.add(o)) // marks o as removed
+                continue;
+            removeRootOrLeaf((E)o);
+            if (events != null)
+                events.add(new SchemeEvent(this, SchemeEvent.REMOVED, 
+                    (E)o, i));
+        }
+        report(events);
+    }
+
+    /**
+     * Returns a set containing the elements of this scheme, compared by
+     * identity.
+     * @return a new set of the elements
+     * 
+     * @since 1.1.0
+     */
+    private Set<Object> identities() {
+        Set<Object> elements = Collections.newSetFromMap(
+            new IdentityHashMap<Object, Boolean>(size()));
+        elements.addAll(this);
+        return elements;
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#addSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc} <br>
+     * Components added or removed are reported once they become or stop 
+     * being contained, compared by identity, so adding a component twice is
+     * reported once. Changes of a family are reported for each component of
+     * this scheme by a {@link SchemeEvent#LINKED} or 
+     * {@link SchemeEvent#UNLINKED} event, right after the change. Changes of 
+     * the data of a component are only reported if the scheme is told about
+     * them, as {@link ArrayInformationScheme} is.<br>
+     * Every modification of this scheme is reported as one batch, so 
+     * {@link #addAll(Collection)} and {@link #edit(SchemeEdit)} notify each 
+     * listener once. With listeners, adding a component takes linear time 
+     * unless this scheme keeps a membership index, since it has to be
+     * checked if the component is contained already.
+     * @param l the listener to register
+     * 
+     * @since 1.1.0
+     * 
+     * @see #removeSchemeListener(SchemeListener)
+     */
+    @Override
+    public void addSchemeListener(SchemeListener l) {
+        if (l == null)
+            return;
+        if (schemeListeners == null) {
+            schemeListeners = new SchemeListener[] {l};
+            return;
+        }
+        for (SchemeListener listener : schemeListeners)
+            if (listener == l)
+                return;
+        SchemeListener[] listeners = 
+            Arrays.copyOf(schemeListeners, schemeListeners.length + 1);
+        listeners[schemeListeners.length] = l;
+        schemeListeners = listeners;
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#removeSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.1.0
+     */
+    @Override
+    public void removeSchemeListener(SchemeListener l) {
+        if (schemeListeners == null)
+            return;
+        for (int i = 0; i < schemeListeners.length; i++) {
+            if (schemeListeners[i] != l)
+                continue;
+            if (schemeListeners.length == 1) {
+                schemeListeners = null;
+                return;
+            }
+            SchemeListener[] listeners = 
+                new SchemeListener[schemeListeners.length - 1];
+            System.arraycopy(schemeListeners, 0, listeners, 0, i);
+            System.arraycopy(schemeListeners, i + 1, listeners, i, 
+                listeners.length - i);
+            schemeListeners = listeners;
+            return;
+        }
+    }
+
+    /**
+     * Reports a batch of changes to all registered scheme listeners. During
+     * an edit, the changes are collected instead and reported once the edit
+     * succeeded.
+     * @param events the changes, may be <code>null</code> or empty if 
+     * nothing changed
+     * 
+     * @since 1.1.0
+     * 
+     * @see SchemeListener#schemeChanged(List)
+     */
+    private void report(List<SchemeEvent> events) {
+        if (events == null || events.isEmpty())
+            return;
+        if (pendingEvents != null) {
+            pendingEvents.addAll(events);
+            return;
+        }
+        SchemeListener[] listeners = schemeListeners;
+        if (listeners == null)
+            return;
+        List<SchemeEvent> batch = Collections.unmodifiableList(events);
+        for (SchemeListener l : listeners)
+            l.schemeChanged(batch);
+    }
+
+    /**
+     * Has to be called after the data of a component of this scheme changed,
+     * for example its name. Since the hash code of the component may have 
+     * changed, the membership index moves the component to its new hash 
+     * code, finding it by the hash code of <code>former</code>. If the 
+     * former data is unknown, the index is rebuilt instead. Then a 
+     * {@link SchemeEvent#CHANGED} event is reported.
+     * @param e the component which changed
+     * @param former the former data of the component, equal to the 
+     * component before the change, or <code>null</code> if unknown
+     * 
+     * @since 1.1.0
+     * 
+     * @see ArrayInformationScheme
+     * @see SchemeEvent#getFormer()
+     */
+    protected void componentChanged(E e, Object former) {
+        if (membership != null) {
+            if (former == null)
+                membership.rebuild(this);
+            else
+                membership.changed(e, former, this);
+        }
+        if (schemeListeners != null)
+            report(Collections.singletonList(
+                new SchemeEvent(this, e, former)));
+    }
+
+    /**
+     * Reports a component as added if it wasn't contained before.
+     * @param e the added component
+     * @param index the position of <code>e</code>
+     * @param added if <code>e</code> wasn't contained before
+     * 
+     * @since 1.1.0
+     */
+    private void reportAdded(E e, int index, boolean added) {
+        if (added)
+            report(Collections.singletonList(
+                new SchemeEvent(this, SchemeEvent.ADDED, e, index)));
+    }
+
+    /**
+     * Tells if this scheme keeps a membership index.
+     * @return <code>true</code> if this scheme keeps a membership index
+     * 
+     * @since 1.1.0
+     * 
+     * @see #setMembershipIndexed(boolean)
+     */
+    public boolean isMembershipIndexed() {
+        return membership != null;
+    }
+
+    /**
+     * Switches the membership index of this scheme on or off. If switched on,
+     * the index is built in linear time and kept up to date by every
+     * modification of this scheme afterwards, so {@link #contains(Object)} 
+     * and {@link #indexOf(Object)} take constant time. Inserting or removing 
+     * components anywhere but at the end still takes linear time, since the 
+     * following components have to be shifted.<br>
+     * Components must not change their hash code while they are indexed.
+     * @param indexed if this scheme should keep a membership index
+     * 
+     * @since 1.1.0
+     * 
+     * @see #isMembershipIndexed()
+     */
+    public void setMembershipIndexed(boolean indexed) {
+        if (!indexed)
+            membership = null;
+        else if (membership == null)
+            membership = new MembershipIndex(this);
+    }
+
+    /**
+     * Tells if this scheme rejects family changes closing a cycle.
+     * @return <code>true</code> if cycles are checked
+     * 
+     * @since 1.1.0
+     * 
+     * @see #setCycleChecked(boolean)
+     */
+    public boolean isCycleChecked() {
+        return cycleCheck != null;
+    }
+
+    /**
+     * Switches the cycle check of this scheme on or off. If switched on, a
+     * topological order of the components of this scheme and all their 
+     * associated components is kept up to date while families change. Any 
+     * addition of a parent or child which would close a cycle is rejected 
+     * with a {@link SchemeDependencyException} before the family changes, 
+     * just like adding a component to this scheme whose family already 
+     * contains a cycle. Checking a new parent or child only costs time 
+     * proportional to the components between them in the topological order. 
+     * <br>
+     * Components stay checked when removed from this scheme, until the cycle
+     * check is switched off.
+     * @param checked if this scheme should check for cycles
+     * @throws SchemeDependencyException If switched on while the scheme
+     * contains a cycle. The cycle check stays off then.
+     * 
+     * @since 1.1.0
+     * 
+     * @see #isCycleChecked()
+     */
+    public void setCycleChecked(boolean checked) {
+        if (!checked) {
+            if (cycleCheck != null)
+                cycleCheck.clear();
+            cycleCheck = null;
+        }
+        else if (cycleCheck == null) {
+            DynamicTopologicalOrder order = new DynamicTopologicalOrder();
+            try {
+                order.track(this);
+            }
+            catch (SchemeDependencyException e) {
+                order.clear();
+                throw e;
+            }
+            cycleCheck = order;
+        }
+    }
+
+    /**
+     * Tells if this scheme keeps the depths and heights of its components 
+     * up to date.
+     * @return <code>true</code> if depths and heights are tracked
+     * 
+     * @since 1.1.0
+     * 
+     * @see #setDepthsTracked(boolean)
+     */
+    public boolean isDepthsTracked() {
+        return depths != null;
+    }
+
+    /**
+     * Switches tracking of depths and heights on or off. If switched on, the
+     * depths and heights of the components of this scheme and all their 
+     * associated components are computed once in <tt>O(V+E)</tt> time and
+     * then kept up to date while families change, only computing the 
+     * components below or above a changed family again. So 
+     * {@link #getDepths()} and {@link #getHeights()} just look them up. 
+     * Components stay tracked when removed from this scheme, until tracking
+     * is switched off.
+     * @param tracked if this scheme should track depths and heights
+     * 
+     * @since 1.1.0
+     * 
+     * @see #isDepthsTracked()
+     */
+    public void setDepthsTracked(boolean tracked) {
+        if (!tracked) {
+            if (depths != null)
+                depths.clear();
+            depths = null;
+        }
+        else if (depths == null) {
+            depths = new DynamicDepths();
+            depths.track(this);
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#getDepths()
+     */
+    /**
+     * {@inheritDoc} The depths are indexed like this list. If depths are
+     * tracked, this takes <tt>O(n)</tt> time only.
+     * @since 1.1.0
+     * 
+     * @see #setDepthsTracked(boolean)
+     * @see #getLayers()
+     */
+    @Override
+    public int[] getDepths() {
+        return depthsOrHeights(true);
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#getHeights()
+     */
+    /**
+     * {@inheritDoc} The heights are indexed like this list. If heights are
+     * tracked, this takes <tt>O(n)</tt> time only.
+     * @since 1.1.0
+     * 
+     * @see #setDepthsTracked(boolean)
+     */
+    @Override
+    public int[] getHeights() {
+        return depthsOrHeights(false);
+    }
+
+    /**
+     * Looks up the depths or heights of the components of this scheme if 
+     * they are tracked, else computes them.
+     * @param depth <code>true</code> for depths, <code>false</code> for
+     * heights
+     * @return the depths or heights, indexed like this list
+     * 
+     * @since 1.1.0
+     */
+    private int[] depthsOrHeights(boolean depth) {
+        int size = size();
+        int[] result = new int[size];
+        if (depths != null) {
+            for (int i = 0; i < size; i++)
+                result[i] = depth ? depths.depthOf(get(i)) 
+                        : depths.heightOf(get(i));
+            return result;
+        }
+        CompactGraph graph = new CompactGraph(this);
+        int[] values = depth ? graph.layers() : graph.heights();
+        for (int i = 0; i < size; i++)
+            result[i] = values[graph.idOf(get(i))];
+        return result;
+    }
+
+    /**
+     * Makes sure the given components are checked for cycles, if this 
+     * scheme checks for cycles.
+     * @param c the components about to be added
+     * @throws SchemeDependencyException If a component is part of a cycle.
+     * 
+     * @since 1.1.0
+     */
+    private void checkCycles(Collection<? extends E> c) {
+        if (cycleCheck != null)
+            cycleCheck.track(c);
+    }
+
+    /**
+     * Returns the reachability index of this scheme.
+     * @return the reachability index, or <code>null</code> if there is none
+     * 
+     * @since 1.1.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
+     */
+    public ReachabilityIndex getReachabilityIndex() {
+        return reachability;
+    }
+
+    /**
+     * Sets the reachability index used by {@link #isAncestorOf(
+     * SchemeComponent, SchemeComponent)}, {@link #isDescendantOf(
+     * SchemeComponent, SchemeComponent)}, {@link #containsAncestorOf(
+     * SchemeComponent)} and {@link #containsDescendantOf(SchemeComponent)}.
+     * The index is invalidated whenever this scheme or the family of any 
+     * component known to the index changes, and rebuilt over this scheme by 
+     * the next query. A former index is cleared. The index isn't copied by 
+     * {@link #deepCopy()}.
+     * @param index the new index, or <code>null</code> to search through
+     * the families on every query
+     * 
+     * @since 1.1.0
+     * 
+     * @see ClosureReachabilityIndex
+     */
+    public void setReachabilityIndex(ReachabilityIndex index) {
+        if (reachability != null && reachability != index)
+            reachability.clear();
+        reachability = index;
+        if (index != null)
+            index.invalidate();
+    }
+
+    /**
+     * Returns the valid reachability index of this scheme, rebuilding it if
+     * necessary.
+     * @return the valid reachability index, or <code>null</code> if there is
+     * none
+     * 
+     * @since 1.1.0
+     */
+    private ReachabilityIndex validReachabilityIndex() {
+        if (reachability != null && !reachability.isValid())
+            reachability.rebuild(this);
+        return reachability;
+    }
+
+    /**
+     * Tells if one component is an ancestor of another one, identifying
+     * components by identity. If this scheme has a reachability index, it 
+     * is used, so the answer takes constant time for components of this 
+     * scheme and their associated components. Otherwise the families are
+     * searched from both components at once, going on with the side having
+     * less components pending, so the search stops as soon as both sides 
+     * meet. If this scheme checks for cycles, the topological order prunes
+     * all components which can't lie between both components. As long as 
+     * the families are valid, the answer is the same as
+     * {@link SchemeComponent#isAncestorOf(SchemeComponent)} by identity.
+     * @param ancestor the possible ancestor
+     * @param descendant the possible descendant
+     * @return <code>true</code> if <code>ancestor</code> is an ancestor of
+     * <code>descendant</code>
+     * 
+     * @version 1.1.0
+     * @since 1.1.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
+     * @see #setCycleChecked(boolean)
+     */
+    public boolean isAncestorOf(SchemeComponent ancestor,
+            SchemeComponent descendant) {
+        ReachabilityIndex index = validReachabilityIndex();
+        if (index != null)
+            return index.isAncestorOf(ancestor, descendant);
+        return ancestor != null && descendant != null
+                && EpochTraversal.connects(ancestor, descendant, cycleCheck);
+    }
+
+    /**
+     * Tells if one component is a descendant of another one, identifying
+     * components by identity. This is the same as 
+     * {@link #isAncestorOf(SchemeComponent, SchemeComponent)} with swapped 
+     * arguments.
+     * @param descendant the possible descendant
+     * @param ancestor the possible ancestor
+     * @return <code>true</code> if <code>descendant</code> is a descendant of
+     * <code>ancestor</code>
+     * 
+     * @version 1.1.0
+     * @since 1.1.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
+     */
+    public boolean isDescendantOf(SchemeComponent descendant,
+            SchemeComponent ancestor) {
+        ReachabilityIndex index = validReachabilityIndex();
+        if (index != null)
+            return index.isDescendantOf(descendant, ancestor);
+        return ancestor != null && descendant != null
+                && EpochTraversal.connects(ancestor, descendant, cycleCheck);
+    }
+
+    /**
+     * Tells for many pairs of components if the first one is an ancestor of
+     * the second one, identifying components by identity. If this scheme 
+     * has a reachability index, it answers each pair. Otherwise a snapshot 
+     * of this scheme and the given components is taken and all pairs are 
+     * answered together by a few sweeps through it, so the costs are about 
+     * <tt>O((V+E)&middot;k/64)</tt> for <tt>k</tt> distinct ancestors, 
+     * instead of one search per pair.
+     * @param ancestors the possible ancestors, may contain 
+     * <code>null</code>
+     * @param descendants the possible descendants, one for each ancestor, 
+     * may contain <code>null</code>
+     * @return an array telling for each index <code>i</code> if 
+     * <code>ancestors.get(i)</code> is an ancestor of
+     * <code>descendants.get(i)</code>
+     * @throws IllegalArgumentException If both lists differ in size.
+     * 
+     * @since 1.1.0
+     * 
+     * @see #isAncestorOf(SchemeComponent, SchemeComponent)
+     */
+    public boolean[] areAncestorsOf(
+            List<? extends SchemeComponent> ancestors,
+            List<? extends SchemeComponent> descendants) {
+        if (ancestors.size() != descendants.size())
+            throw new IllegalArgumentException("Sizes differ!");
+        int n = ancestors.size();
+        ReachabilityIndex index = validReachabilityIndex();
+        if (index != null) {
+            boolean[] result = new boolean[n];
+            for (int i = 0; i < n; i++)
+                result[i] = index.isAncestorOf(ancestors.get(i), 
+                    descendants.get(i));
+            return result;
+        }
+        ArrayList<SchemeComponent> members = 
+            new ArrayList<SchemeComponent>(size() + 2 * n);
+        members.addAll(this);
+        for (SchemeComponent c : ancestors)
+            if (c != null)
+                members.add(c);
+        for (SchemeComponent c : descendants)
+            if (c != null)
+                members.add(c);
+        CompactGraph graph = new CompactGraph(members);
+        int[] from = new int[n];
+        int[] to = new int[n];
+        for (int i = 0; i < n; i++) {
+            from[i] = graph.idOf(ancestors.get(i));
+            to[i] = graph.idOf(descendants.get(i));
+        }
+        return graph.reaches(from, to);
+    }
+
+    /**
+     * Returns a traversal of the descendants of a component, which can be
+     * split to go through them in parallel. The traversal follows the
+     * families, so associated components are included.
+     * @param c the component whose descendants to traverse
+     * @return a new traversal of the descendants of <code>c</code>
+     * @throws NullPointerException If <code>c</code> is <code>null</code>.
+     * 
+     * @since 1.1.0
+     * 
+     * @see FamilyTraversal#trySplit()
+     */
+    public FamilyTraversal descendants(SchemeComponent c) {
+        return FamilyTraversal.descendants(c);
+    }
+
+    /**
+     * Returns a traversal of the ancestors of a component, which can be
+     * split to go through them in parallel. The traversal follows the
+     * families, so associated components are included.
+     * @param c the component whose ancestors to traverse
+     * @return a new traversal of the ancestors of <code>c</code>
+     * @throws NullPointerException If <code>c</code> is <code>null</code>.
+     * 
+     * @since 1.1.0
+     * 
+     * @see FamilyTraversal#trySplit()
+     */
+    public FamilyTraversal ancestors(SchemeComponent c) {
+        return FamilyTraversal.ancestors(c);
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(org.abos.
+     * schemes.SchemeComponent, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} If the reachability index of this scheme is a
+     * {@link CommonAncestorIndex}, it is used, so a query takes time 
+     * proportional to the number of components divided by 64 at most. 
+     * Otherwise the ancestors of both components are searched in a snapshot
+     * of their families, taking <tt>O(V+E)</tt> time, so set an index by
+     * {@link #setReachabilityIndex(ReachabilityIndex)} for repeated queries.
+     * @since 1.1.0
+     * 
+     * @see CommonAncestorIndex#lowestCommonAncestors(SchemeComponent, 
+     * SchemeComponent)
+     */
+    @Override
+    public List<SchemeComponent> getLowestCommonAncestors(SchemeComponent a,
+            SchemeComponent b) {
+        return getLowestCommonAncestors(Collections.singletonList(a),
+            Collections.singletonList(b)).get(0);
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(java.util.List,
+     * java.util.List)
+     */
+    /**
+     * {@inheritDoc} If the reachability index of this scheme is a
+     * {@link CommonAncestorIndex}, it answers each pair. Otherwise a single
+     * snapshot of the given components and their families is taken for all
+     * pairs, and the ancestors of each pair are searched in it.
+     * @since 1.1.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
+     */
+    @Override
+    public List<List<SchemeComponent>> getLowestCommonAncestors(
+            List<? extends SchemeComponent> a,
+            List<? extends SchemeComponent> b) {
+        if (a.size() != b.size())
+            throw new IllegalArgumentException("Sizes differ!");
+        ReachabilityIndex index = validReachabilityIndex();
+        if (index instanceof CommonAncestorIndex) {
+            List<List<SchemeComponent>> result = 
+                new ArrayList<List<SchemeComponent>>(a.size());
+            for (int i = 0; i < a.size(); i++)
+                result.add(((CommonAncestorIndex)index)
+                    .lowestCommonAncestors(a.get(i), b.get(i)));
+            return result;
+        }
+        ArrayList<SchemeComponent> members = 
+            new ArrayList<SchemeComponent>(2 * a.size());
+        for (SchemeComponent c : a)
+            if (c != null)
+                members.add(c);
+        for (SchemeComponent c : b)
+            if (c != null)
+                members.add(c);
+        return new CompactGraph(members).lowestCommonAncestors(a, b);
+    }
+
     /*
      * (non-JavaDoc)
      * 
@@ -113,8 +911,11 @@ implements Scheme<E> {
      * {@inheritDoc} If a component is added by
      * {@link #add(int, SchemeComponent)} or changed by
      * {@link #set(int, SchemeComponent)} and if it's a root, it will still be
-     * added at the end of the list of roots.
+     * added at the end of the list of roots. The same goes for a component
+     * becoming a root by losing its last parent. Components are listed once,
+     * even if they are contained multiple times.
      * 
+     * @version 1.1.0
      * @since 1.0.0
      */
     @Override
@@ -149,8 +950,11 @@ implements Scheme<E> {
      * {@inheritDoc} If a component is added by
      * {@link #add(int, SchemeComponent)} or changed by
      * {@link #set(int, SchemeComponent)} and if it's a leaf, it will still be
-     * added at the end of the list of leaves.
+     * added at the end of the list of leaves. The same goes for a component
+     * becoming a leaf by losing its last child. Components are listed once,
+     * even if they are contained multiple times.
      * 
+     * @version 1.1.0
      * @since 1.0.0
      */
     @Override
@@ -183,13 +987,23 @@ implements Scheme<E> {
      * SchemeComponent)
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Uses the reachability index if there is one. Else the
+     * ancestors of <code>e</code> are searched once through the parents,
+     * stopping at the first component of this scheme, so this takes 
+     * <tt>O(V+E)</tt> time at most, see {@link #containsRelative(
+     * SchemeComponent, int)}.
+     * @version 1.1.0
      * @since 1.0.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
      */
     @Override
     public boolean containsAncestorOf(E e) {
+        ReachabilityIndex index = validReachabilityIndex();
+        if (index == null)
+            return containsRelative(e, SchemeComponent.PARENT);
         for (E element : this)
-            if (element.isAncestorOf(e))
+            if (index.isAncestorOf(element, e))
                 return true;
         return false;
     }
@@ -201,17 +1015,78 @@ implements Scheme<E> {
      * SchemeComponent)
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Uses the reachability index if there is one. Else the
+     * descendants of <code>e</code> are searched once through the children,
+     * stopping at the first component of this scheme.
+     * @version 1.1.0
      * @since 1.0.0
+     * 
+     * @see #setReachabilityIndex(ReachabilityIndex)
+     * @see #containsRelative(SchemeComponent, int)
      */
     @Override
     public boolean containsDescendantOf(E e) {
+        ReachabilityIndex index = validReachabilityIndex();
+        if (index == null)
+            return containsRelative(e, SchemeComponent.CHILD);
         for (E element : this)
-            if (element.isDescendantOf(e))
+            if (index.isDescendantOf(element, e))
                 return true;
         return false;
     }
 
+    /**
+     * Searches the ancestors or descendants of a component for a component 
+     * of this scheme, breadth first. Instead of searching from each 
+     * component of this scheme towards <code>e</code>, the search starts at
+     * <code>e</code> and stops at the first component found, so it visits
+     * each relative at most once. Membership is looked up in the membership
+     * index if there is one, else in a hash set built on demand. <br>
+     * Since the search goes the opposite way, it relies on valid families: 
+     * A parent of <code>e</code> is only taken for an ancestor if it lists
+     * <code>e</code> as child, too, which is the case if all families are 
+     * valid.
+     * @param e the component to start at
+     * @param type {@link SchemeComponent#PARENT} to search the ancestors, 
+     * {@link SchemeComponent#CHILD} to search the descendants
+     * @return <code>true</code> if this scheme contains a relative of the
+     * given type of <code>e</code>
+     * 
+     * @since 1.1.0
+     * 
+     * @see #allFamiliesValid()
+     */
+    private boolean containsRelative(E e, int type) {
+        if (e == null || isEmpty())
+            return false;
+        Set<SchemeComponent> visited = Collections.newSetFromMap(
+            new IdentityHashMap<SchemeComponent, Boolean>());
+        Set<Object> members = null;
+        ArrayDeque<SchemeComponent> queue = new ArrayDeque<SchemeComponent>();
+        queue.add(e); // e itself only counts if it lies on a cycle
+        while (!queue.isEmpty()) {
+            Iterator<? extends SchemeComponent> it =
+                queue.poll().iterator(type);
+            while (it.hasNext()) {
+                SchemeComponent relative = it.next();
+                if (relative == null || !visited.add(relative))
+                    continue;
+                if (membership != null) {
+                    if (membership.contains(relative))
+                        return true;
+                }
+                else {
+                    if (members == null)
+                        members = new HashSet<Object>(this);
+                    if (members.contains(relative))
+                        return true;
+                }
+                queue.add(relative);
+            }
+        }
+        return false;
+    }
+
     /*
      * (non-JavaDoc)
      * 
@@ -254,14 +1129,98 @@ implements Scheme<E> {
     /**
      * {@inheritDoc} This implementation realizes the before-mentioned 
      * suggestion.
+     * @version 1.1.0
      * @since 1.0.0
      */
     @Override
     public boolean allFamiliesValid() {
-        for (E e : this)
-            if (!e.hasValidFamily())
-                return false;
-        return true;
+        return getFamilyReport().isValid();
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see org.abos.schemes.Scheme#getFamilyReport()
+     */
+    /**
+     * {@inheritDoc} The families are compiled into a snapshot first, like
+     * for {@link #freeze()}.
+     * @since 1.1.0
+     */
+    @Override
+    public FamilyReport getFamilyReport() {
+        return new FamilyReport(new CompactGraph(this));
+    }
+
+    /**
+     * Sorts this scheme so that every component comes after all of its
+     * ancestors, including ancestors related only through associated
+     * components. The components are grouped by their layer, see
+     * {@link #getLayers()}, and keep their current order within a layer, so
+     * the sort is stable and deterministic. Components on a cycle or below
+     * one can't be sorted and are moved to the end, keeping their order.
+     * Takes <tt>O(V+E)</tt> time for <tt>V</tt> components, including
+     * associated ones, and <tt>E</tt> family listings.
+     * 
+     * @since 1.1.0
+     * 
+     * @see #allFamiliesValid()
+     */
+    @SuppressWarnings("unchecked") // only components of this are sorted
+    public void sortHierarchically() {
+        int size = size();
+        if (size < 2)
+            return;
+        CompactGraph graph = new CompactGraph(this);
+        int[] layer = graph.layers();
+        int count = layer[graph.size()];
+        // counting sort by layer, the components without one go last
+        int[] start = new int[count + 2];
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = graph.idOf(get(i));
+            int l = layer[ids[i]];
+            start[(l < 0 ? count : l) + 1]++;
+        }
+        for (int l = 0; l <= count; l++)
+            start[l + 1] += start[l];
+        Object[] sorted = new Object[size];
+        for (int i = 0; i < size; i++) {
+            int l = layer[ids[i]];
+            sorted[start[l < 0 ? count : l]++] = get(i);
+        }
+        for (int i = 0; i < size; i++)
+            super.set(i, (E)sorted[i]);
+        if (membership != null)
+            membership.rebuild(this);
+    }
+
+    /**
+     * Groups the components of this scheme by their layer. Roots, including
+     * associated ones, are in layer <code>0</code>, every other component is
+     * one layer below its lowest parent, so all parents of a component are
+     * in lower layers. A layer may be empty if it only contains associated
+     * components. Components on a cycle or below one aren't contained.
+     * Takes <tt>O(V+E)</tt> time.
+     * @return the list of layers, each listing its components once in the
+     * order of this scheme
+     * 
+     * @since 1.1.0
+     * 
+     * @see #sortHierarchically()
+     */
+    @SuppressWarnings("unchecked") // the members are of type E
+    public List<List<E>> getLayers() {
+        CompactGraph graph = new CompactGraph(this);
+        int[] layer = graph.layers();
+        int count = layer[graph.size()];
+        List<List<E>> layers = new ArrayList<List<E>>(count);
+        for (int l = 0; l < count; l++)
+            layers.add(new ArrayList<E>());
+        for (int i = 0; i < graph.memberCount; i++)
+            if (layer[i] >= 0)
+                layers.get(layer[i]).add((E)graph.nodes[i]);
+        return layers;
     }
 
     /*
@@ -270,7 +1229,12 @@ implements Scheme<E> {
      * @see org.abos.schemes.Scheme#validateRootsAndLeaves()
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} <br>
+     * Since this scheme registers a {@link FamilyListener} at each of its 
+     * components, roots and leaves are kept up to date without calling this
+     * method, as long as the components notify their listeners (as 
+     * {@link AbstractSchemeComponent} does).
+     * @version 1.1.0
      * @since 1.0.0
      */
     @Override
@@ -293,9 +1257,16 @@ implements Scheme<E> {
      */
     @Override
     public boolean add(E e) {
+        checkCycles(Collections.singleton(e));
+        boolean added = schemeListeners != null && e != null 
+                && !containsIdentical(e);
         boolean change = super.add(e);
-        if (change)
+        if (change) {
             addRootOrLeaf(e);
+            if (membership != null)
+                membership.added(e, size() - 1, size());
+            reportAdded(e, size() - 1, added);
+        }
         return change;
     }
 
@@ -308,10 +1279,17 @@ implements Scheme<E> {
      */
     @Override
     public void add(int index, E element) {
+        checkCycles(Collections.singleton(element));
+        boolean added = schemeListeners != null && element != null 
+                && !containsIdentical(element);
         int size = this.size();
         super.add(index, element);
-        if (this.size() > size)
+        if (this.size() > size) {
             addRootOrLeaf(element);
+            if (membership != null)
+                membership.added(element, index, size());
+            reportAdded(element, index, added);
+        }
     }
 
     /*
@@ -325,14 +1303,45 @@ implements Scheme<E> {
      */
     @Override
     public boolean addAll(Collection<? extends E> c) {
+        checkCycles(c);
+        Set<Object> former = schemeListeners == null ? null : identities();
+        int size = size();
         boolean change = super.addAll(c);
         if (change) {
             for (E e : c)
                 addRootOrLeaf(e);
+            if (membership != null)
+                for (int i = size; i < size(); i++)
+                    membership.added(get(i), i, i + 1);
+            reportAdded(c, size, former);
         }
         return change;
     }
 
+    /**
+     * Reports the given components as added if they weren't contained 
+     * before, as one batch.
+     * @param c the added components
+     * @param index the position of the first added component
+     * @param former the elements before the addition, compared by identity,
+     * or <code>null</code> if nothing is reported
+     * 
+     * @since 1.1.0
+     */
+    private void reportAdded(Collection<? extends E> c, int index, 
+            Set<Object> former) {
+        if (former == null)
+            return;
+        List<SchemeEvent> events = new ArrayList<SchemeEvent>();
+        for (E e : c) {
+            if (e != null && former.add(e))
+                events.add(new SchemeEvent(this, SchemeEvent.ADDED, e, 
+                    index));
+            index++;
+        }
+        report(events);
+    }
+
     /*
      * (non-JavaDoc)
      * 
@@ -345,12 +1354,17 @@ implements Scheme<E> {
     @SuppressWarnings("unchecked")
     @Override
     public boolean addAll(int index, Collection<? extends E> c) {
+        checkCycles(c);
+        Set<Object> former = schemeListeners == null ? null : identities();
         boolean change = super.addAll(index, c);
         if (change) {
             Object[] a = c.toArray();
-            for (int i = index; i < a.length; i++) {
+            for (int i = 0; i < a.length; i++) {
                 addRootOrLeaf((E) (a[i]));
+                if (membership != null)
+                    membership.added(a[i], index + i, size());
             }
+            reportAdded(c, index, former);
         }
         return change;
     }
@@ -366,9 +1380,26 @@ implements Scheme<E> {
      */
     @Override
     public E set(int index, E element) {
+        checkCycles(Collections.singleton(element));
+        boolean added = schemeListeners != null && element != null 
+                && !containsIdentical(element);
         E e = super.set(index, element);
-        if (e != null)
+        if (membership != null)
+            membership.replaced(e, element, index, this);
+        boolean removed = e != null && !containsIdentical(e);
+        if (removed)
             removeRootOrLeaf(e);
+        addRootOrLeaf(element);
+        if (schemeListeners != null) {
+            List<SchemeEvent> events = new ArrayList<SchemeEvent>(2);
+            if (removed)
+                events.add(new SchemeEvent(this, SchemeEvent.REMOVED, e, 
+                    index));
+            if (added)
+                events.add(new SchemeEvent(this, SchemeEvent.ADDED, element,
+                    index));
+            report(events);
+        }
         return e;
     }
 
@@ -381,13 +1412,13 @@ implements Scheme<E> {
      * {@inheritDoc}
      * @since 1.0.0
      */
-    @SuppressWarnings("unchecked") // successful removal implies the type
     @Override
     public boolean remove(Object o) {
-        boolean change = super.remove(o);
-        if (change)
-            removeRootOrLeaf((E) o);
-        return change;
+        int index = indexOf(o);
+        if (index < 0)
+            return false;
+        remove(index);
+        return true;
     }
 
     /*
@@ -402,8 +1433,13 @@ implements Scheme<E> {
     @Override
     public E remove(int index) {
         E obj = super.remove(index);
-        if (obj != null) {
+        if (membership != null)
+            membership.removed(obj, index, this);
+        if (obj != null && !containsIdentical(obj)) {
             removeRootOrLeaf(obj);
+            if (schemeListeners != null)
+                report(Collections.singletonList(
+                    new SchemeEvent(this, SchemeEvent.REMOVED, obj, index)));
         }
         return obj;
     }
@@ -417,15 +1453,14 @@ implements Scheme<E> {
      * {@inheritDoc}
      * @since 1.0.0
      */
-    //@SuppressWarnings("unchecked") // FIXME make safe
     @Override
     public boolean removeAll(Collection<?> c) {
+        Object[] formerElements = toArray();
         boolean change = super.removeAll(c);
         if (change) {
-            for (Object o : c) {
-                if (o instanceof SchemeComponent)
-                    removeRootOrLeaf((E) o);
-            }
+            if (membership != null)
+                membershipRemoved(formerElements);
+            removeRootsOrLeaves(formerElements);
         }
         return change;
     }
@@ -441,141 +1476,152 @@ implements Scheme<E> {
      */
     @Override
     public boolean retainAll(Collection<?> c) {
+        Object[] formerElements = toArray();
         boolean change = super.retainAll(c);
         if (change) {
-            for (E e : this) {
-                if (!c.contains(e)) {
-                    removeRootOrLeaf(e);
-                }
-            }
+            if (membership != null)
+                membershipRemoved(formerElements);
+            removeRootsOrLeaves(formerElements);
         }
         return change;
     }
 
-    // FIXME replaceAll and removeIf should be added too
-
     /*
      * (non-JavaDoc)
      * 
-     * @see java.util.ArrayList#clear()
+     * @see java.util.ArrayList#removeRange(int, int)
      */
     /**
      * {@inheritDoc}
-     * @since 1.0.0
+     * @since 1.1.0
      */
     @Override
-    public void clear() {
-        super.clear();
-        roots.clear();
-        leaves.clear();
+    protected void removeRange(int fromIndex, int toIndex) {
+        Object[] formerElements = subList(fromIndex, toIndex).toArray();
+        super.removeRange(fromIndex, toIndex);
+        if (membership != null)
+            membership.removed(Arrays.asList(formerElements), fromIndex, 
+                this);
+        removeRootsOrLeaves(formerElements);
     }
 
-    // TODO check and JavaDoc check for the deepEquals and deepCopy
-    
     /**
-     * Recursively checks if two schemes are equal by checking component (and
-     * its children) for component (and its children).
+     * Tells the membership index about the elements removed by a bulk 
+     * removal, which keeps the order of the remaining elements. The removed
+     * elements are found by going through the former and the remaining 
+     * elements side by side.
+     * @param formerElements all elements before the removal
      * 
-     * @param ownComp
-     *            A component from this scheme.
-     * @param otherComp
-     *            A component from the other scheme.
-     * @param checked
-     *            A HashMap to prevent cycles.
-     * @return True if the descendants of the two given components are
-     *         identical.
+     * @since 1.1.0
      */
-    boolean deepEqualsRecursiveDown(SchemeComponent ownComp,
-            SchemeComponent otherComp, HashSet<SchemeComponent> checked) {
-        Iterator<SchemeComponent> owit = ownComp.childrenIterator();
-        Iterator<SchemeComponent> otit = otherComp.childrenIterator();
-        // check size
-        while (owit.hasNext() && otit.hasNext()) {
-            owit.next();
-            otit.next();
-        }
-        if (owit.hasNext() || otit.hasNext())
-            return false;
-        // check all components of own iterator
-        owit = ownComp.childrenIterator();
-        SchemeComponent owel = null;
-        SchemeComponent otel = null;
-        boolean hit = false;
-        while (owit.hasNext()) {
-            owel = (SchemeComponent) owit.next();
-            if (checked.contains(owel))
+    private void membershipRemoved(Object[] formerElements) {
+        int size = size();
+        int first = -1;
+        List<Object> removed = new ArrayList<Object>();
+        for (int i = 0, j = 0; i < formerElements.length; i++) {
+            if (j < size && get(j) == formerElements[i]) {
+                j++;
                 continue;
-            hit = false;
-            // look for corresponding component
-            otit = otherComp.childrenIterator();
-            while (otit.hasNext()) {
-                otel = (SchemeComponent) otit.next();
-                if (owel.equals(otel)) {
-                    hit = true;
-                    break;
-                }
             }
-            if (!hit)
-                return false;
-            checked.add(owel);
-            hit = deepEqualsRecursiveDown(owel, otel, checked);
-            if (!hit)
-                return false;
+            if (first < 0)
+                first = j; // the following elements have shifted
+            removed.add(formerElements[i]);
         }
-        return true;
+        if (first >= 0)
+            membership.removed(removed, first, this);
     }
 
+    // FIXME replaceAll and removeIf should be added too
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see java.util.ArrayList#contains(java.lang.Object)
+     */
     /**
-     * Recursively checks if two schemes are equal by checking component (and
-     * its children) for component (and its children).
+     * {@inheritDoc} Takes constant time if this scheme keeps a membership
+     * index.
+     * @since 1.1.0
      * 
-     * @param ownComp
-     *            A component from this scheme.
-     * @param otherComp
-     *            A component from the other scheme.
-     * @param checked
-     *            A HashMap to prevent cycles.
-     * @return True if the descendants of the two given components are
-     *         identical.
+     * @see #setMembershipIndexed(boolean)
      */
-    boolean deepEqualsRecursiveUp(SchemeComponent ownComp,
-            SchemeComponent otherComp, HashSet<SchemeComponent> checked) {
-        Iterator<SchemeComponent> owit = ownComp.parentsIterator();
-        Iterator<SchemeComponent> otit = otherComp.parentsIterator();
-        // check size
-        while (owit.hasNext() && otit.hasNext()) {
-            owit.next();
-            otit.next();
-        }
-        if (owit.hasNext() || otit.hasNext())
-            return false;
-        // check all components of own iterator
-        owit = ownComp.parentsIterator();
-        SchemeComponent owel = null;
-        SchemeComponent otel = null;
-        boolean hit = false;
-        while (owit.hasNext()) {
-            owel = (SchemeComponent) owit.next();
-            if (checked.contains(owel))
-                continue;
-            hit = false;
-            // look for corresponding component
-            otit = otherComp.parentsIterator();
-            while (otit.hasNext()) {
-                otel = (SchemeComponent) otit.next();
-                if (owel.equals(otel)) {
-                    hit = true;
-                    break;
-                }
-            }
-            if (!hit)
-                return false;
-            checked.add(owel);
-            hit = deepEqualsRecursiveUp(owel, otel, checked);
-            if (!hit)
-                return false;
+    @Override
+    public boolean contains(Object o) {
+        if (membership != null)
+            return membership.contains(o);
+        return super.contains(o);
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see java.util.ArrayList#indexOf(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Takes constant time if this scheme keeps a membership
+     * index and no component was inserted or removed before the requested
+     * one since the last lookup.
+     * @since 1.1.0
+     * 
+     * @see #setMembershipIndexed(boolean)
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (membership != null)
+            return membership.indexOf(o, this);
+        return super.indexOf(o);
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see java.util.ArrayList#lastIndexOf(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Returns immediately if this scheme keeps a membership 
+     * index and doesn't contain <code>o</code>.
+     * @since 1.1.0
+     * 
+     * @see #setMembershipIndexed(boolean)
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+        if (membership != null && !membership.contains(o))
+            return -1;
+        return super.lastIndexOf(o);
+    }
+
+    /*
+     * (non-JavaDoc)
+     * 
+     * @see java.util.ArrayList#clear()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void clear() {
+        List<SchemeEvent> events = null;
+        if (schemeListeners != null) {
+            events = new ArrayList<SchemeEvent>();
+            Set<Object> reported = Collections.newSetFromMap(
+                new IdentityHashMap<Object, Boolean>(size()));
+            for (int i = 0; i < size(); i++)
+                if (reported.add(get(i)))
+                    events.add(new SchemeEvent(this, SchemeEvent.REMOVED, 
+                        get(i), i));
         }
-        return true;
+        for (E e : this)
+            removeRootOrLeaf(e);
+        super.clear();
+        roots.clear();
+        leaves.clear();
+        if (membership != null)
+            membership.clear();
+        if (reachability != null)
+            reachability.invalidate();
+        report(events);
     }
 
     /*
@@ -585,123 +1631,28 @@ implements Scheme<E> {
      */
     /**
      * {@inheritDoc} <br>
-     * By now, this method will fail to work if one of the schemes has closed
-     * cycles (i.e. elements that are not connected to a root or a leave).
+     * The descendants of the roots and the ancestors of the leaves of both
+     * schemes are compared. Both schemes are hashed structurally first, so
+     * differing structures are mostly rejected right away. Else the 
+     * structures are compared without recursion, pairing relatives by 
+     * their hashes, which takes <tt>O(V+E)</tt> time apart from sorting 
+     * each family. Components on closed cycles (i.e. not connected to a root
+     * or a leaf) aren't compared.
+     * @version 1.1.0
+     * @since 1.0.0
+     * 
+     * @see StructuralHashes
      */
     @Override
     public boolean deepEquals(Scheme<E> scheme) {
         if (scheme == null)
             return false;
-        // check children
-        AbstractSchemeComponent ownRoot = new AbstractSchemeComponent() {
-        };
-        for (E e : roots)
-            ownRoot.addChild(e);
-        AbstractSchemeComponent otherRoot = new AbstractSchemeComponent() {
-        };
-        for (E e : scheme.getRoots())
-            otherRoot.addChild(e);
-        if (!deepEqualsRecursiveDown(ownRoot, otherRoot,
-                new HashSet<SchemeComponent>(this.size())))
-            return false;
-        // check parents
-        ownRoot = new AbstractSchemeComponent() {
-        };
-        for (E e : leaves)
-            ownRoot.addParent(e);
-        otherRoot = new AbstractSchemeComponent() {
-        };
-        for (E e : scheme.getLeaves())
-            otherRoot.addParent(e);
-        return deepEqualsRecursiveUp(ownRoot, otherRoot,
-                new HashSet<SchemeComponent>(this.size()));
-    }
-
-    @SuppressWarnings("unchecked")
-    void deepCopyRecursiveDown(SchemeComponent oldComp, SchemeComponent newComp,
-            ArrayScheme<E> newScheme, 
-            HashMap<SchemeComponent, SchemeComponent> checked) 
-            throws CloneNotSupportedException {
-        Iterator<SchemeComponent> oldIt = oldComp.childrenIterator();
-        SchemeComponent oldElem = null;
-        SchemeComponent newElem = null;
-        while (oldIt.hasNext()) {
-            oldElem = oldIt.next();
-            // look if parent should be added to a child 
-            if (checked.containsKey(oldElem)) { 
-                // if child has been added before
-                newElem = checked.get(oldElem);
-                if (!newComp.isParentOf(newElem))
-                    newComp.addChild(newElem);
-                if (!newElem.isChildOf(newComp))
-                    newElem.addParent(newComp);
-            } // completely new element
-            else {
-                newElem = (SchemeComponent) oldElem.clone();
-                newElem.addParent(newComp);
-                newComp.addChild(newElem);
-                checked.put(oldElem, newElem); // basically the same element
-                if (this.contains(oldElem)) 
-                    // if contained, will be eventually iterated over
-                    newScheme.add((E) newElem);
-                else // else we don't want to miss a spot
-                    deepCopyRecursiveUp(oldElem, newElem, newScheme, checked);
-                // regarding missed spots: secure unsafed parents
-                // FIXME This looks like redundant code and could possibly be made cleaner.
-                // FIXME Also improve the recursiveUp method
-//                Iterator<SchemeComponent> oldParentIt = 
-//                    oldElem.parentsIterator();
-//                SchemeComponent oldParent = null;
-//                SchemeComponent newParent = null;
-//                while (oldParentIt.hasNext()) {
-//                    oldParent = oldParentIt.next();
-//                    if (!this.contains(oldParent) && 
-//                        !checked.containsKey(oldParent)) {
-//                        newParent = (SchemeComponent) oldParent.clone();
-//                        newParent.addChild(newElem);
-//                        newElem.addParent(newParent);
-//                        checked.put(oldParent, newParent); // basically the same element
-//                        deepCopyRecursiveUp(oldParent, newParent, 
-//                            newScheme, checked);
-//                    }
-//                }
-                deepCopyRecursiveDown(oldElem, newElem, newScheme, checked);
-            }
-        } // -> while (go through children of old element)
-    }
-
-    @SuppressWarnings("unchecked")
-    void deepCopyRecursiveUp(SchemeComponent oldComp, SchemeComponent newComp,
-            ArrayScheme<E> newScheme, 
-            HashMap<SchemeComponent, SchemeComponent> checked) 
-            throws CloneNotSupportedException {
-        Iterator<SchemeComponent> oldIt = oldComp.parentsIterator();
-        SchemeComponent oldElem = null;
-        SchemeComponent newElem = null;
-        while (oldIt.hasNext()) {
-            oldElem = oldIt.next();
-            // look if child should be added to a parent
-            if (checked.containsKey(oldElem)) { 
-                // if parent has been added before
-                newElem = checked.get(oldElem);
-                if (!newComp.isChildOf(newElem))
-                    newComp.addParent(newElem);
-                if (!newElem.isParentOf(newComp))
-                    newElem.addChild(newComp);
-            } // completely new element
-            else {
-                newElem = (SchemeComponent) oldElem.clone();
-                newElem.addChild(newComp);
-                newComp.addParent(newElem);
-                if (this.contains(oldElem))
-                    // if contained, will eventually be iterated over
-                    newScheme.add((E) newElem);
-                else // else we don't want to miss a spot
-                    deepCopyRecursiveDown(oldElem, newElem, newScheme, checked);
-                checked.put(oldElem, newElem); // basically the same element
-                deepCopyRecursiveUp(oldElem, newElem, newScheme, checked);
-            }
-        } // -> while (go through parents of old element)
+        StructuralHashes own = new StructuralHashes(this);
+        StructuralHashes other = new StructuralHashes(scheme);
+        return own.matches(own.idsOf(roots), other, 
+                    other.idsOf(scheme.getRoots()), true)
+                && own.matches(own.idsOf(leaves), other,
+                    other.idsOf(scheme.getLeaves()), false);
     }
 
     /*
@@ -711,27 +1662,483 @@ implements Scheme<E> {
      */
     /**
      * {@inheritDoc} <br>
-     * TODO By now, this method will work unpredictable if the scheme has closed 
-     * cycles (i.e. elements that are not connected to a root or a leave) or if 
-     * there are components outside of the scheme which are connected to
-     * components inside the scheme.
+     * All components associated to this scheme are cloned as well, but not
+     * added to the copy, so the copy has the same associated components. The
+     * families are copied exactly, including cycles, one-sided links and the
+     * order of parents and children. Instead of following the families
+     * recursively, the families are compiled into a snapshot first, which
+     * maps each component to its clone by identity. So this method takes
+     * <tt>O(V+E)</tt> time and no stack depending on the depth of the 
+     * scheme. <br>
+     * The clones are expected to have no family yet, like the clones of
+     * {@link InformationComponent}.
+     * @version 1.1.0
+     * @since 1.0.0
      */
     @SuppressWarnings("unchecked")
     @Override
     public Scheme<E> deepCopy() throws CloneNotSupportedException {
-        ArrayScheme<E> copy = new ArrayScheme<E>(this.size());
-        E newRoot = null;
-        HashMap<SchemeComponent, SchemeComponent> checked = 
-            new HashMap<SchemeComponent, SchemeComponent>(this.size());
-        for (E root : roots) {
-            newRoot = (E) root.clone();
-            deepCopyRecursiveDown(root, newRoot, copy, checked);
-            copy.add(newRoot);
-        }
-        copy.validateRootsAndLeaves();
+        CompactGraph graph = new CompactGraph(this);
+        int n = graph.size();
+        SchemeComponent[] clones = new SchemeComponent[n];
+        for (int i = 0; i < n; i++)
+            clones[i] = (SchemeComponent)graph.nodes[i].clone();
+        for (int i = 0; i < n; i++) {
+            SchemeComponent clone = clones[i];
+            for (int e = graph.childOffsets[i]; 
+                    e < graph.childOffsets[i + 1]; e++)
+                clone.addChild(clones[graph.childTargets[e]]);
+            for (int e = graph.parentOffsets[i]; 
+                    e < graph.parentOffsets[i + 1]; e++)
+                clone.addParent(clones[graph.parentTargets[e]]);
+        }
+        // add the members at the end, so no listeners are bothered before
+        List<E> members = new ArrayList<E>(size());
+        for (E e : this)
+            members.add((E)clones[graph.idOf(e)]);
+        ArrayScheme<E> copy = new ArrayScheme<E>(size());
+        copy.setMembershipIndexed(isMembershipIndexed());
+        copy.addAll(members);
+        copy.setCycleChecked(isCycleChecked());
+        copy.setDepthsTracked(isDepthsTracked());
         return copy;
     }
 
+    /**
+     * Applies a batch of changes at once. The edit records the changes in a
+     * {@link SchemeTransaction}, then they are applied in their order
+     * without updating the roots, leaves and indices of this scheme after
+     * each change. Instead, they are updated once afterwards, only looking 
+     * at the components added, removed or changed. Additions are appended,
+     * removals are collected and applied in a single pass over this list, 
+     * and the membership index is updated for these components only. If 
+     * this scheme checks for cycles, the cycle check is suspended and the 
+     * new links are checked once at the end, only reordering the regions 
+     * affected by them, rejecting the whole batch if the result contains a 
+     * cycle. The families are checked once as well, if the transaction asks
+     * for it. <br>
+     * If any change or check fails, this scheme, its roots and leaves and all
+     * families are rolled back to their former state and the exception is 
+     * passed on, see {@link SchemeTransaction} for the order of relatives. 
+     * If the edit itself throws an exception, nothing is changed at all. 
+     * <br>
+     * Scheme listeners are notified once after the edit succeeded. The batch
+     * reports the components added first, then the changes of families in 
+     * their order, then the components removed. Components added and 
+     * removed again by the same edit aren't reported.
+     * @param edit the edit recording the changes
+     * @throws NullPointerException If <code>edit</code> is 
+     * <code>null</code>.
+     * @throws SchemeDependencyException If the changes would close a cycle
+     * while cycles are checked, or leave invalid families while families are
+     * checked.
+     * 
+     * @since 1.1.0
+     * 
+     * @see SchemeTransaction#setFamiliesChecked(boolean)
+     */
+    @SuppressWarnings("unchecked") // only components of type E are added
+    public void edit(SchemeEdit<E> edit) {
+        SchemeTransaction<E> tx = new SchemeTransaction<E>();
+        edit.edit(tx);
+        tx.close();
+        if (tx.size() == 0)
+            return;
+        int formerSize = size();
+        touched = Collections.newSetFromMap(
+            new IdentityHashMap<SchemeComponent, Boolean>());
+        pendingEvents = new ArrayList<SchemeEvent>();
+        Map<Object, int[]> counts = new IdentityHashMap<Object, int[]>();
+        List<Object> removed = new ArrayList<Object>();
+        int[] removedAt = null;
+        List<Integer> inserted = new ArrayList<Integer>();
+        try {
+            if (cycleCheck != null)
+                cycleCheck.suspend();
+            removedAt = applyMembers(tx, counts, removed, inserted);
+            tx.applyFamilies();
+            if (cycleCheck != null)
+                cycleCheck.resume();
+            if (tx.isFamiliesChecked()) {
+                FamilyReport report = getFamilyReport();
+                if (!report.isValid())
+                    throw new SchemeDependencyException(
+                        "Edit leaves invalid families: " + report);
+            }
+        }
+        catch (RuntimeException ex) {
+            // intermediate states may contain cycles, so don't check them
+            boolean cycleChecked = isCycleChecked();
+            setCycleChecked(false);
+            tx.rollbackFamilies();
+            restoreMembers(formerSize, removed, removedAt, inserted);
+            Set<Object> members = identities();
+            for (int i = 0; i < tx.size(); i++)
+                if (tx.kind(i) == SchemeTransaction.ADD 
+                        && !members.contains(tx.component(i)))
+                    ((E)tx.component(i)).removeFamilyListener(
+                        rootLeafTracker);
+            touched = null;
+            pendingEvents = null;
+            setCycleChecked(cycleChecked);
+            throw ex;
+        }
+        List<SchemeEvent> events = updateAfterEdit(tx, counts, removed, 
+            removedAt);
+        touched = null;
+        pendingEvents = null;
+        report(events);
+    }
+
+    /**
+     * Applies the additions and removals of an edit without updating the
+     * roots and leaves. Components are appended, and each removal marks the
+     * first occurrence of the component not marked yet, like 
+     * {@link #remove(Object)} would remove it, or the very component at the
+     * position given. The marked elements are removed by a single pass 
+     * afterwards. Then the components to insert at positions are inserted,
+     * in the order of their positions. The membership index is told about 
+     * each added and removed component.
+     * @param tx the transaction of the edit
+     * @param counts gets for each component added or removed, by identity,
+     * the number of occurrences gained, if it may have been contained 
+     * before (<code>1</code>) or not (<code>0</code>) and the position it
+     * was appended at first, <code>-1</code> if none
+     * @param removed gets the removed elements, in their former order
+     * @param inserted gets the positions of the inserted elements, in 
+     * ascending order
+     * @return the positions of the removed elements before the removal pass,
+     * in ascending order
+     * 
+     * @since 1.1.0
+     * 
+     * @see #edit(SchemeEdit)
+     * @see SchemeTransaction#add(int, SchemeComponent)
+     * @see SchemeTransaction#remove(int, Object)
+     */
+    @SuppressWarnings("unchecked") // only components of type E are added
+    private int[] applyMembers(SchemeTransaction<E> tx, 
+            Map<Object, int[]> counts, List<Object> removed, 
+            List<Integer> inserted) {
+        // the positions of the elements equal to a component to remove
+        HashMap<Object, ArrayDeque<Integer>> positions = null;
+        for (int i = 0; i < tx.size(); i++) {
+            if (tx.kind(i) == SchemeTransaction.REMOVE 
+                    && tx.position(i) < 0) {
+                if (positions == null)
+                    positions = new HashMap<Object, ArrayDeque<Integer>>();
+                positions.put(tx.component(i), new ArrayDeque<Integer>());
+            }
+        }
+        if (positions != null) {
+            int size = size();
+            for (int i = 0; i < size; i++) {
+                ArrayDeque<Integer> queue = positions.get(get(i));
+                if (queue != null)
+                    queue.addLast(i);
+            }
+        }
+        BitSet marked = new BitSet();
+        List<Integer> insertions = null;
+        for (int i = 0; i < tx.size(); i++) {
+            Object o = tx.component(i);
+            int at = tx.position(i);
+            if (tx.kind(i) == SchemeTransaction.ADD && at >= 0) {
+                if (insertions == null)
+                    insertions = new ArrayList<Integer>();
+                insertions.add(i);
+            }
+            else if (tx.kind(i) == SchemeTransaction.ADD) {
+                E e = (E)o;
+                int[] count = count(counts, e);
+                if (membership == null || membership.contains(e))
+                    count[1] = 1;
+                super.add(e);
+                int index = size() - 1;
+                if (count[2] < 0)
+                    count[2] = index;
+                count[0]++;
+                if (membership != null)
+                    membership.added(e, index, size());
+                e.addFamilyListener(rootLeafTracker); // for events
+                if (cycleCheck != null) // only recorded while suspended
+                    cycleCheck.track(Collections.singleton(e));
+                ArrayDeque<Integer> queue = positions == null ? null 
+                        : positions.get(e);
+                if (queue != null)
+                    queue.addLast(index);
+            }
+            else if (tx.kind(i) == SchemeTransaction.REMOVE && at >= 0) {
+                if (at >= size() || get(at) != o || marked.get(at))
+                    for (at = 0; at < size(); at++) // the first one left
+                        if (get(at) == o && !marked.get(at))
+                            break;
+                if (at < size())
+                    marked.set(at);
+            }
+            else if (tx.kind(i) == SchemeTransaction.REMOVE) {
+                ArrayDeque<Integer> queue = positions.get(o);
+                Integer index = queue.pollFirst();
+                while (index != null && marked.get(index))
+                    index = queue.pollFirst(); // removed by identity
+                if (index != null)
+                    marked.set(index);
+            }
+        }
+        int[] removedAt = new int[marked.cardinality()];
+        if (removedAt.length > 0)
+            removeMarked(marked, removedAt, counts, removed);
+        if (insertions != null)
+            insertMembers(tx, insertions, counts, inserted);
+        return removedAt;
+    }
+
+    /**
+     * Returns the changes of the occurrences of a component during an edit,
+     * adding an entry if there is none yet.
+     * @param counts the changes per component, see 
+     * {@link #applyMembers(SchemeTransaction, Map, List, List)}
+     * @param o the component
+     * @return the entry of <code>o</code>
+     * 
+     * @since 1.1.0
+     */
+    private static int[] count(Map<Object, int[]> counts, Object o) {
+        int[] count = counts.get(o);
+        if (count == null)
+            counts.put(o, count = new int[] {0, 0, -1});
+        return count;
+    }
+
+    /**
+     * Inserts the components an edit adds at positions, in the order of 
+     * their positions.
+     * @param tx the transaction of the edit
+     * @param insertions the indices of these additions in <code>tx</code>
+     * @param counts the changes per component, see 
+     * {@link #applyMembers(SchemeTransaction, Map, List, List)}
+     * @param inserted gets the positions of the inserted elements, in 
+     * ascending order
+     * 
+     * @since 1.1.0
+     */
+    @SuppressWarnings("unchecked") // only components of type E are added
+    private void insertMembers(final SchemeTransaction<E> tx, 
+            List<Integer> insertions, Map<Object, int[]> counts, 
+            List<Integer> inserted) {
+        Collections.sort(insertions, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i, Integer j) {
+                return Integer.compare(tx.position(i), tx.position(j));
+            }
+        });
+        for (int i : insertions) {
+            E e = (E)tx.component(i);
+            int index = Math.min(tx.position(i), size());
+            int[] count = count(counts, e);
+            count[0]++;
+            if (membership == null || membership.contains(e))
+                count[1] = 1;
+            super.add(index, e);
+            inserted.add(index);
+            if (membership != null)
+                membership.added(e, index, size());
+            e.addFamilyListener(rootLeafTracker); // for events
+            if (cycleCheck != null) // only recorded while suspended
+                cycleCheck.track(Collections.singleton(e));
+        }
+    }
+
+    /**
+     * Removes the marked elements by a single pass.
+     * @param marked the positions of the elements to remove
+     * @param removedAt gets the positions of the removed elements, in 
+     * ascending order
+     * @param counts the changes per component, see 
+     * {@link #applyMembers(SchemeTransaction, Map, List, List)}
+     * @param removed gets the removed elements, in their former order
+     * 
+     * @since 1.1.0
+     */
+    @SuppressWarnings("unchecked") // former elements are of type E
+    private void removeMarked(BitSet marked, int[] removedAt, 
+            Map<Object, int[]> counts, List<Object> removed) {
+        int first = marked.nextSetBit(0);
+        Object[] tail = super.subList(first, size()).toArray();
+        super.removeRange(first, size());
+        for (int i = 0, k = 0; i < tail.length; i++) {
+            if (!marked.get(first + i)) {
+                super.add((E)tail[i]);
+                continue;
+            }
+            removedAt[k++] = first + i;
+            removed.add(tail[i]);
+            int[] count = count(counts, tail[i]);
+            count[0]--;
+            count[1] = 1;
+        }
+        if (membership != null)
+            membership.removed(removed, first, this);
+    }
+
+    /**
+     * Restores the elements of this scheme after a failed edit, without
+     * updating the roots and leaves, and rebuilds the membership index.
+     * @param formerSize the number of elements before the edit
+     * @param removed the elements removed by the edit
+     * @param removedAt the positions of the removed elements before the
+     * removal pass, <code>null</code> if there was none
+     * @param inserted the positions of the elements inserted afterwards, in
+     * ascending order
+     * 
+     * @since 1.1.0
+     * 
+     * @see #applyMembers(SchemeTransaction, Map, List, List)
+     */
+    @SuppressWarnings("unchecked") // former elements are of type E
+    private void restoreMembers(int formerSize, List<Object> removed, 
+            int[] removedAt, List<Integer> inserted) {
+        for (int k = inserted.size() - 1; k >= 0; k--)
+            super.remove((int)inserted.get(k));
+        if (removedAt != null && removedAt.length > 0) {
+            Object[] tail = super.subList(removedAt[0], size()).toArray();
+            super.removeRange(removedAt[0], size());
+            for (int i = removedAt[0], j = 0, k = 0; 
+                    j < tail.length || k < removedAt.length; i++) {
+                if (k < removedAt.length && removedAt[k] == i)
+                    super.add((E)removed.get(k++));
+                else
+                    super.add((E)tail[j++]);
+            }
+        }
+        // the added elements are at the end now
+        if (size() > formerSize)
+            super.removeRange(formerSize, size());
+        if (membership != null)
+            membership.rebuild(this);
+    }
+
+    /**
+     * Updates the roots, leaves and the reachability index after the 
+     * components of this scheme were changed without bookkeeping during an 
+     * edit. Only the components added, removed or whose families changed are
+     * looked at. Whether an added or removed component is contained before 
+     * and after the edit is counted by a single pass over this scheme, which
+     * also finds the positions of the added components. It is skipped if 
+     * there were no removals or insertions at positions and the added 
+     * components are known to be new or nothing is reported.
+     * @param tx the transaction of the edit
+     * @param counts the changes of the occurrences per component, see 
+     * {@link #applyMembers(SchemeTransaction, Map, List, List)}
+     * @param removed the removed elements, in their former order
+     * @param removedAt the positions of the removed elements before the 
+     * edit
+     * @return the events to report, or <code>null</code> if there are no
+     * scheme listeners
+     * 
+     * @since 1.1.0
+     * 
+     * @see #edit(SchemeEdit)
+     */
+    @SuppressWarnings("unchecked") // added and removed elements are of type E
+    private List<SchemeEvent> updateAfterEdit(SchemeTransaction<E> tx,
+            Map<Object, int[]> counts, List<Object> removed, 
+            int[] removedAt) {
+        // the occurrences and first positions after the edit, by identity
+        Map<Object, int[]> after = null;
+        boolean count = !removed.isEmpty();
+        if (!count && schemeListeners != null) {
+            for (int[] c : counts.values())
+                count |= c[1] != 0;
+            for (int i = 0; i < tx.size() && !count; i++)
+                count = tx.kind(i) == SchemeTransaction.ADD 
+                        && tx.position(i) >= 0;
+        }
+        if (count) {
+            after = new IdentityHashMap<Object, int[]>(counts.size());
+            for (Object o : counts.keySet())
+                after.put(o, new int[] {0, -1});
+            int size = size();
+            for (int i = 0; i < size; i++) {
+                int[] n = after.get(get(i));
+                if (n != null && n[0]++ == 0)
+                    n[1] = i;
+            }
+        }
+        List<SchemeEvent> events = schemeListeners == null ? null
+                : new ArrayList<SchemeEvent>();
+        List<SchemeEvent> removedEvents = new ArrayList<SchemeEvent>();
+        Set<Object> done = Collections.newSetFromMap(
+            new IdentityHashMap<Object, Boolean>());
+        for (int k = 0; k < removed.size(); k++) {
+            Object o = removed.get(k);
+            if (after.get(o)[0] > 0 || !done.add(o))
+                continue;
+            if (counts.get(o)[0] == 0) { // added and removed again
+                ((E)o).removeFamilyListener(rootLeafTracker);
+                continue;
+            }
+            removeRootOrLeaf((E)o);
+            removedEvents.add(new SchemeEvent(this, SchemeEvent.REMOVED, 
+                (E)o, removedAt[k]));
+        }
+        for (int i = 0; i < tx.size(); i++) {
+            if (tx.kind(i) != SchemeTransaction.ADD)
+                continue;
+            E e = (E)tx.component(i);
+            int n = after == null ? counts.get(e)[0] : after.get(e)[0];
+            if (n == 0 || !done.add(e))
+                continue;
+            addRootOrLeaf(e);
+            if (events != null && n - counts.get(e)[0] == 0)
+                events.add(new SchemeEvent(this, SchemeEvent.ADDED, e, 
+                    after == null ? counts.get(e)[2] : after.get(e)[1]));
+        }
+        for (SchemeComponent c : touched) {
+            if (after != null && after.containsKey(c) 
+                    && after.get(c)[0] == 0)
+                continue;
+            E e = (E)c;
+            if (e.isRoot())
+                roots.add(e);
+            else
+                roots.remove(e);
+            if (e.isLeaf())
+                leaves.add(e);
+            else
+                leaves.remove(e);
+        }
+        touched.clear();
+        if (reachability != null)
+            reachability.invalidate();
+        if (events == null)
+            return null;
+        // skip components added and removed again
+        for (SchemeEvent event : pendingEvents) {
+            Object o = event.getComponent();
+            if (after == null || !after.containsKey(o) 
+                    || after.get(o)[0] > 0
+                    || after.get(o)[0] - counts.get(o)[0] > 0)
+                events.add(event);
+        }
+        events.addAll(removedEvents);
+        return events;
+    }
+
+    /**
+     * Compiles this scheme into an immutable snapshot for read-heavy
+     * workloads. Changes of this scheme or of the families of its components
+     * made afterwards aren't reflected by the snapshot.
+     * @return a frozen snapshot of this scheme
+     *
+     * @since 1.1.0
+     *
+     * @see FrozenScheme
+     */
+    public FrozenScheme<E> freeze() {
+        return new FrozenScheme<E>(this);
+    }
+
     /*
      * (non-JavaDoc)
      * 
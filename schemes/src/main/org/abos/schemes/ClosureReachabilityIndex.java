@@ -0,0 +1,160 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * A {@link ReachabilityIndex} storing the transitive closure as bitsets.
+ * Components on a common cycle are merged, the merged components are
+ * numbered topologically, and for each of them the set of descendants is
+ * stored as bitset over these numbers. Since descendants always have higher
+ * numbers, each bitset only covers the range from its first to its last
+ * descendant. Queries take constant time. <br>
+ * Building takes <tt>O(V+E)</tt> time for the snapshot plus the unions of
+ * the bitsets, which are <tt>O(V&sup2;/64)</tt> words in the worst case, the
+ * same goes for the memory. Long chains and shallow wide schemes stay far
+ * below that, for very large schemes see {@link IntervalReachabilityIndex}.
+ * <br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#setReachabilityIndex(ReachabilityIndex)
+ */
+public class ClosureReachabilityIndex extends AbstractReachabilityIndex {
+
+    /**
+     * The bitset of merged components without descendants.
+     *
+     * @since 1.0.0
+     */
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * The number of the merged component for each id.
+     *
+     * @since 1.0.0
+     */
+    private int[] component = null;
+
+    /**
+     * The descendants of each merged component as bitset, starting at word
+     * {@link #offsets}. A merged component on a cycle includes itself.
+     *
+     * @since 1.0.0
+     */
+    private long[][] descendants = null;
+
+    /**
+     * The index of the first word of each bitset in {@link #descendants}.
+     *
+     * @since 1.0.0
+     */
+    private int[] offsets = null;
+
+    /**
+     * Creates an empty, invalid index.
+     *
+     * @since 1.0.0
+     */
+    public ClosureReachabilityIndex() {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#build()
+     */
+    @Override
+    void build() {
+        int n = graph.size();
+        component = graph.strongComponents();
+        int count = component[n];
+        // group the ids by merged component
+        int[] start = new int[count + 1];
+        for (int i = 0; i < n; i++)
+            start[component[i] + 1]++;
+        for (int c = 0; c < count; c++)
+            start[c + 1] += start[c];
+        int[] members = new int[n];
+        int[] fill = start.clone();
+        for (int i = 0; i < n; i++)
+            members[fill[component[i]]++] = i;
+        descendants = new long[count][];
+        offsets = new int[count];
+        // reverse topological order, so the children are done first
+        for (int c = count - 1; c >= 0; c--) {
+            boolean cyclic = start[c + 1] - start[c] > 1;
+            int low = Integer.MAX_VALUE;
+            int high = -1;
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                for (int e = graph.childOffsets[v];
+                        e < graph.childOffsets[v + 1]; e++) {
+                    int d = component[graph.childTargets[e]];
+                    if (d == c) {
+                        cyclic = true;
+                        continue;
+                    }
+                    low = Math.min(low, Math.min(d >>> 6, offsets[d]));
+                    high = Math.max(high, Math.max(d >>> 6,
+                        offsets[d] + descendants[d].length - 1));
+                }
+            }
+            if (cyclic) {
+                low = Math.min(low, c >>> 6);
+                high = Math.max(high, c >>> 6);
+            }
+            if (high < 0) {
+                descendants[c] = EMPTY;
+                offsets[c] = c >>> 6;
+                continue;
+            }
+            long[] bits = new long[high - low + 1];
+            if (cyclic)
+                bits[(c >>> 6) - low] |= 1L << c;
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                for (int e = graph.childOffsets[v];
+                        e < graph.childOffsets[v + 1]; e++) {
+                    int d = component[graph.childTargets[e]];
+                    if (d == c)
+                        continue;
+                    bits[(d >>> 6) - low] |= 1L << d;
+                    long[] other = descendants[d];
+                    for (int w = 0; w < other.length; w++)
+                        bits[offsets[d] - low + w] |= other[w];
+                }
+            }
+            descendants[c] = bits;
+            offsets[c] = low;
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#release()
+     */
+    @Override
+    void release() {
+        component = null;
+        descendants = null;
+        offsets = null;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#reaches(int, int)
+     */
+    @Override
+    boolean reaches(int from, int to) {
+        int c = component[from];
+        int d = component[to];
+        int word = (d >>> 6) - offsets[c];
+        long[] bits = descendants[c];
+        return word >= 0 && word < bits.length
+                && (bits[word] & (1L << d)) != 0;
+    }
+
+}
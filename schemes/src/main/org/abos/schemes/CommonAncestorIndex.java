@@ -0,0 +1,238 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link ReachabilityIndex} storing the ancestors of each component as
+ * bitset, so it can find the lowest common ancestors of two components.
+ * Components on a common cycle are merged and the merged components are
+ * numbered topologically, like in {@link ClosureReachabilityIndex}. For
+ * each of them the set of its ancestors and itself is stored as bitset over
+ * these numbers. Since ancestors always have lower numbers, each bitset only
+ * covers the range from its first ancestor to itself. <br>
+ * The common ancestors of two components are the intersection of their
+ * bitsets. The lowest ones are found by going through the intersection in
+ * descending order: A common ancestor is lowest if it isn't an ancestor of
+ * a lowest one found before. So a query takes <tt>O(W&middot;k)</tt> word
+ * operations, where <tt>W</tt> is the length of the shorter bitset and
+ * <tt>k</tt> the number of lowest common ancestors, independent of the
+ * number of family listings. Reachability queries take constant time. <br>
+ * Building takes <tt>O(V+E)</tt> time for the snapshot plus the unions of
+ * the bitsets, which are <tt>O(V&sup2;/64)</tt> words in the worst case, the
+ * same goes for the memory. <br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#getLowestCommonAncestors(SchemeComponent, SchemeComponent)
+ */
+public class CommonAncestorIndex extends AbstractReachabilityIndex {
+
+    /**
+     * The number of the merged component for each id.
+     *
+     * @since 1.0.0
+     */
+    private int[] component = null;
+
+    /**
+     * The ancestors of each merged component and the merged component
+     * itself as bitset, starting at word {@link #offsets}.
+     *
+     * @since 1.0.0
+     */
+    private long[][] ancestors = null;
+
+    /**
+     * The index of the first word of each bitset in {@link #ancestors}.
+     *
+     * @since 1.0.0
+     */
+    private int[] offsets = null;
+
+    /**
+     * If a merged component lies on a cycle, so it is its own ancestor.
+     *
+     * @since 1.0.0
+     */
+    private boolean[] cyclic = null;
+
+    /**
+     * The index of the first id of each merged component in
+     * {@link #members}, with one additional entry at the end.
+     *
+     * @since 1.0.0
+     */
+    private int[] start = null;
+
+    /**
+     * The ids grouped by merged component.
+     *
+     * @since 1.0.0
+     */
+    private int[] members = null;
+
+    /**
+     * Creates an empty, invalid index.
+     *
+     * @since 1.0.0
+     */
+    public CommonAncestorIndex() {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#build()
+     */
+    @Override
+    void build() {
+        int n = graph.size();
+        component = graph.strongComponents();
+        int count = component[n];
+        // group the ids by merged component
+        start = new int[count + 1];
+        for (int i = 0; i < n; i++)
+            start[component[i] + 1]++;
+        for (int c = 0; c < count; c++)
+            start[c + 1] += start[c];
+        members = new int[n];
+        int[] fill = Arrays.copyOf(start, count);
+        for (int i = 0; i < n; i++)
+            members[fill[component[i]]++] = i;
+        ancestors = new long[count][];
+        offsets = new int[count];
+        cyclic = new boolean[count];
+        int[][] parentsIn = graph.reverse(graph.childOffsets,
+            graph.childTargets);
+        // topological order, so the parents are done first
+        for (int c = 0; c < count; c++) {
+            cyclic[c] = start[c + 1] - start[c] > 1;
+            int low = c >>> 6;
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                for (int e = parentsIn[0][v]; e < parentsIn[0][v + 1]; e++) {
+                    int p = component[parentsIn[1][e]];
+                    if (p == c)
+                        cyclic[c] = true;
+                    else
+                        low = Math.min(low, offsets[p]);
+                }
+            }
+            long[] bits = new long[(c >>> 6) - low + 1];
+            bits[(c >>> 6) - low] |= 1L << c;
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                for (int e = parentsIn[0][v]; e < parentsIn[0][v + 1]; e++) {
+                    int p = component[parentsIn[1][e]];
+                    if (p == c)
+                        continue;
+                    long[] other = ancestors[p];
+                    for (int w = 0; w < other.length; w++)
+                        bits[offsets[p] - low + w] |= other[w];
+                }
+            }
+            ancestors[c] = bits;
+            offsets[c] = low;
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#release()
+     */
+    @Override
+    void release() {
+        component = null;
+        ancestors = null;
+        offsets = null;
+        cyclic = null;
+        start = null;
+        members = null;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#reaches(int, int)
+     */
+    @Override
+    boolean reaches(int from, int to) {
+        int c = component[from];
+        int d = component[to];
+        if (c >= d) // ancestors have lower numbers
+            return c == d && cyclic[c];
+        int word = (c >>> 6) - offsets[d];
+        return word >= 0 && (ancestors[d][word] & (1L << c)) != 0;
+    }
+
+    /**
+     * Returns the lowest common ancestors of two components. Here a
+     * component counts as ancestor of itself, so if one component is an
+     * ancestor of the other one, it is their only lowest common ancestor.
+     * A common ancestor is lowest if none of its descendants is a common
+     * ancestor as well. Associated components are included, and components
+     * on a common cycle are returned together. If this index is invalid or
+     * doesn't know both components, their ancestors are searched in a
+     * snapshot of their families instead, see {@link 
+     * ArrayScheme#getLowestCommonAncestors(List, List)}.
+     * @param a the first component
+     * @param b the second component
+     * @return the lowest common ancestors in topological order, an empty
+     * list if there are none
+     *
+     * @since 1.0.0
+     */
+    public List<SchemeComponent> lowestCommonAncestors(SchemeComponent a,
+            SchemeComponent b) {
+        if (a == null || b == null)
+            return new ArrayList<SchemeComponent>(0);
+        int ia = isValid() ? graph.idOf(a) : -1;
+        int ib = isValid() ? graph.idOf(b) : -1;
+        if (ia < 0 || ib < 0) // unknown ones may still be linked to known ones
+            return new CompactGraph(Arrays.asList(a, b))
+                .lowestCommonAncestors(Collections.singletonList(a),
+                    Collections.singletonList(b)).get(0);
+        int ca = component[ia];
+        int cb = component[ib];
+        int low = Math.max(offsets[ca], offsets[cb]);
+        int high = Math.min(offsets[ca] + ancestors[ca].length,
+            offsets[cb] + ancestors[cb].length);
+        if (low >= high)
+            return new ArrayList<SchemeComponent>(0);
+        // the strict ancestors of the lowest common ancestors found so far
+        long[] covered = new long[high - low];
+        int[] found = new int[4];
+        int count = 0;
+        for (int w = high - 1; w >= low; w--) {
+            long common = ancestors[ca][w - offsets[ca]]
+                    & ancestors[cb][w - offsets[cb]] & ~covered[w - low];
+            while (common != 0) {
+                int bit = 63 - Long.numberOfLeadingZeros(common);
+                common &= ~(1L << bit);
+                int c = (w << 6) + bit;
+                if (count == found.length)
+                    found = Arrays.copyOf(found, 2 * count);
+                found[count++] = c;
+                long[] bits = ancestors[c];
+                for (int v = Math.max(low, offsets[c]); v <= w; v++)
+                    covered[v - low] |= bits[v - offsets[c]];
+                covered[w - low] &= ~(1L << bit);
+                // the ancestors of c are lower, so rescan this word
+                common &= ~covered[w - low];
+            }
+        }
+        List<SchemeComponent> result = new ArrayList<SchemeComponent>(count);
+        for (int i = count - 1; i >= 0; i--)
+            for (int m = start[found[i]]; m < start[found[i] + 1]; m++)
+                result.add(graph.nodes[members[m]]);
+        return result;
+    }
+
+}
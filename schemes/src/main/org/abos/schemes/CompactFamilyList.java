@@ -0,0 +1,422 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A list of parents or children backed by a growable array. The array is
+ * only allocated on the first addition, so roots and leaves carry no array
+ * at all. As soon as the list grows beyond {@link #HASH_THRESHOLD} elements,
+ * a hash index of the multiplicities is kept as well, so
+ * {@link #contains(Object)} takes constant time and looking for or removing
+ * an element not contained doesn't scan the array. The index is dropped
+ * again if the list shrinks to a quarter of the threshold. Elements are
+ * compared by {@link Object#equals(Object)} like in any other list, so they
+ * must not change their hash code while in a list with an index. <br>
+ * <code>null</code> elements are permitted, but not indexed. This class is
+ * not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see CompactSchemeComponent
+ */
+final class CompactFamilyList extends AbstractList<SchemeComponent>
+implements RandomAccess {
+
+    /**
+     * The size above which the multiplicities are indexed.
+     *
+     * @since 1.0.0
+     */
+    static final int HASH_THRESHOLD = 32;
+
+    /**
+     * The array shared by all empty lists.
+     *
+     * @since 1.0.0
+     */
+    private static final SchemeComponent[] EMPTY = new SchemeComponent[0];
+
+    /**
+     * The elements, followed by unused slots.
+     *
+     * @since 1.0.0
+     */
+    private SchemeComponent[] elements = EMPTY;
+
+    /**
+     * The number of elements.
+     *
+     * @since 1.0.0
+     */
+    private int size = 0;
+
+    /**
+     * The index of the multiplicities, <code>null</code> while the list is
+     * small.
+     *
+     * @since 1.0.0
+     */
+    private Index hashIndex = null;
+
+    /**
+     * Creates an empty list without allocating an array.
+     *
+     * @since 1.0.0
+     */
+    CompactFamilyList() {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#get(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index
+                + ", Size: " + size);
+        return elements[index];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#set(int, java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent set(int index, SchemeComponent element) {
+        SchemeComponent old = get(index);
+        elements[index] = element;
+        if (hashIndex != null) {
+            hashIndex.uncount(old);
+            hashIndex.count(element);
+        }
+        return old;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#add(int, java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void add(int index, SchemeComponent element) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException("Index: " + index
+                + ", Size: " + size);
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements,
+                size < 2 ? 2 : size + (size >> 1));
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        size++;
+        modCount++;
+        if (hashIndex != null)
+            hashIndex.count(element);
+        else if (size > HASH_THRESHOLD)
+            hashIndex = new Index(elements, size);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#remove(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent remove(int index) {
+        SchemeComponent old = get(index);
+        System.arraycopy(elements, index + 1, elements, index,
+            size - index - 1);
+        elements[--size] = null;
+        modCount++;
+        if (hashIndex != null) {
+            if (size <= HASH_THRESHOLD / 4)
+                hashIndex = null;
+            else
+                hashIndex.uncount(old);
+        }
+        return old;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} If the list is indexed and doesn't contain the element,
+     * this takes constant time.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0)
+            return false;
+        remove(index);
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#clear()
+     */
+    /**
+     * {@inheritDoc} Releases the array.
+     * @since 1.0.0
+     */
+    @Override
+    public void clear() {
+        elements = EMPTY;
+        size = 0;
+        hashIndex = null;
+        modCount++;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Takes constant time if the list is indexed.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (hashIndex != null && o != null)
+            return hashIndex.find(o) >= 0;
+        return indexOf(o) >= 0;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#indexOf(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (o == null) {
+            for (int i = 0; i < size; i++)
+                if (elements[i] == null)
+                    return i;
+            return -1;
+        }
+        if (hashIndex != null && hashIndex.find(o) < 0)
+            return -1;
+        for (int i = 0; i < size; i++)
+            if (o == elements[i] || o.equals(elements[i]))
+                return i;
+        return -1;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#lastIndexOf(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+        if (o == null) {
+            for (int i = size - 1; i >= 0; i--)
+                if (elements[i] == null)
+                    return i;
+            return -1;
+        }
+        if (hashIndex != null && hashIndex.find(o) < 0)
+            return -1;
+        for (int i = size - 1; i >= 0; i--)
+            if (o == elements[i] || o.equals(elements[i]))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Shrinks the array to the size of this list.
+     *
+     * @since 1.0.0
+     */
+    void trimToSize() {
+        if (size < elements.length) {
+            elements = size == 0 ? EMPTY : Arrays.copyOf(elements, size);
+            modCount++;
+        }
+    }
+
+    /**
+     * A hash table of the multiplicities of the elements, using open
+     * addressing with linear probing.
+     *
+     * @since 1.0.0
+     */
+    private static final class Index {
+
+        /**
+         * The elements, <code>null</code> marks a free slot.
+         */
+        private Object[] keys;
+
+        /**
+         * The multiplicities of the elements, at the same positions.
+         */
+        private int[] counts;
+
+        /**
+         * The number of used slots.
+         */
+        private int distinct = 0;
+
+        /**
+         * Creates the index of the given elements.
+         * @param elements the elements
+         * @param size the number of elements
+         */
+        Index(SchemeComponent[] elements, int size) {
+            int capacity = HASH_THRESHOLD;
+            while (4 * size >= 3 * capacity)
+                capacity <<= 1;
+            keys = new Object[capacity];
+            counts = new int[capacity];
+            for (int i = 0; i < size; i++)
+                count(elements[i]);
+        }
+
+        /**
+         * Returns the slot to start probing at for the given element.
+         * @param o the element, not <code>null</code>
+         * @param mask the length of the table minus one
+         * @return the first slot to look at
+         */
+        private static int slot(Object o, int mask) {
+            int h = o.hashCode();
+            h ^= (h >>> 16);
+            return (h * 0x9E3779B9) & mask;
+        }
+
+        /**
+         * Looks up the slot of an element.
+         * @param o the element, not <code>null</code>
+         * @return the slot of <code>o</code>, or <code>-1</code> if it isn't
+         * contained
+         */
+        int find(Object o) {
+            int mask = keys.length - 1;
+            for (int i = slot(o, mask); keys[i] != null; i = (i + 1) & mask)
+                if (o == keys[i] || o.equals(keys[i]))
+                    return i;
+            return -1;
+        }
+
+        /**
+         * Increments the multiplicity of an element.
+         * @param o the element, may be <code>null</code>
+         */
+        void count(Object o) {
+            if (o == null)
+                return;
+            int mask = keys.length - 1;
+            int i = slot(o, mask);
+            for (; keys[i] != null; i = (i + 1) & mask) {
+                if (o == keys[i] || o.equals(keys[i])) {
+                    counts[i]++;
+                    return;
+                }
+            }
+            keys[i] = o;
+            counts[i] = 1;
+            if (4 * ++distinct >= 3 * keys.length)
+                resize();
+        }
+
+        /**
+         * Decrements the multiplicity of an element. Freed slots are closed
+         * by moving following entries back, so no tombstones are needed.
+         * @param o the element, may be <code>null</code>
+         */
+        void uncount(Object o) {
+            if (o == null)
+                return;
+            int i = find(o);
+            if (i < 0 || --counts[i] > 0)
+                return;
+            int mask = keys.length - 1;
+            distinct--;
+            for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                // move the entry back if its home isn't between i and j
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    counts[i] = counts[j];
+                    i = j;
+                }
+            }
+            keys[i] = null;
+            counts[i] = 0;
+        }
+
+        /**
+         * Doubles the capacity of the table.
+         */
+        private void resize() {
+            Object[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new Object[2 * oldKeys.length];
+            counts = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == null)
+                    continue;
+                int i = slot(oldKeys[j], mask);
+                while (keys[i] != null)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,680 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the families of some scheme components in
+ * compressed sparse row format. Every component gets an <code>int</code> id,
+ * the components given at construction (the members) come first, followed
+ * by all components associated to them, that means connected to them by any
+ * path of parents and children. The children of the component with id
+ * <code>i</code> are stored as ids in
+ * <code>childTargets[childOffsets[i]]</code> up to (excluding)
+ * <code>childTargets[childOffsets[i+1]]</code>, the parents likewise.<br>
+ * Algorithms working on this snapshot only touch primitive arrays, which is
+ * a lot faster than following the families of the components themselves.
+ * Changes of the families after the construction aren't reflected.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see FrozenScheme
+ */
+final class CompactGraph {
+
+    /**
+     * The components by id.
+     *
+     * @since 1.0.0
+     */
+    final SchemeComponent[] nodes;
+
+    /**
+     * The number of members. Members have the ids <code>0</code> to
+     * <code>memberCount-1</code>.
+     *
+     * @since 1.0.0
+     */
+    final int memberCount;
+
+    /**
+     * The offsets of the children of each component in
+     * {@link #childTargets}, with one additional entry at the end.
+     *
+     * @since 1.0.0
+     */
+    final int[] childOffsets;
+
+    /**
+     * The ids of the children of all components.
+     *
+     * @since 1.0.0
+     */
+    final int[] childTargets;
+
+    /**
+     * The offsets of the parents of each component in
+     * {@link #parentTargets}, with one additional entry at the end.
+     *
+     * @since 1.0.0
+     */
+    final int[] parentOffsets;
+
+    /**
+     * The ids of the parents of all components.
+     *
+     * @since 1.0.0
+     */
+    final int[] parentTargets;
+
+    /**
+     * Maps the components to their ids.
+     *
+     * @since 1.0.0
+     */
+    private final IdentityIntMap ids;
+
+    /**
+     * Creates the snapshot of the given components and all components
+     * associated to them. Components contained multiple times get one id.
+     * @param members the components to take the snapshot of
+     * @throws NullPointerException If <code>members</code> is or contains
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    CompactGraph(Collection<? extends SchemeComponent> members) {
+        ids = new IdentityIntMap(members.size());
+        SchemeComponent[] found = new SchemeComponent[Math.max(16,
+            members.size())];
+        int count = 0;
+        for (SchemeComponent c : members) {
+            if (c == null)
+                throw new NullPointerException();
+            if (ids.containsKey(c))
+                continue;
+            ids.put(c, count);
+            found = append(found, count++, c);
+        }
+        memberCount = count;
+        int[] offsets = new int[found.length + 1];
+        int[] targets = new int[found.length];
+        int[] pOffsets = new int[found.length + 1];
+        int[] pTargets = new int[found.length];
+        int edges = 0;
+        int pEdges = 0;
+        // breadth first search, so rows are filled in the order of ids
+        for (int i = 0; i < count; i++) {
+            if (i + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                pOffsets = Arrays.copyOf(pOffsets, 2 * pOffsets.length);
+            }
+            offsets[i] = edges;
+            Iterator<SchemeComponent> it = found[i].childrenIterator();
+            while (it.hasNext()) {
+                SchemeComponent c = it.next();
+                int id = ids.get(c);
+                if (id == IdentityIntMap.ABSENT) {
+                    id = count;
+                    ids.put(c, count);
+                    found = append(found, count++, c);
+                }
+                if (edges == targets.length)
+                    targets = Arrays.copyOf(targets, 2 * targets.length);
+                targets[edges++] = id;
+            }
+            pOffsets[i] = pEdges;
+            it = found[i].parentsIterator();
+            while (it.hasNext()) {
+                SchemeComponent c = it.next();
+                int id = ids.get(c);
+                if (id == IdentityIntMap.ABSENT) {
+                    id = count;
+                    ids.put(c, count);
+                    found = append(found, count++, c);
+                }
+                if (pEdges == pTargets.length)
+                    pTargets = Arrays.copyOf(pTargets, 2 * pTargets.length);
+                pTargets[pEdges++] = id;
+            }
+        }
+        nodes = Arrays.copyOf(found, count);
+        offsets[count] = edges;
+        pOffsets[count] = pEdges;
+        childOffsets = Arrays.copyOf(offsets, count + 1);
+        childTargets = Arrays.copyOf(targets, edges);
+        parentOffsets = Arrays.copyOf(pOffsets, count + 1);
+        parentTargets = Arrays.copyOf(pTargets, pEdges);
+    }
+
+    /**
+     * Creates a snapshot from given rows. The arrays are taken as they are.
+     * @param nodes the components by id, members first
+     * @param memberCount the number of members
+     * @param childOffsets the offsets of the children
+     * @param childTargets the ids of the children
+     * @param parentOffsets the offsets of the parents
+     * @param parentTargets the ids of the parents
+     *
+     * @since 1.0.0
+     */
+    CompactGraph(SchemeComponent[] nodes, int memberCount,
+            int[] childOffsets, int[] childTargets, int[] parentOffsets,
+            int[] parentTargets) {
+        this.nodes = nodes;
+        this.memberCount = memberCount;
+        this.childOffsets = childOffsets;
+        this.childTargets = childTargets;
+        this.parentOffsets = parentOffsets;
+        this.parentTargets = parentTargets;
+        ids = new IdentityIntMap(nodes.length);
+        for (int i = 0; i < nodes.length; i++)
+            ids.put(nodes[i], i);
+    }
+
+    /**
+     * Sets an entry of an array, growing the array if needed.
+     * @param a the array
+     * @param index the index of the entry
+     * @param c the new entry
+     * @return the array or its grown copy
+     *
+     * @since 1.0.0
+     */
+    private static SchemeComponent[] append(SchemeComponent[] a, int index,
+            SchemeComponent c) {
+        if (index == a.length)
+            a = Arrays.copyOf(a, 2 * a.length);
+        a[index] = c;
+        return a;
+    }
+
+    /**
+     * Returns the number of components in this snapshot, including
+     * associated ones.
+     * @return the number of components
+     *
+     * @since 1.0.0
+     */
+    int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the id of the given component.
+     * @param c the component to look up
+     * @return the id of <code>c</code>, or <code>-1</code> if the component
+     * isn't part of this snapshot
+     *
+     * @since 1.0.0
+     */
+    int idOf(Object c) {
+        if (c == null)
+            return -1;
+        return ids.get(c);
+    }
+
+    /**
+     * Tells if the component with the first id is an ancestor of the
+     * component with the second id, by searching through the children.
+     * @param from the id of the possible ancestor
+     * @param to the id of the possible descendant
+     * @return <code>true</code> if there is a path from <code>from</code>
+     * to <code>to</code> of at least one edge
+     *
+     * @since 1.0.0
+     */
+    boolean reaches(int from, int to) {
+        return search(from, to, childOffsets, childTargets) >= 0;
+    }
+
+    /**
+     * Answers many reachability queries in shared sweeps. The distinct
+     * sources are handled in groups of 64: Each strongly connected component
+     * gets a word with one bit per source of the group reaching it, and the
+     * words are pushed along the children in topological order, so each
+     * group takes <tt>O(V+E)</tt> time and all queries together
+     * <tt>O((V+E)&middot;k/64)</tt> for <tt>k</tt> distinct sources.
+     * @param from the ids of the possible ancestors, <code>-1</code> for
+     * unknown components
+     * @param to the ids of the possible descendants, <code>-1</code> for
+     * unknown components
+     * @return for each query if there is a path from <code>from[i]</code>
+     * to <code>to[i]</code> of at least one edge
+     *
+     * @since 1.0.0
+     *
+     * @see #reaches(int, int)
+     */
+    boolean[] reaches(int[] from, int[] to) {
+        int n = nodes.length;
+        boolean[] result = new boolean[from.length];
+        // number the distinct sources
+        int[] source = new int[n];
+        Arrays.fill(source, -1);
+        int sources = 0;
+        for (int i = 0; i < from.length; i++)
+            if (from[i] >= 0 && to[i] >= 0 && source[from[i]] < 0)
+                source[from[i]] = sources++;
+        if (sources == 0)
+            return result;
+        int[] component = strongComponents();
+        int count = component[n];
+        // the ids in topological order, and the cyclic components
+        int[] start = new int[count + 1];
+        for (int v = 0; v < n; v++)
+            start[component[v] + 1]++;
+        for (int c = 0; c < count; c++)
+            start[c + 1] += start[c];
+        int[] sorted = new int[n];
+        int[] fill = Arrays.copyOf(start, count);
+        for (int v = 0; v < n; v++)
+            sorted[fill[component[v]]++] = v;
+        boolean[] cyclic = new boolean[count];
+        for (int v = 0; v < n; v++) {
+            int c = component[v];
+            cyclic[c] |= start[c + 1] - start[c] > 1;
+            for (int e = childOffsets[v]; e < childOffsets[v + 1]; e++)
+                cyclic[c] |= childTargets[e] == v;
+        }
+        long[] reached = new long[count];
+        long[] own = new long[count];
+        for (int group = 0; group < sources; group += 64) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(own, 0);
+            for (int v = 0; v < n; v++)
+                if (source[v] >= group && source[v] < group + 64)
+                    own[component[v]] |= 1L << (source[v] - group);
+            for (int c = 0; c < count; c++) {
+                if (cyclic[c]) // the sources reach themselves
+                    reached[c] |= own[c];
+                long passed = reached[c] | own[c];
+                if (passed == 0)
+                    continue;
+                for (int m = start[c]; m < start[c + 1]; m++) {
+                    int v = sorted[m];
+                    for (int e = childOffsets[v]; e < childOffsets[v + 1];
+                            e++) {
+                        int d = component[childTargets[e]];
+                        if (d != c)
+                            reached[d] |= passed;
+                    }
+                }
+            }
+            for (int i = 0; i < from.length; i++) {
+                if (from[i] < 0 || to[i] < 0)
+                    continue;
+                int bit = source[from[i]] - group;
+                if (bit >= 0 && bit < 64)
+                    result[i] = (reached[component[to[i]]] & (1L << bit)) != 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Searches the nodes reachable by at least one edge from a start node.
+     * The search stops when the target or, if <code>target</code> is
+     * <code>-1</code>, a member is found.
+     * @param from the id to start at
+     * @param target the id to look for, or <code>-1</code> to look for any
+     * member
+     * @param offsets the offsets of the edges to follow
+     * @param targets the targets of the edges to follow
+     * @return the id found or <code>-1</code> if nothing was found
+     *
+     * @since 1.0.0
+     */
+    int search(int from, int target, int[] offsets, int[] targets) {
+        long[] visited = new long[(nodes.length + 63) >>> 6];
+        int[] stack = new int[Math.min(nodes.length, 64)];
+        int top = 0;
+        stack[top++] = from;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (w == target || (target < 0 && w < memberCount))
+                    return w;
+                if ((visited[w >>> 6] & (1L << w)) != 0)
+                    continue;
+                visited[w >>> 6] |= 1L << w;
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = w;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the strongly connected components of this snapshot with
+     * Tarjan's algorithm, without recursion. The components are numbered in
+     * topological order, so every edge leads from a component to the same
+     * or a higher numbered one.
+     * @return the number of the strongly connected component for each id,
+     * followed by one entry containing the number of strongly connected
+     * components
+     *
+     * @since 1.0.0
+     */
+    int[] strongComponents() {
+        return strongComponents(childOffsets, childTargets);
+    }
+
+    /**
+     * Computes the strongly connected components of the given edges like
+     * {@link #strongComponents()}.
+     * @param offsets the offsets of the edges to follow
+     * @param targets the targets of the edges to follow
+     * @return the number of the strongly connected component for each id,
+     * followed by one entry containing the number of strongly connected
+     * components
+     *
+     * @since 1.0.0
+     */
+    int[] strongComponents(int[] offsets, int[] targets) {
+        int n = nodes.length;
+        int[] component = new int[n + 1];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackTop = 0;
+        int[] frames = new int[n]; // the call stack
+        int[] edge = new int[n]; // next edge to look at per frame
+        int counter = 0;
+        int found = 0;
+        for (int s = 0; s < n; s++) {
+            if (index[s] >= 0)
+                continue;
+            int top = 0;
+            frames[top] = s;
+            edge[top++] = offsets[s];
+            index[s] = low[s] = counter++;
+            stack[stackTop++] = s;
+            onStack[s] = true;
+            while (top > 0) {
+                int v = frames[top - 1];
+                int e = edge[top - 1];
+                if (e < offsets[v + 1]) {
+                    edge[top - 1]++;
+                    int w = targets[e];
+                    if (index[w] < 0) { // descend
+                        frames[top] = w;
+                        edge[top++] = offsets[w];
+                        index[w] = low[w] = counter++;
+                        stack[stackTop++] = w;
+                        onStack[w] = true;
+                    }
+                    else if (onStack[w] && index[w] < low[v])
+                        low[v] = index[w];
+                    continue;
+                }
+                // all edges of v are done
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackTop];
+                        onStack[w] = false;
+                        component[w] = found;
+                    } while (w != v);
+                    found++;
+                }
+                top--;
+                if (top > 0 && low[v] < low[frames[top - 1]])
+                    low[frames[top - 1]] = low[v];
+            }
+        }
+        // Tarjan finds sinks first, so reverse the numbering
+        for (int i = 0; i < n; i++)
+            component[i] = found - 1 - component[i];
+        component[n] = found;
+        return component;
+    }
+
+    /**
+     * Counts the nodes of each strongly connected component.
+     * @param component the result of {@link #strongComponents()}
+     * @return the number of nodes of each strongly connected component
+     *
+     * @since 1.0.0
+     */
+    int[] componentSizes(int[] component) {
+        int[] sizes = new int[component[nodes.length]];
+        for (int i = 0; i < nodes.length; i++)
+            sizes[component[i]]++;
+        return sizes;
+    }
+
+    /**
+     * Assigns each component its layer with Kahn's algorithm. An edge leads
+     * from a parent to a child if the parent lists the child or the child
+     * lists the parent. Roots are in layer <code>0</code>, every other
+     * component is one layer below its lowest parent, so all edges lead to
+     * higher layers. Components on a cycle or below one get no layer. Takes
+     * <tt>O(V+E)</tt> time.
+     * @return the layer of each id, <code>-1</code> if it has none, followed
+     * by one entry containing the number of layers
+     *
+     * @since 1.0.0
+     */
+    int[] layers() {
+        return layers(childOffsets, childTargets, parentOffsets,
+            parentTargets);
+    }
+
+    /**
+     * Assigns each component its height, the length of the longest path
+     * from it to a leaf, with Kahn's algorithm like {@link #layers()} going
+     * upwards. Components on a cycle or above one get no height. Takes
+     * <tt>O(V+E)</tt> time.
+     * @return the height of each id, <code>-1</code> if it has none,
+     * followed by one entry containing the greatest height plus one
+     *
+     * @since 1.0.0
+     */
+    int[] heights() {
+        return layers(parentOffsets, parentTargets, childOffsets,
+            childTargets);
+    }
+
+    /**
+     * Assigns each component its layer with Kahn's algorithm along the
+     * given direction. An edge leads from a node to another one if the
+     * first one lists the second one in the first listing or the second
+     * one lists the first one in the other listing.
+     * @param offsets the offsets of the listing along the direction
+     * @param targets the targets of the listing along the direction
+     * @param otherOffsets the offsets of the listing against the direction
+     * @param otherTargets the targets of the listing against the direction
+     * @return the layer of each id, <code>-1</code> if it has none, followed
+     * by one entry containing the number of layers
+     *
+     * @since 1.0.0
+     */
+    private int[] layers(int[] offsets, int[] targets, int[] otherOffsets,
+            int[] otherTargets) {
+        int n = nodes.length;
+        int[][] otherIn = reverse(otherOffsets, otherTargets);
+        int[] pending = new int[n];
+        for (int e = 0; e < targets.length; e++)
+            pending[targets[e]]++;
+        for (int v = 0; v < n; v++)
+            pending[v] += otherOffsets[v + 1] - otherOffsets[v];
+        int[] layer = new int[n + 1];
+        Arrays.fill(layer, 0, n, -1);
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (pending[v] == 0) {
+                layer[v] = 0;
+                queue[tail++] = v;
+            }
+        }
+        int count = tail == 0 ? 0 : 1;
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            int below = layer[v] + 1;
+            for (int k = 0; k < 2; k++) {
+                int[] o = k == 0 ? offsets : otherIn[0];
+                int[] t = k == 0 ? targets : otherIn[1];
+                for (int e = o[v]; e < o[v + 1]; e++) {
+                    int w = t[e];
+                    if (--pending[w] == 0) {
+                        // the queue is ordered by layer, so this is final
+                        layer[w] = below;
+                        count = Math.max(count, below + 1);
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+        layer[n] = count;
+        return layer;
+    }
+
+    /**
+     * Reverses the given edges in linear time. The rows of the result list
+     * the sources in ascending order, once for each edge.
+     * @param offsets the offsets of the edges
+     * @param targets the targets of the edges
+     * @return the offsets of the reversed edges, with one additional entry
+     * at the end, followed by their targets
+     *
+     * @since 1.0.0
+     */
+    int[][] reverse(int[] offsets, int[] targets) {
+        int n = nodes.length;
+        int[] rOffsets = new int[n + 1];
+        for (int e = 0; e < targets.length; e++)
+            rOffsets[targets[e] + 1]++;
+        for (int i = 0; i < n; i++)
+            rOffsets[i + 1] += rOffsets[i];
+        int[] fill = Arrays.copyOf(rOffsets, n);
+        int[] rTargets = new int[targets.length];
+        for (int v = 0; v < n; v++)
+            for (int e = offsets[v]; e < offsets[v + 1]; e++)
+                rTargets[fill[targets[e]]++] = v;
+        return new int[][] {rOffsets, rTargets};
+    }
+
+    /**
+     * Finds the lowest common ancestors of many pairs of components, see
+     * {@link CommonAncestorIndex#lowestCommonAncestors(SchemeComponent,
+     * SchemeComponent)}. Instead of building labels, the ancestors of both
+     * components of a pair are collected by a search through the parents, 
+     * so each pair takes <tt>O(V+E)</tt> time at most. The strongly 
+     * connected components are computed once for all pairs.
+     * @param a the first components
+     * @param b the second components, one for each first component
+     * @return the lowest common ancestors of each pair in topological order,
+     * an empty list if there are none or one of the components is 
+     * <code>null</code> or unknown to this snapshot
+     * @throws IllegalArgumentException If both lists differ in size.
+     *
+     * @since 1.0.0
+     */
+    List<List<SchemeComponent>> lowestCommonAncestors(
+            List<? extends SchemeComponent> a,
+            List<? extends SchemeComponent> b) {
+        if (a.size() != b.size())
+            throw new IllegalArgumentException("Sizes differ!");
+        int n = nodes.length;
+        List<List<SchemeComponent>> result =
+            new ArrayList<List<SchemeComponent>>(a.size());
+        int[] component = null;
+        int[][] parentsIn = null;
+        int[] ofA = null; // stamps of the ancestors of the first component
+        int[] ofB = null;
+        int[] covered = null; // stamps of non-lowest strong components
+        int[] found = null;
+        int[] common = null;
+        for (int i = 0; i < a.size(); i++) {
+            int ia = idOf(a.get(i));
+            int ib = idOf(b.get(i));
+            if (ia < 0 || ib < 0) {
+                result.add(new ArrayList<SchemeComponent>(0));
+                continue;
+            }
+            if (component == null) {
+                component = strongComponents();
+                parentsIn = reverse(childOffsets, childTargets);
+                ofA = new int[n];
+                ofB = new int[n];
+                covered = new int[component[n]];
+                found = new int[n];
+                common = new int[n];
+            }
+            int stamp = i + 1;
+            ancestors(ia, parentsIn, ofA, stamp, found);
+            int count = 0;
+            for (int k = 0, size = ancestors(ib, parentsIn, ofB, stamp,
+                    found); k < size; k++)
+                if (ofA[found[k]] == stamp)
+                    common[count++] = found[k];
+            // a common ancestor with a common child elsewhere isn't lowest
+            for (int k = 0; k < count; k++) {
+                int v = common[k];
+                for (int e = childOffsets[v]; e < childOffsets[v + 1]; e++) {
+                    int w = childTargets[e];
+                    if (ofA[w] == stamp && ofB[w] == stamp
+                            && component[w] != component[v])
+                        covered[component[v]] = stamp;
+                }
+            }
+            long[] lowest = new long[count];
+            int lowestCount = 0;
+            for (int k = 0; k < count; k++)
+                if (covered[component[common[k]]] != stamp)
+                    lowest[lowestCount++] =
+                        ((long)component[common[k]] << 32) | common[k];
+            Arrays.sort(lowest, 0, lowestCount);
+            List<SchemeComponent> pair =
+                new ArrayList<SchemeComponent>(lowestCount);
+            for (int k = 0; k < lowestCount; k++)
+                pair.add(nodes[(int)lowest[k]]);
+            result.add(pair);
+        }
+        return result;
+    }
+
+    /**
+     * Collects a component and all its ancestors by a breadth first search.
+     * @param from the id of the component
+     * @param parentsIn the reversed child edges, see 
+     * {@link #reverse(int[], int[])}
+     * @param marks the stamps of the components found so far
+     * @param stamp the stamp of this search, which mustn't be in 
+     * <code>marks</code> yet
+     * @param found receives the ids found, large enough for all ids
+     * @return the number of ids found
+     *
+     * @since 1.0.0
+     */
+    private static int ancestors(int from, int[][] parentsIn, int[] marks,
+            int stamp, int[] found) {
+        int count = 0;
+        marks[from] = stamp;
+        found[count++] = from;
+        for (int k = 0; k < count; k++) { // found doubles as queue
+            int v = found[k];
+            for (int e = parentsIn[0][v]; e < parentsIn[0][v + 1]; e++) {
+                int w = parentsIn[1][e];
+                if (marks[w] != stamp) {
+                    marks[w] = stamp;
+                    found[count++] = w;
+                }
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,115 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A thread-safe scheme of {@link InformationComponent}s, backed by an
+ * {@link ArrayInformationScheme}. Besides the queries of
+ * {@link ConcurrentScheme}, the searches by name run under the shared read
+ * lock, so any number of threads can search while writers only block for
+ * their modifications. Since {@link InformationScheme} is a {@link List},
+ * which can't be shared safely by index, this class only offers the
+ * searches and not the whole interface. <br>
+ * This class is thread-safe under the conditions given by
+ * {@link ConcurrentScheme}.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayInformationScheme
+ */
+public class ConcurrentInformationScheme<E extends InformationComponent>
+extends ConcurrentScheme<E> {
+
+    /**
+     * The backing scheme.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayInformationScheme<E> scheme;
+
+    /**
+     * Constructs an empty concurrent information scheme.
+     *
+     * @since 1.0.0
+     */
+    public ConcurrentInformationScheme() {
+        this(new ArrayInformationScheme<E>());
+    }
+
+    /**
+     * Constructs a concurrent information scheme backed by the given scheme,
+     * which mustn't be used directly anymore.
+     * @param scheme the backing scheme
+     * @throws NullPointerException If <code>scheme</code> is
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public ConcurrentInformationScheme(ArrayInformationScheme<E> scheme) {
+        super(scheme);
+        this.scheme = scheme;
+    }
+
+    /**
+     * Returns all components matching the given name, see
+     * {@link InformationScheme#getByString(String, boolean)}.
+     * @param name the name to look for
+     * @param fifo if all components of this scheme should be searched in
+     * their order, else the components connected to the roots
+     * @return a list containing all matching components
+     *
+     * @since 1.0.0
+     */
+    public List<E> getByString(String name, boolean fifo) {
+        Lock l = readLock();
+        try {
+            return scheme.getByString(name, fifo);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Returns all components matching the given regex, see
+     * {@link InformationScheme#getByRegex(String, boolean)}.
+     * @param regex the regular expression to match the names with
+     * @param fifo if all components of this scheme should be searched in
+     * their order, else the components connected to the roots
+     * @return a list containing all matching components, or
+     * <code>null</code> if the regex was invalid
+     *
+     * @since 1.0.0
+     */
+    public List<E> getByRegex(String regex, boolean fifo) {
+        Lock l = readLock();
+        try {
+            return scheme.getByRegex(regex, fifo);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Returns a string containing the roots and their descendants, see
+     * {@link InformationScheme#rootsToString()}.
+     * @return a string representing this scheme to some extend
+     *
+     * @since 1.0.0
+     */
+    public String rootsToString() {
+        Lock l = readLock();
+        try {
+            return scheme.rootsToString();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+}
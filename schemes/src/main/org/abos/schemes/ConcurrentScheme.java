@@ -0,0 +1,949 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe implementation of the {@link Scheme} interface for workloads
+ * consisting mostly of reads. An {@link ArrayScheme} holds the components,
+ * roots and leaves, and a {@link ReentrantReadWriteLock} guards it: Queries,
+ * including the traversals of {@link #containsAncestorOf(SchemeComponent)}
+ * and {@link #containsDescendantOf(SchemeComponent)}, share the read lock
+ * and run in parallel, while modifications take the write lock and only
+ * block for the modification itself. <br>
+ * The families of the components are guarded as well, as long as they are
+ * only changed by {@link #link(SchemeComponent, SchemeComponent)} and
+ * {@link #unlink(SchemeComponent, SchemeComponent)}. Changing a family
+ * directly while other threads query this scheme leads to undefined results.
+ * The same goes for the backing scheme, which mustn't be used directly after
+ * construction. Since queries share the read lock, a reachability index of
+ * the backing scheme is queried concurrently, which the indexes of this
+ * package allow. <br>
+ * The iterator works on a snapshot of the components, so it never throws a
+ * <code>ConcurrentModificationException</code>, but doesn't support
+ * removal either. This class is thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme
+ * @see ConcurrentInformationScheme
+ */
+public class ConcurrentScheme<E extends SchemeComponent> extends
+AbstractCollection<E> implements Scheme<E> {
+
+    /**
+     * The backing scheme.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayScheme<E> scheme;
+
+    /**
+     * The lock guarding {@link #scheme} and the families of its components.
+     *
+     * @since 1.0.0
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs an empty concurrent scheme.
+     *
+     * @since 1.0.0
+     */
+    public ConcurrentScheme() {
+        this(new ArrayScheme<E>());
+    }
+
+    /**
+     * Constructs a concurrent scheme backed by the given scheme. The backing
+     * scheme keeps its membership index, reachability index and cycle check,
+     * but mustn't be used directly anymore.
+     * @param scheme the backing scheme
+     * @throws NullPointerException If <code>scheme</code> is
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public ConcurrentScheme(ArrayScheme<E> scheme) {
+        if (scheme == null)
+            throw new NullPointerException();
+        this.scheme = scheme;
+    }
+
+    /**
+     * Acquires the read lock. A stale reachability index of the backing
+     * scheme is rebuilt under the write lock first, so queries never
+     * rebuild it concurrently.
+     * @return the acquired read lock
+     *
+     * @since 1.0.0
+     */
+    protected final Lock readLock() {
+        lock.readLock().lock();
+        ReachabilityIndex index = scheme.getReachabilityIndex();
+        if (index == null || index.isValid())
+            return lock.readLock();
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            index = scheme.getReachabilityIndex();
+            if (index != null && !index.isValid())
+                index.rebuild(scheme);
+            lock.readLock().lock(); // downgrade
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        return lock.readLock();
+    }
+
+    /**
+     * Acquires the write lock.
+     * @return the acquired write lock
+     *
+     * @since 1.0.0
+     */
+    protected final Lock writeLock() {
+        lock.writeLock().lock();
+        return lock.writeLock();
+    }
+
+    /**
+     * Returns the backing scheme. It may only be used while holding the
+     * lock returned by {@link #readLock()} or {@link #writeLock()}.
+     * @return the backing scheme
+     *
+     * @since 1.0.0
+     */
+    protected ArrayScheme<E> getScheme() {
+        return scheme;
+    }
+
+    /**
+     * Makes one component the child of another one, on both sides, while
+     * holding the write lock. A side already listing the other one isn't
+     * changed. If the backing scheme checks for cycles and rejects the link,
+     * neither family changes.
+     * @param parent the new parent
+     * @param child the new child
+     * @return <code>true</code> if any of both families changed
+     * @throws NullPointerException If <code>parent</code> or
+     * <code>child</code> is <code>null</code>.
+     * @throws SchemeDependencyException If the link would close a cycle
+     * while cycles are checked.
+     *
+     * @since 1.0.0
+     *
+     * @see ArrayScheme#setCycleChecked(boolean)
+     */
+    public boolean link(SchemeComponent parent, SchemeComponent child) {
+        if (parent == null || child == null)
+            throw new NullPointerException();
+        Lock l = writeLock();
+        try {
+            boolean added = !parent.isParentOf(child)
+                    && parent.addChild(child);
+            try {
+                return !child.isChildOf(parent) && child.addParent(parent)
+                        || added;
+            }
+            catch (RuntimeException ex) {
+                if (added)
+                    parent.removeChild(child);
+                throw ex;
+            }
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Removes the link between a parent and a child, on both sides, while
+     * holding the write lock.
+     * @param parent the former parent
+     * @param child the former child
+     * @return <code>true</code> if any of both families changed
+     * @throws NullPointerException If <code>parent</code> or
+     * <code>child</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public boolean unlink(SchemeComponent parent, SchemeComponent child) {
+        if (parent == null || child == null)
+            throw new NullPointerException();
+        Lock l = writeLock();
+        try {
+            boolean removed = parent.removeChild(child);
+            return child.removeParent(parent) || removed;
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Applies a batch of changes at once while holding the write lock, see
+     * {@link ArrayScheme#edit(SchemeEdit)}. Readers see either none or all
+     * of the changes.
+     * @param edit the edit recording the changes
+     * @throws NullPointerException If <code>edit</code> is
+     * <code>null</code>.
+     * @throws SchemeDependencyException If the backing scheme rejects the
+     * changes.
+     *
+     * @since 1.0.0
+     */
+    public void edit(SchemeEdit<E> edit) {
+        Lock l = writeLock();
+        try {
+            scheme.edit(edit);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int size() {
+        Lock l = readLock();
+        try {
+            return scheme.size();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(Object o) {
+        Lock l = readLock();
+        try {
+            return scheme.contains(o);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#containsAll(java.util.Collection)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        Lock l = readLock();
+        try {
+            return scheme.containsAll(c);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#iterator()
+     */
+    /**
+     * {@inheritDoc} The iterator goes through a snapshot of the components
+     * taken under the read lock and doesn't support removal.
+     * @since 1.0.0
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return Collections.unmodifiableList(snapshot()).iterator();
+    }
+
+    /**
+     * Returns a copy of the components of this scheme, in their order.
+     * @return a list containing the components of this scheme
+     *
+     * @since 1.0.0
+     */
+    public List<E> snapshot() {
+        Lock l = readLock();
+        try {
+            return new ArrayList<E>(scheme);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#toArray()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public Object[] toArray() {
+        Lock l = readLock();
+        try {
+            return scheme.toArray();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#toArray(T[])
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public <T> T[] toArray(T[] a) {
+        Lock l = readLock();
+        try {
+            return scheme.toArray(a);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#add(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean add(E e) {
+        Lock l = writeLock();
+        try {
+            return scheme.add(e);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#addAll(java.util.Collection)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        Lock l = writeLock();
+        try {
+            return scheme.addAll(c);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean remove(Object o) {
+        Lock l = writeLock();
+        try {
+            return scheme.remove(o);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#removeAll(java.util.Collection)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Lock l = writeLock();
+        try {
+            return scheme.removeAll(c);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#retainAll(java.util.Collection)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Lock l = writeLock();
+        try {
+            return scheme.retainAll(c);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#clear()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void clear() {
+        Lock l = writeLock();
+        try {
+            scheme.clear();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getRoots()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public List<E> getRoots() {
+        Lock l = readLock();
+        try {
+            return scheme.getRoots();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getRoot(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public E getRoot(int index) {
+        Lock l = readLock();
+        try {
+            return scheme.getRoot(index);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLeaves()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public List<E> getLeaves() {
+        Lock l = readLock();
+        try {
+            return scheme.getLeaves();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLeaf(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public E getLeaf(int index) {
+        Lock l = readLock();
+        try {
+            return scheme.getLeaf(index);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Tells if one component is an ancestor of another one, see
+     * {@link ArrayScheme#isAncestorOf(SchemeComponent, SchemeComponent)}.
+     * @param ancestor the possible ancestor
+     * @param descendant the possible descendant
+     * @return <code>true</code> if <code>ancestor</code> is an ancestor of
+     * <code>descendant</code>
+     *
+     * @since 1.0.0
+     */
+    public boolean isAncestorOf(SchemeComponent ancestor,
+            SchemeComponent descendant) {
+        Lock l = readLock();
+        try {
+            return scheme.isAncestorOf(ancestor, descendant);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Tells if one component is a descendant of another one, see
+     * {@link ArrayScheme#isDescendantOf(SchemeComponent, SchemeComponent)}.
+     * @param descendant the possible descendant
+     * @param ancestor the possible ancestor
+     * @return <code>true</code> if <code>descendant</code> is a descendant of
+     * <code>ancestor</code>
+     *
+     * @since 1.0.0
+     */
+    public boolean isDescendantOf(SchemeComponent descendant,
+            SchemeComponent ancestor) {
+        Lock l = readLock();
+        try {
+            return scheme.isDescendantOf(descendant, ancestor);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getDepths()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int[] getDepths() {
+        Lock l = readLock();
+        try {
+            return scheme.getDepths();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getHeights()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int[] getHeights() {
+        Lock l = readLock();
+        try {
+            return scheme.getHeights();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Tells for many pairs of components if the first one is an ancestor of
+     * the second one, see {@link ArrayScheme#areAncestorsOf(List, List)}.
+     * @param ancestors the possible ancestors
+     * @param descendants the possible descendants, one for each ancestor
+     * @return an array telling for each pair if the ancestor is one
+     * @throws IllegalArgumentException If both lists differ in size.
+     *
+     * @since 1.0.0
+     */
+    public boolean[] areAncestorsOf(
+            List<? extends SchemeComponent> ancestors,
+            List<? extends SchemeComponent> descendants) {
+        Lock l = readLock();
+        try {
+            return scheme.areAncestorsOf(ancestors, descendants);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(org.abos.
+     * schemes.SchemeComponent, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} See {@link ArrayScheme#getLowestCommonAncestors(
+     * SchemeComponent, SchemeComponent)}, no listeners are registered 
+     * while holding the read lock.
+     * @since 1.0.0
+     */
+    @Override
+    public List<SchemeComponent> getLowestCommonAncestors(SchemeComponent a,
+            SchemeComponent b) {
+        Lock l = readLock();
+        try {
+            return scheme.getLowestCommonAncestors(a, b);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(java.util.List,
+     * java.util.List)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public List<List<SchemeComponent>> getLowestCommonAncestors(
+            List<? extends SchemeComponent> a,
+            List<? extends SchemeComponent> b) {
+        Lock l = readLock();
+        try {
+            return scheme.getLowestCommonAncestors(a, b);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#containsAncestorOf(org.abos.schemes.
+     * SchemeComponent)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsAncestorOf(E e) {
+        Lock l = readLock();
+        try {
+            return scheme.containsAncestorOf(e);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#containsDescendantOf(org.abos.schemes.
+     * SchemeComponent)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsDescendantOf(E e) {
+        Lock l = readLock();
+        try {
+            return scheme.containsDescendantOf(e);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#contains(org.abos.schemes.SchemeComponent,
+     * boolean)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(E e, boolean includeAncestors) {
+        Lock l = readLock();
+        try {
+            return scheme.contains(e, includeAncestors);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#contains(org.abos.schemes.SchemeComponent,
+     * boolean, boolean)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(E e, boolean includeAncestors,
+            boolean includeDescendants) {
+        Lock l = readLock();
+        try {
+            return scheme.contains(e, includeAncestors, includeDescendants);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#deepEquals(org.abos.schemes.Scheme)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean deepEquals(Scheme<E> scheme) {
+        Lock l = readLock();
+        try {
+            return this.scheme.deepEquals(scheme);
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#deepCopy()
+     */
+    /**
+     * {@inheritDoc} The copy is an {@link ArrayScheme}, taken under the
+     * read lock.
+     * @since 1.0.0
+     */
+    @Override
+    public Scheme<E> deepCopy() throws CloneNotSupportedException {
+        Lock l = readLock();
+        try {
+            return scheme.deepCopy();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#allFamiliesValid()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean allFamiliesValid() {
+        Lock l = readLock();
+        try {
+            return scheme.allFamiliesValid();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getFamilyReport()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public FamilyReport getFamilyReport() {
+        Lock l = readLock();
+        try {
+            return scheme.getFamilyReport();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#validateRootsAndLeaves()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void validateRootsAndLeaves() {
+        Lock l = writeLock();
+        try {
+            scheme.validateRootsAndLeaves();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#addSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc} The listener is registered at the backing scheme, so
+     * the events name the backing scheme. Listeners are notified while the
+     * write lock is held, so they see this scheme right after the change 
+     * and may query it, but shouldn't block for long.
+     * @since 1.0.0
+     */
+    @Override
+    public void addSchemeListener(SchemeListener l) {
+        Lock lock = writeLock();
+        try {
+            scheme.addSchemeListener(l);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#removeSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void removeSchemeListener(SchemeListener l) {
+        Lock lock = writeLock();
+        try {
+            scheme.removeSchemeListener(l);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#toString()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public String toString() {
+        Lock l = readLock();
+        try {
+            return scheme.toString();
+        }
+        finally {
+            l.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * An abstract implementation of the {@link SchemeComponent} interface like
+ * {@link AbstractSchemeComponent}, whose parents and children can be changed
+ * by many threads at once while other threads iterate through them. The
+ * family is stored in copy-on-write arrays swapped in by compare-and-set,
+ * so neither changes nor reads take a lock. Iterators, and so the searches
+ * for ancestors and descendants, see the family as it was at their start
+ * and never throw a <code>ConcurrentModificationException</code>. <br>
+ * Since each change copies the parents or children, this class suits
+ * families that are read more often than changed and aren't huge. Several
+ * threads linking the same components should use
+ * {@link #addParentIfAbsent(SchemeComponent)} and
+ * {@link #addChildIfAbsent(SchemeComponent)}, which check and add in one
+ * atomic step. <br>
+ * Family listeners are called by the thread changing the family, so they
+ * have to be thread-safe themselves, which the listeners of
+ * {@link ArrayScheme} aren't. Since a position may be outdated right
+ * away, listeners aren't told the positions of the relatives added or 
+ * removed. Apart from that, this class is thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see AbstractSchemeComponent
+ * @see ConcurrentScheme
+ */
+public abstract class ConcurrentSchemeComponent extends
+AbstractSchemeComponent {
+
+    /**
+     * Creates an empty component.
+     *
+     * @since 1.0.0
+     */
+    public ConcurrentSchemeComponent() {
+        super(new CopyOnWriteFamilyList(), new CopyOnWriteFamilyList());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractSchemeComponent#clone()
+     */
+    /**
+     * {@inheritDoc} The clone gets an empty family of its own.
+     * @since 1.0.0
+     */
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        ConcurrentSchemeComponent clone =
+            (ConcurrentSchemeComponent)super.clone();
+        clone.parents = new CopyOnWriteFamilyList();
+        clone.children = new CopyOnWriteFamilyList();
+        return clone;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractSchemeComponent#addParent(org.abos.
+     * schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean addParent(SchemeComponent c) {
+        if (c == null)
+            return false;
+        fireRelativeAdding(PARENT, c);
+        if (!parents.add(c))
+            return false;
+        fireFamilyChanged(PARENT, c, true);
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractSchemeComponent#addChild(org.abos.
+     * schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean addChild(SchemeComponent c) {
+        if (c == null)
+            return false;
+        fireRelativeAdding(CHILD, c);
+        if (!children.add(c))
+            return false;
+        fireFamilyChanged(CHILD, c, true);
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractSchemeComponent#removeParent(org.abos.
+     * schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} Finding and removing the parent happen atomically.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean removeParent(SchemeComponent c) {
+        if (!parents.remove(c))
+            return false;
+        fireFamilyChanged(PARENT, c, false);
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractSchemeComponent#removeChild(org.abos.
+     * schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} Finding and removing the child happen atomically.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean removeChild(SchemeComponent c) {
+        if (!children.remove(c))
+            return false;
+        fireFamilyChanged(CHILD, c, false);
+        return true;
+    }
+
+    /**
+     * Adds a parent unless this component lists it already. Checking and
+     * adding happen atomically, so concurrent calls add the parent once.
+     * @param c the parent to add
+     * @return <code>true</code> if the parent was added
+     * @throws SchemeException If a family listener prevents the addition.
+     *
+     * @since 1.0.0
+     *
+     * @see #addParent(SchemeComponent)
+     */
+    public boolean addParentIfAbsent(SchemeComponent c) {
+        if (c == null || parents.contains(c))
+            return false;
+        fireRelativeAdding(PARENT, c);
+        if (!((CopyOnWriteFamilyList)parents).addIfAbsent(c))
+            return false;
+        fireFamilyChanged(PARENT, c, true);
+        return true;
+    }
+
+    /**
+     * Adds a child unless this component lists it already. Checking and
+     * adding happen atomically, so concurrent calls add the child once.
+     * @param c the child to add
+     * @return <code>true</code> if the child was added
+     * @throws SchemeException If a family listener prevents the addition.
+     *
+     * @since 1.0.0
+     *
+     * @see #addChild(SchemeComponent)
+     */
+    public boolean addChildIfAbsent(SchemeComponent c) {
+        if (c == null || children.contains(c))
+            return false;
+        fireRelativeAdding(CHILD, c);
+        if (!((CopyOnWriteFamilyList)children).addIfAbsent(c))
+            return false;
+        fireFamilyChanged(CHILD, c, true);
+        return true;
+    }
+
+}
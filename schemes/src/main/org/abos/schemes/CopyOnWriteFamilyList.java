@@ -0,0 +1,367 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A list of parents or children which can be changed and read by many
+ * threads at once without locks. The elements are kept in an array that is
+ * never changed, each modification copies it and swaps the copy in by
+ * compare-and-set, retrying if another thread was faster. Reads and
+ * iterators work on the array current at their start, so they never block
+ * and never throw a <code>ConcurrentModificationException</code>, but don't
+ * see later modifications. Modifications take linear time, so this list
+ * suits families that are read far more often than changed. <br>
+ * Modifications by index fail with an
+ * <code>IndexOutOfBoundsException</code> if the list shrank concurrently.
+ * The iterators don't support removal. <code>null</code> elements are
+ * permitted. This class is thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ConcurrentSchemeComponent
+ */
+final class CopyOnWriteFamilyList extends AbstractList<SchemeComponent>
+implements RandomAccess {
+
+    /**
+     * The array shared by all empty lists.
+     *
+     * @since 1.0.0
+     */
+    private static final SchemeComponent[] EMPTY = new SchemeComponent[0];
+
+    /**
+     * Swaps {@link #elements} by compare-and-set.
+     *
+     * @since 1.0.0
+     */
+    private static final AtomicReferenceFieldUpdater<CopyOnWriteFamilyList,
+            SchemeComponent[]> ELEMENTS = AtomicReferenceFieldUpdater
+        .newUpdater(CopyOnWriteFamilyList.class, SchemeComponent[].class,
+            "elements");
+
+    /**
+     * The elements, exactly as many as the list contains. The array is
+     * never changed once set.
+     *
+     * @since 1.0.0
+     */
+    private volatile SchemeComponent[] elements = EMPTY;
+
+    /**
+     * Creates an empty list.
+     *
+     * @since 1.0.0
+     */
+    CopyOnWriteFamilyList() {}
+
+    /**
+     * Returns the index of an element in the given array.
+     * @param array the array to search
+     * @param o the element to look for
+     * @return the first index of <code>o</code>, or <code>-1</code>
+     *
+     * @since 1.0.0
+     */
+    private static int indexOf(SchemeComponent[] array, Object o) {
+        for (int i = 0; i < array.length; i++)
+            if (o == null ? array[i] == null : o.equals(array[i]))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns a copy of the given array without the element at the index.
+     * @param array the array
+     * @param index the index to drop
+     * @return the shorter copy
+     *
+     * @since 1.0.0
+     */
+    private static SchemeComponent[] without(SchemeComponent[] array,
+            int index) {
+        if (array.length == 1)
+            return EMPTY;
+        SchemeComponent[] copy = new SchemeComponent[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index,
+            array.length - index - 1);
+        return copy;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * Returns the current array of elements, without copying it. The array
+     * mustn't be changed.
+     * @return the current elements
+     *
+     * @since 1.0.0
+     *
+     * @see EpochTraversal
+     */
+    SchemeComponent[] array() {
+        return elements;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#get(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent get(int index) {
+        return elements[index];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#indexOf(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int indexOf(Object o) {
+        return indexOf(elements, o);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(elements, o) != -1;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#add(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean add(SchemeComponent e) {
+        SchemeComponent[] current;
+        SchemeComponent[] copy;
+        do {
+            current = elements;
+            copy = Arrays.copyOf(current, current.length + 1);
+            copy[current.length] = e;
+        } while (!ELEMENTS.compareAndSet(this, current, copy));
+        return true;
+    }
+
+    /**
+     * Appends an element unless the list contains it already, atomically.
+     * @param e the element to add
+     * @return <code>true</code> if the list changed
+     *
+     * @since 1.0.0
+     */
+    boolean addIfAbsent(SchemeComponent e) {
+        SchemeComponent[] current;
+        SchemeComponent[] copy;
+        do {
+            current = elements;
+            if (indexOf(current, e) != -1)
+                return false;
+            copy = Arrays.copyOf(current, current.length + 1);
+            copy[current.length] = e;
+        } while (!ELEMENTS.compareAndSet(this, current, copy));
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#add(int, java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void add(int index, SchemeComponent element) {
+        SchemeComponent[] current;
+        SchemeComponent[] copy;
+        do {
+            current = elements;
+            if (index < 0 || index > current.length)
+                throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + current.length);
+            copy = new SchemeComponent[current.length + 1];
+            System.arraycopy(current, 0, copy, 0, index);
+            copy[index] = element;
+            System.arraycopy(current, index, copy, index + 1,
+                current.length - index);
+        } while (!ELEMENTS.compareAndSet(this, current, copy));
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#set(int, java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent set(int index, SchemeComponent element) {
+        SchemeComponent[] current;
+        SchemeComponent[] copy;
+        do {
+            current = elements;
+            copy = current.clone();
+            copy[index] = element;
+        } while (!ELEMENTS.compareAndSet(this, current, copy));
+        return current[index];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#remove(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent remove(int index) {
+        SchemeComponent[] current;
+        do {
+            current = elements;
+            if (index < 0 || index >= current.length)
+                throw new IndexOutOfBoundsException("Index: " + index
+                    + ", Size: " + current.length);
+        } while (!ELEMENTS.compareAndSet(this, current,
+            without(current, index)));
+        return current[index];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean remove(Object o) {
+        SchemeComponent[] current;
+        int index;
+        do {
+            current = elements;
+            index = indexOf(current, o);
+            if (index == -1)
+                return false;
+        } while (!ELEMENTS.compareAndSet(this, current,
+            without(current, index)));
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#clear()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void clear() {
+        elements = EMPTY;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#toArray()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public Object[] toArray() {
+        SchemeComponent[] current = elements;
+        return Arrays.copyOf(current, current.length, Object[].class);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractList#iterator()
+     */
+    /**
+     * {@inheritDoc} The iterator goes through the elements at the time of
+     * this call and doesn't support removal.
+     * @since 1.0.0
+     */
+    @Override
+    public Iterator<SchemeComponent> iterator() {
+        final SchemeComponent[] snapshot = elements;
+        return new Iterator<SchemeComponent>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.length;
+            }
+
+            @Override
+            public SchemeComponent next() {
+                if (next == snapshot.length)
+                    throw new NoSuchElementException();
+                return snapshot[next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,348 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * The depths and heights of scheme components, kept up to date while
+ * families change. The depth of a component is the length of the longest
+ * path from a root to it, its height the length of the longest path from it
+ * to a leaf. An edge exists if the parent lists the child as child or the
+ * child lists the parent as parent, like in {@link CompactGraph#layers()},
+ * so the depth of a component equals its layer. Components on a cycle or
+ * below one have no depth, those on a cycle or above one no height. <br>
+ * Registered as {@link FamilyListener} at all tracked components, this
+ * class updates the values after each change of a family. A new edge from a
+ * parent to a child only affects the depths of the child and its
+ * descendants and the heights of the parent and its ancestors, so only
+ * these are computed again, in topological order, and not at all if the
+ * edge doesn't lengthen the longest path. The same goes for removed edges.
+ * So the costs are proportional to the affected region, <tt>O(V+E)</tt> at
+ * most. <br>
+ * Components not tracked yet are tracked together with all their associated
+ * components as soon as they are linked to a tracked one. <br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#setDepthsTracked(boolean)
+ * @see DynamicTopologicalOrder
+ */
+final class DynamicDepths implements FamilyListener {
+
+    /**
+     * A tracked component with its edges.
+     *
+     * @since 1.0.0
+     */
+    private static final class Node {
+
+        /**
+         * The component.
+         */
+        final SchemeComponent component;
+
+        /**
+         * The length of the longest path from a root, <code>-1</code> if
+         * there is none.
+         */
+        int depth = 0;
+
+        /**
+         * The length of the longest path to a leaf, <code>-1</code> if
+         * there is none.
+         */
+        int height = 0;
+
+        /**
+         * The children, once for each listing.
+         */
+        final ArrayList<Node> out = new ArrayList<Node>(2);
+
+        /**
+         * The parents, once for each listing.
+         */
+        final ArrayList<Node> in = new ArrayList<Node>(2);
+
+        /**
+         * The last update this node was affected by.
+         */
+        int mark = 0;
+
+        /**
+         * The number of affected parents or children not computed yet.
+         */
+        int pending = 0;
+
+        Node(SchemeComponent component) {
+            this.component = component;
+        }
+    }
+
+    /**
+     * The tracked components and their nodes.
+     *
+     * @since 1.0.0
+     */
+    private final IdentityHashMap<SchemeComponent, Node> nodes =
+        new IdentityHashMap<SchemeComponent, Node>();
+
+    /**
+     * The mark of the current update.
+     *
+     * @since 1.0.0
+     */
+    private int epoch = 0;
+
+    /**
+     * Creates depths tracking nothing.
+     *
+     * @since 1.0.0
+     */
+    DynamicDepths() {}
+
+    /**
+     * Tracks the given components and all components associated to them.
+     * @param components the components to track
+     *
+     * @since 1.0.0
+     */
+    void track(Collection<? extends SchemeComponent> components) {
+        for (SchemeComponent c : components)
+            track(c);
+    }
+
+    /**
+     * Tracks the given component and all components associated to it, and
+     * computes their depths and heights.
+     * @param c the component to track, may be <code>null</code>
+     * @return the node of <code>c</code>, <code>null</code> if
+     * <code>c</code> is <code>null</code>
+     *
+     * @since 1.0.0
+     */
+    private Node track(SchemeComponent c) {
+        if (c == null)
+            return null;
+        Node node = nodes.get(c);
+        if (node != null)
+            return node;
+        // collect the new components
+        ArrayList<Node> added = new ArrayList<Node>();
+        node = new Node(c);
+        nodes.put(c, node);
+        added.add(node);
+        for (int i = 0; i < added.size(); i++) {
+            SchemeComponent sc = added.get(i).component;
+            for (int type = SchemeComponent.PARENT;
+                    type <= SchemeComponent.CHILD; type++) {
+                Iterator<SchemeComponent> it = type == SchemeComponent.PARENT
+                        ? sc.parentsIterator() : sc.childrenIterator();
+                while (it.hasNext()) {
+                    SchemeComponent r = it.next();
+                    if (r != null && !nodes.containsKey(r)) {
+                        Node n = new Node(r);
+                        nodes.put(r, n);
+                        added.add(n);
+                    }
+                }
+            }
+        }
+        // the edges, each listing once
+        for (Node n : added) {
+            Iterator<SchemeComponent> it = n.component.childrenIterator();
+            while (it.hasNext())
+                link(n, nodes.get(it.next()));
+            it = n.component.parentsIterator();
+            while (it.hasNext())
+                link(nodes.get(it.next()), n);
+        }
+        update(added, true);
+        update(added, false);
+        for (Node n : added)
+            n.component.addFamilyListener(this);
+        return node;
+    }
+
+    /**
+     * Adds an edge to the nodes.
+     * @param parent the parent, may be <code>null</code>
+     * @param child the child, may be <code>null</code>
+     *
+     * @since 1.0.0
+     */
+    private static void link(Node parent, Node child) {
+        if (parent == null || child == null)
+            return;
+        parent.out.add(child);
+        child.in.add(parent);
+    }
+
+    /**
+     * Stops tracking anything.
+     *
+     * @since 1.0.0
+     */
+    void clear() {
+        for (SchemeComponent c : nodes.keySet())
+            c.removeFamilyListener(this);
+        nodes.clear();
+    }
+
+    /**
+     * Returns the depth of the given component.
+     * @param c the component
+     * @return the length of the longest path from a root to <code>c</code>,
+     * or <code>-1</code> if there is none or <code>c</code> isn't tracked
+     *
+     * @since 1.0.0
+     */
+    int depthOf(SchemeComponent c) {
+        Node n = nodes.get(c);
+        return n == null ? -1 : n.depth;
+    }
+
+    /**
+     * Returns the height of the given component.
+     * @param c the component
+     * @return the length of the longest path from <code>c</code> to a leaf,
+     * or <code>-1</code> if there is none or <code>c</code> isn't tracked
+     *
+     * @since 1.0.0
+     */
+    int heightOf(SchemeComponent c) {
+        Node n = nodes.get(c);
+        return n == null ? -1 : n.height;
+    }
+
+    /**
+     * Computes the depths or heights of the given nodes and all their
+     * descendants or ancestors again. The affected nodes are collected
+     * first, then computed in topological order with Kahn's algorithm, so
+     * the values of all parents or children are final when a node is
+     * computed. Affected nodes never reached lie on a cycle or below or
+     * above one.
+     * @param seeds the nodes whose values may have changed
+     * @param down <code>true</code> to compute the depths of the
+     * descendants, <code>false</code> to compute the heights of the
+     * ancestors
+     *
+     * @since 1.0.0
+     */
+    private void update(Collection<Node> seeds, boolean down) {
+        int mark = ++epoch;
+        ArrayList<Node> affected = new ArrayList<Node>();
+        for (Node n : seeds) {
+            if (n.mark != mark) {
+                n.mark = mark;
+                affected.add(n);
+            }
+        }
+        for (int i = 0; i < affected.size(); i++) {
+            for (Node next : down ? affected.get(i).out : affected.get(i).in) {
+                if (next.mark != mark) {
+                    next.mark = mark;
+                    affected.add(next);
+                }
+            }
+        }
+        ArrayList<Node> queue = new ArrayList<Node>(affected.size());
+        for (Node n : affected) {
+            n.pending = 0;
+            for (Node before : down ? n.in : n.out)
+                if (before.mark == mark)
+                    n.pending++;
+            if (n.pending == 0)
+                queue.add(n);
+            // unreached nodes keep this
+            if (down)
+                n.depth = -1;
+            else
+                n.height = -1;
+        }
+        for (int head = 0; head < queue.size(); head++) {
+            Node n = queue.get(head);
+            int value = 0;
+            for (Node before : down ? n.in : n.out) {
+                int v = down ? before.depth : before.height;
+                if (v < 0) {
+                    value = -1;
+                    break;
+                }
+                value = Math.max(value, v + 1);
+            }
+            if (down)
+                n.depth = value;
+            else
+                n.height = value;
+            for (Node next : down ? n.out : n.in)
+                if (next.mark == mark && --next.pending == 0)
+                    queue.add(next);
+        }
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.FamilyListener#relativeAdding(org.abos.schemes.
+     * SchemeComponent, int, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} Does nothing, the values are updated afterwards.
+     * @since 1.0.0
+     */
+    @Override
+    public void relativeAdding(SchemeComponent source, int type,
+            SchemeComponent relative) {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.FamilyListener#familyChanged(org.abos.schemes.
+     * SchemeComponent, int, org.abos.schemes.SchemeComponent, boolean)
+     */
+    /**
+     * {@inheritDoc} Updates the edges and the affected values.
+     * @since 1.0.0
+     */
+    @Override
+    public void familyChanged(SchemeComponent source, int type,
+            SchemeComponent relative, boolean added) {
+        if (type != SchemeComponent.PARENT && type != SchemeComponent.CHILD)
+            return;
+        Node s = track(source);
+        Node r = added ? track(relative) : nodes.get(relative);
+        if (r == null)
+            return;
+        Node parent = type == SchemeComponent.CHILD ? s : r;
+        Node child = type == SchemeComponent.CHILD ? r : s;
+        if (added) {
+            link(parent, child);
+            // in an acyclic region, a shorter path can't close a cycle
+            if (parent.depth < 0 || child.depth < 0
+                    || parent.depth + 1 > child.depth)
+                update(Collections.singleton(child), true);
+            if (parent.height < 0 || child.height < 0
+                    || child.height + 1 > parent.height)
+                update(Collections.singleton(parent), false);
+        }
+        else {
+            parent.out.remove(child);
+            child.in.remove(parent);
+            // a parent on a shorter path doesn't matter
+            if (parent.depth < 0 || child.depth < 0
+                    || parent.depth + 1 >= child.depth)
+                update(Collections.singleton(child), true);
+            if (parent.height < 0 || child.height < 0
+                    || child.height + 1 >= parent.height)
+                update(Collections.singleton(parent), false);
+        }
+    }
+
+}
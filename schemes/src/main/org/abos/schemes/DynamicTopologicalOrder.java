@@ -0,0 +1,543 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * A topological order of scheme components, kept up to date while families
+ * change, following the algorithm of Pearce and Kelly. Every tracked
+ * component has a number, and for every edge from a parent to a child, the
+ * parent's number is lower. An edge exists if the parent lists the child as
+ * child or the child lists the parent as parent. <br>
+ * Registered as {@link FamilyListener} at all tracked components, this order
+ * is asked before each new edge. If the edge keeps the order, nothing has to
+ * be done. Otherwise only the components numbered between the two ends are
+ * searched, and if the edge would close a cycle, a
+ * {@link SchemeDependencyException} prevents it. Else just the components
+ * found are renumbered. So the costs are proportional to the affected
+ * region, not to the whole scheme. <br>
+ * Components not tracked yet are tracked together with all their associated
+ * components as soon as they are linked to a tracked one. Components which
+ * don't ask their listeners before additions (unlike
+ * {@link AbstractSchemeComponent}) can only be checked afterwards, then the
+ * exception is thrown after the family changed. <br>
+ * While {@link #suspend() suspended}, new edges are only recorded, so
+ * intermediate states may contain cycles. {@link #resume()} inserts them
+ * one by one afterwards, so a batch of changes is checked at the costs of
+ * the regions affected by its new edges. <br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#setCycleChecked(boolean)
+ */
+final class DynamicTopologicalOrder implements FamilyListener {
+
+    /**
+     * A tracked component with its edges.
+     *
+     * @since 1.0.0
+     */
+    private static final class Node {
+
+        /**
+         * The component.
+         */
+        final SchemeComponent component;
+
+        /**
+         * The topological number.
+         */
+        int order;
+
+        /**
+         * The children, once for each listing.
+         */
+        final ArrayList<Node> out = new ArrayList<Node>(2);
+
+        /**
+         * The parents, once for each listing.
+         */
+        final ArrayList<Node> in = new ArrayList<Node>(2);
+
+        /**
+         * The last search this node was visited by.
+         */
+        int mark = 0;
+
+        Node(SchemeComponent component) {
+            this.component = component;
+        }
+    }
+
+    /**
+     * Compares nodes by their topological number.
+     *
+     * @since 1.0.0
+     */
+    private static final Comparator<Node> BY_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(Node n1, Node n2) {
+            return n1.order < n2.order ? -1 : (n1.order == n2.order ? 0 : 1);
+        }
+    };
+
+    /**
+     * The tracked components and their nodes.
+     *
+     * @since 1.0.0
+     */
+    private final IdentityHashMap<SchemeComponent, Node> nodes =
+        new IdentityHashMap<SchemeComponent, Node>();
+
+    /**
+     * The number for the next tracked component.
+     *
+     * @since 1.0.0
+     */
+    private int nextOrder = 0;
+
+    /**
+     * The mark of the current search.
+     *
+     * @since 1.0.0
+     */
+    private int epoch = 0;
+
+    /**
+     * If new edges and components are only recorded.
+     *
+     * @since 1.0.0
+     *
+     * @see #suspend()
+     */
+    private boolean suspended = false;
+
+    /**
+     * The parents of the edges added while suspended, in their order.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayList<SchemeComponent> pendingParents =
+        new ArrayList<SchemeComponent>();
+
+    /**
+     * The children of the edges added while suspended, in their order.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayList<SchemeComponent> pendingChildren =
+        new ArrayList<SchemeComponent>();
+
+    /**
+     * The components to track, recorded while suspended.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayList<SchemeComponent> pendingTracks =
+        new ArrayList<SchemeComponent>();
+
+    /**
+     * Creates an order tracking nothing.
+     *
+     * @since 1.0.0
+     */
+    DynamicTopologicalOrder() {}
+
+    /**
+     * Tracks the given components and all components associated to them.
+     * @param components the components to track
+     * While suspended, they are only recorded.
+     * @throws SchemeDependencyException If there is a cycle among the
+     * components not tracked before. These stay untracked then.
+     *
+     * @since 1.0.0
+     */
+    void track(Collection<? extends SchemeComponent> components) {
+        if (suspended) {
+            pendingTracks.addAll(components);
+            return;
+        }
+        for (SchemeComponent c : components)
+            track(c);
+    }
+
+    /**
+     * Stops checking new edges until {@link #resume()}. Removed edges are
+     * still removed, new edges and components to track are only recorded.
+     *
+     * @since 1.0.0
+     */
+    void suspend() {
+        suspended = true;
+    }
+
+    /**
+     * Checks the edges and components recorded since {@link #suspend()}.
+     * The recorded components and the ends of new edges not tracked yet are
+     * tracked with their current families first. Then the new edges between
+     * components tracked before are inserted one by one, each only
+     * reordering the region between its ends.
+     * @throws SchemeDependencyException If the current families contain a
+     * cycle among the recorded components and edges. This order is in an
+     * undefined state then and has to be cleared.
+     *
+     * @since 1.0.0
+     */
+    void resume() {
+        suspended = false;
+        int count = pendingParents.size();
+        Node[] parents = new Node[count];
+        Node[] children = new Node[count];
+        // edges of untracked components are found when tracking them
+        for (int i = 0; i < count; i++) {
+            parents[i] = nodes.get(pendingParents.get(i));
+            children[i] = nodes.get(pendingChildren.get(i));
+            if (parents[i] == null)
+                pendingTracks.add(pendingParents.get(i));
+            if (children[i] == null)
+                pendingTracks.add(pendingChildren.get(i));
+        }
+        pendingParents.clear();
+        pendingChildren.clear();
+        ArrayList<SchemeComponent> tracks =
+            new ArrayList<SchemeComponent>(pendingTracks);
+        pendingTracks.clear();
+        for (SchemeComponent c : tracks)
+            track(c);
+        for (int i = 0; i < count; i++) {
+            if (parents[i] != null && children[i] != null) {
+                reorder(parents[i], children[i]);
+                link(parents[i], children[i]);
+            }
+        }
+    }
+
+    /**
+     * Forgets an edge added while suspended.
+     * @param parent the parent of the edge
+     * @param child the child of the edge
+     *
+     * @since 1.0.0
+     */
+    private void unrecord(SchemeComponent parent, SchemeComponent child) {
+        for (int i = pendingParents.size() - 1; i >= 0; i--) {
+            if (pendingParents.get(i) == parent
+                    && pendingChildren.get(i) == child) {
+                pendingParents.remove(i);
+                pendingChildren.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tracks the given component and all components associated to it.
+     * @param c the component to track, may be <code>null</code>
+     * @return the node of <code>c</code>, <code>null</code> if
+     * <code>c</code> is <code>null</code>
+     * @throws SchemeDependencyException If there is a cycle among the
+     * components not tracked before. These stay untracked then.
+     *
+     * @since 1.0.0
+     */
+    private Node track(SchemeComponent c) {
+        if (c == null)
+            return null;
+        Node node = nodes.get(c);
+        if (node != null)
+            return node;
+        // collect the new components
+        ArrayList<Node> added = new ArrayList<Node>();
+        node = new Node(c);
+        nodes.put(c, node);
+        added.add(node);
+        for (int i = 0; i < added.size(); i++) {
+            SchemeComponent sc = added.get(i).component;
+            for (int type = SchemeComponent.PARENT;
+                    type <= SchemeComponent.CHILD; type++) {
+                Iterator<SchemeComponent> it = type == SchemeComponent.PARENT
+                        ? sc.parentsIterator() : sc.childrenIterator();
+                while (it.hasNext()) {
+                    SchemeComponent r = it.next();
+                    if (r != null && !nodes.containsKey(r)) {
+                        Node n = new Node(r);
+                        nodes.put(r, n);
+                        added.add(n);
+                    }
+                }
+            }
+        }
+        // the edges, each listing once
+        for (Node n : added) {
+            Iterator<SchemeComponent> it = n.component.childrenIterator();
+            while (it.hasNext())
+                link(n, nodes.get(it.next()));
+            it = n.component.parentsIterator();
+            while (it.hasNext())
+                link(nodes.get(it.next()), n);
+        }
+        // number the new components, parents first
+        int[] pending = new int[added.size()];
+        for (int i = 0; i < added.size(); i++)
+            added.get(i).order = i;
+        int[] queue = new int[added.size()];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < added.size(); i++) {
+            for (Node p : added.get(i).in)
+                if (isNew(p, added))
+                    pending[i]++;
+            if (pending[i] == 0)
+                queue[tail++] = i;
+        }
+        while (head < tail) {
+            Node n = added.get(queue[head++]);
+            for (Node child : n.out) {
+                if (isNew(child, added) && --pending[child.order] == 0)
+                    queue[tail++] = child.order;
+            }
+        }
+        if (tail < added.size()) {
+            untrack(added);
+            throw new SchemeDependencyException("The family of " + c
+                + " contains a cycle!");
+        }
+        for (int i = 0; i < tail; i++)
+            added.get(queue[i]).order = nextOrder + i;
+        nextOrder += tail;
+        // edges to components tracked before may break the order
+        try {
+            for (Node n : added)
+                for (Node child : n.out)
+                    reorder(n, child);
+        }
+        catch (SchemeDependencyException e) {
+            untrack(added);
+            throw e;
+        }
+        for (Node n : added)
+            n.component.addFamilyListener(this);
+        return node;
+    }
+
+    /**
+     * Tells if a node belongs to the given newly tracked nodes, given that
+     * their numbers are still their positions in the list.
+     * @param n the node to check
+     * @param added the newly tracked nodes
+     * @return <code>true</code> if <code>n</code> is in <code>added</code>
+     *
+     * @since 1.0.0
+     */
+    private static boolean isNew(Node n, ArrayList<Node> added) {
+        return n.order < added.size() && added.get(n.order) == n;
+    }
+
+    /**
+     * Forgets the given nodes, which must not have listeners registered.
+     * @param removed the nodes to forget
+     *
+     * @since 1.0.0
+     */
+    private void untrack(ArrayList<Node> removed) {
+        for (Node n : removed)
+            nodes.remove(n.component);
+        for (Node n : removed) {
+            for (Node p : n.in)
+                if (nodes.containsKey(p.component))
+                    p.out.remove(n);
+            for (Node child : n.out)
+                if (nodes.containsKey(child.component))
+                    child.in.remove(n);
+        }
+    }
+
+    /**
+     * Adds an edge to the nodes.
+     * @param parent the parent, may be <code>null</code>
+     * @param child the child, may be <code>null</code>
+     *
+     * @since 1.0.0
+     */
+    private static void link(Node parent, Node child) {
+        if (parent == null || child == null)
+            return;
+        parent.out.add(child);
+        child.in.add(parent);
+    }
+
+    /**
+     * Stops tracking anything.
+     *
+     * @since 1.0.0
+     */
+    void clear() {
+        for (SchemeComponent c : nodes.keySet())
+            c.removeFamilyListener(this);
+        nodes.clear();
+        nextOrder = 0;
+        suspended = false;
+        pendingParents.clear();
+        pendingChildren.clear();
+        pendingTracks.clear();
+    }
+
+    /**
+     * Returns the topological number of the given component.
+     * @param c the component
+     * @return the number of <code>c</code>, or <code>-1</code> if it isn't
+     * tracked
+     *
+     * @since 1.0.0
+     */
+    int orderOf(SchemeComponent c) {
+        Node n = nodes.get(c);
+        return n == null ? -1 : n.order;
+    }
+
+    /**
+     * Renumbers the nodes so that the given edge keeps the order, if that
+     * doesn't close a cycle.
+     * @param parent the parent of the edge
+     * @param child the child of the edge
+     * @throws SchemeDependencyException If the edge would close a cycle.
+     *
+     * @since 1.0.0
+     */
+    private void reorder(Node parent, Node child) {
+        if (parent == child)
+            throw new SchemeDependencyException(parent.component
+                + " can't be its own parent!");
+        int lower = child.order;
+        int upper = parent.order;
+        if (upper < lower)
+            return;
+        epoch++;
+        // the descendants of child numbered up to parent
+        ArrayList<Node> forward = new ArrayList<Node>();
+        forward.add(child);
+        child.mark = epoch;
+        for (int i = 0; i < forward.size(); i++) {
+            for (Node n : forward.get(i).out) {
+                if (n == parent)
+                    throw new SchemeDependencyException("Adding "
+                        + child.component + " as child of " + parent.component
+                        + " would close a cycle!");
+                if (n.mark != epoch && n.order < upper) {
+                    n.mark = epoch;
+                    forward.add(n);
+                }
+            }
+        }
+        // the ancestors of parent numbered down to child
+        ArrayList<Node> backward = new ArrayList<Node>();
+        backward.add(parent);
+        parent.mark = epoch;
+        for (int i = 0; i < backward.size(); i++) {
+            for (Node n : backward.get(i).in) {
+                if (n.mark != epoch && n.order > lower) {
+                    n.mark = epoch;
+                    backward.add(n);
+                }
+            }
+        }
+        // reuse their numbers, ancestors first
+        Node[] f = forward.toArray(new Node[forward.size()]);
+        Node[] b = backward.toArray(new Node[backward.size()]);
+        Arrays.sort(f, BY_ORDER);
+        Arrays.sort(b, BY_ORDER);
+        int[] numbers = new int[f.length + b.length];
+        for (int i = 0; i < b.length; i++)
+            numbers[i] = b[i].order;
+        for (int i = 0; i < f.length; i++)
+            numbers[b.length + i] = f[i].order;
+        Arrays.sort(numbers);
+        for (int i = 0; i < b.length; i++)
+            b[i].order = numbers[i];
+        for (int i = 0; i < f.length; i++)
+            f[i].order = numbers[b.length + i];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.FamilyListener#relativeAdding(org.abos.schemes.
+     * SchemeComponent, int, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} Prevents additions closing a cycle.
+     * @since 1.0.0
+     */
+    @Override
+    public void relativeAdding(SchemeComponent source, int type,
+            SchemeComponent relative) {
+        if (suspended)
+            return;
+        Node s = track(source);
+        Node r = track(relative);
+        if (type == SchemeComponent.CHILD)
+            reorder(s, r);
+        else if (type == SchemeComponent.PARENT)
+            reorder(r, s);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.FamilyListener#familyChanged(org.abos.schemes.
+     * SchemeComponent, int, org.abos.schemes.SchemeComponent, boolean)
+     */
+    /**
+     * {@inheritDoc} Updates the edges, or records new edges while
+     * suspended.
+     * @since 1.0.0
+     */
+    @Override
+    public void familyChanged(SchemeComponent source, int type,
+            SchemeComponent relative, boolean added) {
+        if (type != SchemeComponent.PARENT && type != SchemeComponent.CHILD)
+            return;
+        if (suspended) {
+            SchemeComponent parent = type == SchemeComponent.CHILD ? source
+                    : relative;
+            SchemeComponent child = type == SchemeComponent.CHILD ? relative
+                    : source;
+            if (added) {
+                pendingParents.add(parent);
+                pendingChildren.add(child);
+                return;
+            }
+            Node p = nodes.get(parent);
+            Node c = nodes.get(child);
+            if (p != null && c != null && p.out.remove(c))
+                c.in.remove(p);
+            else
+                unrecord(parent, child);
+            return;
+        }
+        Node s = track(source);
+        Node r = added ? track(relative) : nodes.get(relative);
+        if (r == null)
+            return;
+        Node parent = type == SchemeComponent.CHILD ? s : r;
+        Node child = type == SchemeComponent.CHILD ? r : s;
+        if (added) {
+            // usually done already by relativeAdding
+            reorder(parent, child);
+            link(parent, child);
+        }
+        else {
+            parent.out.remove(child);
+            child.in.remove(parent);
+        }
+    }
+
+}
@@ -0,0 +1,467 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Breadth first searches through the families of scheme components which
+ * allocate nothing. Instead of collecting the visited components in a set,
+ * each search gets a new epoch and stamps it into the
+ * {@link AbstractSchemeComponent#visitEpoch} of the components it visits,
+ * so a component was visited by the current search if its stamp equals the
+ * current epoch. The frontier is kept in an array reused by all searches,
+ * and families are read by index where possible. Searches between two
+ * components run from both ends, see {@link #connects(SchemeComponent,
+ * SchemeComponent, DynamicTopologicalOrder)}. <br>
+ * Since the stamps are stored in the components, only one search can use
+ * them at a time. The shared engine is claimed by compare-and-set, a search
+ * started while it is claimed, for example by another thread, uses an
+ * engine of its own with an identity set instead of stamps. Components not
+ * extending {@link AbstractSchemeComponent} are collected in an identity set
+ * as well. Epochs are <code>long</code>s, so they never repeat. <br>
+ * This class is not thread-safe, but {@link #search(SchemeComponent,
+ * Collection, int)} is.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see AbstractSchemeComponent#isInSuperCollectionOf(SchemeComponent,
+ * Collection, int)
+ */
+final class EpochTraversal {
+
+    /**
+     * If the shared engine is claimed by a search.
+     *
+     * @since 1.0.0
+     */
+    private static final AtomicBoolean CLAIMED = new AtomicBoolean(false);
+
+    /**
+     * The engine stamping the components, only used while claimed.
+     *
+     * @since 1.0.0
+     */
+    private static final EpochTraversal SHARED = new EpochTraversal(true);
+
+    /**
+     * If this engine stamps the components.
+     *
+     * @since 1.0.0
+     */
+    private final boolean stamping;
+
+    /**
+     * The epoch of the current search, <code>0</code> if this engine doesn't
+     * stamp. Components visited forward are stamped with the epoch, those
+     * visited backward with the epoch plus one, so epochs grow by two.
+     *
+     * @since 1.0.0
+     */
+    private long epoch = 0;
+
+    /**
+     * The components visited forward which aren't stamped,
+     * <code>null</code> if there are none.
+     *
+     * @since 1.0.0
+     */
+    private Set<SchemeComponent> visited = null;
+
+    /**
+     * The components visited backward which aren't stamped,
+     * <code>null</code> if there are none.
+     *
+     * @since 1.0.0
+     */
+    private Set<SchemeComponent> backVisited = null;
+
+    /**
+     * The components found forward in the current search, in the order
+     * found. Kept between searches, without the components.
+     *
+     * @since 1.0.0
+     */
+    private SchemeComponent[] queue = new SchemeComponent[64];
+
+    /**
+     * The number of components found forward in the current search.
+     *
+     * @since 1.0.0
+     */
+    private int tail = 0;
+
+    /**
+     * The components found backward in the current search, in the order
+     * found. Kept between searches, without the components.
+     *
+     * @since 1.0.0
+     */
+    private SchemeComponent[] backQueue = new SchemeComponent[64];
+
+    /**
+     * The number of components found backward in the current search.
+     *
+     * @since 1.0.0
+     */
+    private int backTail = 0;
+
+    /**
+     * The topological order pruning the current search, <code>null</code>
+     * if there is none.
+     *
+     * @since 1.0.0
+     */
+    private DynamicTopologicalOrder order = null;
+
+    /**
+     * The topological number of the start of the current search,
+     * <code>-1</code> if unknown.
+     *
+     * @since 1.0.0
+     */
+    private int fromRank = -1;
+
+    /**
+     * The topological number of the target of the current search,
+     * <code>-1</code> if unknown.
+     *
+     * @since 1.0.0
+     */
+    private int toRank = -1;
+
+    /**
+     * Creates an engine.
+     * @param stamping if the engine stamps the components
+     *
+     * @since 1.0.0
+     */
+    private EpochTraversal(boolean stamping) {
+        this.stamping = stamping;
+    }
+
+    /**
+     * Tells if a component is found by going through families of the given
+     * type, starting with the given components. Components are compared by
+     * {@link Object#equals(Object)}, but each is visited once by identity.
+     * @param target the component to look for
+     * @param start the components to start with
+     * @param type the type of family to follow, see
+     * {@link SchemeComponent#iterator(int)}
+     * @return <code>true</code> if <code>target</code> was found
+     * @throws IndexOutOfBoundsException If <code>type</code> is invalid.
+     *
+     * @since 1.0.0
+     */
+    static boolean search(SchemeComponent target,
+            Collection<? extends SchemeComponent> start, int type) {
+        if (type != SchemeComponent.PARENT && type != SchemeComponent.CHILD)
+            throw new IndexOutOfBoundsException("Illegal iterator type!");
+        if (!CLAIMED.compareAndSet(false, true))
+            return new EpochTraversal(false).run(target, start, type);
+        try {
+            return SHARED.run(target, start, type);
+        }
+        finally {
+            CLAIMED.set(false);
+        }
+    }
+
+    /**
+     * Tells if one component is an ancestor of another one, comparing by
+     * identity. The search runs from both ends at once, following the
+     * children of <code>from</code> and the parents of <code>to</code>, and
+     * always goes on with the side having less components pending, until
+     * both sides meet. If a topological order of both components is given,
+     * the forward side skips components numbered after <code>to</code> and
+     * the backward side those numbered before <code>from</code>, since no
+     * path can pass them.
+     * @param from the possible ancestor
+     * @param to the possible descendant
+     * @param order a topological order of the components, may be
+     * <code>null</code>
+     * @return <code>true</code> if there is a path from <code>from</code>
+     * to <code>to</code> of at least one edge
+     *
+     * @since 1.0.0
+     */
+    static boolean connects(SchemeComponent from, SchemeComponent to,
+            DynamicTopologicalOrder order) {
+        if (!CLAIMED.compareAndSet(false, true))
+            return new EpochTraversal(false).meet(from, to, order);
+        try {
+            return SHARED.meet(from, to, order);
+        }
+        finally {
+            CLAIMED.set(false);
+        }
+    }
+
+    /**
+     * Runs a search with this engine.
+     * @param target the component to look for
+     * @param start the components to start with
+     * @param type the type of family to follow
+     * @return <code>true</code> if <code>target</code> was found
+     *
+     * @since 1.0.0
+     */
+    private boolean run(SchemeComponent target,
+            Collection<? extends SchemeComponent> start, int type) {
+        if (stamping)
+            epoch += 2;
+        try {
+            offerAll(start, false);
+            for (int head = 0; head < tail; head++) {
+                SchemeComponent checking = queue[head];
+                if (checking == target || target.equals(checking))
+                    return true;
+                offerFamily(checking, type, false);
+            }
+            return false;
+        }
+        finally {
+            reset();
+        }
+    }
+
+    /**
+     * Runs a search from both ends with this engine, see
+     * {@link #connects(SchemeComponent, SchemeComponent,
+     * DynamicTopologicalOrder)}.
+     * @param from the possible ancestor
+     * @param to the possible descendant
+     * @param order a topological order, may be <code>null</code>
+     * @return <code>true</code> if there is a path from <code>from</code>
+     * to <code>to</code>
+     *
+     * @since 1.0.0
+     */
+    private boolean meet(SchemeComponent from, SchemeComponent to,
+            DynamicTopologicalOrder order) {
+        if (stamping)
+            epoch += 2;
+        try {
+            if (order != null) {
+                fromRank = order.orderOf(from);
+                toRank = order.orderOf(to);
+                // tracked components are acyclic
+                if (fromRank >= 0 && toRank >= 0 && fromRank >= toRank)
+                    return false;
+                this.order = order;
+            }
+            mark(from, false);
+            if (from != to) // else the path has to be a cycle
+                mark(to, true);
+            if (offerFamily(from, SchemeComponent.CHILD, false)
+                    || offerFamily(to, SchemeComponent.PARENT, true))
+                return true;
+            int head = 0;
+            int backHead = 0;
+            while (head < tail && backHead < backTail) {
+                boolean met;
+                if (tail - head <= backTail - backHead)
+                    met = offerFamily(queue[head++], SchemeComponent.CHILD,
+                        false);
+                else
+                    met = offerFamily(backQueue[backHead++],
+                        SchemeComponent.PARENT, true);
+                if (met)
+                    return true;
+            }
+            return false;
+        }
+        finally {
+            reset();
+        }
+    }
+
+    /**
+     * Forgets the current search, keeping the grown queues.
+     *
+     * @since 1.0.0
+     */
+    private void reset() {
+        Arrays.fill(queue, 0, tail, null);
+        Arrays.fill(backQueue, 0, backTail, null);
+        tail = 0;
+        backTail = 0;
+        visited = null;
+        backVisited = null;
+        order = null;
+        fromRank = -1;
+        toRank = -1;
+    }
+
+    /**
+     * Offers the relatives of the given type of a component, reading the
+     * family of an {@link AbstractSchemeComponent} directly.
+     * @param c the component
+     * @param type the type of family to follow
+     * @param backward if the search goes backward
+     * @return <code>true</code> if a relative was visited by the other side
+     *
+     * @since 1.0.0
+     */
+    private boolean offerFamily(SchemeComponent c, int type,
+            boolean backward) {
+        if (c instanceof AbstractSchemeComponent)
+            return offerAll(((AbstractSchemeComponent)c).family(type),
+                backward);
+        Iterator<? extends SchemeComponent> it = c.iterator(type);
+        while (it.hasNext())
+            if (offer(it.next(), backward))
+                return true;
+        return false;
+    }
+
+    /**
+     * Offers all components of a collection, reading lists by index if
+     * possible.
+     * @param family the components to offer
+     * @param backward if the search goes backward
+     * @return <code>true</code> if a component was visited by the other side
+     *
+     * @since 1.0.0
+     */
+    private boolean offerAll(Collection<? extends SchemeComponent> family,
+            boolean backward) {
+        if (family instanceof CopyOnWriteFamilyList) {
+            // the current array, since get might run out of a shrinking list
+            for (SchemeComponent c : ((CopyOnWriteFamilyList)family).array())
+                if (offer(c, backward))
+                    return true;
+        }
+        else if (family instanceof RandomAccess) {
+            List<? extends SchemeComponent> list =
+                (List<? extends SchemeComponent>)family;
+            for (int i = 0; i < list.size(); i++)
+                if (offer(list.get(i), backward))
+                    return true;
+        }
+        else
+            for (SchemeComponent c : family)
+                if (offer(c, backward))
+                    return true;
+        return false;
+    }
+
+    /**
+     * Marks a component as visited by one side without queueing it.
+     * @param c the component
+     * @param backward if the backward side visited it
+     *
+     * @since 1.0.0
+     */
+    private void mark(SchemeComponent c, boolean backward) {
+        if (stamping && c instanceof AbstractSchemeComponent)
+            ((AbstractSchemeComponent)c).visitEpoch = backward ? epoch + 1
+                    : epoch;
+        else if (backward) {
+            if (backVisited == null)
+                backVisited = newIdentitySet();
+            backVisited.add(c);
+        }
+        else {
+            if (visited == null)
+                visited = newIdentitySet();
+            visited.add(c);
+        }
+    }
+
+    /**
+     * Adds a component to the queue of one side if it wasn't visited by
+     * this side yet and isn't pruned, and marks it as visited.
+     * @param c the component found, may be <code>null</code>
+     * @param backward if the search goes backward
+     * @return <code>true</code> if <code>c</code> was visited by the other
+     * side, so both sides met
+     *
+     * @since 1.0.0
+     */
+    private boolean offer(SchemeComponent c, boolean backward) {
+        if (c == null)
+            return false;
+        if (stamping && c instanceof AbstractSchemeComponent) {
+            AbstractSchemeComponent asc = (AbstractSchemeComponent)c;
+            long own = backward ? epoch + 1 : epoch;
+            if (asc.visitEpoch == own)
+                return false;
+            if (asc.visitEpoch == (backward ? epoch : epoch + 1))
+                return true;
+            if (isPruned(c, backward))
+                return false;
+            asc.visitEpoch = own;
+        }
+        else {
+            Set<SchemeComponent> other = backward ? visited : backVisited;
+            if (other != null && other.contains(c))
+                return true;
+            if (isPruned(c, backward))
+                return false;
+            if (backward) {
+                if (backVisited == null)
+                    backVisited = newIdentitySet();
+                if (!backVisited.add(c))
+                    return false;
+            }
+            else {
+                if (visited == null)
+                    visited = newIdentitySet();
+                if (!visited.add(c))
+                    return false;
+            }
+        }
+        if (backward) {
+            if (backTail == backQueue.length)
+                backQueue = Arrays.copyOf(backQueue, 2 * backTail);
+            backQueue[backTail++] = c;
+        }
+        else {
+            if (tail == queue.length)
+                queue = Arrays.copyOf(queue, 2 * tail);
+            queue[tail++] = c;
+        }
+        return false;
+    }
+
+    /**
+     * Tells if a component can't be on a path between both ends of the
+     * current search, according to the topological order.
+     * @param c the component found
+     * @param backward if it was found backward
+     * @return <code>true</code> if <code>c</code> can be skipped
+     *
+     * @since 1.0.0
+     */
+    private boolean isPruned(SchemeComponent c, boolean backward) {
+        if (order == null)
+            return false;
+        int rank = order.orderOf(c);
+        if (rank < 0)
+            return false;
+        return backward ? fromRank >= 0 && rank <= fromRank
+                : toRank >= 0 && rank >= toRank;
+    }
+
+    /**
+     * Creates an empty identity set.
+     * @return a new set comparing by identity
+     *
+     * @since 1.0.0
+     */
+    private static Set<SchemeComponent> newIdentitySet() {
+        return Collections.newSetFromMap(
+            new IdentityHashMap<SchemeComponent, Boolean>());
+    }
+
+}
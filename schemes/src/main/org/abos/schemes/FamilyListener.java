@@ -0,0 +1,53 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * A listener to be notified whenever the family of a scheme component
+ * changes, that means whenever a parent or a child is added or removed.
+ * Schemes use this to keep track of their roots and leaves without
+ * revalidating them completely. Listeners are also asked before a parent or
+ * child is added, so they can prevent it.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see SchemeComponent#addFamilyListener(FamilyListener)
+ */
+public interface FamilyListener {
+
+    /**
+     * Called before a parent or child is added to a scheme component. The
+     * listener can prevent the addition by throwing an exception, the family
+     * stays unchanged then.
+     * @param source the component whose family is about to change
+     * @param type {@link SchemeComponent#PARENT} if a parent is about to be
+     * added to <code>source</code>, {@link SchemeComponent#CHILD} if it's a
+     * child
+     * @param relative the parent or child about to be added, not
+     * <code>null</code>
+     * @throws SchemeException If the addition must not happen.
+     *
+     * @since 1.0.0
+     *
+     * @see DynamicTopologicalOrder
+     */
+    public void relativeAdding(SchemeComponent source, int type,
+            SchemeComponent relative);
+
+    /**
+     * Called after the family of a scheme component changed.
+     * @param source the component whose family changed
+     * @param type {@link SchemeComponent#PARENT} if a parent of
+     * <code>source</code> was added or removed,
+     * {@link SchemeComponent#CHILD} if it was a child
+     * @param relative the parent or child which was added or removed
+     * @param added <code>true</code> if <code>relative</code> was added,
+     * <code>false</code> if it was removed
+     *
+     * @since 1.0.0
+     */
+    public void familyChanged(SchemeComponent source, int type,
+            SchemeComponent relative, boolean added);
+
+}
@@ -0,0 +1,368 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of checking the families of all components of a scheme at
+ * once. A component has an invalid family if it lies on a cycle of its
+ * children or of its parents, or if it lists a parent or child which doesn't
+ * list it back, see {@link SchemeComponent#hasValidFamily()}. Other than
+ * asking each component, which searches the whole family of each component
+ * again, the report is computed in one pass over a snapshot of the families,
+ * taking <tt>O(V+E)</tt> time for <tt>V</tt> components and <tt>E</tt>
+ * listings. <br>
+ * Besides the components of the scheme with invalid families, the report
+ * contains the cycles and the one-sided links causing them, as far as they
+ * concern at least one component of the scheme. Components are compared by
+ * identity. The report doesn't change if the families change afterwards.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see Scheme#getFamilyReport()
+ */
+public final class FamilyReport {
+
+    /**
+     * A link between a parent and a child which only one of them lists.
+     *
+     * @author Sebastian Koch
+     * @version 1.0.0
+     * @since 1.0.0
+     */
+    public static final class Link {
+
+        /**
+         * The parent.
+         *
+         * @since 1.0.0
+         */
+        private final SchemeComponent parent;
+
+        /**
+         * The child.
+         *
+         * @since 1.0.0
+         */
+        private final SchemeComponent child;
+
+        /**
+         * If the parent lists the child, else the child lists the parent.
+         *
+         * @since 1.0.0
+         */
+        private final boolean listedByParent;
+
+        /**
+         * Creates a new one-sided link.
+         * @param parent the parent
+         * @param child the child
+         * @param listedByParent if the parent lists the child, else the
+         * child lists the parent
+         *
+         * @since 1.0.0
+         */
+        Link(SchemeComponent parent, SchemeComponent child,
+                boolean listedByParent) {
+            this.parent = parent;
+            this.child = child;
+            this.listedByParent = listedByParent;
+        }
+
+        /**
+         * Returns the parent of this link.
+         * @return the parent
+         *
+         * @since 1.0.0
+         */
+        public SchemeComponent getParent() {
+            return parent;
+        }
+
+        /**
+         * Returns the child of this link.
+         * @return the child
+         *
+         * @since 1.0.0
+         */
+        public SchemeComponent getChild() {
+            return child;
+        }
+
+        /**
+         * Tells which side of this link lists the other.
+         * @return <code>true</code> if the parent lists the child but the
+         * child doesn't list the parent, <code>false</code> if it is the
+         * other way round
+         *
+         * @since 1.0.0
+         */
+        public boolean isListedByParent() {
+            return listedByParent;
+        }
+
+        /*
+         * (non-JavaDoc)
+         *
+         * @see java.lang.Object#toString()
+         */
+        /**
+         * {@inheritDoc}
+         * @since 1.0.0
+         */
+        @Override
+        public String toString() {
+            return listedByParent ? parent + " -> " + child
+                    : child + " <- " + parent;
+        }
+
+    }
+
+    /**
+     * The components of the scheme with invalid families.
+     *
+     * @since 1.0.0
+     */
+    private final List<SchemeComponent> invalidComponents;
+
+    /**
+     * The cycles, each as strongly connected group of components.
+     *
+     * @since 1.0.0
+     */
+    private final List<List<SchemeComponent>> cycles;
+
+    /**
+     * The links only listed by one side.
+     *
+     * @since 1.0.0
+     */
+    private final List<Link> asymmetricLinks;
+
+    /**
+     * Checks the families of the members of the given snapshot.
+     * @param graph the snapshot of the scheme
+     *
+     * @since 1.0.0
+     */
+    FamilyReport(CompactGraph graph) {
+        int n = graph.size();
+        int m = graph.memberCount;
+        boolean[] invalid = new boolean[n];
+        List<List<SchemeComponent>> foundCycles =
+            new ArrayList<List<SchemeComponent>>();
+        // cycles of children, then cycles of parents not found already
+        int[] childComponent = graph.strongComponents();
+        boolean[] childCyclic = cyclicComponents(graph, childComponent,
+            graph.childOffsets, graph.childTargets);
+        collectCycles(graph, childComponent, childCyclic, null, null,
+            invalid, foundCycles);
+        int[] parentComponent = graph.strongComponents(graph.parentOffsets,
+            graph.parentTargets);
+        boolean[] parentCyclic = cyclicComponents(graph, parentComponent,
+            graph.parentOffsets, graph.parentTargets);
+        collectCycles(graph, parentComponent, parentCyclic, childComponent,
+            childCyclic, invalid, foundCycles);
+        // links: compare who lists v as child with whom v lists as parent
+        List<Link> foundLinks = new ArrayList<Link>();
+        int[][] childIn = graph.reverse(graph.childOffsets,
+            graph.childTargets);
+        int[] inOffsets = childIn[0];
+        int[] inTargets = childIn[1];
+        int[] listedAsParent = new int[n];
+        int[] listingAsChild = new int[n];
+        Arrays.fill(listedAsParent, -1);
+        Arrays.fill(listingAsChild, -1);
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.parentOffsets[v];
+                    e < graph.parentOffsets[v + 1]; e++)
+                listedAsParent[graph.parentTargets[e]] = v;
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++)
+                listingAsChild[inTargets[e]] = v;
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+                int u = inTargets[e];
+                if (listedAsParent[u] == v)
+                    continue;
+                listedAsParent[u] = v; // report each link once
+                if (u < m || v < m) {
+                    invalid[u] = true;
+                    foundLinks.add(new Link(graph.nodes[u], graph.nodes[v],
+                        true));
+                }
+            }
+            for (int e = graph.parentOffsets[v];
+                    e < graph.parentOffsets[v + 1]; e++) {
+                int p = graph.parentTargets[e];
+                if (listingAsChild[p] == v)
+                    continue;
+                listingAsChild[p] = v;
+                if (p < m || v < m) {
+                    invalid[v] = true;
+                    foundLinks.add(new Link(graph.nodes[p], graph.nodes[v],
+                        false));
+                }
+            }
+        }
+        List<SchemeComponent> foundInvalid = new ArrayList<SchemeComponent>();
+        for (int i = 0; i < m; i++)
+            if (invalid[i])
+                foundInvalid.add(graph.nodes[i]);
+        invalidComponents = Collections.unmodifiableList(foundInvalid);
+        cycles = Collections.unmodifiableList(foundCycles);
+        asymmetricLinks = Collections.unmodifiableList(foundLinks);
+    }
+
+    /**
+     * Determines which strongly connected components contain a cycle.
+     * @param graph the snapshot
+     * @param component the strongly connected components of the edges
+     * @param offsets the offsets of the edges
+     * @param targets the targets of the edges
+     * @return for each strongly connected component, if it contains a cycle
+     *
+     * @since 1.0.0
+     */
+    private static boolean[] cyclicComponents(CompactGraph graph,
+            int[] component, int[] offsets, int[] targets) {
+        int n = graph.size();
+        int[] sizes = graph.componentSizes(component);
+        boolean[] cyclic = new boolean[sizes.length];
+        for (int c = 0; c < sizes.length; c++)
+            cyclic[c] = sizes[c] > 1;
+        for (int v = 0; v < n; v++)
+            for (int e = offsets[v]; e < offsets[v + 1]; e++)
+                if (targets[e] == v)
+                    cyclic[component[v]] = true;
+        return cyclic;
+    }
+
+    /**
+     * Adds the cyclic strongly connected components containing at least one
+     * member to the found cycles and marks their members as invalid.
+     * Components already found as other strongly connected components are
+     * skipped.
+     * @param graph the snapshot
+     * @param component the strongly connected components
+     * @param cyclic which strongly connected components are cyclic
+     * @param known the strongly connected components found before, may be
+     * <code>null</code>
+     * @param knownCyclic which of the components found before are cyclic,
+     * may be <code>null</code> if <code>known</code> is
+     * @param invalid the invalid ids
+     * @param found the cycles found
+     *
+     * @since 1.0.0
+     */
+    private static void collectCycles(CompactGraph graph, int[] component,
+            boolean[] cyclic, int[] known, boolean[] knownCyclic,
+            boolean[] invalid, List<List<SchemeComponent>> found) {
+        int n = graph.size();
+        int count = cyclic.length;
+        List<List<SchemeComponent>> groups =
+            new ArrayList<List<SchemeComponent>>(count);
+        boolean[] withMember = new boolean[count];
+        // a group equals a known one if all nodes share the known group
+        int[] knownGroup = new int[count];
+        Arrays.fill(knownGroup, -1);
+        int[] knownSizes = known == null ? null : graph.componentSizes(known);
+        for (int c = 0; c < count; c++)
+            groups.add(null);
+        for (int v = 0; v < n; v++) {
+            int c = component[v];
+            if (!cyclic[c])
+                continue;
+            if (v < graph.memberCount) {
+                withMember[c] = true;
+                invalid[v] = true;
+            }
+            if (groups.get(c) == null)
+                groups.set(c, new ArrayList<SchemeComponent>(2));
+            groups.get(c).add(graph.nodes[v]);
+            if (known != null) {
+                if (knownGroup[c] == -1)
+                    knownGroup[c] = knownCyclic[known[v]] ? known[v] : -2;
+                else if (knownGroup[c] != known[v])
+                    knownGroup[c] = -2;
+            }
+        }
+        for (int c = 0; c < count; c++) {
+            if (!withMember[c])
+                continue;
+            List<SchemeComponent> group = groups.get(c);
+            if (known != null && knownGroup[c] >= 0
+                    && knownSizes[knownGroup[c]] == group.size())
+                continue;
+            found.add(Collections.unmodifiableList(group));
+        }
+    }
+
+    /**
+     * Tells if all components of the scheme have valid families.
+     * @return <code>true</code> if the scheme is valid
+     *
+     * @since 1.0.0
+     *
+     * @see Scheme#allFamiliesValid()
+     */
+    public boolean isValid() {
+        return invalidComponents.isEmpty();
+    }
+
+    /**
+     * Returns the components of the scheme whose families are invalid, in
+     * the order of the scheme, each once.
+     * @return an unmodifiable list of the components with invalid families
+     *
+     * @since 1.0.0
+     */
+    public List<SchemeComponent> getInvalidComponents() {
+        return invalidComponents;
+    }
+
+    /**
+     * Returns the cycles among the families touching the scheme. Each cycle
+     * is given as the group of all components which are mutual ancestors,
+     * which may consist of several intertwined cycles, or as a single
+     * component being its own child or parent. Cycles of parents are only
+     * listed if they differ from the cycles of children.
+     * @return an unmodifiable list of cycles, each an unmodifiable list of
+     * components
+     *
+     * @since 1.0.0
+     */
+    public List<List<SchemeComponent>> getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Returns the links between parents and children touching the scheme
+     * which only one side lists, each once.
+     * @return an unmodifiable list of the one-sided links
+     *
+     * @since 1.0.0
+     */
+    public List<Link> getAsymmetricLinks() {
+        return asymmetricLinks;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public String toString() {
+        return "FamilyReport[invalid=" + invalidComponents + ", cycles="
+                + cycles + ", asymmetric=" + asymmetricLinks + "]";
+    }
+
+}
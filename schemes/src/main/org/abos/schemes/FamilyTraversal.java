@@ -0,0 +1,236 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A breadth first traversal of the descendants or ancestors of a scheme
+ * component, returning each of them once. Components are identified by
+ * identity. A component is only returned if it is its own descendant, that
+ * is if it lies on a cycle. <br>
+ * Like a <code>Spliterator</code>, a traversal can give away half of its
+ * frontier by {@link #trySplit()}. Both traversals share the components
+ * visited, so together they still return each component once, and they can
+ * be continued in different threads, for example by the tasks of a
+ * {@link java.util.concurrent.ForkJoinPool} splitting their traversal
+ * before going on:
+ * <pre>
+ * class Sweep extends RecursiveAction {
+ *     FamilyTraversal traversal;
+ *     protected void compute() {
+ *         FamilyTraversal other = traversal.trySplit();
+ *         if (other != null)
+ *             new Sweep(other).fork();
+ *         while (traversal.hasNext())
+ *             process(traversal.next());
+ *     }
+ * }
+ * </pre>
+ * The families mustn't change during the traversal. A single traversal
+ * isn't thread-safe, only traversals split from each other can be used
+ * concurrently.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#descendants(SchemeComponent)
+ * @see ArrayScheme#ancestors(SchemeComponent)
+ */
+public final class FamilyTraversal implements Iterator<SchemeComponent> {
+
+    /**
+     * The type of family to follow, either {@link SchemeComponent#CHILD} or
+     * {@link SchemeComponent#PARENT}.
+     *
+     * @since 1.0.0
+     */
+    private final int type;
+
+    /**
+     * The components found but not returned yet.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayDeque<SchemeComponent> frontier;
+
+    /**
+     * The components found by this traversal or any traversal split from
+     * it. Synchronized after the first split.
+     *
+     * @since 1.0.0
+     */
+    private Set<SchemeComponent> visited;
+
+    /**
+     * If {@link #visited} is shared with other traversals.
+     *
+     * @since 1.0.0
+     */
+    private boolean shared;
+
+    /**
+     * Creates a traversal starting with the relatives of the given type of a
+     * component.
+     * @param start the component to start from
+     * @param type the type of family to follow
+     * @throws NullPointerException If <code>start</code> is
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    private FamilyTraversal(SchemeComponent start, int type) {
+        if (start == null)
+            throw new NullPointerException();
+        this.type = type;
+        frontier = new ArrayDeque<SchemeComponent>();
+        visited = Collections.newSetFromMap(
+            new IdentityHashMap<SchemeComponent, Boolean>());
+        shared = false;
+        expand(start);
+    }
+
+    /**
+     * Creates a traversal sharing the visited components of another one.
+     * @param other the traversal split from
+     *
+     * @since 1.0.0
+     */
+    private FamilyTraversal(FamilyTraversal other) {
+        type = other.type;
+        frontier = new ArrayDeque<SchemeComponent>();
+        visited = other.visited;
+        shared = true;
+    }
+
+    /**
+     * Returns a traversal of all descendants of a component.
+     * @param c the component whose descendants to traverse
+     * @return a new traversal of the descendants of <code>c</code>
+     * @throws NullPointerException If <code>c</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isAncestorOf(SchemeComponent)
+     */
+    public static FamilyTraversal descendants(SchemeComponent c) {
+        return new FamilyTraversal(c, SchemeComponent.CHILD);
+    }
+
+    /**
+     * Returns a traversal of all ancestors of a component.
+     * @param c the component whose ancestors to traverse
+     * @return a new traversal of the ancestors of <code>c</code>
+     * @throws NullPointerException If <code>c</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isDescendantOf(SchemeComponent)
+     */
+    public static FamilyTraversal ancestors(SchemeComponent c) {
+        return new FamilyTraversal(c, SchemeComponent.PARENT);
+    }
+
+    /**
+     * Adds the relatives of a component to the frontier, if they weren't
+     * visited before.
+     * @param c the component to expand
+     *
+     * @since 1.0.0
+     */
+    private void expand(SchemeComponent c) {
+        Iterator<? extends SchemeComponent> it = c.iterator(type);
+        while (it.hasNext()) {
+            SchemeComponent next = it.next();
+            if (visited.add(next))
+                frontier.addLast(next);
+        }
+    }
+
+    /**
+     * Splits off half of the frontier into a new traversal. Afterwards this
+     * traversal and the returned one together return the components this
+     * traversal would have returned, each once.
+     * @return the new traversal, or <code>null</code> if the frontier is too
+     * small to be split
+     *
+     * @since 1.0.0
+     */
+    public FamilyTraversal trySplit() {
+        int half = frontier.size() / 2;
+        if (half == 0)
+            return null;
+        if (!shared) {
+            visited = Collections.synchronizedSet(visited);
+            shared = true;
+        }
+        FamilyTraversal other = new FamilyTraversal(this);
+        for (int i = 0; i < half; i++)
+            other.frontier.addLast(frontier.pollFirst());
+        return other;
+    }
+
+    /**
+     * Returns the number of components found but not returned yet. The
+     * traversal returns at least this many components.
+     * @return the size of the frontier
+     *
+     * @since 1.0.0
+     */
+    public int frontierSize() {
+        return frontier.size();
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.Iterator#hasNext()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean hasNext() {
+        return !frontier.isEmpty();
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.Iterator#next()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public SchemeComponent next() {
+        SchemeComponent c = frontier.pollFirst();
+        if (c == null)
+            throw new NoSuchElementException();
+        expand(c);
+        return c;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.Iterator#remove()
+     */
+    /**
+     * Not supported.
+     * @throws UnsupportedOperationException Always.
+     * @since 1.0.0
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+}
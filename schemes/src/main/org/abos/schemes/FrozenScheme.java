@@ -0,0 +1,541 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable implementation of the {@link Scheme} interface for read-heavy
+ * workloads. At construction, the components and their families are compiled
+ * into a compressed sparse row structure, so components get <code>int</code>
+ * ids and parents and children are stored as <code>int</code> arrays. Lookups
+ * of ancestors and descendants as well as iteration, roots and leaves then
+ * work on primitive arrays instead of following the families of the
+ * components. <br>
+ * The snapshot includes all components associated to the components of the
+ * scheme. Families changed after the construction aren't reflected, so
+ * components unknown to the snapshot have neither ancestors nor descendants
+ * in it. In contrast to {@link SchemeComponent#isAncestorOf(SchemeComponent)}
+ * components are identified by identity, not by
+ * {@link Object#equals(Object)}. Each component is contained only once, even
+ * if the original scheme contained it multiple times. <br>
+ * All methods modifying the scheme throw an
+ * <code>UnsupportedOperationException</code>. Since nothing changes, this
+ * class is thread-safe as long as no families are changed concurrently
+ * while constructing.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#freeze()
+ */
+public class FrozenScheme<E extends SchemeComponent> extends
+AbstractCollection<E> implements Scheme<E> {
+
+    /**
+     * The compiled families of the components.
+     *
+     * @since 1.0.0
+     */
+    private final CompactGraph graph;
+
+    /**
+     * The components of this scheme for lookups by equality.
+     *
+     * @since 1.0.0
+     *
+     * @see #contains(Object)
+     */
+    private final HashSet<Object> lookup;
+
+    /**
+     * The ids of the roots, in the order of the components.
+     *
+     * @since 1.0.0
+     */
+    private final int[] rootIds;
+
+    /**
+     * The ids of the leaves, in the order of the components.
+     *
+     * @since 1.0.0
+     */
+    private final int[] leafIds;
+
+    /**
+     * Compiles the given components into a frozen scheme. The components
+     * keep the order of the collection's iterator.
+     * @param c the components of the new scheme
+     * @throws NullPointerException If <code>c</code> is or contains
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public FrozenScheme(Collection<? extends E> c) {
+        graph = new CompactGraph(c);
+        lookup = new HashSet<Object>(Math.max(16,
+            (int)(graph.memberCount / .75f) + 1));
+        int roots = 0;
+        int leaves = 0;
+        for (int i = 0; i < graph.memberCount; i++) {
+            lookup.add(graph.nodes[i]);
+            if (graph.parentOffsets[i] == graph.parentOffsets[i + 1])
+                roots++;
+            if (graph.childOffsets[i] == graph.childOffsets[i + 1])
+                leaves++;
+        }
+        rootIds = new int[roots];
+        leafIds = new int[leaves];
+        roots = 0;
+        leaves = 0;
+        for (int i = 0; i < graph.memberCount; i++) {
+            if (graph.parentOffsets[i] == graph.parentOffsets[i + 1])
+                rootIds[roots++] = i;
+            if (graph.childOffsets[i] == graph.childOffsets[i + 1])
+                leafIds[leaves++] = i;
+        }
+    }
+
+    /**
+     * Returns the component with the given id.
+     * @param id the id of a member
+     * @return the component with the given id
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // members are of type E
+    private E member(int id) {
+        return (E)graph.nodes[id];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int size() {
+        return graph.memberCount;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Takes constant time.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(Object o) {
+        return lookup.contains(o);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#iterator()
+     */
+    /**
+     * {@inheritDoc} The iterator doesn't support removal.
+     * @since 1.0.0
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < graph.memberCount;
+            }
+
+            @Override
+            public E next() {
+                if (next >= graph.memberCount)
+                    throw new NoSuchElementException();
+                return member(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getRoots()
+     */
+    /**
+     * {@inheritDoc} The roots are ordered like the components of this scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public List<E> getRoots() {
+        List<E> roots = new ArrayList<E>(rootIds.length);
+        for (int id : rootIds)
+            roots.add(member(id));
+        return roots;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getRoot(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public E getRoot(int index) {
+        return member(rootIds[index]);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLeaves()
+     */
+    /**
+     * {@inheritDoc} The leaves are ordered like the components of this
+     * scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public List<E> getLeaves() {
+        List<E> leaves = new ArrayList<E>(leafIds.length);
+        for (int id : leafIds)
+            leaves.add(member(id));
+        return leaves;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLeaf(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public E getLeaf(int index) {
+        return member(leafIds[index]);
+    }
+
+    /**
+     * Tells if one component is an ancestor of another one, as it was at the
+     * time of freezing. This is computed by a search over primitive arrays.
+     * @param ancestor the possible ancestor
+     * @param descendant the possible descendant
+     * @return <code>true</code> if <code>ancestor</code> is an ancestor of
+     * <code>descendant</code>
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isAncestorOf(SchemeComponent)
+     */
+    public boolean isAncestorOf(SchemeComponent ancestor,
+            SchemeComponent descendant) {
+        int from = graph.idOf(ancestor);
+        int to = graph.idOf(descendant);
+        if (from < 0 || to < 0)
+            return false;
+        return graph.reaches(from, to);
+    }
+
+    /**
+     * Tells if one component is a descendant of another one, as it was at
+     * the time of freezing. This is computed by a search over primitive
+     * arrays.
+     * @param descendant the possible descendant
+     * @param ancestor the possible ancestor
+     * @return <code>true</code> if <code>descendant</code> is a descendant of
+     * <code>ancestor</code>
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isDescendantOf(SchemeComponent)
+     */
+    public boolean isDescendantOf(SchemeComponent descendant,
+            SchemeComponent ancestor) {
+        return isAncestorOf(ancestor, descendant);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#containsAncestorOf(org.abos.schemes.
+     * SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} This is computed by a single search through the
+     * ancestors of <code>e</code>, stopping at the first component of this
+     * scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsAncestorOf(E e) {
+        int id = graph.idOf(e);
+        if (id < 0)
+            return false;
+        return graph.search(id, -1, graph.parentOffsets,
+            graph.parentTargets) >= 0;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#containsDescendantOf(org.abos.schemes.
+     * SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} This is computed by a single search through the
+     * descendants of <code>e</code>, stopping at the first component of this
+     * scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsDescendantOf(E e) {
+        int id = graph.idOf(e);
+        if (id < 0)
+            return false;
+        return graph.search(id, -1, graph.childOffsets,
+            graph.childTargets) >= 0;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#contains(org.abos.schemes.SchemeComponent,
+     * boolean)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(E e, boolean includeAncestors) {
+        return contains(e)
+                || (includeAncestors ? containsAncestorOf(e) : false);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#contains(org.abos.schemes.SchemeComponent,
+     * boolean, boolean)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(E e, boolean includeAncestors,
+            boolean includeDescendants) {
+        return contains(e)
+                || (includeAncestors ? containsAncestorOf(e) : false)
+                || (includeDescendants ? containsDescendantOf(e) : false);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#deepEquals(org.abos.schemes.Scheme)
+     */
+    /**
+     * {@inheritDoc} Compares the current families of the components.
+     * @since 1.0.0
+     *
+     * @see ArrayScheme#deepEquals(Scheme)
+     */
+    @Override
+    public boolean deepEquals(Scheme<E> scheme) {
+        return new ArrayScheme<E>(this).deepEquals(scheme);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#deepCopy()
+     */
+    /**
+     * {@inheritDoc} The copy is frozen as well.
+     * @since 1.0.0
+     *
+     * @see ArrayScheme#deepCopy()
+     */
+    @Override
+    public Scheme<E> deepCopy() throws CloneNotSupportedException {
+        return new FrozenScheme<E>(new ArrayScheme<E>(this).deepCopy());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#allFamiliesValid()
+     */
+    /**
+     * {@inheritDoc} This is computed on the families as they were at the time
+     * of freezing.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean allFamiliesValid() {
+        return getFamilyReport().isValid();
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getFamilyReport()
+     */
+    /**
+     * {@inheritDoc} This is computed on the families as they were at the time
+     * of freezing.
+     * @since 1.0.0
+     */
+    @Override
+    public FamilyReport getFamilyReport() {
+        return new FamilyReport(graph);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#validateRootsAndLeaves()
+     */
+    /**
+     * {@inheritDoc} Since a frozen scheme can't change, this method does
+     * nothing.
+     * @since 1.0.0
+     */
+    @Override
+    public void validateRootsAndLeaves() {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#addSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc} Since a frozen scheme can't change, listeners
+     * are never notified and aren't kept.
+     * @since 1.0.0
+     */
+    @Override
+    public void addSchemeListener(SchemeListener l) {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#removeSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void removeSchemeListener(SchemeListener l) {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getDepths()
+     */
+    /**
+     * {@inheritDoc} This is computed on the families as they were
+     * at the time of freezing.
+     * @since 1.0.0
+     */
+    @Override
+    public int[] getDepths() {
+        return Arrays.copyOf(graph.layers(), size());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getHeights()
+     */
+    /**
+     * {@inheritDoc} This is computed on the families as they were
+     * at the time of freezing.
+     * @since 1.0.0
+     */
+    @Override
+    public int[] getHeights() {
+        return Arrays.copyOf(graph.heights(), size());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(org.abos.
+     * schemes.SchemeComponent, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} This is computed on the families as they were
+     * at the time of freezing, so components
+     * unknown to the snapshot have no common ancestors.
+     * @since 1.0.0
+     */
+    @Override
+    public List<SchemeComponent> getLowestCommonAncestors(SchemeComponent a,
+            SchemeComponent b) {
+        return getLowestCommonAncestors(Collections.singletonList(a),
+            Collections.singletonList(b)).get(0);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(java.util.List,
+     * java.util.List)
+     */
+    /**
+     * {@inheritDoc} This is computed on the families as they were
+     * at the time of freezing.
+     * @since 1.0.0
+     */
+    @Override
+    public List<List<SchemeComponent>> getLowestCommonAncestors(
+            List<? extends SchemeComponent> a,
+            List<? extends SchemeComponent> b) {
+        return graph.lowestCommonAncestors(a, b);
+    }
+
+    /**
+     * Returns the components of this scheme as unmodifiable list.
+     * @return the components of this scheme
+     *
+     * @since 1.0.0
+     */
+    public List<E> asList() {
+        List<E> list = new ArrayList<E>(graph.memberCount);
+        for (int i = 0; i < graph.memberCount; i++)
+            list.add(member(i));
+        return Collections.unmodifiableList(list);
+    }
+
+}
@@ -0,0 +1,174 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Arrays;
+
+/**
+ * A map from objects to non-negative <code>int</code>s, comparing its keys by
+ * identity. It uses open addressing with linear probing, so no entry objects
+ * are allocated and values aren't boxed. Keys can't be removed, only the
+ * whole map can be cleared. <code>null</code> isn't permitted as key.<br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see java.util.IdentityHashMap
+ */
+final class IdentityIntMap {
+
+    /**
+     * The value returned for keys that aren't mapped.
+     *
+     * @since 1.0.0
+     */
+    static final int ABSENT = -1;
+
+    /**
+     * The keys, <code>null</code> marks a free slot.
+     *
+     * @since 1.0.0
+     */
+    private Object[] keys;
+
+    /**
+     * The values, at the same positions as their keys.
+     *
+     * @since 1.0.0
+     */
+    private int[] values;
+
+    /**
+     * The number of mappings.
+     *
+     * @since 1.0.0
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty map able to hold the expected number of mappings
+     * without resizing.
+     * @param expectedSize the expected number of mappings
+     *
+     * @since 1.0.0
+     */
+    IdentityIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < 2 * expectedSize)
+            capacity <<= 1;
+        keys = new Object[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Returns the slot to start probing at for the given key.
+     * @param key the key
+     * @param mask the capacity minus one
+     * @return the first slot to look at
+     *
+     * @since 1.0.0
+     */
+    private static int slot(Object key, int mask) {
+        int h = System.identityHashCode(key);
+        h ^= (h >>> 16);
+        return (h * 0x9E3779B9) & mask; // spread sequential hashes
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     * @param key the key to look up
+     * @return the value of <code>key</code>, or {@link #ABSENT}
+     *
+     * @since 1.0.0
+     */
+    int get(Object key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == key)
+                return values[i];
+            if (k == null)
+                return ABSENT;
+        }
+    }
+
+    /**
+     * Tells if the given key is mapped.
+     * @param key the key to look up
+     * @return <code>true</code> if <code>key</code> is mapped
+     *
+     * @since 1.0.0
+     */
+    boolean containsKey(Object key) {
+        return get(key) != ABSENT;
+    }
+
+    /**
+     * Maps the given key to the given value.
+     * @param key the key, not <code>null</code>
+     * @param value the value, not negative
+     * @return the former value of <code>key</code>, or {@link #ABSENT}
+     *
+     * @since 1.0.0
+     */
+    int put(Object key, int value) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length)
+            resize();
+        return ABSENT;
+    }
+
+    /**
+     * Doubles the capacity of this map.
+     *
+     * @since 1.0.0
+     */
+    private void resize() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null)
+                continue;
+            int i = slot(oldKeys[j], mask);
+            while (keys[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    /**
+     * Returns the number of mappings.
+     * @return the number of mappings
+     *
+     * @since 1.0.0
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all mappings.
+     *
+     * @since 1.0.0
+     */
+    void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+}
@@ -2,8 +2,9 @@
 package org.abos.schemes;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -28,10 +29,14 @@ import javax.xml.stream.XMLStreamReader;
  * <tt>sgn(x.compareTo(z)) != sgn(y.compareTo(z))</tt>. Furthermore, symmetry
  * and transitivity can only promised to be fulfilled if 
  * <tt>hasValidFamily() == true</tt>.<br>
+ * Name and description can be changed, which is reported to registered
+ * {@link InformationListener}s. Since this changes the hash code, too, 
+ * components shouldn't be changed while they are kept in hash based 
+ * collections, except for schemes listening to them.<br>
  * This class is not thread-safe.
  * 
  * @author Sebastian Koch
- * @version 1.0.0
+ * @version 1.2.0
  * @since 1.0.0
  * 
  * @see AbstractSchemeComponent
@@ -57,6 +62,31 @@ Comparable<InformationComponent> {
      */
     protected String description;
     
+    /**
+     * The cached hash code, <code>0</code> if it isn't computed yet. Reset 
+     * whenever {@link #name} or {@link #description} changes, so subclasses
+     * changing them directly must reset it too. Like the hash of a 
+     * <code>String</code>, it is computed again if it happens to be 
+     * <code>0</code>, and threads computing it concurrently store the same 
+     * value.
+     * 
+     * @since 1.2.0
+     * 
+     * @see #hashCode()
+     */
+    private transient int hash = 0;
+    
+    /**
+     * The information listeners of this component, <code>null</code> if 
+     * there are none. The array is replaced on every change, so listeners 
+     * can unregister themselves while being notified.
+     * 
+     * @since 1.1.0
+     * 
+     * @see #addInformationListener(InformationListener)
+     */
+    private InformationListener[] informationListeners = null;
+    
     /**
      * Creates an information component with empty name and description.
      * 
@@ -117,6 +147,113 @@ Comparable<InformationComponent> {
         return description;
     }
 
+    /**
+     * Changes the name of this component. Registered information listeners
+     * are notified if the name differs from the former one.
+     * @param name the new name
+     * 
+     * @since 1.1.0
+     * 
+     * @see #setInformation(String, String)
+     */
+    public void setName(String name) {
+        setInformation(name, description);
+    }
+
+    /**
+     * Changes the description of this component. Registered information 
+     * listeners are notified if the description differs from the former one.
+     * @param description the new description
+     * 
+     * @since 1.1.0
+     * 
+     * @see #setInformation(String, String)
+     */
+    public void setDescription(String description) {
+        setInformation(name, description);
+    }
+
+    /**
+     * Changes the name and the description of this component at once. 
+     * Registered information listeners are notified once if any of both 
+     * differs from the former one.
+     * @param name the new name
+     * @param description the new description
+     * 
+     * @since 1.1.0
+     * 
+     * @see InformationListener
+     */
+    public void setInformation(String name, String description) {
+        String formerName = this.name;
+        String formerDescription = this.description;
+        if ((name == null ? formerName == null : name.equals(formerName))
+                && (description == null ? formerDescription == null 
+                    : description.equals(formerDescription)))
+            return;
+        this.name = name;
+        this.description = description;
+        hash = 0;
+        InformationListener[] listeners = informationListeners;
+        if (listeners == null)
+            return;
+        for (InformationListener l : listeners)
+            l.informationChanged(this, formerName, formerDescription);
+    }
+
+    /**
+     * Registers a listener to be notified whenever the name or the 
+     * description of this component changes. Registering the same listener 
+     * twice has no effect.
+     * @param l the listener to register
+     * 
+     * @since 1.1.0
+     * 
+     * @see #removeInformationListener(InformationListener)
+     */
+    public void addInformationListener(InformationListener l) {
+        if (l == null)
+            return;
+        if (informationListeners == null) {
+            informationListeners = new InformationListener[] {l};
+            return;
+        }
+        for (InformationListener listener : informationListeners)
+            if (listener == l)
+                return;
+        InformationListener[] listeners = Arrays.copyOf(
+            informationListeners, informationListeners.length + 1);
+        listeners[informationListeners.length] = l;
+        informationListeners = listeners;
+    }
+
+    /**
+     * Unregisters a listener registered by 
+     * {@link #addInformationListener(InformationListener)}.
+     * @param l the listener to unregister
+     * 
+     * @since 1.1.0
+     */
+    public void removeInformationListener(InformationListener l) {
+        if (informationListeners == null)
+            return;
+        for (int i = 0; i < informationListeners.length; i++) {
+            if (informationListeners[i] != l)
+                continue;
+            if (informationListeners.length == 1) {
+                informationListeners = null;
+                return;
+            }
+            InformationListener[] listeners = 
+                new InformationListener[informationListeners.length - 1];
+            System.arraycopy(informationListeners, 0, listeners, 0, i);
+            System.arraycopy(informationListeners, i + 1, listeners, i, 
+                listeners.length - i);
+            informationListeners = listeners;
+            return;
+        }
+    }
+
     /*
      * (non-JavaDoc)
      * 
@@ -307,6 +444,7 @@ Comparable<InformationComponent> {
             throw new XMLStreamException(XML_ERR_UNEXPECTED_ELEMENT + " " + 
                     XML_DESCRIPTION + " tag expected!");
         this.description = s;
+        hash = 0;
         parser.nextTag();
     }
     
@@ -386,16 +524,22 @@ Comparable<InformationComponent> {
      * @see java.lang.Object#hashCode()
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} The hash code is cached until the name or the 
+     * description changes, so long descriptions are only hashed once.
+     * @version 1.1.0
      * @since 1.0.0
      */
     @Override
     public int hashCode() {
+        int result = hash;
+        if (result != 0)
+            return result;
         final int prime = 31;
-        int result = 1;
+        result = 1;
         result = prime * result
                + ((description == null) ? 0 : description.hashCode());
         result = prime * result + ((name == null) ? 0 : name.hashCode());
+        hash = result;
         return result;
     }
 
@@ -405,7 +549,9 @@ Comparable<InformationComponent> {
      * @see java.lang.Object#equals(java.lang.Object)
      */
     /**
-     * {@inheritDoc}
+     * {@inheritDoc} Components with different cached hash codes are told 
+     * apart without comparing their descriptions.
+     * @version 1.1.0
      * @since 1.0.0
      */
     @Override
@@ -417,6 +563,10 @@ Comparable<InformationComponent> {
         if (getClass() != obj.getClass())
             return false;
         InformationComponent other = (InformationComponent) obj;
+        int h = hash;
+        int otherH = other.hash;
+        if (h != 0 && otherH != 0 && h != otherH) // both cached and different
+            return false;
         if (description == null) {
             if (other.description != null)
                 return false;
@@ -431,8 +581,10 @@ Comparable<InformationComponent> {
     }
     
     /**
-     * Returns a string describing the descendants of this component.
+     * Returns a string describing the descendants of this component. 
+     * Components are told apart by identity.
      * @return a string describing the descendants of this component
+     * @version 1.1.0
      * @since 1.0.0
      */
     public String descendantsToString() {
@@ -440,8 +592,8 @@ Comparable<InformationComponent> {
         int level = 0;
         ArrayList<Iterator<SchemeComponent>> its = 
                 new ArrayList<Iterator<SchemeComponent>>();
-        HashMap<SchemeComponent, Integer> marked = 
-            new HashMap<SchemeComponent, Integer>();
+        IdentityHashMap<SchemeComponent, Integer> marked = 
+            new IdentityHashMap<SchemeComponent, Integer>();
         SchemeComponent c = null;
         Iterator<SchemeComponent> it = childrenIterator();
         // add that we have this one earlier
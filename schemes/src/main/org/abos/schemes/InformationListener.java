@@ -0,0 +1,29 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * A listener to be notified whenever the name or the description of an
+ * information component changes. Schemes use this to update their indices,
+ * since the hash code of the component changes, too.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see InformationComponent#addInformationListener(InformationListener)
+ */
+public interface InformationListener {
+
+    /**
+     * Called after the name or the description of an information component
+     * changed.
+     * @param source the component whose information changed
+     * @param formerName the name before the change
+     * @param formerDescription the description before the change
+     *
+     * @since 1.0.0
+     */
+    public void informationChanged(InformationComponent source,
+            String formerName, String formerDescription);
+
+}
@@ -12,7 +12,7 @@ import java.util.List;
  * components.
  * 
  * @author Sebastian Koch
- * @version 1.0.1
+ * @version 1.1.0
  * @since 1.0.0
  * 
  * @see InformationComponent
@@ -56,20 +56,20 @@ extends Scheme<E>, List<E> {
     public List<E> getByRegex(String regex, boolean fifo);
     
     /**
-     * Sorts the content of the scheme hierarchically using the
-     * <code>compareTo</code> method of {@link InformationScheme}. 
-     * However since the components are not totally ordered, the resulting 
-     * order of the sort may differ depending on order of insertion. Only the
-     * hierarchy can be ensured (and that only if 
-     * <code>allFamiliesValid() == true</code>), that means, whenever
+     * Sorts the content of the scheme hierarchically, that means, whenever
      * <code>a.isAncestorOf(b) == true</code> then <code>(indexOf(a) &lt; 
-     * indexOf(b)) == true</code> and vice versa.
+     * indexOf(b)) == true</code>. This can only be ensured if 
+     * <code>allFamiliesValid() == true</code>. Implementations should sort
+     * in linear time and keep the order of unrelated components as far as
+     * possible, so the result doesn't depend on the order of insertion more
+     * than necessary.
      * 
+     * @version 1.1.0
      * @since 1.0.0
      * 
      * @see #allFamiliesValid()
      * @see #indexOf(Object)
-     * @see InformationComponent#compareTo(InformationComponent)
+     * @see ArrayScheme#sortHierarchically()
      * @see InformationComponent#isAncestorOf(SchemeComponent)
      * @see InformationComponent#isDescendantOf(SchemeComponent)
      */
@@ -0,0 +1,377 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link ReachabilityIndex} labeling each component with intervals, in
+ * the manner of GRAIL. Components on a common cycle are merged and numbered
+ * topologically. Then the merged components are traversed depth first
+ * several times in random orders, and each traversal gives every merged
+ * component the interval from the lowest post order number below it up to
+ * its own. If a component is an ancestor of another, its intervals contain
+ * the other's intervals, so most negative queries are answered in constant
+ * time. The remaining queries fall back to a depth first search, which only
+ * descends into components whose intervals and topological numbers still
+ * allow reaching the target. <br>
+ * Other than {@link ClosureReachabilityIndex}, memory is linear: Besides the
+ * snapshot, this index needs two <code>int</code>s per traversal and merged
+ * component plus the edges between merged components. Building takes
+ * <tt>O(k(V+E))</tt> time for <tt>k</tt> traversals. <br>
+ * The traversals are pseudo random, but the same for the same scheme, so
+ * the performance is reproducible. This class is not thread-safe, but
+ * queries may run concurrently with each other: The marks and the stack of
+ * the fallback search are claimed by compare-and-set, a search started while
+ * they are claimed, for example by another thread, allocates its own.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#setReachabilityIndex(ReachabilityIndex)
+ */
+public class IntervalReachabilityIndex extends AbstractReachabilityIndex {
+
+    /**
+     * The default number of traversals.
+     *
+     * @since 1.0.0
+     */
+    public static final int DEFAULT_TRAVERSALS = 3;
+
+    /**
+     * The seed for the random traversal orders.
+     *
+     * @since 1.0.0
+     */
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The number of traversals, so the number of intervals per merged
+     * component.
+     *
+     * @since 1.0.0
+     */
+    private final int traversals;
+
+    /**
+     * The number of the merged component for each id.
+     *
+     * @since 1.0.0
+     */
+    private int[] component = null;
+
+    /**
+     * The offsets of the children of each merged component in
+     * {@link #targets}, with one additional entry at the end.
+     *
+     * @since 1.0.0
+     */
+    private int[] offsets = null;
+
+    /**
+     * The children of all merged components.
+     *
+     * @since 1.0.0
+     */
+    private int[] targets = null;
+
+    /**
+     * For each merged component, if it is on a cycle.
+     *
+     * @since 1.0.0
+     */
+    private boolean[] cyclic = null;
+
+    /**
+     * The lower bounds of the intervals, <code>traversals</code> consecutive
+     * entries per merged component.
+     *
+     * @since 1.0.0
+     */
+    private int[] lows = null;
+
+    /**
+     * The upper bounds of the intervals, <code>traversals</code> consecutive
+     * entries per merged component.
+     *
+     * @since 1.0.0
+     */
+    private int[] highs = null;
+
+    /**
+     * The visit marks of the fallback search.
+     *
+     * @since 1.0.0
+     *
+     * @see #epoch
+     */
+    private int[] marks = null;
+
+    /**
+     * The mark of the current fallback search.
+     *
+     * @since 1.0.0
+     */
+    private int epoch = 0;
+
+    /**
+     * The stack of the fallback search, kept between searches.
+     *
+     * @since 1.0.0
+     */
+    private int[] stack = null;
+
+    /**
+     * If {@link #marks}, {@link #epoch} and {@link #stack} are claimed by a
+     * fallback search.
+     *
+     * @since 1.0.0
+     */
+    private final AtomicBoolean searching = new AtomicBoolean(false);
+
+    /**
+     * Creates an empty, invalid index with the default number of traversals.
+     *
+     * @since 1.0.0
+     *
+     * @see #DEFAULT_TRAVERSALS
+     */
+    public IntervalReachabilityIndex() {
+        this(DEFAULT_TRAVERSALS);
+    }
+
+    /**
+     * Creates an empty, invalid index. More traversals answer more queries
+     * without fallback, but need more memory and time to build.
+     * @param traversals the number of intervals per component
+     * @throws IllegalArgumentException If <code>traversals</code> isn't
+     * positive.
+     *
+     * @since 1.0.0
+     */
+    public IntervalReachabilityIndex(int traversals) {
+        if (traversals < 1)
+            throw new IllegalArgumentException(
+                "At least one traversal needed!");
+        this.traversals = traversals;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#build()
+     */
+    @Override
+    void build() {
+        int n = graph.size();
+        component = graph.strongComponents();
+        int count = component[n];
+        // the edges between merged components, without duplicates
+        cyclic = new boolean[count];
+        int[] start = new int[count + 1];
+        for (int i = 0; i < n; i++)
+            start[component[i] + 1]++;
+        for (int c = 0; c < count; c++) {
+            if (start[c + 1] > 1)
+                cyclic[c] = true;
+            start[c + 1] += start[c];
+        }
+        int[] members = new int[n];
+        int[] fill = start.clone();
+        for (int i = 0; i < n; i++)
+            members[fill[component[i]]++] = i;
+        marks = new int[count];
+        epoch = 0;
+        offsets = new int[count + 1];
+        int[] found = new int[Math.max(16, graph.childTargets.length)];
+        int edges = 0;
+        for (int c = 0; c < count; c++) {
+            offsets[c] = edges;
+            epoch++;
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                for (int e = graph.childOffsets[v];
+                        e < graph.childOffsets[v + 1]; e++) {
+                    int d = component[graph.childTargets[e]];
+                    if (d == c)
+                        cyclic[c] = true;
+                    else if (marks[d] != epoch) {
+                        marks[d] = epoch;
+                        found[edges++] = d;
+                    }
+                }
+            }
+        }
+        offsets[count] = edges;
+        targets = Arrays.copyOf(found, edges);
+        // the intervals
+        lows = new int[traversals * count];
+        highs = new int[traversals * count];
+        stack = new int[Math.max(16, count)];
+        int[] edge = new int[count];
+        int[] shift = new int[count];
+        Random random = new Random(SEED);
+        for (int t = 0; t < traversals; t++) {
+            int[] low = new int[count];
+            int[] high = new int[count];
+            epoch++;
+            int post = 0;
+            int first = count == 0 ? 0 : random.nextInt(count);
+            for (int s = 0; s < count; s++) {
+                int root = (first + s) % count;
+                if (marks[root] == epoch)
+                    continue;
+                int top = 0;
+                stack[top++] = visit(root, edge, shift, low, random);
+                while (top > 0) {
+                    int c = stack[top - 1];
+                    int degree = offsets[c + 1] - offsets[c];
+                    if (edge[c] < degree) {
+                        // the children are visited starting at a random one
+                        int d = targets[offsets[c]
+                            + (edge[c]++ + shift[c]) % degree];
+                        if (marks[d] != epoch)
+                            stack[top++] = visit(d, edge, shift, low, random);
+                        else if (low[d] < low[c])
+                            low[c] = low[d];
+                        continue;
+                    }
+                    top--;
+                    high[c] = ++post;
+                    if (low[c] > post)
+                        low[c] = post;
+                    if (top > 0 && low[c] < low[stack[top - 1]])
+                        low[stack[top - 1]] = low[c];
+                }
+            }
+            // store the intervals of each component next to each other
+            for (int c = 0; c < count; c++) {
+                lows[c * traversals + t] = low[c];
+                highs[c * traversals + t] = high[c];
+            }
+        }
+    }
+
+    /**
+     * Marks a merged component as visited by the current traversal.
+     * @param c the merged component
+     * @param edge the next edge to look at per merged component
+     * @param shift the first child to look at per merged component
+     * @param low the lower bounds of the current traversal
+     * @param random the source of the traversal order
+     * @return <code>c</code>
+     *
+     * @since 1.0.0
+     */
+    private int visit(int c, int[] edge, int[] shift, int[] low,
+            Random random) {
+        marks[c] = epoch;
+        edge[c] = 0;
+        int degree = offsets[c + 1] - offsets[c];
+        shift[c] = degree > 1 ? random.nextInt(degree) : 0;
+        low[c] = Integer.MAX_VALUE;
+        return c;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#release()
+     */
+    @Override
+    void release() {
+        component = null;
+        offsets = null;
+        targets = null;
+        cyclic = null;
+        lows = null;
+        highs = null;
+        marks = null;
+        stack = null;
+    }
+
+    /**
+     * Tells if the intervals of a merged component contain the intervals of
+     * another one.
+     * @param c the possible ancestor
+     * @param d the possible descendant
+     * @return <code>false</code> if <code>c</code> can't be an ancestor of
+     * <code>d</code>
+     *
+     * @since 1.0.0
+     */
+    private boolean contains(int c, int d) {
+        int i = c * traversals;
+        int j = d * traversals;
+        for (int t = 0; t < traversals; t++) {
+            if (lows[j + t] < lows[i + t] || highs[j + t] > highs[i + t])
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.AbstractReachabilityIndex#reaches(int, int)
+     */
+    @Override
+    boolean reaches(int from, int to) {
+        int c = component[from];
+        int d = component[to];
+        if (c == d)
+            return cyclic[c];
+        if (c > d || !contains(c, d))
+            return false;
+        if (!searching.compareAndSet(false, true)) // claimed, use own marks
+            return search(c, d, new int[cyclic.length], 1,
+                new int[cyclic.length]);
+        try {
+            if (++epoch == 0) { // overflow, reset the marks
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+            return search(c, d, marks, epoch, stack);
+        }
+        finally {
+            searching.set(false);
+        }
+    }
+
+    /**
+     * Searches depth first from one merged component to another one, only
+     * descending into merged components whose topological numbers and
+     * intervals still allow reaching the target.
+     * @param c the merged component to start from
+     * @param d the merged component to find
+     * @param marks the visit marks, one per merged component
+     * @param epoch the mark of this search, not yet set in <code>marks</code>
+     * @param stack the stack, one entry per merged component
+     * @return <code>true</code> if <code>d</code> was found
+     *
+     * @since 1.0.0
+     */
+    private boolean search(int c, int d, int[] marks, int epoch,
+            int[] stack) {
+        int top = 0;
+        stack[top++] = c;
+        marks[c] = epoch;
+        while (top > 0) {
+            int u = stack[--top];
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int w = targets[e];
+                if (w == d)
+                    return true;
+                if (marks[w] == epoch || w > d || !contains(w, d))
+                    continue;
+                marks[w] = epoch;
+                stack[top++] = w;
+            }
+        }
+        return false;
+    }
+
+}
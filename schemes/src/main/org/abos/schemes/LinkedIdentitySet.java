@@ -0,0 +1,294 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set comparing its elements by identity instead of
+ * {@link Object#equals(Object)}, remembering the order in which the elements
+ * were added. Adding, removing and looking up elements takes constant time.
+ * Access by index is supported via {@link #get(int)}, it takes linear time
+ * after the set was modified and constant time otherwise.<br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see java.util.IdentityHashMap
+ * @see java.util.LinkedHashSet
+ */
+public class LinkedIdentitySet<E> extends AbstractSet<E> {
+
+    /**
+     * A node of the linked list through all elements.
+     *
+     * @since 1.0.0
+     */
+    private static final class Node<E> {
+
+        final E element;
+
+        Node<E> previous = null;
+
+        Node<E> next = null;
+
+        Node(E element) {
+            this.element = element;
+        }
+    }
+
+    /**
+     * Maps the elements to their nodes.
+     *
+     * @since 1.0.0
+     */
+    private final IdentityHashMap<E, Node<E>> nodes;
+
+    /**
+     * The first node, <code>null</code> if the set is empty.
+     *
+     * @since 1.0.0
+     */
+    private Node<E> head = null;
+
+    /**
+     * The last node, <code>null</code> if the set is empty.
+     *
+     * @since 1.0.0
+     */
+    private Node<E> tail = null;
+
+    /**
+     * The elements in order, <code>null</code> if the set was modified since
+     * the last access by index.
+     *
+     * @since 1.0.0
+     *
+     * @see #get(int)
+     */
+    private Object[] elements = null;
+
+    /**
+     * The number of modifications, to detect concurrent modification.
+     *
+     * @since 1.0.0
+     */
+    private int modCount = 0;
+
+    /**
+     * Constructs an empty set.
+     *
+     * @since 1.0.0
+     */
+    public LinkedIdentitySet() {
+        nodes = new IdentityHashMap<E, Node<E>>();
+    }
+
+    /**
+     * Constructs an empty set with the specified expected maximum size.
+     * @param expectedMaxSize the expected maximum size of the set
+     * @throws IllegalArgumentException if <code>expectedMaxSize</code> is
+     * negative
+     *
+     * @since 1.0.0
+     */
+    public LinkedIdentitySet(int expectedMaxSize) {
+        nodes = new IdentityHashMap<E, Node<E>>(expectedMaxSize);
+    }
+
+    /**
+     * Constructs a set containing the elements of the specified collection,
+     * in the order they are returned by the collection's iterator.
+     * @param c the collection whose elements are to be placed into this set
+     * @throws NullPointerException if the specified collection is null
+     *
+     * @since 1.0.0
+     */
+    public LinkedIdentitySet(Collection<? extends E> c) {
+        this(c.size());
+        addAll(c);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Objects are compared by identity.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#add(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} New elements are added at the end.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean add(E e) {
+        if (nodes.containsKey(e))
+            return false;
+        Node<E> node = new Node<E>(e);
+        nodes.put(e, node);
+        if (tail == null)
+            head = node;
+        else {
+            tail.next = node;
+            node.previous = tail;
+        }
+        tail = node;
+        elements = null;
+        modCount++;
+        return true;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Objects are compared by identity.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean remove(Object o) {
+        Node<E> node = nodes.remove(o);
+        if (node == null)
+            return false;
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Removes a node from the linked list.
+     * @param node the node to remove
+     *
+     * @since 1.0.0
+     */
+    private void unlink(Node<E> node) {
+        if (node.previous == null)
+            head = node.next;
+        else
+            node.previous.next = node.next;
+        if (node.next == null)
+            tail = node.previous;
+        else
+            node.next.previous = node.previous;
+        elements = null;
+        modCount++;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#clear()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void clear() {
+        nodes.clear();
+        head = null;
+        tail = null;
+        elements = null;
+        modCount++;
+    }
+
+    /**
+     * Returns the element at the specified position in the order of
+     * addition. Takes linear time if this set was modified since the last
+     * call, constant time otherwise.
+     * @param index the index of the element to return
+     * @return the element at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (elements == null)
+            elements = toArray();
+        return (E)elements[index];
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#iterator()
+     */
+    /**
+     * {@inheritDoc} The elements are returned in the order they were added.
+     * @since 1.0.0
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+
+            private Node<E> next = head;
+
+            private Node<E> last = null;
+
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (next == null)
+                    throw new NoSuchElementException();
+                last = next;
+                next = next.next;
+                return last.element;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null)
+                    throw new IllegalStateException();
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                nodes.remove(last.element);
+                unlink(last);
+                last = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,447 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hash index over the elements of a list, answering membership and
+ * position lookups in constant time. Elements are compared by
+ * {@link Object#equals(Object)}, just like {@link List#contains(Object)} and
+ * {@link List#indexOf(Object)} do, and may be contained multiple times.<br>
+ * The index doesn't own the list, it has to be told about every structural
+ * change by the list itself. Appending and replacing elements is handled in
+ * constant time. Since inserting or removing an element shifts all following
+ * positions, these operations only mark the positions from there on as
+ * outdated, and they will be repaired the next time a position in that range
+ * is asked for. <br>
+ * Elements must not change their hash code while they are indexed, unless
+ * the index is told by {@link #changed(Object, Object, List)}. For this, 
+ * each entry keeps the hash code it was indexed with. Removed elements may 
+ * change freely, since entries are always keyed by elements of the list.<br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#setMembershipIndexed(boolean)
+ */
+final class MembershipIndex {
+
+    /**
+     * The multiplicity and the first position of an indexed element.
+     *
+     * @since 1.0.0
+     */
+    private static final class Entry {
+
+        /**
+         * How often the element is contained in the list.
+         */
+        int count;
+
+        /**
+         * The first position of the element in the list. Only reliable if
+         * smaller than {@link MembershipIndex#validBelow}, else the first
+         * position is at least <code>validBelow</code>. <code>-1</code>
+         * during repairs.
+         */
+        int first;
+
+        /**
+         * The key this entry is stored with.
+         */
+        Key key;
+
+        Entry(Key key, int first) {
+            this.key = key;
+            this.count = 1;
+            this.first = first;
+        }
+    }
+
+    /**
+     * An element as key of an entry, together with the hash code it was
+     * indexed with.
+     *
+     * @since 1.0.0
+     */
+    private static final class Key {
+
+        /**
+         * The element.
+         */
+        final Object element;
+
+        /**
+         * The hash code of the element when it was indexed.
+         */
+        final int hash;
+
+        /**
+         * If only the very same element matches this key, used to find the
+         * entry of an element whose hash code changed.
+         */
+        final boolean identical;
+
+        Key(Object element) {
+            this(element, element == null ? 0 : element.hashCode(), false);
+        }
+
+        Key(Object element, int hash, boolean identical) {
+            this.element = element;
+            this.hash = hash;
+            this.identical = identical;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Key other = (Key)obj; // only keys are compared
+            if (hash != other.hash)
+                return false;
+            if (element == other.element)
+                return true;
+            return !identical && element != null 
+                    && element.equals(other.element);
+        }
+    }
+
+    /**
+     * The entries of the index.
+     *
+     * @since 1.0.0
+     */
+    private final HashMap<Key, Entry> entries;
+
+    /**
+     * All first positions below this position are reliable.
+     *
+     * @since 1.0.0
+     *
+     * @see #repair(List)
+     */
+    private int validBelow = Integer.MAX_VALUE;
+
+    /**
+     * Creates an index for the given list.
+     * @param list the list to index
+     *
+     * @since 1.0.0
+     */
+    MembershipIndex(List<?> list) {
+        entries = new HashMap<Key, Entry>(Math.max(16,
+            (int)(list.size() / .75f) + 1));
+        rebuild(list);
+    }
+
+    /**
+     * Forgets everything and indexes the given list anew.
+     * @param list the list to index
+     *
+     * @since 1.0.0
+     */
+    void rebuild(List<?> list) {
+        entries.clear();
+        Entry entry = null;
+        int size = list.size();
+        for (int i = 0; i < size; i++) {
+            Key key = new Key(list.get(i));
+            entry = entries.get(key);
+            if (entry == null)
+                entries.put(key, new Entry(key, i));
+            else
+                entry.count++;
+        }
+        validBelow = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Empties the index.
+     *
+     * @since 1.0.0
+     */
+    void clear() {
+        entries.clear();
+        validBelow = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Tells if the indexed list contains the given object.
+     * @param o the object to look up
+     * @return <code>true</code> if the list contains <code>o</code>
+     *
+     * @since 1.0.0
+     */
+    boolean contains(Object o) {
+        return entries.containsKey(new Key(o));
+    }
+
+    /**
+     * Returns the first position of the given object in the indexed list.
+     * @param o the object to look up
+     * @param list the indexed list, needed if positions have to be repaired
+     * @return the first position of <code>o</code>, or <code>-1</code>
+     * if not contained
+     *
+     * @since 1.0.0
+     */
+    int indexOf(Object o, List<?> list) {
+        Entry entry = entries.get(new Key(o));
+        if (entry == null)
+            return -1;
+        if (entry.first < 0 || entry.first >= validBelow)
+            repair(list);
+        return entry.first;
+    }
+
+    /**
+     * Recomputes all outdated first positions. Only the part of the list
+     * starting at {@link #validBelow} is traversed.
+     * @param list the indexed list
+     *
+     * @since 1.0.0
+     */
+    private void repair(List<?> list) {
+        int size = list.size();
+        Entry entry = null;
+        for (int i = validBelow; i < size; i++) {
+            entry = entries.get(new Key(list.get(i)));
+            if (entry.first < 0 || entry.first >= validBelow)
+                entry.first = -1;
+        }
+        for (int i = validBelow; i < size; i++) {
+            entry = entries.get(new Key(list.get(i)));
+            if (entry.first < 0)
+                entry.first = i;
+        }
+        validBelow = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Has to be called after an element has been inserted into the list.
+     * @param o the new element
+     * @param index the position of the new element
+     * @param size the size of the list after the insertion
+     *
+     * @since 1.0.0
+     */
+    void added(Object o, int index, int size) {
+        if (index < size - 1) // following positions have shifted
+            validBelow = Math.min(validBelow, index);
+        Key key = new Key(o);
+        Entry entry = entries.get(key);
+        if (entry == null)
+            entries.put(key, new Entry(key, index));
+        else
+            entry.count++;
+    }
+
+    /**
+     * Has to be called after an element has been removed from the list.
+     * @param o the removed element
+     * @param index the former position of the removed element
+     * @param list the list after the removal
+     *
+     * @since 1.0.0
+     */
+    void removed(Object o, int index, List<?> list) {
+        removed(Collections.singletonList(o), index, list);
+    }
+
+    /**
+     * Has to be called after several elements have been removed from the
+     * list at once.
+     * @param removed the removed elements
+     * @param index the former position of the first removed element
+     * @param list the list after the removal
+     *
+     * @since 1.0.0
+     */
+    void removed(Collection<?> removed, int index, List<?> list) {
+        Map<Key, Entry> orphans = null;
+        for (Object o : removed) {
+            Entry entry = decrement(o);
+            if (entry != null && entry.key.element == o) {
+                if (orphans == null)
+                    orphans = new HashMap<Key, Entry>();
+                orphans.put(entry.key, entry);
+            }
+        }
+        if (index < list.size()) // following positions have shifted
+            validBelow = Math.min(validBelow, index);
+        if (orphans != null)
+            rekey(orphans, list);
+    }
+
+    /**
+     * Has to be called after an element of the list has been replaced.
+     * @param old the replaced element
+     * @param o the new element
+     * @param index the position of the replacement
+     * @param list the list after the replacement
+     *
+     * @since 1.0.0
+     */
+    void replaced(Object old, Object o, int index, List<?> list) {
+        if (old == null ? o == null : old.equals(o)) {
+            Entry entry = entries.get(new Key(o));
+            if (entry != null && entry.key.element == old) { // o takes over
+                entries.remove(entry.key);
+                entry.key = new Key(o);
+                entries.put(entry.key, entry);
+            }
+            return;
+        }
+        Entry entry = decrement(old);
+        if (entry != null) {
+            if (entry.first == index) // next occurrence unknown
+                validBelow = Math.min(validBelow, index);
+            if (entry.key.element == old) {
+                Map<Key, Entry> orphans = new HashMap<Key, Entry>(2);
+                orphans.put(entry.key, entry);
+                rekey(orphans, list);
+            }
+        }
+        insert(o, index, 1);
+    }
+
+    /**
+     * Counts an occurrence of an element less, and removes its entry if
+     * there is none left.
+     * @param o the element
+     * @return the entry of <code>o</code> if there are still occurrences
+     * left, else <code>null</code>
+     *
+     * @since 1.0.0
+     */
+    private Entry decrement(Object o) {
+        Key key = new Key(o);
+        Entry entry = entries.get(key);
+        if (entry == null) // shouldn't happen
+            return null;
+        if (--entry.count > 0)
+            return entry;
+        entries.remove(entry.key);
+        return null;
+    }
+
+    /**
+     * Stores entries whose key elements may have left the list with an
+     * element of the list instead, since elements outside of the list may
+     * change without the index being told. The list is traversed until all
+     * these elements are found.
+     * @param orphans the entries to store anew, by their current keys
+     * @param list the indexed list
+     *
+     * @since 1.0.0
+     */
+    private void rekey(Map<Key, Entry> orphans, List<?> list) {
+        int size = list.size();
+        for (int i = 0; i < size && !orphans.isEmpty(); i++) {
+            Key key = new Key(list.get(i));
+            Entry entry = orphans.remove(key);
+            if (entry == null)
+                continue;
+            entries.remove(entry.key);
+            entry.key = key;
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Has to be called after the hash code of an element of the list may
+     * have changed, for example since its data changed. Only the entries of
+     * the element are moved: The entry it was indexed in is found by the 
+     * hash code of <code>former</code> and the identity of the element, or
+     * by an equal element indexed in the same entry. If the element was the
+     * only one in this entry, and its position is known, this takes constant
+     * time. Else the list is traversed once to count the occurrences of the
+     * element and to find the next equal element.
+     * @param o the changed element
+     * @param former an object equal to the element before the change, with
+     * the same hash code
+     * @param list the indexed list
+     *
+     * @since 1.0.0
+     */
+    void changed(Object o, Object former, List<?> list) {
+        int formerHash = former == null ? 0 : former.hashCode();
+        Entry entry = entries.get(new Key(o, formerHash, true));
+        if (entry == null) {
+            entry = entries.get(new Key(former, formerHash, false));
+            if (entry == null) // not indexed
+                return;
+        }
+        boolean keyed = entry.key.element == o;
+        if (keyed && entry.count == 1 && entry.first >= 0
+                && entry.first < validBelow) {
+            entries.remove(entry.key);
+            insert(o, entry.first, 1);
+            return;
+        }
+        // count o and find the next element of the former entry
+        int count = 0;
+        int first = -1;
+        int next = -1;
+        int size = list.size();
+        for (int i = 0; i < size; i++) {
+            Object element = list.get(i);
+            if (element == o) {
+                if (count++ == 0)
+                    first = i;
+            }
+            else if (next < 0 && (element == null ? former == null 
+                    : element.hashCode() == formerHash 
+                    && element.equals(former)))
+                next = i;
+        }
+        if (count == 0)
+            return;
+        entry.count -= count;
+        if (entry.count <= 0 || next < 0)
+            entries.remove(entry.key);
+        else {
+            if (keyed) { // another element becomes the key
+                entries.remove(entry.key);
+                entry.key = new Key(list.get(next));
+                entries.put(entry.key, entry);
+            }
+            entry.first = next;
+        }
+        insert(o, first, count);
+    }
+
+    /**
+     * Indexes several occurrences of an element at once.
+     * @param o the element
+     * @param first the first position of the element
+     * @param count the number of occurrences
+     *
+     * @since 1.0.0
+     */
+    private void insert(Object o, int first, int count) {
+        Key key = new Key(o);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, first);
+            entry.count = count;
+            entries.put(key, entry);
+        }
+        else {
+            entry.count += count;
+            if (first < validBelow && (entry.first < 0 
+                    || entry.first >= validBelow || first < entry.first))
+                entry.first = first;
+        }
+    }
+
+}
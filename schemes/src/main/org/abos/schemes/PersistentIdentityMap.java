@@ -0,0 +1,455 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable map comparing its keys by identity, stored as hash array
+ * mapped trie. Each level of the trie consumes five bits of the identity
+ * hash of the keys and only stores the occupied slots, marked in a bitmap.
+ * Adding or removing an entry copies only the nodes on the path to it, all
+ * other nodes are shared between the old and the new map, so both take
+ * <tt>O(log n)</tt> time and memory. Lookups take <tt>O(log n)</tt> time,
+ * too, with at most seven levels. <br>
+ * Neither keys nor values may be <code>null</code>. This class is
+ * thread-safe, since instances never change.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ *
+ * @see PersistentScheme
+ */
+final class PersistentIdentityMap<K, V>
+implements Iterable<Map.Entry<K, V>> {
+
+    /**
+     * A node of the trie. The array holds two entries per occupied slot:
+     * a key and its value, or <code>null</code> and the node below.
+     *
+     * @since 1.0.0
+     */
+    private static final class BitmapNode {
+
+        /**
+         * The occupied slots.
+         */
+        final int bitmap;
+
+        /**
+         * The contents of the occupied slots.
+         */
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    /**
+     * A node holding keys with the very same identity hash, alternating
+     * with their values.
+     *
+     * @since 1.0.0
+     */
+    private static final class CollisionNode {
+
+        /**
+         * The hash of all keys.
+         */
+        final int hash;
+
+        /**
+         * The keys and values.
+         */
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+    }
+
+    /**
+     * The empty map.
+     *
+     * @since 1.0.0
+     */
+    private static final PersistentIdentityMap<Object, Object> EMPTY =
+        new PersistentIdentityMap<Object, Object>(null, 0);
+
+    /**
+     * The root node, <code>null</code> if this map is empty.
+     *
+     * @since 1.0.0
+     */
+    private final Object root;
+
+    /**
+     * The number of entries.
+     *
+     * @since 1.0.0
+     */
+    private final int size;
+
+    /**
+     * Creates a map.
+     * @param root the root node
+     * @param size the number of entries
+     *
+     * @since 1.0.0
+     */
+    private PersistentIdentityMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     * @return the empty map
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // the empty map has no entries
+    static <K, V> PersistentIdentityMap<K, V> empty() {
+        return (PersistentIdentityMap<K, V>)EMPTY;
+    }
+
+    /**
+     * Returns the identity hash of a key.
+     * @param key the key
+     * @return the hash
+     *
+     * @since 1.0.0
+     */
+    private static int hash(Object key) {
+        return System.identityHashCode(key);
+    }
+
+    /**
+     * Returns the bit of the slot for a hash at a level.
+     * @param hash the hash
+     * @param shift the number of bits consumed by the levels above
+     * @return the bit of the slot
+     *
+     * @since 1.0.0
+     */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the size of this map
+     *
+     * @since 1.0.0
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Tells if this map has no entries.
+     * @return <code>true</code> if this map is empty
+     *
+     * @since 1.0.0
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value of the given key.
+     * @param key the key to look up
+     * @return the value, or <code>null</code> if there is none
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // values are put as V only
+    V get(Object key) {
+        int hash = hash(key);
+        Object node = root;
+        int shift = 0;
+        while (node != null) {
+            if (node instanceof CollisionNode) {
+                CollisionNode c = (CollisionNode)node;
+                for (int i = 0; i < c.array.length; i += 2)
+                    if (c.array[i] == key)
+                        return (V)c.array[i + 1];
+                return null;
+            }
+            BitmapNode b = (BitmapNode)node;
+            int bit = bit(hash, shift);
+            if ((b.bitmap & bit) == 0)
+                return null;
+            int i = 2 * Integer.bitCount(b.bitmap & (bit - 1));
+            if (b.array[i] == null) {
+                node = b.array[i + 1];
+                shift += 5;
+                continue;
+            }
+            return b.array[i] == key ? (V)b.array[i + 1] : null;
+        }
+        return null;
+    }
+
+    /**
+     * Tells if the given key has a value.
+     * @param key the key to look up
+     * @return <code>true</code> if this map contains <code>key</code>
+     *
+     * @since 1.0.0
+     */
+    boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a map with the given entry added or replaced.
+     * @param key the key
+     * @param value the value
+     * @return the new map, or this map if it contains the entry already
+     * @throws NullPointerException If <code>key</code> or
+     * <code>value</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    PersistentIdentityMap<K, V> plus(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Object old = get(key);
+        if (old == value)
+            return this;
+        return new PersistentIdentityMap<K, V>(put(root, 0, hash(key), key,
+            value), old == null ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the given key.
+     * @param key the key
+     * @return the new map, or this map if it doesn't contain the key
+     *
+     * @since 1.0.0
+     */
+    PersistentIdentityMap<K, V> minus(Object key) {
+        if (get(key) == null)
+            return this;
+        return new PersistentIdentityMap<K, V>(remove(root, 0, hash(key),
+            key), size - 1);
+    }
+
+    /**
+     * Puts an entry into a copy of the path to it.
+     * @param node the node, may be <code>null</code>
+     * @param shift the number of bits consumed by the levels above
+     * @param hash the hash of the key
+     * @param key the key
+     * @param value the value
+     * @return the new node
+     *
+     * @since 1.0.0
+     */
+    private static Object put(Object node, int shift, int hash, Object key,
+            Object value) {
+        if (node == null)
+            return new BitmapNode(bit(hash, shift), new Object[] {key, value});
+        if (node instanceof CollisionNode) {
+            CollisionNode c = (CollisionNode)node;
+            if (c.hash != hash) // put both below a new node
+                return put(new BitmapNode(bit(c.hash, shift),
+                    new Object[] {null, c}), shift, hash, key, value);
+            for (int i = 0; i < c.array.length; i += 2) {
+                if (c.array[i] == key) {
+                    Object[] array = c.array.clone();
+                    array[i + 1] = value;
+                    return new CollisionNode(hash, array);
+                }
+            }
+            Object[] array = Arrays.copyOf(c.array, c.array.length + 2);
+            array[c.array.length] = key;
+            array[c.array.length + 1] = value;
+            return new CollisionNode(hash, array);
+        }
+        BitmapNode b = (BitmapNode)node;
+        int bit = bit(hash, shift);
+        int i = 2 * Integer.bitCount(b.bitmap & (bit - 1));
+        if ((b.bitmap & bit) == 0) {
+            Object[] array = new Object[b.array.length + 2];
+            System.arraycopy(b.array, 0, array, 0, i);
+            array[i] = key;
+            array[i + 1] = value;
+            System.arraycopy(b.array, i, array, i + 2, b.array.length - i);
+            return new BitmapNode(b.bitmap | bit, array);
+        }
+        Object[] array = b.array.clone();
+        Object k = b.array[i];
+        if (k == null)
+            array[i + 1] = put(b.array[i + 1], shift + 5, hash, key, value);
+        else if (k == key)
+            array[i + 1] = value;
+        else {
+            array[i] = null;
+            array[i + 1] = pair(shift + 5, k, b.array[i + 1], hash(k), key,
+                value, hash);
+        }
+        return new BitmapNode(b.bitmap, array);
+    }
+
+    /**
+     * Creates a node containing two entries.
+     * @param shift the number of bits consumed by the levels above
+     * @param k1 the first key
+     * @param v1 the first value
+     * @param h1 the hash of the first key
+     * @param k2 the second key
+     * @param v2 the second value
+     * @param h2 the hash of the second key
+     * @return the new node
+     *
+     * @since 1.0.0
+     */
+    private static Object pair(int shift, Object k1, Object v1, int h1,
+            Object k2, Object v2, int h2) {
+        if (h1 == h2)
+            return new CollisionNode(h1, new Object[] {k1, v1, k2, v2});
+        int s1 = (h1 >>> shift) & 31;
+        int s2 = (h2 >>> shift) & 31;
+        if (s1 == s2)
+            return new BitmapNode(1 << s1, new Object[] {null,
+                pair(shift + 5, k1, v1, h1, k2, v2, h2)});
+        // the entry in the lower slot comes first
+        return new BitmapNode((1 << s1) | (1 << s2), s1 < s2
+            ? new Object[] {k1, v1, k2, v2} : new Object[] {k2, v2, k1, v1});
+    }
+
+    /**
+     * Removes an entry from a copy of the path to it, which must exist.
+     * Nodes left with a single entry are merged into their parents.
+     * @param node the node
+     * @param shift the number of bits consumed by the levels above
+     * @param hash the hash of the key
+     * @param key the key
+     * @return the new node, or <code>null</code> if it is empty
+     *
+     * @since 1.0.0
+     */
+    private static Object remove(Object node, int shift, int hash,
+            Object key) {
+        if (node instanceof CollisionNode) {
+            CollisionNode c = (CollisionNode)node;
+            if (c.array.length == 4) {
+                int other = c.array[0] == key ? 2 : 0;
+                return new BitmapNode(bit(hash, shift), new Object[] {
+                    c.array[other], c.array[other + 1]});
+            }
+            Object[] array = new Object[c.array.length - 2];
+            for (int i = 0, j = 0; i < c.array.length; i += 2) {
+                if (c.array[i] != key) {
+                    array[j++] = c.array[i];
+                    array[j++] = c.array[i + 1];
+                }
+            }
+            return new CollisionNode(hash, array);
+        }
+        BitmapNode b = (BitmapNode)node;
+        int bit = bit(hash, shift);
+        int i = 2 * Integer.bitCount(b.bitmap & (bit - 1));
+        if (b.array[i] == null) {
+            Object below = remove(b.array[i + 1], shift + 5, hash, key);
+            Object[] array = b.array.clone();
+            if (below instanceof BitmapNode
+                    && ((BitmapNode)below).array.length == 2
+                    && ((BitmapNode)below).array[0] != null) {
+                // a single entry moves up
+                array[i] = ((BitmapNode)below).array[0];
+                array[i + 1] = ((BitmapNode)below).array[1];
+            }
+            else
+                array[i + 1] = below;
+            return new BitmapNode(b.bitmap, array);
+        }
+        if (b.bitmap == bit)
+            return null;
+        Object[] array = new Object[b.array.length - 2];
+        System.arraycopy(b.array, 0, array, 0, i);
+        System.arraycopy(b.array, i + 2, array, i, b.array.length - i - 2);
+        return new BitmapNode(b.bitmap ^ bit, array);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    /**
+     * {@inheritDoc} The entries come in no particular order.
+     * @since 1.0.0
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+
+            private Object[][] arrays = new Object[8][];
+
+            private int[] positions = new int[8];
+
+            private int depth = -1;
+
+            private int remaining = size;
+
+            {
+                if (root != null)
+                    push(root);
+            }
+
+            private void push(Object node) {
+                depth++;
+                arrays[depth] = node instanceof BitmapNode
+                    ? ((BitmapNode)node).array : ((CollisionNode)node).array;
+                positions[depth] = 0;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @SuppressWarnings("unchecked") // entries are put as K and V
+            @Override
+            public Map.Entry<K, V> next() {
+                if (remaining == 0)
+                    throw new NoSuchElementException();
+                while (true) {
+                    Object[] array = arrays[depth];
+                    int p = positions[depth];
+                    if (p == array.length) {
+                        depth--;
+                        continue;
+                    }
+                    positions[depth] = p + 2;
+                    if (array[p] == null) {
+                        push(array[p + 1]);
+                        continue;
+                    }
+                    remaining--;
+                    return new AbstractMap.SimpleImmutableEntry<K, V>(
+                        (K)array[p], (V)array[p + 1]);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,884 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable implementation of the {@link Scheme} interface with
+ * structural sharing. The components and the links between parents and
+ * children are stored in hash array mapped tries, so every modification
+ * returns a new version of the scheme in <tt>O(log n)</tt> time, sharing
+ * all unchanged parts with the old version. Keeping the old version is a
+ * snapshot for free, other than {@link ArrayScheme#deepCopy()}. <br>
+ * Like {@link FrozenScheme}, the families are taken from the components at
+ * construction, and from then on the scheme answers with its own links, so
+ * families changed afterwards aren't reflected, and changes of this scheme
+ * don't change the components. A link always connects both sides, so
+ * one-sided links of the original components become complete links, and a
+ * link exists at most once. Components are identified by identity, not by
+ * {@link Object#equals(Object)}, and each component is contained at most
+ * once. The order of iteration, roots and leaves is unspecified. Components
+ * which are linked to the scheme but not contained are kept as associated
+ * components as long as they are linked. <br>
+ * The methods of <code>Collection</code> modifying the scheme throw an
+ * <code>UnsupportedOperationException</code>, use
+ * {@link #plus(SchemeComponent)}, {@link #minus(Object)},
+ * {@link #plusLink(SchemeComponent, SchemeComponent)}
+ * and {@link #minusLink(SchemeComponent, SchemeComponent)} instead. Since
+ * nothing changes, this class is thread-safe as long as no families are
+ * changed concurrently while constructing.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see PersistentIdentityMap
+ */
+public final class PersistentScheme<E extends SchemeComponent> extends
+AbstractCollection<E> implements Scheme<E> {
+
+    /**
+     * The links of a component and if it is contained in the scheme.
+     *
+     * @since 1.0.0
+     */
+    private static final class Family {
+
+        /**
+         * The family of components only contained.
+         */
+        static final Family MEMBER = new Family(true,
+            PersistentIdentityMap.<SchemeComponent, Boolean>empty(),
+            PersistentIdentityMap.<SchemeComponent, Boolean>empty());
+
+        /**
+         * If the component is contained in the scheme.
+         */
+        final boolean member;
+
+        /**
+         * The parents, all mapped to <code>true</code>.
+         */
+        final PersistentIdentityMap<SchemeComponent, Boolean> parents;
+
+        /**
+         * The children, all mapped to <code>true</code>.
+         */
+        final PersistentIdentityMap<SchemeComponent, Boolean> children;
+
+        Family(boolean member,
+                PersistentIdentityMap<SchemeComponent, Boolean> parents,
+                PersistentIdentityMap<SchemeComponent, Boolean> children) {
+            this.member = member;
+            this.parents = parents;
+            this.children = children;
+        }
+
+        /**
+         * Tells if this family can be forgotten.
+         * @return <code>true</code> if the component is neither contained
+         * nor linked
+         */
+        boolean isEmpty() {
+            return !member && parents.isEmpty() && children.isEmpty();
+        }
+    }
+
+    /**
+     * The empty scheme.
+     *
+     * @since 1.0.0
+     */
+    private static final PersistentScheme<SchemeComponent> EMPTY =
+        new PersistentScheme<SchemeComponent>(
+            PersistentIdentityMap.<SchemeComponent, Family>empty(),
+            PersistentIdentityMap.<SchemeComponent, Boolean>empty(),
+            PersistentIdentityMap.<SchemeComponent, Boolean>empty(), 0);
+
+    /**
+     * The families of all contained and associated components.
+     *
+     * @since 1.0.0
+     */
+    private final PersistentIdentityMap<SchemeComponent, Family> families;
+
+    /**
+     * The contained components without parents.
+     *
+     * @since 1.0.0
+     */
+    private final PersistentIdentityMap<SchemeComponent, Boolean> roots;
+
+    /**
+     * The contained components without children.
+     *
+     * @since 1.0.0
+     */
+    private final PersistentIdentityMap<SchemeComponent, Boolean> leaves;
+
+    /**
+     * The number of contained components.
+     *
+     * @since 1.0.0
+     */
+    private final int size;
+
+    /**
+     * Creates a version of a scheme.
+     * @param families the families
+     * @param roots the roots
+     * @param leaves the leaves
+     * @param size the number of contained components
+     *
+     * @since 1.0.0
+     */
+    private PersistentScheme(
+            PersistentIdentityMap<SchemeComponent, Family> families,
+            PersistentIdentityMap<SchemeComponent, Boolean> roots,
+            PersistentIdentityMap<SchemeComponent, Boolean> leaves,
+            int size) {
+        this.families = families;
+        this.roots = roots;
+        this.leaves = leaves;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty scheme.
+     * @return the empty scheme
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // the empty scheme has no components
+    public static <E extends SchemeComponent> PersistentScheme<E> empty() {
+        return (PersistentScheme<E>)EMPTY;
+    }
+
+    /**
+     * Creates a persistent scheme of the given components with their
+     * families, including all associated components. Takes
+     * <tt>O((V+E) log V)</tt> time.
+     * @param c the components of the new scheme
+     * @return the new scheme
+     * @throws NullPointerException If <code>c</code> is or contains
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public static <E extends SchemeComponent> PersistentScheme<E> of(
+            Collection<? extends E> c) {
+        CompactGraph graph = new CompactGraph(c);
+        PersistentScheme<E> scheme = empty();
+        for (int i = 0; i < graph.memberCount; i++)
+            scheme = scheme.plusComponent(graph.nodes[i]);
+        for (int i = 0; i < graph.size(); i++) {
+            for (int e = graph.childOffsets[i];
+                    e < graph.childOffsets[i + 1]; e++)
+                scheme = scheme.plusLink(graph.nodes[i],
+                    graph.nodes[graph.childTargets[e]]);
+            for (int e = graph.parentOffsets[i];
+                    e < graph.parentOffsets[i + 1]; e++)
+                scheme = scheme.plusLink(graph.nodes[graph.parentTargets[e]],
+                    graph.nodes[i]);
+        }
+        return scheme;
+    }
+
+    /**
+     * Returns the family of a component.
+     * @param c the component
+     * @return the family, <code>null</code> if <code>c</code> is neither
+     * contained nor associated
+     *
+     * @since 1.0.0
+     */
+    private Family family(Object c) {
+        return families.get(c);
+    }
+
+    /**
+     * Returns a version of this scheme containing the given component.
+     * @param e the component to add
+     * @return the new version, or this scheme if it contains <code>e</code>
+     * already
+     * @throws NullPointerException If <code>e</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public PersistentScheme<E> plus(E e) {
+        return plusComponent(e);
+    }
+
+    /**
+     * Returns a version of this scheme containing the given component,
+     * regardless of the type.
+     * @param c the component to add
+     * @return the new version, or this scheme if it contains <code>c</code>
+     * already
+     * @throws NullPointerException If <code>c</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    private PersistentScheme<E> plusComponent(SchemeComponent c) {
+        if (c == null)
+            throw new NullPointerException();
+        Family f = family(c);
+        if (f != null && f.member)
+            return this;
+        Family g = f == null ? Family.MEMBER
+                : new Family(true, f.parents, f.children);
+        return new PersistentScheme<E>(families.plus(c, g),
+            g.parents.isEmpty() ? roots.plus(c, Boolean.TRUE) : roots,
+            g.children.isEmpty() ? leaves.plus(c, Boolean.TRUE) : leaves,
+            size + 1);
+    }
+
+    /**
+     * Returns a version of this scheme not containing the given component.
+     * The links of the component are kept, so it stays an associated
+     * component if it has any.
+     * @param o the component to remove
+     * @return the new version, or this scheme if it doesn't contain
+     * <code>o</code>
+     *
+     * @since 1.0.0
+     */
+    public PersistentScheme<E> minus(Object o) {
+        Family f = family(o);
+        if (f == null || !f.member)
+            return this;
+        Family g = new Family(false, f.parents, f.children);
+        return new PersistentScheme<E>(g.isEmpty() ? families.minus(o)
+            : families.plus((SchemeComponent)o, g), roots.minus(o),
+            leaves.minus(o), size - 1);
+    }
+
+    /**
+     * Returns a version of this scheme where the given parent has the given
+     * child. Components not known before become associated components.
+     * @param parent the parent
+     * @param child the child
+     * @return the new version, or this scheme if the link exists already
+     * @throws NullPointerException If <code>parent</code> or
+     * <code>child</code> is <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public PersistentScheme<E> plusLink(SchemeComponent parent,
+            SchemeComponent child) {
+        if (parent == null || child == null)
+            throw new NullPointerException();
+        Family p = family(parent);
+        if (p != null && p.children.containsKey(child))
+            return this;
+        PersistentIdentityMap<SchemeComponent, Boolean> none =
+            PersistentIdentityMap.empty();
+        if (p == null)
+            p = new Family(false, none, none);
+        PersistentIdentityMap<SchemeComponent, Family> f = families.plus(
+            parent, new Family(p.member, p.parents,
+            p.children.plus(child, Boolean.TRUE)));
+        Family c = f.get(child); // parent and child may be the same
+        if (c == null)
+            c = new Family(false, none, none);
+        f = f.plus(child, new Family(c.member,
+            c.parents.plus(parent, Boolean.TRUE), c.children));
+        return new PersistentScheme<E>(f, roots.minus(child),
+            leaves.minus(parent), size);
+    }
+
+    /**
+     * Returns a version of this scheme where the given parent doesn't have
+     * the given child. Associated components without links are forgotten.
+     * @param parent the parent
+     * @param child the child
+     * @return the new version, or this scheme if there is no such link
+     *
+     * @since 1.0.0
+     */
+    public PersistentScheme<E> minusLink(SchemeComponent parent,
+            SchemeComponent child) {
+        Family p = family(parent);
+        if (p == null || !p.children.containsKey(child))
+            return this;
+        Family q = new Family(p.member, p.parents, p.children.minus(child));
+        PersistentIdentityMap<SchemeComponent, Family> f = q.isEmpty()
+            ? families.minus(parent) : families.plus(parent, q);
+        Family c = parent == child ? q : family(child);
+        Family d = new Family(c.member, c.parents.minus(parent), c.children);
+        f = d.isEmpty() ? f.minus(child) : f.plus(child, d);
+        PersistentIdentityMap<SchemeComponent, Boolean> r = roots;
+        PersistentIdentityMap<SchemeComponent, Boolean> l = leaves;
+        if (d.member && d.parents.isEmpty())
+            r = r.plus(child, Boolean.TRUE);
+        Family e = parent == child ? d : q;
+        if (e.member && e.children.isEmpty())
+            l = l.plus(parent, Boolean.TRUE);
+        return new PersistentScheme<E>(f, r, l, size);
+    }
+
+    /**
+     * Returns the parents of a component in this scheme.
+     * @param c the component
+     * @return an unmodifiable list of the parents, empty if <code>c</code>
+     * is unknown
+     *
+     * @since 1.0.0
+     */
+    public List<SchemeComponent> getParents(SchemeComponent c) {
+        Family f = family(c);
+        return f == null ? Collections.<SchemeComponent>emptyList()
+                : keys(f.parents);
+    }
+
+    /**
+     * Returns the children of a component in this scheme.
+     * @param c the component
+     * @return an unmodifiable list of the children, empty if <code>c</code>
+     * is unknown
+     *
+     * @since 1.0.0
+     */
+    public List<SchemeComponent> getChildren(SchemeComponent c) {
+        Family f = family(c);
+        return f == null ? Collections.<SchemeComponent>emptyList()
+                : keys(f.children);
+    }
+
+    /**
+     * Lists the components of a map.
+     * @param map the map
+     * @return an unmodifiable list of the components
+     *
+     * @since 1.0.0
+     */
+    private static List<SchemeComponent> keys(
+            PersistentIdentityMap<SchemeComponent, Boolean> map) {
+        List<SchemeComponent> keys = new ArrayList<SchemeComponent>(
+            map.size());
+        for (Map.Entry<SchemeComponent, Boolean> entry : map)
+            keys.add(entry.getKey());
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Lists the contained components of a map.
+     * @param map the map, containing only contained components
+     * @return a list of the components
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // contained components are of type E
+    private List<E> members(
+            PersistentIdentityMap<SchemeComponent, Boolean> map) {
+        List<E> members = new ArrayList<E>(map.size());
+        for (Map.Entry<SchemeComponent, Boolean> entry : map)
+            members.add((E)entry.getKey());
+        return members;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    /**
+     * {@inheritDoc} Components are identified by identity. Takes
+     * <tt>O(log n)</tt> time.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(Object o) {
+        Family f = family(o);
+        return f != null && f.member;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.util.AbstractCollection#iterator()
+     */
+    /**
+     * {@inheritDoc} The iterator doesn't support removal.
+     * @since 1.0.0
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<Map.Entry<SchemeComponent, Family>> it =
+            families.iterator();
+        return new Iterator<E>() {
+
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @SuppressWarnings("unchecked") // members are added as E only
+            @Override
+            public E next() {
+                if (remaining == 0)
+                    throw new NoSuchElementException();
+                while (true) {
+                    Map.Entry<SchemeComponent, Family> entry = it.next();
+                    if (entry.getValue().member) {
+                        remaining--;
+                        return (E)entry.getKey();
+                    }
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getRoots()
+     */
+    /**
+     * {@inheritDoc} The roots are kept up to date by each version, so this
+     * takes time proportional to their number.
+     * @since 1.0.0
+     */
+    @Override
+    public List<E> getRoots() {
+        return members(roots);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getRoot(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public E getRoot(int index) {
+        return getRoots().get(index);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLeaves()
+     */
+    /**
+     * {@inheritDoc} The leaves are kept up to date by each version, so this
+     * takes time proportional to their number.
+     * @since 1.0.0
+     */
+    @Override
+    public List<E> getLeaves() {
+        return members(leaves);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLeaf(int)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public E getLeaf(int index) {
+        return getLeaves().get(index);
+    }
+
+    /**
+     * Searches the relatives of a component breadth first.
+     * @param start the component to start at
+     * @param target the component to look for, or <code>null</code> to look
+     * for any contained component
+     * @param up <code>true</code> to search the ancestors, else the
+     * descendants
+     * @return <code>true</code> if the target was found
+     *
+     * @since 1.0.0
+     */
+    private boolean search(SchemeComponent start, SchemeComponent target,
+            boolean up) {
+        Family f = family(start);
+        if (f == null)
+            return false;
+        Set<SchemeComponent> visited = Collections.newSetFromMap(
+            new IdentityHashMap<SchemeComponent, Boolean>());
+        ArrayDeque<Family> queue = new ArrayDeque<Family>();
+        queue.add(f);
+        while (!queue.isEmpty()) {
+            Family next = queue.poll();
+            for (Map.Entry<SchemeComponent, Boolean> entry
+                    : up ? next.parents : next.children) {
+                SchemeComponent c = entry.getKey();
+                Family g = family(c);
+                if (target == null ? g.member : c == target)
+                    return true;
+                if (visited.add(c))
+                    queue.add(g);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if one component is an ancestor of another one in this scheme.
+     * @param ancestor the possible ancestor
+     * @param descendant the possible descendant
+     * @return <code>true</code> if <code>ancestor</code> is an ancestor of
+     * <code>descendant</code>
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isAncestorOf(SchemeComponent)
+     */
+    public boolean isAncestorOf(SchemeComponent ancestor,
+            SchemeComponent descendant) {
+        if (descendant == null)
+            return false;
+        return search(ancestor, descendant, false);
+    }
+
+    /**
+     * Tells if one component is a descendant of another one in this scheme.
+     * @param descendant the possible descendant
+     * @param ancestor the possible ancestor
+     * @return <code>true</code> if <code>descendant</code> is a descendant of
+     * <code>ancestor</code>
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isDescendantOf(SchemeComponent)
+     */
+    public boolean isDescendantOf(SchemeComponent descendant,
+            SchemeComponent ancestor) {
+        return isAncestorOf(ancestor, descendant);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#containsAncestorOf(org.abos.schemes.
+     * SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} This is computed by a single search through the
+     * ancestors of <code>e</code>, stopping at the first component of this
+     * scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsAncestorOf(E e) {
+        return search(e, null, true);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#containsDescendantOf(org.abos.schemes.
+     * SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} This is computed by a single search through the
+     * descendants of <code>e</code>, stopping at the first component of this
+     * scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean containsDescendantOf(E e) {
+        return search(e, null, false);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#contains(org.abos.schemes.SchemeComponent,
+     * boolean)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(E e, boolean includeAncestors) {
+        return contains(e) || (includeAncestors && containsAncestorOf(e));
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#contains(org.abos.schemes.SchemeComponent,
+     * boolean, boolean)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public boolean contains(E e, boolean includeAncestors,
+            boolean includeDescendants) {
+        return contains(e) || (includeAncestors && containsAncestorOf(e))
+                || (includeDescendants && containsDescendantOf(e));
+    }
+
+    /**
+     * Compiles this version into a snapshot, contained components first.
+     * @return the snapshot
+     *
+     * @since 1.0.0
+     */
+    private CompactGraph compile() {
+        int n = families.size();
+        SchemeComponent[] nodes = new SchemeComponent[n];
+        Family[] f = new Family[n];
+        IdentityIntMap ids = new IdentityIntMap(n);
+        int members = 0;
+        int associated = size;
+        int edges = 0;
+        for (Map.Entry<SchemeComponent, Family> entry : families) {
+            int id = entry.getValue().member ? members++ : associated++;
+            nodes[id] = entry.getKey();
+            f[id] = entry.getValue();
+            ids.put(nodes[id], id);
+            edges += f[id].children.size();
+        }
+        int[] childOffsets = new int[n + 1];
+        int[] childTargets = new int[edges];
+        int[] parentOffsets = new int[n + 1];
+        int[] parentTargets = new int[edges];
+        int c = 0;
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            childOffsets[i] = c;
+            for (Map.Entry<SchemeComponent, Boolean> entry : f[i].children)
+                childTargets[c++] = ids.get(entry.getKey());
+            parentOffsets[i] = p;
+            for (Map.Entry<SchemeComponent, Boolean> entry : f[i].parents)
+                parentTargets[p++] = ids.get(entry.getKey());
+        }
+        childOffsets[n] = c;
+        parentOffsets[n] = p;
+        return new CompactGraph(nodes, size, childOffsets, childTargets,
+            parentOffsets, parentTargets);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#deepEquals(org.abos.schemes.Scheme)
+     */
+    /**
+     * {@inheritDoc} The links of this scheme are compared with the families
+     * of the other scheme's components like in
+     * {@link ArrayScheme#deepEquals(Scheme)}.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean deepEquals(Scheme<E> scheme) {
+        if (scheme == null)
+            return false;
+        StructuralHashes own = new StructuralHashes(compile());
+        StructuralHashes other = new StructuralHashes(scheme);
+        return own.matches(own.idsOf(getRoots()), other,
+                    other.idsOf(scheme.getRoots()), true)
+                && own.matches(own.idsOf(getLeaves()), other,
+                    other.idsOf(scheme.getLeaves()), false);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#deepCopy()
+     */
+    /**
+     * {@inheritDoc} The copy is an {@link ArrayScheme} of clones of the
+     * components, linked like in this scheme, including the associated
+     * components.
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // the members are of type E
+    @Override
+    public Scheme<E> deepCopy() throws CloneNotSupportedException {
+        CompactGraph graph = compile();
+        SchemeComponent[] clones = new SchemeComponent[graph.size()];
+        for (int i = 0; i < clones.length; i++)
+            clones[i] = (SchemeComponent)graph.nodes[i].clone();
+        for (int i = 0; i < clones.length; i++) {
+            for (int e = graph.childOffsets[i];
+                    e < graph.childOffsets[i + 1]; e++) {
+                clones[i].addChild(clones[graph.childTargets[e]]);
+                clones[graph.childTargets[e]].addParent(clones[i]);
+            }
+        }
+        ArrayScheme<E> copy = new ArrayScheme<E>(size);
+        for (int i = 0; i < size; i++)
+            copy.add((E)clones[i]);
+        return copy;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#allFamiliesValid()
+     */
+    /**
+     * {@inheritDoc} Since links always connect both sides, only cycles can
+     * make families invalid.
+     * @since 1.0.0
+     */
+    @Override
+    public boolean allFamiliesValid() {
+        return getFamilyReport().isValid();
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getFamilyReport()
+     */
+    /**
+     * {@inheritDoc} This is computed on the links of this scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public FamilyReport getFamilyReport() {
+        return new FamilyReport(compile());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#validateRootsAndLeaves()
+     */
+    /**
+     * {@inheritDoc} Since each version keeps its roots and leaves up to
+     * date, this method does nothing.
+     * @since 1.0.0
+     */
+    @Override
+    public void validateRootsAndLeaves() {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#addSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc} Since a persistent scheme can't change,
+     * listeners are never notified and aren't kept.
+     * @since 1.0.0
+     */
+    @Override
+    public void addSchemeListener(SchemeListener l) {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#removeSchemeListener(org.abos.schemes.
+     * SchemeListener)
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public void removeSchemeListener(SchemeListener l) {}
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getDepths()
+     */
+    /**
+     * {@inheritDoc} This is computed on the links of this scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public int[] getDepths() {
+        return Arrays.copyOf(compile().layers(), size());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getHeights()
+     */
+    /**
+     * {@inheritDoc} This is computed on the links of this scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public int[] getHeights() {
+        return Arrays.copyOf(compile().heights(), size());
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(org.abos.
+     * schemes.SchemeComponent, org.abos.schemes.SchemeComponent)
+     */
+    /**
+     * {@inheritDoc} This is computed on the links of this scheme, so components
+     * unknown to this scheme have no common ancestors.
+     * @since 1.0.0
+     */
+    @Override
+    public List<SchemeComponent> getLowestCommonAncestors(SchemeComponent a,
+            SchemeComponent b) {
+        return getLowestCommonAncestors(Collections.singletonList(a),
+            Collections.singletonList(b)).get(0);
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.Scheme#getLowestCommonAncestors(java.util.List,
+     * java.util.List)
+     */
+    /**
+     * {@inheritDoc} This is computed on the links of this scheme.
+     * @since 1.0.0
+     */
+    @Override
+    public List<List<SchemeComponent>> getLowestCommonAncestors(
+            List<? extends SchemeComponent> a,
+            List<? extends SchemeComponent> b) {
+        return compile().lowestCommonAncestors(a, b);
+    }
+
+}
@@ -0,0 +1,38 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * A family listener which is told the position of the parent or child added
+ * or removed, if the component knows it. {@link AbstractSchemeComponent}s
+ * call {@link #familyChanged(SchemeComponent, int, SchemeComponent, boolean,
+ * int)} instead of
+ * {@link #familyChanged(SchemeComponent, int, SchemeComponent, boolean)} on
+ * such listeners.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see SchemeEvent#getIndex()
+ */
+interface PositionalFamilyListener extends FamilyListener {
+
+    /**
+     * Called after the family of a scheme component changed.
+     * @param source the component whose family changed
+     * @param type {@link SchemeComponent#PARENT} if a parent of
+     * <code>source</code> was added or removed,
+     * {@link SchemeComponent#CHILD} if it was a child
+     * @param relative the parent or child which was added or removed
+     * @param added <code>true</code> if <code>relative</code> was added,
+     * <code>false</code> if it was removed
+     * @param index the position of <code>relative</code> in the family right
+     * after the addition or right before the removal, <code>-1</code> if
+     * unknown
+     *
+     * @since 1.0.0
+     */
+    public void familyChanged(SchemeComponent source, int type,
+            SchemeComponent relative, boolean added, int index);
+
+}
@@ -0,0 +1,92 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Collection;
+
+/**
+ * An index answering if a scheme component is an ancestor of another one
+ * without searching through the families each time. An index is built over
+ * some components and all components associated to them, and becomes
+ * invalid as soon as any of their families changes. Components are
+ * identified by identity, not by {@link Object#equals(Object)}. <br>
+ * Schemes can use an index for their ancestor and descendant queries,
+ * rebuilding it when needed.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#setReachabilityIndex(ReachabilityIndex)
+ */
+public interface ReachabilityIndex {
+
+    /**
+     * (Re)builds this index over the given components and all components
+     * associated to them. Afterwards this index is valid.
+     * @param components the components to build the index over
+     * @throws NullPointerException If <code>components</code> is or
+     * contains <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    public void rebuild(Collection<? extends SchemeComponent> components);
+
+    /**
+     * Tells if this index reflects the current families of its components.
+     * An index becomes invalid when a family of one of its components
+     * changes or when {@link #invalidate()} is called.
+     * @return <code>true</code> if this index is valid
+     *
+     * @since 1.0.0
+     */
+    public boolean isValid();
+
+    /**
+     * Marks this index as invalid, so it has to be rebuilt before it is
+     * used again.
+     *
+     * @since 1.0.0
+     */
+    public void invalidate();
+
+    /**
+     * Invalidates this index and releases all data and all references to
+     * components held by it.
+     *
+     * @since 1.0.0
+     */
+    public void clear();
+
+    /**
+     * Tells if a component is an ancestor of another one. If this index is
+     * invalid or doesn't know the components, the families are searched
+     * instead.
+     * @param ancestor the possible ancestor
+     * @param descendant the possible descendant
+     * @return <code>true</code> if <code>ancestor</code> is an ancestor of
+     * <code>descendant</code>
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isAncestorOf(SchemeComponent)
+     */
+    public boolean isAncestorOf(SchemeComponent ancestor,
+            SchemeComponent descendant);
+
+    /**
+     * Tells if a component is a descendant of another one. If this index is
+     * invalid or doesn't know the components, the families are searched
+     * instead.
+     * @param descendant the possible descendant
+     * @param ancestor the possible ancestor
+     * @return <code>true</code> if <code>descendant</code> is a descendant of
+     * <code>ancestor</code>
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeComponent#isDescendantOf(SchemeComponent)
+     */
+    public boolean isDescendantOf(SchemeComponent descendant,
+            SchemeComponent ancestor);
+
+}
@@ -14,7 +14,7 @@ import java.util.List;
  * A scheme is called self-contained if it has no associated components.
  * 
  * @author Sebastian Koch
- * @version 1.0.0
+ * @version 1.1.0
  * @since 1.0.0
  * 
  * @see SchemeComponent
@@ -158,6 +158,21 @@ public interface Scheme<E extends SchemeComponent> extends Collection<E> {
 	 */
 	public boolean allFamiliesValid();
 	
+	/**
+	 * Checks the families of all components of this scheme at once and 
+	 * returns which components have invalid families, together with the 
+	 * cycles and one-sided links causing them. This should take linear time 
+	 * in the number of components and family listings, so 
+	 * {@link #allFamiliesValid()} can be implemented as 
+	 * <code>getFamilyReport().isValid()</code>.
+	 * @return the report on the families of this scheme
+	 * 
+	 * @since 1.1.0
+	 * 
+	 * @see FamilyReport
+	 */
+	public FamilyReport getFamilyReport();
+	
 	/**
 	 * When a scheme component is added and its parents children are changed
 	 * afterwards, {@link #getRoots()}, {@link #getRoot()}, {@link #getLeaves()} 
@@ -168,6 +183,94 @@ public interface Scheme<E extends SchemeComponent> extends Collection<E> {
 	 */
 	public void validateRootsAndLeaves();
 	
+	/**
+	 * Registers a listener to be notified whenever this scheme changes, that
+	 * means whenever components are added or removed, the family of a 
+	 * component changes or the data of a component changes. Registering the
+	 * same listener twice has no effect. Schemes which can't change never 
+	 * notify their listeners.
+	 * @param l the listener to register
+	 * 
+	 * @since 1.1.0
+	 * 
+	 * @see #removeSchemeListener(SchemeListener)
+	 * @see SchemeEvent
+	 */
+	public void addSchemeListener(SchemeListener l);
+	
+	/**
+	 * Unregisters a listener registered by 
+	 * {@link #addSchemeListener(SchemeListener)}.
+	 * @param l the listener to unregister
+	 * 
+	 * @since 1.1.0
+	 */
+	public void removeSchemeListener(SchemeListener l);
+	
+	/**
+	 * Returns the depth of each component of this scheme, that is the length
+	 * of the longest path from a root to it, including associated 
+	 * components. Roots have depth <code>0</code>, every other component is 
+	 * one deeper than its deepest parent. Components on a cycle or below one
+	 * have depth <code>-1</code>. Takes <tt>O(V+E)</tt> time at most.
+	 * @return the depths, in the order of {@link #iterator()}
+	 * 
+	 * @since 1.1.0
+	 * 
+	 * @see #getHeights()
+	 */
+	public int[] getDepths();
+	
+	/**
+	 * Returns the height of each component of this scheme, that is the 
+	 * length of the longest path from it to a leaf, including associated 
+	 * components. Leaves have height <code>0</code>, every other component is
+	 * one higher than its highest child. Components on a cycle or above one 
+	 * have height <code>-1</code>. Takes <tt>O(V+E)</tt> time at most.
+	 * @return the heights, in the order of {@link #iterator()}
+	 * 
+	 * @since 1.1.0
+	 * 
+	 * @see #getDepths()
+	 */
+	public int[] getHeights();
+	
+	/**
+	 * Returns the lowest common ancestors of two components, including 
+	 * associated components. Here a component counts as ancestor of itself,
+	 * so if one component is an ancestor of the other one, it is their only
+	 * lowest common ancestor. A common ancestor is lowest if none of its 
+	 * descendants is a common ancestor as well. Components on a common 
+	 * cycle are returned together. Components are identified by identity.
+	 * @param a the first component
+	 * @param b the second component
+	 * @return the lowest common ancestors in topological order, an empty
+	 * list if there are none or a component is <code>null</code>
+	 * 
+	 * @since 1.1.0
+	 * 
+	 * @see #getLowestCommonAncestors(List, List)
+	 */
+	public List<SchemeComponent> getLowestCommonAncestors(SchemeComponent a,
+	        SchemeComponent b);
+	
+	/**
+	 * Returns the lowest common ancestors of many pairs of components, like
+	 * {@link #getLowestCommonAncestors(SchemeComponent, SchemeComponent)} 
+	 * does for each pair, but sharing the work between the pairs where
+	 * possible.
+	 * @param a the first components, may contain <code>null</code>
+	 * @param b the second components, one for each first component, may 
+	 * contain <code>null</code>
+	 * @return the lowest common ancestors of each pair
+	 * @throws IllegalArgumentException If both lists differ in size.
+	 * 
+	 * @since 1.1.0
+	 */
+	public List<List<SchemeComponent>> getLowestCommonAncestors(
+	        List<? extends SchemeComponent> a, 
+	        List<? extends SchemeComponent> b);
+	
 	// TODO add method to check integrity of types
 	
 	// TODO check if there are any associated components.
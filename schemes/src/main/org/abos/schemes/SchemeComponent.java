@@ -8,7 +8,7 @@ import java.util.Iterator;
  * or children.
  * 
  * @author Sebastian Koch
- * @version 1.1.0
+ * @version 1.2.0
  * @since 1.0.0
  */
 public interface SchemeComponent extends Cloneable {
@@ -175,6 +175,27 @@ public interface SchemeComponent extends Cloneable {
      */
     public void forceFamilyApart();
 
+    /**
+     * Registers a listener to be notified whenever a parent or a child is
+     * added to or removed from this component. Registering the same listener
+     * twice has no effect.
+     * @param l the listener to register
+     * 
+     * @since 1.2.0
+     * 
+     * @see #removeFamilyListener(FamilyListener)
+     */
+    public void addFamilyListener(FamilyListener l);
+    
+    /**
+     * Unregisters a listener registered by 
+     * {@link #addFamilyListener(FamilyListener)}.
+     * @param l the listener to unregister
+     * 
+     * @since 1.2.0
+     */
+    public void removeFamilyListener(FamilyListener l);
+
     /**
      * Returns an iterator depending on the argument.
      * @param type The type of the iterator.
@@ -0,0 +1,25 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * A batch of changes to a scheme, given to {@link ArrayScheme#edit(
+ * SchemeEdit)}. The edit only records the changes in the given transaction,
+ * which applies them all at once afterwards, or none of them.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see SchemeTransaction
+ */
+public interface SchemeEdit<E extends SchemeComponent> {
+
+    /**
+     * Records the changes of this edit.
+     * @param transaction the transaction to record the changes in
+     *
+     * @since 1.0.0
+     */
+    public void edit(SchemeTransaction<E> transaction);
+
+}
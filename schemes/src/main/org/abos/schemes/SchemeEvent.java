@@ -0,0 +1,330 @@
+// LICENSE
+package org.abos.schemes;
+
+/**
+ * A single change of a scheme, reported to {@link SchemeListener}s. Each
+ * event has a type and names the component concerned. Since families are
+ * stored on both sides, a link between a parent and a child that are both
+ * contained in the scheme is reported by two events, one for each side,
+ * telling by {@link #getRelation()} which family of the component changed.
+ * Listeners interested in each link once may ignore the events with 
+ * relation {@link SchemeComponent#PARENT}, as long as the families are
+ * valid. <br>
+ * Events may tell the position of the change by {@link #getIndex()}, so it
+ * can be undone exactly. <br>
+ * Events are immutable.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see SchemeListener
+ */
+public final class SchemeEvent {
+
+    /**
+     * The type of events reporting a component which was added to the 
+     * scheme and wasn't contained before.
+     *
+     * @since 1.0.0
+     */
+    public static final int ADDED = 1;
+
+    /**
+     * The type of events reporting a component which was removed from the
+     * scheme and isn't contained anymore.
+     *
+     * @since 1.0.0
+     */
+    public static final int REMOVED = 2;
+
+    /**
+     * The type of events reporting a parent or child added to the family of
+     * a component of the scheme.
+     *
+     * @since 1.0.0
+     */
+    public static final int LINKED = 3;
+
+    /**
+     * The type of events reporting a parent or child removed from the family
+     * of a component of the scheme.
+     *
+     * @since 1.0.0
+     */
+    public static final int UNLINKED = 4;
+
+    /**
+     * The type of events reporting a component of the scheme whose data
+     * changed, for example the name or description of an 
+     * {@link InformationComponent}.
+     *
+     * @since 1.0.0
+     */
+    public static final int CHANGED = 5;
+
+    /**
+     * The scheme which changed.
+     *
+     * @since 1.0.0
+     */
+    private final Scheme<?> scheme;
+
+    /**
+     * The type of this event.
+     *
+     * @since 1.0.0
+     */
+    private final int type;
+
+    /**
+     * The component concerned.
+     *
+     * @since 1.0.0
+     */
+    private final SchemeComponent component;
+
+    /**
+     * The family which changed, <code>0</code> if no family changed.
+     *
+     * @since 1.0.0
+     */
+    private final int relation;
+
+    /**
+     * The parent or child added or removed, <code>null</code> if no family
+     * changed.
+     *
+     * @since 1.0.0
+     */
+    private final SchemeComponent relative;
+
+    /**
+     * The former data of the component, <code>null</code> if unknown or if
+     * the data didn't change.
+     *
+     * @since 1.0.0
+     */
+    private final Object former;
+
+    /**
+     * The position of the component in the scheme or of the relative in the
+     * family, <code>-1</code> if unknown.
+     *
+     * @since 1.0.0
+     */
+    private final int index;
+
+    /**
+     * Creates an event for a change of a family at an unknown position.
+     * @param scheme the scheme which changed
+     * @param type {@link #LINKED} or {@link #UNLINKED}
+     * @param component the component whose family changed
+     * @param relation {@link SchemeComponent#PARENT} or 
+     * {@link SchemeComponent#CHILD}
+     * @param relative the parent or child added or removed
+     *
+     * @since 1.0.0
+     */
+    public SchemeEvent(Scheme<?> scheme, int type, SchemeComponent component,
+            int relation, SchemeComponent relative) {
+        this(scheme, type, component, relation, relative, -1);
+    }
+
+    /**
+     * Creates an event for a change of a family.
+     * @param scheme the scheme which changed
+     * @param type {@link #LINKED} or {@link #UNLINKED}
+     * @param component the component whose family changed
+     * @param relation {@link SchemeComponent#PARENT} or 
+     * {@link SchemeComponent#CHILD}
+     * @param relative the parent or child added or removed
+     * @param index the position of <code>relative</code> in the family, 
+     * <code>-1</code> if unknown
+     *
+     * @since 1.0.0
+     *
+     * @see #getIndex()
+     */
+    public SchemeEvent(Scheme<?> scheme, int type, SchemeComponent component,
+            int relation, SchemeComponent relative, int index) {
+        this.scheme = scheme;
+        this.type = type;
+        this.component = component;
+        this.relation = relation;
+        this.relative = relative;
+        this.former = null;
+        this.index = index;
+    }
+
+    /**
+     * Creates an event for a change not concerning a family at an unknown
+     * position.
+     * @param scheme the scheme which changed
+     * @param type {@link #ADDED}, {@link #REMOVED} or {@link #CHANGED}
+     * @param component the component concerned
+     *
+     * @since 1.0.0
+     */
+    public SchemeEvent(Scheme<?> scheme, int type, SchemeComponent component) {
+        this(scheme, type, component, 0, null, -1);
+    }
+
+    /**
+     * Creates an event for the addition or removal of a component.
+     * @param scheme the scheme which changed
+     * @param type {@link #ADDED} or {@link #REMOVED}
+     * @param component the component concerned
+     * @param index the position of <code>component</code> in the scheme,
+     * <code>-1</code> if unknown
+     *
+     * @since 1.0.0
+     *
+     * @see #getIndex()
+     */
+    public SchemeEvent(Scheme<?> scheme, int type, SchemeComponent component,
+            int index) {
+        this(scheme, type, component, 0, null, index);
+    }
+
+    /**
+     * Creates an event for a change of the data of a component.
+     * @param scheme the scheme which changed
+     * @param component the component which changed
+     * @param former the former data of the component, or <code>null</code>
+     * if unknown
+     *
+     * @since 1.0.0
+     *
+     * @see #CHANGED
+     */
+    public SchemeEvent(Scheme<?> scheme, SchemeComponent component, 
+            Object former) {
+        this.scheme = scheme;
+        this.type = CHANGED;
+        this.component = component;
+        this.relation = 0;
+        this.relative = null;
+        this.former = former;
+        this.index = -1;
+    }
+
+    /**
+     * Returns the scheme which changed.
+     * @return the scheme which changed
+     *
+     * @since 1.0.0
+     */
+    public Scheme<?> getScheme() {
+        return scheme;
+    }
+
+    /**
+     * Returns the type of this event.
+     * @return {@link #ADDED}, {@link #REMOVED}, {@link #LINKED}, 
+     * {@link #UNLINKED} or {@link #CHANGED}
+     *
+     * @since 1.0.0
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the component concerned, that means the component added,
+     * removed or changed, or the component whose family changed.
+     * @return the component concerned
+     *
+     * @since 1.0.0
+     */
+    public SchemeComponent getComponent() {
+        return component;
+    }
+
+    /**
+     * Returns which family of the component changed.
+     * @return {@link SchemeComponent#PARENT} if a parent was added or
+     * removed, {@link SchemeComponent#CHILD} if it was a child, 
+     * <code>0</code> if no family changed
+     *
+     * @since 1.0.0
+     */
+    public int getRelation() {
+        return relation;
+    }
+
+    /**
+     * Returns the parent or child added to or removed from the family of the
+     * component.
+     * @return the parent or child, or <code>null</code> if no family changed
+     *
+     * @since 1.0.0
+     */
+    public SchemeComponent getRelative() {
+        return relative;
+    }
+
+    /**
+     * Returns the data of the component before a {@link #CHANGED} event.
+     * For the components of an {@link ArrayInformationScheme}, this is an
+     * {@link Information} holding the former name and description.
+     * @return the former data, or <code>null</code> if unknown or if the
+     * data didn't change
+     *
+     * @since 1.0.0
+     */
+    public Object getFormer() {
+        return former;
+    }
+
+    /**
+     * Returns the position of the change. For {@link #ADDED} events, this 
+     * is the position of the component in the scheme after the reported
+     * batch of changes, for {@link #REMOVED} events its position before the
+     * batch. If a component is contained several times, it is its first
+     * position. For {@link #LINKED} and {@link #UNLINKED} events, it is the
+     * position of the relative in the family right after it was added or 
+     * right before it was removed, so the changes of families can be undone
+     * one by one in reverse order.
+     * @return the position, or <code>-1</code> if unknown or if the event
+     * reports a change of data
+     *
+     * @since 1.0.0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    /**
+     * {@inheritDoc}
+     * @since 1.0.0
+     */
+    @Override
+    public String toString() {
+        String s;
+        switch (type) {
+        case ADDED:
+            return "added " + component;
+        case REMOVED:
+            return "removed " + component;
+        case CHANGED:
+            return "changed " + component;
+        case LINKED:
+            s = "linked ";
+            break;
+        case UNLINKED:
+            s = "unlinked ";
+            break;
+        default:
+            return "unknown " + component;
+        }
+        return s + (relation == SchemeComponent.PARENT ? "parent " : "child ")
+                + relative + " of " + component;
+    }
+
+}
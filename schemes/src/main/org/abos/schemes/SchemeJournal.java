@@ -0,0 +1,431 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A journal of the changes of an {@link ArrayScheme}, so they can be undone
+ * and redone. The journal listens to the scheme and records each reported
+ * batch of changes as one step, so a single modification or a whole
+ * {@link ArrayScheme#edit(SchemeEdit)} is undone at once. Only the
+ * operations are recorded, not copies of the scheme: Each addition or
+ * removal of a component, each change of a family and each change of the
+ * name and description of an {@link InformationComponent} takes one slot,
+ * so undoing or redoing a step takes time proportional to the changes of
+ * the step only, no matter how large the scheme is. <br>
+ * The journal holds a fixed number of operations, given at construction.
+ * If a new step doesn't fit, the oldest steps are forgotten. A step larger
+ * than the whole journal can't be undone, so the journal is cleared then.
+ * Recording a new step forgets all steps undone before. <br>
+ * Undoing and redoing goes through {@link ArrayScheme#edit(SchemeEdit)}, so
+ * it is reported to the listeners of the scheme as one batch and either
+ * succeeds completely or not at all. Each operation is recorded with its
+ * position, see {@link SchemeEvent#getIndex()}: Components and relatives 
+ * are removed by identity at their recorded positions, and inserted at
+ * them again, so the order of the scheme and of the families is restored,
+ * even if they contain equal components. Only the first occurrence of a 
+ * component contained several times is recorded, though. Changes the 
+ * scheme doesn't report, like reordering or changes of the data of other
+ * components, aren't recorded either.<br>
+ * This class is not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see SchemeListener
+ */
+public class SchemeJournal<E extends SchemeComponent>
+implements SchemeListener {
+
+    /**
+     * The journaled scheme.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayScheme<E> scheme;
+
+    /**
+     * The kinds of the recorded operations, that is the type of the event
+     * times four plus its relation.
+     *
+     * @since 1.0.0
+     *
+     * @see #kind(SchemeEvent)
+     */
+    private final byte[] kinds;
+
+    /**
+     * The components of the recorded operations.
+     *
+     * @since 1.0.0
+     */
+    private final Object[] components;
+
+    /**
+     * The relatives of the recorded operations, or the other name and
+     * description of a changed component as array of length two.
+     *
+     * @since 1.0.0
+     */
+    private final Object[] arguments;
+
+    /**
+     * The positions of the recorded operations, <code>-1</code> if unknown.
+     *
+     * @since 1.0.0
+     */
+    private final int[] indexes;
+
+    /**
+     * The number of operations of each recorded step.
+     *
+     * @since 1.0.0
+     */
+    private final int[] stepSizes;
+
+    /**
+     * The position of the oldest operation still recorded. Positions only
+     * grow and are mapped to the arrays by {@link #slot(long)}.
+     *
+     * @since 1.0.0
+     */
+    private long firstOperation = 0;
+
+    /**
+     * The position after the last operation which can be undone.
+     *
+     * @since 1.0.0
+     */
+    private long endOperation = 0;
+
+    /**
+     * The position after the last operation which can be redone.
+     *
+     * @since 1.0.0
+     */
+    private long topOperation = 0;
+
+    /**
+     * The position of the oldest step still recorded.
+     *
+     * @since 1.0.0
+     */
+    private long firstStep = 0;
+
+    /**
+     * The position after the last step which can be undone.
+     *
+     * @since 1.0.0
+     */
+    private long endStep = 0;
+
+    /**
+     * The position after the last step which can be redone.
+     *
+     * @since 1.0.0
+     */
+    private long topStep = 0;
+
+    /**
+     * If the journal is undoing or redoing right now, so the changes
+     * reported aren't recorded.
+     *
+     * @since 1.0.0
+     */
+    private boolean replaying = false;
+
+    /**
+     * Creates an empty journal for the given scheme and registers it as
+     * scheme listener.
+     * @param scheme the scheme to journal
+     * @param capacity the maximum number of operations to hold
+     * @throws NullPointerException If <code>scheme</code> is
+     * <code>null</code>.
+     * @throws IllegalArgumentException If <code>capacity</code> isn't
+     * positive.
+     *
+     * @since 1.0.0
+     */
+    public SchemeJournal(ArrayScheme<E> scheme, int capacity) {
+        if (scheme == null)
+            throw new NullPointerException();
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive!");
+        this.scheme = scheme;
+        kinds = new byte[capacity];
+        components = new Object[capacity];
+        arguments = new Object[capacity];
+        indexes = new int[capacity];
+        stepSizes = new int[capacity];
+        scheme.addSchemeListener(this);
+    }
+
+    /**
+     * Returns the maximum number of operations this journal holds.
+     * @return the capacity of this journal
+     *
+     * @since 1.0.0
+     */
+    public int getCapacity() {
+        return kinds.length;
+    }
+
+    /**
+     * Tells if there is a step to undo.
+     * @return <code>true</code> if {@link #undo()} is possible
+     *
+     * @since 1.0.0
+     */
+    public boolean canUndo() {
+        return endStep > firstStep;
+    }
+
+    /**
+     * Tells if there is a step to redo.
+     * @return <code>true</code> if {@link #redo()} is possible
+     *
+     * @since 1.0.0
+     */
+    public boolean canRedo() {
+        return topStep > endStep;
+    }
+
+    /**
+     * Forgets all recorded steps.
+     *
+     * @since 1.0.0
+     */
+    public void clear() {
+        firstOperation = endOperation = topOperation = 0;
+        firstStep = endStep = topStep = 0;
+        Arrays.fill(components, null);
+        Arrays.fill(arguments, null);
+    }
+
+    /**
+     * Unregisters this journal from the scheme and forgets all recorded
+     * steps. Nothing is recorded anymore afterwards.
+     *
+     * @since 1.0.0
+     */
+    public void detach() {
+        scheme.removeSchemeListener(this);
+        clear();
+    }
+
+    /**
+     * Undoes the last step not undone yet.
+     * @throws IllegalStateException If there is nothing to undo.
+     * @throws SchemeDependencyException If the scheme rejects the changes,
+     * for example because of changes which weren't recorded. Nothing
+     * changes then.
+     *
+     * @since 1.0.0
+     *
+     * @see #canUndo()
+     */
+    public void undo() {
+        if (!canUndo())
+            throw new IllegalStateException("Nothing to undo!");
+        long from = endOperation - stepSizes[slot(endStep - 1)];
+        replay(from, endOperation, true);
+        endOperation = from;
+        endStep--;
+    }
+
+    /**
+     * Redoes the last step undone.
+     * @throws IllegalStateException If there is nothing to redo.
+     * @throws SchemeDependencyException If the scheme rejects the changes,
+     * for example because of changes which weren't recorded. Nothing
+     * changes then.
+     *
+     * @since 1.0.0
+     *
+     * @see #canRedo()
+     */
+    public void redo() {
+        if (!canRedo())
+            throw new IllegalStateException("Nothing to redo!");
+        long to = endOperation + stepSizes[slot(endStep)];
+        replay(endOperation, to, false);
+        endOperation = to;
+        endStep++;
+    }
+
+    /*
+     * (non-JavaDoc)
+     *
+     * @see org.abos.schemes.SchemeListener#schemeChanged(java.util.List)
+     */
+    /**
+     * {@inheritDoc} The changes are recorded as one step, unless this
+     * journal is undoing or redoing right now.
+     * @since 1.0.0
+     */
+    @Override
+    public void schemeChanged(List<SchemeEvent> events) {
+        if (replaying)
+            return;
+        int size = 0;
+        for (SchemeEvent event : events)
+            if (kind(event) != 0)
+                size++;
+        if (size == 0)
+            return;
+        // a new step makes the steps undone unreachable
+        topOperation = endOperation;
+        topStep = endStep;
+        if (size > kinds.length) {
+            clear();
+            return;
+        }
+        while (endOperation + size - firstOperation > kinds.length)
+            firstOperation += stepSizes[slot(firstStep++)];
+        for (SchemeEvent event : events) {
+            byte kind = kind(event);
+            if (kind == 0)
+                continue;
+            int slot = slot(endOperation++);
+            kinds[slot] = kind;
+            components[slot] = event.getComponent();
+            indexes[slot] = event.getIndex();
+            if (event.getType() == SchemeEvent.CHANGED) {
+                Information former = (Information)event.getFormer();
+                arguments[slot] = new String[] {former.getName(),
+                    former.getDescription()};
+            }
+            else
+                arguments[slot] = event.getRelative();
+        }
+        stepSizes[slot(endStep++)] = size;
+        topOperation = endOperation;
+        topStep = endStep;
+    }
+
+    /**
+     * Returns the kind of operation to record for an event.
+     * @param event the reported event
+     * @return the type of the event times four plus its relation, or
+     * <code>0</code> if the event can't be recorded
+     *
+     * @since 1.0.0
+     */
+    private static byte kind(SchemeEvent event) {
+        if (event.getType() == SchemeEvent.CHANGED
+                && !(event.getComponent() instanceof InformationComponent
+                    && event.getFormer() instanceof Information))
+            return 0;
+        return (byte)(event.getType() * 4 + event.getRelation());
+    }
+
+    /**
+     * Maps a position to the slot in the arrays.
+     * @param position the position of an operation or step
+     * @return the index in the arrays
+     *
+     * @since 1.0.0
+     */
+    private int slot(long position) {
+        return (int)(position % kinds.length);
+    }
+
+    /**
+     * Undoes or redoes the operations in the given range. Changes of
+     * components and families are made by one edit of the scheme, changes
+     * of data afterwards.
+     * @param from the position of the first operation
+     * @param to the position after the last operation
+     * @param undo <code>true</code> to undo the operations in reverse order,
+     * <code>false</code> to redo them in order
+     * @throws SchemeDependencyException If the scheme rejects the changes.
+     *
+     * @since 1.0.0
+     */
+    private void replay(final long from, final long to, final boolean undo) {
+        replaying = true;
+        try {
+            scheme.edit(new SchemeEdit<E>() {
+                @Override
+                public void edit(SchemeTransaction<E> tx) {
+                    if (undo)
+                        for (long p = to - 1; p >= from; p--)
+                            record(tx, slot(p), true);
+                    else
+                        for (long p = from; p < to; p++)
+                            record(tx, slot(p), false);
+                }
+            });
+            if (undo)
+                for (long p = to - 1; p >= from; p--)
+                    swapInformation(slot(p));
+            else
+                for (long p = from; p < to; p++)
+                    swapInformation(slot(p));
+        }
+        finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Records a recorded operation or its inverse in a transaction, at the
+     * recorded position. Components inserted at positions are added after 
+     * all removals by the edit, so undoing a step inserts the removed
+     * components at their positions before the step, and redoing it inserts
+     * the added ones at their positions after the step. Changes of data are
+     * skipped.
+     * @param tx the transaction to record in
+     * @param slot the slot of the operation
+     * @param inverse <code>true</code> to record the inverse operation
+     *
+     * @since 1.0.0
+     */
+    @SuppressWarnings("unchecked") // only components of the scheme are added
+    private void record(SchemeTransaction<E> tx, int slot, boolean inverse) {
+        int type = kinds[slot] >> 2;
+        int relation = kinds[slot] & 3;
+        SchemeComponent c = (SchemeComponent)components[slot];
+        SchemeComponent relative = type == SchemeEvent.CHANGED ? null
+                : (SchemeComponent)arguments[slot];
+        int index = indexes[slot];
+        switch (type) {
+        case SchemeEvent.ADDED:
+        case SchemeEvent.REMOVED:
+            if (inverse == (type == SchemeEvent.ADDED))
+                tx.remove(index, c);
+            else
+                tx.add(index, (E)c);
+            break;
+        case SchemeEvent.LINKED:
+        case SchemeEvent.UNLINKED:
+            if (inverse == (type == SchemeEvent.LINKED))
+                tx.removeRelative(c, relation, index, relative);
+            else
+                tx.addRelative(c, relation, index, relative);
+            break;
+        default: // data is changed after the edit
+        }
+    }
+
+    /**
+     * Swaps the name and description of a changed component with the ones
+     * recorded, if the operation in the given slot is a change of data.
+     * Since the swapped values are kept, the same call undoes and redoes the
+     * change.
+     * @param slot the slot of the operation
+     *
+     * @since 1.0.0
+     */
+    private void swapInformation(int slot) {
+        if (kinds[slot] >> 2 != SchemeEvent.CHANGED)
+            return;
+        InformationComponent c = (InformationComponent)components[slot];
+        String[] other = (String[])arguments[slot];
+        arguments[slot] = new String[] {c.getName(), c.getDescription()};
+        c.setInformation(other[0], other[1]);
+    }
+
+}
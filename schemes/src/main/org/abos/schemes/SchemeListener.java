@@ -0,0 +1,32 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.List;
+
+/**
+ * A listener to be notified whenever a scheme changes, that means whenever
+ * components are added or removed, the families of its components change or
+ * the data of a component changes. The changes are reported in batches, so
+ * a batch edit of a scheme is reported once, after all changes succeeded. 
+ * This way views and indices can be updated incrementally instead of 
+ * scanning the whole scheme again.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see Scheme#addSchemeListener(SchemeListener)
+ * @see ArrayScheme#edit(SchemeEdit)
+ */
+public interface SchemeListener {
+
+    /**
+     * Called after a scheme changed.
+     * @param events the changes in the order they happened, never empty.
+     * The list is unmodifiable and shared by all listeners.
+     *
+     * @since 1.0.0
+     */
+    public void schemeChanged(List<SchemeEvent> events);
+
+}
@@ -0,0 +1,640 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes recorded by a {@link SchemeEdit}, to be applied to an
+ * {@link ArrayScheme} at once. Components can be added and removed, and
+ * links between parents and children can be made and broken on both sides,
+ * or on one side only. Nothing changes until the edit returns. Then the scheme applies all
+ * changes in their order and updates its roots, leaves and indices once,
+ * instead of after each change. If the scheme checks for cycles, the result
+ * is checked once as a whole, and intermediate states may contain cycles.
+ * If {@link #setFamiliesChecked(boolean)} was called, all families must be
+ * valid afterwards. <br>
+ * If a check fails or any change throws an exception, all changes are
+ * rolled back and the exception is passed on. The rollback restores the 
+ * families of {@link AbstractSchemeComponent}s exactly, with each relative
+ * at its former position, other components list restored relatives after
+ * the others. <br>
+ * A transaction can't be used anymore once its edit returned. This class is
+ * not thread-safe.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#edit(SchemeEdit)
+ */
+public final class SchemeTransaction<E extends SchemeComponent> {
+
+    /**
+     * A recorded change or a change made to a family.
+     *
+     * @since 1.0.0
+     */
+    private static final class Change {
+
+        /**
+         * The kind of change.
+         */
+        final int kind;
+
+        /**
+         * The component to add or remove, or the component whose family
+         * changes.
+         */
+        final Object first;
+
+        /**
+         * The relative, <code>null</code> for changes of the scheme.
+         */
+        final SchemeComponent second;
+
+        /**
+         * The position of the component in the scheme or of the relative in
+         * the family, <code>-1</code> if unknown.
+         */
+        final int index;
+
+        Change(int kind, Object first, SchemeComponent second, int index) {
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Adds a component to the scheme.
+     *
+     * @since 1.0.0
+     */
+    static final int ADD = 0;
+
+    /**
+     * Removes a component from the scheme.
+     *
+     * @since 1.0.0
+     */
+    static final int REMOVE = 1;
+
+    /**
+     * Links a parent and a child.
+     *
+     * @since 1.0.0
+     */
+    private static final int LINK = 2;
+
+    /**
+     * Unlinks a parent and a child.
+     *
+     * @since 1.0.0
+     */
+    private static final int UNLINK = 3;
+
+    /**
+     * A child is or was added to a component.
+     *
+     * @since 1.0.0
+     */
+    private static final int CHILD_ADDED = 4;
+
+    /**
+     * A parent is or was added to a component.
+     *
+     * @since 1.0.0
+     */
+    private static final int PARENT_ADDED = 5;
+
+    /**
+     * A child is or was removed from a component.
+     *
+     * @since 1.0.0
+     */
+    private static final int CHILD_REMOVED = 6;
+
+    /**
+     * A parent is or was removed from a component.
+     *
+     * @since 1.0.0
+     */
+    private static final int PARENT_REMOVED = 7;
+
+    /**
+     * The recorded changes, in their order.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayList<Change> changes = new ArrayList<Change>();
+
+    /**
+     * The changes made to families while applying, for the rollback.
+     *
+     * @since 1.0.0
+     */
+    private final ArrayList<Change> made = new ArrayList<Change>();
+
+    /**
+     * If all families must be valid afterwards.
+     *
+     * @since 1.0.0
+     */
+    private boolean familiesChecked = false;
+
+    /**
+     * If the edit returned.
+     *
+     * @since 1.0.0
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates an empty transaction.
+     *
+     * @since 1.0.0
+     */
+    SchemeTransaction() {}
+
+    /**
+     * Records a change.
+     * @param kind the kind of change
+     * @param first the component to add or remove, or the parent
+     * @param second the child, or <code>null</code>
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     */
+    private void record(int kind, Object first, SchemeComponent second) {
+        record(kind, first, second, -1);
+    }
+
+    /**
+     * Records a change at a position.
+     * @param kind the kind of change
+     * @param first the component to add or remove, or the parent
+     * @param second the child, or <code>null</code>
+     * @param index the position, <code>-1</code> if unknown
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     */
+    private void record(int kind, Object first, SchemeComponent second,
+            int index) {
+        if (closed)
+            throw new IllegalStateException("Transaction is closed!");
+        changes.add(new Change(kind, first, second, Math.max(index, -1)));
+    }
+
+    /**
+     * Records the addition of a component to the scheme. <code>null</code>
+     * is ignored.
+     * @param e the component to add
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see ArrayScheme#add(SchemeComponent)
+     */
+    public void add(E e) {
+        if (e != null)
+            record(ADD, e, null);
+    }
+
+    /**
+     * Records the removal of the first occurrence of a component from the
+     * scheme.
+     * @param o the component to remove
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see ArrayScheme#remove(Object)
+     */
+    public void remove(Object o) {
+        record(REMOVE, o, null);
+    }
+
+    /**
+     * Records inserting a component at a position. These insertions are 
+     * made after all other additions and removals of components, in the 
+     * order of their positions, so a component ends up at the given position
+     * after the edit, or at the end if the scheme is smaller. 
+     * <code>null</code> is ignored.
+     * @param index the position after the edit, <code>-1</code> to append 
+     * the component like {@link #add(SchemeComponent)}
+     * @param e the component to add
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeEvent#getIndex()
+     */
+    void add(int index, E e) {
+        if (e != null)
+            record(ADD, e, null, index);
+    }
+
+    /**
+     * Records the removal of the very component given, not an equal one.
+     * The occurrence at the given position before the edit is removed, or
+     * the first one not removed yet if the component isn't there.
+     * @param index the position before the edit, <code>-1</code> to remove
+     * the first equal component like {@link #remove(Object)}
+     * @param o the component to remove
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeEvent#getIndex()
+     */
+    void remove(int index, Object o) {
+        record(REMOVE, o, null, index);
+    }
+
+    /**
+     * Records making one component the child of another one. A side already
+     * listing the other one won't be changed.
+     * @param parent the new parent
+     * @param child the new child
+     * @throws NullPointerException If <code>parent</code> or
+     * <code>child</code> is <code>null</code>.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     */
+    public void link(SchemeComponent parent, SchemeComponent child) {
+        if (parent == null || child == null)
+            throw new NullPointerException();
+        record(LINK, parent, child);
+    }
+
+    /**
+     * Records removing the link between a parent and a child, on both
+     * sides.
+     * @param parent the former parent
+     * @param child the former child
+     * @throws NullPointerException If <code>parent</code> or
+     * <code>child</code> is <code>null</code>.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     */
+    public void unlink(SchemeComponent parent, SchemeComponent child) {
+        if (parent == null || child == null)
+            throw new NullPointerException();
+        record(UNLINK, parent, child);
+    }
+
+    /**
+     * Records adding a parent or child to the family of one component only,
+     * like {@link SchemeComponent#addParent(SchemeComponent)} and
+     * {@link SchemeComponent#addChild(SchemeComponent)} do.
+     * @param c the component whose family changes
+     * @param type {@link SchemeComponent#PARENT} to add a parent,
+     * {@link SchemeComponent#CHILD} to add a child
+     * @param relative the new parent or child
+     * @throws NullPointerException If <code>c</code> or 
+     * <code>relative</code> is <code>null</code>.
+     * @throws IllegalArgumentException If <code>type</code> is invalid.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see #link(SchemeComponent, SchemeComponent)
+     */
+    public void addRelative(SchemeComponent c, int type, 
+            SchemeComponent relative) {
+        recordRelative(c, type, -1, relative, PARENT_ADDED, CHILD_ADDED);
+    }
+
+    /**
+     * Records inserting a parent or child into the family of one component
+     * at a position. The relative is appended if the family is smaller or
+     * if the component isn't an {@link AbstractSchemeComponent}.
+     * @param c the component whose family changes
+     * @param type {@link SchemeComponent#PARENT} to add a parent,
+     * {@link SchemeComponent#CHILD} to add a child
+     * @param index the position of the relative when the change is made, 
+     * <code>-1</code> to append it like 
+     * {@link #addRelative(SchemeComponent, int, SchemeComponent)}
+     * @param relative the new parent or child
+     * @throws NullPointerException If <code>c</code> or 
+     * <code>relative</code> is <code>null</code>.
+     * @throws IllegalArgumentException If <code>type</code> is invalid.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeEvent#getIndex()
+     */
+    void addRelative(SchemeComponent c, int type, int index,
+            SchemeComponent relative) {
+        recordRelative(c, type, index, relative, PARENT_ADDED, CHILD_ADDED);
+    }
+
+    /**
+     * Records removing a parent or child from the family of one component
+     * only, like {@link SchemeComponent#removeParent(SchemeComponent)} and
+     * {@link SchemeComponent#removeChild(SchemeComponent)} do.
+     * @param c the component whose family changes
+     * @param type {@link SchemeComponent#PARENT} to remove a parent,
+     * {@link SchemeComponent#CHILD} to remove a child
+     * @param relative the former parent or child
+     * @throws NullPointerException If <code>c</code> or 
+     * <code>relative</code> is <code>null</code>.
+     * @throws IllegalArgumentException If <code>type</code> is invalid.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see #unlink(SchemeComponent, SchemeComponent)
+     */
+    public void removeRelative(SchemeComponent c, int type, 
+            SchemeComponent relative) {
+        recordRelative(c, type, -1, relative, PARENT_REMOVED, CHILD_REMOVED);
+    }
+
+    /**
+     * Records removing the very parent or child given, not an equal one,
+     * from the family of one component. The occurrence at the given 
+     * position is removed, or the last one if the relative isn't there.
+     * Components which aren't {@link AbstractSchemeComponent}s remove the 
+     * first equal relative instead.
+     * @param c the component whose family changes
+     * @param type {@link SchemeComponent#PARENT} to remove a parent,
+     * {@link SchemeComponent#CHILD} to remove a child
+     * @param index the position of the relative when the change is made, 
+     * <code>-1</code> to remove the first equal relative like 
+     * {@link #removeRelative(SchemeComponent, int, SchemeComponent)}
+     * @param relative the former parent or child
+     * @throws NullPointerException If <code>c</code> or 
+     * <code>relative</code> is <code>null</code>.
+     * @throws IllegalArgumentException If <code>type</code> is invalid.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     *
+     * @see SchemeEvent#getIndex()
+     */
+    void removeRelative(SchemeComponent c, int type, int index,
+            SchemeComponent relative) {
+        recordRelative(c, type, index, relative, PARENT_REMOVED, 
+            CHILD_REMOVED);
+    }
+
+    /**
+     * Records a change of the family of one component.
+     * @param c the component whose family changes
+     * @param type {@link SchemeComponent#PARENT} or 
+     * {@link SchemeComponent#CHILD}
+     * @param index the position of the relative, <code>-1</code> if unknown
+     * @param relative the parent or child
+     * @param parentKind the kind of change if <code>type</code> is 
+     * {@link SchemeComponent#PARENT}
+     * @param childKind the kind of change if <code>type</code> is 
+     * {@link SchemeComponent#CHILD}
+     * @throws NullPointerException If <code>c</code> or 
+     * <code>relative</code> is <code>null</code>.
+     * @throws IllegalArgumentException If <code>type</code> is invalid.
+     * @throws IllegalStateException If the edit returned already.
+     *
+     * @since 1.0.0
+     */
+    private void recordRelative(SchemeComponent c, int type, int index,
+            SchemeComponent relative, int parentKind, int childKind) {
+        if (c == null || relative == null)
+            throw new NullPointerException();
+        if (type == SchemeComponent.PARENT)
+            record(parentKind, c, relative, index);
+        else if (type == SchemeComponent.CHILD)
+            record(childKind, c, relative, index);
+        else
+            throw new IllegalArgumentException("Illegal relation type!");
+    }
+
+    /**
+     * Tells if all families must be valid after the changes.
+     * @return <code>true</code> if the families are checked
+     *
+     * @since 1.0.0
+     *
+     * @see #setFamiliesChecked(boolean)
+     */
+    public boolean isFamiliesChecked() {
+        return familiesChecked;
+    }
+
+    /**
+     * Sets if all families must be valid after the changes. If so, the
+     * families are checked once by {@link Scheme#getFamilyReport()} and the
+     * changes are rolled back if it isn't valid.
+     * @param checked if the families should be checked
+     *
+     * @since 1.0.0
+     */
+    public void setFamiliesChecked(boolean checked) {
+        familiesChecked = checked;
+    }
+
+    /**
+     * Returns the number of recorded changes.
+     * @return the number of changes
+     *
+     * @since 1.0.0
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Forbids recording further changes.
+     *
+     * @since 1.0.0
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Returns the kind of a recorded change.
+     * @param index the index of the change
+     * @return {@link #ADD}, {@link #REMOVE} or another kind
+     *
+     * @since 1.0.0
+     */
+    int kind(int index) {
+        return changes.get(index).kind;
+    }
+
+    /**
+     * Returns the component of a recorded change.
+     * @param index the index of the change
+     * @return the component to add or remove, or the parent
+     *
+     * @since 1.0.0
+     */
+    Object component(int index) {
+        return changes.get(index).first;
+    }
+
+    /**
+     * Returns the position of a recorded change.
+     * @param index the index of the change
+     * @return the position in the scheme or family, <code>-1</code> if 
+     * unknown
+     *
+     * @since 1.0.0
+     *
+     * @see #add(int, SchemeComponent)
+     * @see #remove(int, Object)
+     */
+    int position(int index) {
+        return changes.get(index).index;
+    }
+
+    /**
+     * Makes the recorded changes of families, remembering each change made.
+     * @throws RuntimeException If a family listener prevents a change. The
+     * changes made before stay until {@link #rollbackFamilies()}.
+     *
+     * @since 1.0.0
+     */
+    void applyFamilies() {
+        for (Change change : changes) {
+            if (change.kind == ADD || change.kind == REMOVE)
+                continue;
+            SchemeComponent parent = (SchemeComponent)change.first;
+            SchemeComponent child = change.second;
+            if (change.kind > UNLINK) // one side only
+                make(change.kind, parent, child, change.index);
+            else if (change.kind == LINK) {
+                if (!parent.isParentOf(child))
+                    make(CHILD_ADDED, parent, child, -1);
+                if (!child.isChildOf(parent))
+                    make(PARENT_ADDED, child, parent, -1);
+            }
+            else {
+                make(CHILD_REMOVED, parent, child, -1);
+                make(PARENT_REMOVED, child, parent, -1);
+            }
+        }
+    }
+
+    /**
+     * Reverts the changes of families made by {@link #applyFamilies()}, in
+     * reverse order. The families of {@link AbstractSchemeComponent}s are
+     * restored exactly: Added relatives are removed by identity, and
+     * removed ones are inserted at their former positions again.
+     *
+     * @since 1.0.0
+     */
+    void rollbackFamilies() {
+        for (int i = made.size() - 1; i >= 0; i--) {
+            Change change = made.get(i);
+            SchemeComponent source = (SchemeComponent)change.first;
+            int type = type(change.kind);
+            boolean added = change.kind == CHILD_ADDED
+                    || change.kind == PARENT_ADDED;
+            if (source instanceof AbstractSchemeComponent) {
+                AbstractSchemeComponent asc = (AbstractSchemeComponent)source;
+                if (!added)
+                    asc.insertRelative(type, Math.min(change.index, 
+                        asc.family(type).size()), change.second);
+                else {
+                    int index = asc.indexOfRelative(type, change.index, 
+                        change.second);
+                    if (index >= 0)
+                        asc.removeRelative(type, index);
+                }
+            }
+            else if (added)
+                remove(source, type, change.second);
+            else if (type == SchemeComponent.CHILD)
+                source.addChild(change.second);
+            else
+                source.addParent(change.second);
+        }
+        made.clear();
+    }
+
+    /**
+     * Makes a change of the family of one component and remembers it for
+     * the rollback, together with the position of the relative.
+     * @param kind {@link #CHILD_ADDED}, {@link #PARENT_ADDED}, 
+     * {@link #CHILD_REMOVED} or {@link #PARENT_REMOVED}
+     * @param source the component whose family changes
+     * @param relative the parent or child
+     * @param at the position to insert at or to remove the very relative 
+     * given from, <code>-1</code> to append or remove the first equal one
+     *
+     * @since 1.0.0
+     */
+    private void make(int kind, SchemeComponent source, 
+            SchemeComponent relative, int at) {
+        int type = type(kind);
+        AbstractSchemeComponent asc = 
+            source instanceof AbstractSchemeComponent 
+            ? (AbstractSchemeComponent)source : null;
+        List<SchemeComponent> family = asc == null ? null : asc.family(type);
+        int index = -1;
+        if (kind == CHILD_ADDED || kind == PARENT_ADDED) {
+            if (family != null && at >= 0) {
+                index = Math.min(at, family.size());
+                asc.insertRelative(type, index, relative);
+                made.add(new Change(kind, source, relative, index));
+                return;
+            }
+            if (family != null) // relatives are appended
+                index = family.size();
+            if (type == SchemeComponent.CHILD ? source.addChild(relative)
+                    : source.addParent(relative))
+                made.add(new Change(kind, source, relative, index));
+            return;
+        }
+        if (family != null) {
+            index = at < 0 ? family.indexOf(relative)
+                    : asc.indexOfRelative(type, at, relative);
+            if (index < 0)
+                return;
+            relative = family.get(index); // maybe another equal one
+            asc.removeRelative(type, index);
+        }
+        else if (!remove(source, type, relative))
+            return;
+        made.add(new Change(kind, source, relative, index));
+    }
+
+    /**
+     * Removes a parent or child from the family of one component.
+     * @param source the component whose family changes
+     * @param type {@link SchemeComponent#PARENT} or
+     * {@link SchemeComponent#CHILD}
+     * @param relative the parent or child
+     * @return <code>true</code> if the family changed
+     *
+     * @since 1.0.0
+     */
+    private static boolean remove(SchemeComponent source, int type,
+            SchemeComponent relative) {
+        if (type == SchemeComponent.CHILD)
+            return source.removeChild(relative);
+        return source.removeParent(relative);
+    }
+
+    /**
+     * Returns the type of relative a change of a family concerns.
+     * @param kind the kind of change
+     * @return {@link SchemeComponent#CHILD} or 
+     * {@link SchemeComponent#PARENT}
+     *
+     * @since 1.0.0
+     */
+    private static int type(int kind) {
+        return kind == CHILD_ADDED || kind == CHILD_REMOVED 
+                ? SchemeComponent.CHILD : SchemeComponent.PARENT;
+    }
+
+}
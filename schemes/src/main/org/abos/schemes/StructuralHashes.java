@@ -0,0 +1,290 @@
+// LICENSE
+package org.abos.schemes;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Structural hashes of scheme components, in the manner of Merkle trees.
+ * The downward hash of a component combines its {@link Object#hashCode()}
+ * with the downward hashes of its children, the upward hash likewise with
+ * the upward hashes of its parents. The hashes of the relatives are summed
+ * after mixing, so the order of the relatives doesn't matter, but how often
+ * they are listed does. Components on a cycle can't wait for each other, so
+ * relatives on the same cycle only contribute their plain hash codes. <br>
+ * Components with equal structure get equal hashes, so differing hashes
+ * prove that structures differ. To confirm that structures are equal,
+ * {@link #matches(int[], StructuralHashes, int[], boolean)} looks up an
+ * equal relative for each relative of a matched component, but only among
+ * the relatives with the same hash, so the order of the relatives doesn't
+ * matter there either. All of this works on a {@link CompactGraph} without
+ * recursion, in <tt>O(V+E)</tt> time apart from sorting each family by hash
+ * and the lookups among relatives with equal hashes.
+ *
+ * @author Sebastian Koch
+ * @version 1.0.0
+ * @since 1.3.0
+ *
+ * @see ArrayScheme#deepEquals(Scheme)
+ * @see AbstractSchemeComponent#deepEquals(SchemeComponent)
+ */
+final class StructuralHashes {
+
+    /**
+     * Marks the contribution of a relative on the same cycle.
+     *
+     * @since 1.0.0
+     */
+    private static final long CYCLE = 0x5DEECE66DL;
+
+    /**
+     * The snapshot the hashes belong to.
+     *
+     * @since 1.0.0
+     */
+    final CompactGraph graph;
+
+    /**
+     * The downward hash for each id.
+     *
+     * @since 1.0.0
+     */
+    final long[] down;
+
+    /**
+     * The upward hash for each id.
+     *
+     * @since 1.0.0
+     */
+    final long[] up;
+
+    /**
+     * Computes the structural hashes of the given components and all
+     * components associated to them.
+     * @param components the components to hash
+     * @throws NullPointerException If <code>components</code> is or contains
+     * <code>null</code>.
+     *
+     * @since 1.0.0
+     */
+    StructuralHashes(Collection<? extends SchemeComponent> components) {
+        this(new CompactGraph(components));
+    }
+
+    /**
+     * Computes the structural hashes of the components of a snapshot.
+     * @param graph the snapshot
+     *
+     * @since 1.0.0
+     */
+    StructuralHashes(CompactGraph graph) {
+        this.graph = graph;
+        down = hashes(graph.childOffsets, graph.childTargets);
+        up = hashes(graph.parentOffsets, graph.parentTargets);
+    }
+
+    /**
+     * Mixes the bits of a hash, using the finalizer of SplitMix64.
+     * @param z the hash to mix
+     * @return the mixed hash
+     *
+     * @since 1.0.0
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Computes the hashes following the given edges, starting at the
+     * components without outgoing edges.
+     * @param offsets the offsets of the edges
+     * @param targets the targets of the edges
+     * @return the hash for each id
+     *
+     * @since 1.0.0
+     */
+    private long[] hashes(int[] offsets, int[] targets) {
+        int n = graph.size();
+        int[] component = graph.strongComponents(offsets, targets);
+        int count = component[n];
+        // group the ids by strongly connected component
+        int[] start = new int[count + 1];
+        for (int i = 0; i < n; i++)
+            start[component[i] + 1]++;
+        for (int c = 0; c < count; c++)
+            start[c + 1] += start[c];
+        int[] members = new int[n];
+        int[] fill = start.clone();
+        for (int i = 0; i < n; i++)
+            members[fill[component[i]]++] = i;
+        long[] hashes = new long[n];
+        // edges lead to higher numbers, so go backwards
+        for (int c = count - 1; c >= 0; c--) {
+            for (int m = start[c]; m < start[c + 1]; m++) {
+                int v = members[m];
+                long h = mix(graph.nodes[v].hashCode());
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    h += component[w] == c
+                        ? mix(graph.nodes[w].hashCode() ^ CYCLE)
+                        : mix(hashes[w]);
+                }
+                hashes[v] = mix(h);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns the ids of the given components.
+     * @param components the components, which must be part of the snapshot
+     * @return the ids in the order of <code>components</code>
+     *
+     * @since 1.0.0
+     */
+    int[] idsOf(Collection<? extends SchemeComponent> components) {
+        int[] ids = new int[components.size()];
+        int i = 0;
+        for (SchemeComponent c : components)
+            ids[i++] = graph.idOf(c);
+        return ids;
+    }
+
+    /**
+     * Tells if the structure below (or above) the given components equals
+     * the structure below (or above) the other components. Both families
+     * must have the same hashes, as often each. Then each relative must be
+     * equal to one of the other relatives with the same hash, and the
+     * structures below (or above) them must be equal as well. Like in
+     * {@link AbstractSchemeComponent#deepEquals(SchemeComponent)} before the
+     * hashes, each component of this structure is only checked once, even if
+     * reached twice.
+     * @param starts the ids to start at
+     * @param other the hashes of the other structure
+     * @param otherStarts the ids to start at in the other structure
+     * @param downwards <code>true</code> to compare the descendants,
+     * <code>false</code> to compare the ancestors
+     * @return <code>true</code> if both structures are equal
+     *
+     * @since 1.0.0
+     */
+    boolean matches(int[] starts, StructuralHashes other, int[] otherStarts,
+            boolean downwards) {
+        if (starts.length != otherStarts.length)
+            return false;
+        long[] hashes = downwards ? down : up;
+        long[] otherHashes = downwards ? other.down : other.up;
+        int[] offsets = downwards ? graph.childOffsets : graph.parentOffsets;
+        int[] targets = downwards ? graph.childTargets : graph.parentTargets;
+        int[] otherOffsets = downwards ? other.graph.childOffsets
+                : other.graph.parentOffsets;
+        int[] otherTargets = downwards ? other.graph.childTargets
+                : other.graph.parentTargets;
+        boolean[] checked = new boolean[graph.size()];
+        int[] stack = new int[Math.max(16, 2 * starts.length)];
+        int top = pair(starts, 0, other, otherStarts, 0, starts.length,
+            checked, stack, 0, hashes, otherHashes);
+        while (top > 0) {
+            int x = stack[--top];
+            int y = stack[--top];
+            int length = offsets[x + 1] - offsets[x];
+            if (length != otherOffsets[y + 1] - otherOffsets[y])
+                return false;
+            if (length == 0)
+                continue;
+            if (top + 2 * length > stack.length)
+                stack = Arrays.copyOf(stack, 2 * (top + 2 * length));
+            top = pair(targets, offsets[x], other, otherTargets,
+                otherOffsets[y], length, checked, stack, top, hashes,
+                otherHashes);
+        }
+        return top == 0;
+    }
+
+    /**
+     * Pairs each of the given ids of this structure with an equal id of the
+     * other structure with the same hash, and pushes the pairs whose id of
+     * this structure wasn't checked yet. The stack must have room for all
+     * pairs.
+     * @param ids the array containing the ids of this structure
+     * @param from the index of the first id of this structure
+     * @param other the other structure
+     * @param otherIds the array containing the ids of the other structure
+     * @param otherFrom the index of the first id of the other structure
+     * @param length the number of ids on each side
+     * @param checked if each id of this structure was pushed before
+     * @param stack the stack of pairs to look at
+     * @param top the size of the stack
+     * @param hashes the hashes of this structure
+     * @param otherHashes the hashes of the other structure
+     * @return the new size of the stack, or <code>-1</code> if the ids don't
+     * match
+     *
+     * @since 1.0.0
+     */
+    private int pair(int[] ids, int from, StructuralHashes other,
+            int[] otherIds, int otherFrom, int length, boolean[] checked,
+            int[] stack, int top, long[] hashes, long[] otherHashes) {
+        Integer[] xs = sortedByHash(ids, from, length, hashes);
+        Integer[] ys = sortedByHash(otherIds, otherFrom, length, otherHashes);
+        for (int i = 0; i < length; i++)
+            if (hashes[xs[i]] != otherHashes[ys[i]])
+                return -1;
+        // the ids with equal hashes are at the same positions on both sides
+        for (int i = 0, end = 0; i < length; i++) {
+            int x = xs[i];
+            if (i == end) {
+                end = i + 1;
+                while (end < length && hashes[xs[end]] == hashes[x])
+                    end++;
+            }
+            int y = -1;
+            for (int j = end - 1; j >= 0 && hashes[xs[j]] == hashes[x]; j--) {
+                if (graph.nodes[x].equals(other.graph.nodes[ys[j]])) {
+                    y = ys[j];
+                    break;
+                }
+            }
+            if (y == -1)
+                return -1;
+            if (!checked[x]) {
+                checked[x] = true;
+                stack[top++] = y;
+                stack[top++] = x;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Sorts a range of ids by their hashes.
+     * @param ids the array containing the ids
+     * @param from the index of the first id
+     * @param length the number of ids
+     * @param hashes the hashes of the ids
+     * @return the sorted ids
+     *
+     * @since 1.0.0
+     */
+    private static Integer[] sortedByHash(int[] ids, int from, int length,
+            final long[] hashes) {
+        Integer[] sorted = new Integer[length];
+        for (int i = 0; i < length; i++)
+            sorted[i] = ids[from + i];
+        if (length > 1) {
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    long h1 = hashes[i1];
+                    long h2 = hashes[i2];
+                    return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+                }
+            });
+        }
+        return sorted;
+    }
+
+}
@@ -278,6 +278,7 @@ public class ICSchemeEditor extends JFrame {
         super("ICSchemeEditor");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         scheme = new ArrayInformationScheme<InformationComponent>();
+        scheme.setMembershipIndexed(true);
         icChooser = new ICChooser(this, true, scheme);
         saveOpenDialog = new JFileChooser(); // TODO Filter
         exportDialog = new JFileChooser(); // TODO Filter
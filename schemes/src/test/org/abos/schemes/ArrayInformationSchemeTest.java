@@ -7,6 +7,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -271,4 +275,103 @@ public class ArrayInformationSchemeTest {
         assertTrue(true);
     }
 
+    @Test
+    public void getByStringTest() {
+        ArrayInformationScheme<InformationComponent> ais = createExample3();
+        ais.remove(3); // Nisio Isin is only connected to the roots now
+        assertEquals(1, ais.getByString("Nisio Isin", false).size());
+        assertEquals(0, ais.getByString("Nisio Isin", true).size());
+        assertEquals(1, ais.getByString("DN (LN)", false).size());
+        assertEquals(2, ais.getByRegex("L.*", false).size());
+        assertEquals(0, ais.getByRegex("Nobody", false).size());
+    }
+
+    @Test
+    public void informationChangeTest() {
+        InformationComponent mom = new InformationComponent("Mutter");
+        InformationComponent dad = new InformationComponent("Vater");
+        ArrayInformationScheme<InformationComponent> ais = 
+            new ArrayInformationScheme<InformationComponent>(
+                Arrays.asList(mom));
+        ais.setMembershipIndexed(true);
+        ais.add(dad);
+        ArraySchemeTest.EventCollector collector = 
+            new ArraySchemeTest.EventCollector();
+        ais.addSchemeListener(collector);
+        mom.setName("Mama");
+        assertEquals("[changed Mama]", collector.last());
+        assertTrue(ais.contains(new InformationComponent("Mama")));
+        assertFalse(ais.contains(new InformationComponent("Mutter")));
+        dad.setInformation("Vater", "");
+        assertEquals(1, collector.batches.size()); // nothing changed
+        dad.setDescription("Papa");
+        assertEquals("[changed Vater]", collector.last());
+        ais.remove(mom);
+        assertSame(mom, collector.batches.get(2).get(0).getComponent());
+        mom.setName("Mutter"); // not tracked anymore
+        assertEquals(3, collector.batches.size());
+    }
+
+    @Test
+    public void membershipIndexTest() {
+        Random random = new Random(42);
+        String[] names = {"Kira", "L", "Near", "Mello"};
+        InformationComponent[] ics = new InformationComponent[12];
+        for (int i = 0; i < ics.length; i++)
+            ics[i] = new InformationComponent(names[i % names.length]);
+        ArrayInformationScheme<InformationComponent> ais = 
+            new ArrayInformationScheme<InformationComponent>();
+        ais.setMembershipIndexed(true);
+        ArrayList<InformationComponent> reference =
+            new ArrayList<InformationComponent>();
+        for (int step = 0; step < 3000; step++) {
+            InformationComponent ic = ics[random.nextInt(ics.length)];
+            switch (random.nextInt(8)) {
+            case 0:
+            case 1:
+                int index = random.nextInt(reference.size() + 1);
+                ais.add(index, ic);
+                reference.add(index, ic);
+                break;
+            case 2:
+                if (!reference.isEmpty()) {
+                    index = random.nextInt(reference.size());
+                    assertSame(reference.remove(index), ais.remove(index));
+                }
+                break;
+            case 3:
+                if (!reference.isEmpty()) {
+                    index = random.nextInt(reference.size());
+                    assertSame(reference.set(index, ic), ais.set(index, ic));
+                }
+                break;
+            case 4:
+                List<InformationComponent> c = Arrays.asList(ic);
+                assertEquals(reference.removeAll(c), ais.removeAll(c));
+                break;
+            case 5:
+                c = Arrays.asList(ic, ics[random.nextInt(ics.length)], 
+                    ics[random.nextInt(ics.length)]);
+                assertEquals(reference.retainAll(c), ais.retainAll(c));
+                break;
+            case 6:
+                int from = random.nextInt(reference.size() + 1);
+                int to = from + random.nextInt(reference.size() - from + 1);
+                reference.subList(from, to).clear();
+                ais.subList(from, to).clear();
+                break;
+            default: // renames members and non-members alike
+                ic.setName(names[random.nextInt(names.length)]);
+            }
+            for (String name : names) {
+                InformationComponent probe = new InformationComponent(name);
+                assertEquals(reference.contains(probe), ais.contains(probe));
+                assertEquals(reference.indexOf(probe), ais.indexOf(probe));
+                assertEquals(reference.lastIndexOf(probe), 
+                    ais.lastIndexOf(probe));
+            }
+        }
+        assertEquals(reference, ais);
+    }
+
 }
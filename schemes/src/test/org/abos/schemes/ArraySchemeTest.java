@@ -0,0 +1,1046 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class ArraySchemeTest {
+
+    InformationComponent[] createComponents(int n) {
+        InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        return ics;
+    }
+
+    @Test
+    public void membershipIndexTest1() {
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        InformationComponent[] ics = createComponents(3);
+        as.add(ics[0]);
+        as.add(ics[1]);
+        as.add(ics[0]);
+        assertTrue(as.contains(new InformationComponent("IC 0")));
+        assertFalse(as.contains(ics[2]));
+        assertEquals(0, as.indexOf(ics[0]));
+        assertEquals(2, as.lastIndexOf(ics[0]));
+        assertTrue(as.remove(ics[0]));
+        assertEquals(0, as.indexOf(ics[1]));
+        assertEquals(1, as.indexOf(ics[0]));
+        as.add(0, ics[2]);
+        assertEquals(0, as.indexOf(ics[2]));
+        assertEquals(2, as.indexOf(ics[0]));
+        as.clear();
+        assertFalse(as.contains(ics[0]));
+        assertEquals(-1, as.indexOf(ics[1]));
+    }
+
+    @Test
+    public void membershipIndexTest2() {
+        Random random = new Random(42);
+        InformationComponent[] ics = createComponents(20);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        ArrayList<InformationComponent> reference =
+            new ArrayList<InformationComponent>();
+        for (int step = 0; step < 2000; step++) {
+            InformationComponent ic = ics[random.nextInt(ics.length)];
+            switch (random.nextInt(5)) {
+            case 0:
+                as.add(ic);
+                reference.add(ic);
+                break;
+            case 1:
+                int index = random.nextInt(reference.size() + 1);
+                as.add(index, ic);
+                reference.add(index, ic);
+                break;
+            case 2:
+                assertEquals(reference.remove(ic), as.remove(ic));
+                break;
+            case 3:
+                if (!reference.isEmpty()) {
+                    index = random.nextInt(reference.size());
+                    assertSame(reference.remove(index), as.remove(index));
+                }
+                break;
+            default:
+                if (!reference.isEmpty()) {
+                    index = random.nextInt(reference.size());
+                    assertSame(reference.set(index, ic), as.set(index, ic));
+                }
+            }
+            ic = ics[random.nextInt(ics.length)];
+            assertEquals(reference.contains(ic), as.contains(ic));
+            assertEquals(reference.indexOf(ic), as.indexOf(ic));
+            assertEquals(reference.lastIndexOf(ic), as.lastIndexOf(ic));
+        }
+        assertEquals(reference, as);
+    }
+
+    @Test
+    public void rootsAndLeavesTest() {
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        InformationComponent[] ics = createComponents(3);
+        for (InformationComponent ic : ics)
+            as.add(ic);
+        assertEquals(3, as.getRoots().size());
+        assertEquals(3, as.getLeaves().size());
+        ics[0].addChild(ics[1]);
+        ics[0].forceFamilyTogether();
+        assertFalse(as.getRoots().contains(ics[1]));
+        assertFalse(as.getLeaves().contains(ics[0]));
+        ics[1].addChild(ics[2]);
+        ics[1].forceFamilyTogether();
+        assertEquals(1, as.getRoots().size());
+        assertSame(ics[0], as.getRoot(0));
+        assertEquals(1, as.getLeaves().size());
+        assertSame(ics[2], as.getLeaf(0));
+        ics[1].forceFamilyApart();
+        assertSame(ics[2], as.getRoot(1));
+        assertSame(ics[0], as.getLeaf(1));
+        as.remove(ics[0]);
+        ics[0].addParent(ics[2]);
+        ics[0].forceFamilyTogether();
+        assertTrue(as.getLeaves().isEmpty());
+        as.validateRootsAndLeaves();
+        assertTrue(as.getLeaves().isEmpty());
+        assertEquals(1, as.getRoots().size());
+    }
+
+    @Test
+    public void cycleCheckTest1() {
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setCycleChecked(true);
+        InformationComponent[] ics = createComponents(4);
+        as.add(ics[0]);
+        ics[0].addChild(ics[1]);
+        ics[1].addParent(ics[0]);
+        ics[1].addChild(ics[2]);
+        ics[2].addChild(ics[3]);
+        try {
+            ics[3].addChild(ics[0]);
+            fail("cycle not rejected");
+        }
+        catch (SchemeDependencyException e) {
+            assertTrue(ics[3].isLeaf());
+        }
+        try {
+            ics[0].addParent(ics[2]);
+            fail("cycle not rejected");
+        }
+        catch (SchemeDependencyException e) {
+            assertTrue(ics[0].isRoot());
+        }
+        // edges against the order of tracking are fine if acyclic
+        InformationComponent ic = new InformationComponent("IC 4");
+        ic.addChild(ics[0]);
+        try {
+            ics[3].addChild(ic);
+            fail("cycle not rejected");
+        }
+        catch (SchemeDependencyException e) {
+            assertTrue(ics[3].isLeaf());
+        }
+        ics[1].removeChild(ics[2]);
+        ics[3].addChild(ic);
+        assertFalse(ics[3].isLeaf());
+    }
+
+    @Test
+    public void cycleCheckTest2() {
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        InformationComponent[] ics = createComponents(3);
+        ics[0].addChild(ics[1]);
+        ics[1].addChild(ics[0]);
+        as.add(ics[2]);
+        as.setCycleChecked(true);
+        try {
+            as.add(ics[1]);
+            fail("cycle not rejected");
+        }
+        catch (SchemeDependencyException e) {
+            assertEquals(1, as.size());
+        }
+        as.setCycleChecked(false);
+        as.add(ics[1]);
+        try {
+            as.setCycleChecked(true);
+            fail("cycle not rejected");
+        }
+        catch (SchemeDependencyException e) {
+            assertFalse(as.isCycleChecked());
+        }
+    }
+
+    @Test
+    public void cycleCheckTest3() {
+        Random random = new Random(5);
+        InformationComponent[] ics = createComponents(60);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (InformationComponent ic : ics)
+            as.add(ic);
+        as.setCycleChecked(true);
+        for (int step = 0; step < 600; step++) {
+            InformationComponent a = ics[random.nextInt(ics.length)];
+            InformationComponent b = ics[random.nextInt(ics.length)];
+            boolean cyclic = a == b || b.isAncestorOf(a);
+            try {
+                a.addChild(b);
+                assertFalse(cyclic);
+                b.addParent(a);
+            }
+            catch (SchemeDependencyException e) {
+                assertTrue(cyclic);
+            }
+            if (random.nextInt(4) == 0) {
+                b = ics[random.nextInt(ics.length)];
+                a.removeChild(b);
+                b.removeParent(a);
+            }
+        }
+        assertTrue(as.allFamiliesValid());
+    }
+
+    @Test
+    public void familyReportTest1() {
+        InformationComponent[] ics = createComponents(5);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < 4; i++)
+            as.add(ics[i]);
+        ics[0].addChild(ics[1]);
+        ics[1].addParent(ics[0]);
+        ics[1].addChild(ics[2]);
+        ics[2].addParent(ics[1]);
+        assertTrue(as.getFamilyReport().isValid());
+        // a cycle 1 -> 2 -> 1 and a one-sided link 3 -> 4
+        ics[2].addChild(ics[1]);
+        ics[1].addParent(ics[2]);
+        ics[3].addChild(ics[4]);
+        FamilyReport report = as.getFamilyReport();
+        assertFalse(report.isValid());
+        assertFalse(as.allFamiliesValid());
+        assertEquals(3, report.getInvalidComponents().size());
+        assertSame(ics[1], report.getInvalidComponents().get(0));
+        assertSame(ics[2], report.getInvalidComponents().get(1));
+        assertSame(ics[3], report.getInvalidComponents().get(2));
+        assertEquals(1, report.getCycles().size());
+        assertEquals(2, report.getCycles().get(0).size());
+        assertEquals(1, report.getAsymmetricLinks().size());
+        FamilyReport.Link link = report.getAsymmetricLinks().get(0);
+        assertSame(ics[3], link.getParent());
+        assertSame(ics[4], link.getChild());
+        assertTrue(link.isListedByParent());
+        assertFalse(as.freeze().getFamilyReport().isValid());
+    }
+
+    @Test
+    public void familyReportTest2() {
+        Random random = new Random(7);
+        InformationComponent[] ics = createComponents(30);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < 20; i++)
+            as.add(ics[i]);
+        for (int step = 0; step < 60; step++) {
+            InformationComponent a = ics[random.nextInt(ics.length)];
+            InformationComponent b = ics[random.nextInt(ics.length)];
+            if (a == b || b.isAncestorOf(a) && random.nextInt(3) != 0)
+                continue;
+            if (random.nextInt(8) != 0)
+                a.addChild(b);
+            if (random.nextInt(8) != 0)
+                b.addParent(a);
+            FamilyReport report = as.getFamilyReport();
+            ArrayList<InformationComponent> invalid =
+                new ArrayList<InformationComponent>();
+            for (InformationComponent ic : as)
+                if (!ic.hasValidFamily())
+                    invalid.add(ic);
+            assertEquals(invalid, report.getInvalidComponents());
+            assertEquals(invalid.isEmpty(), as.allFamiliesValid());
+        }
+    }
+
+    @Test
+    public void sortHierarchicallyTest1() {
+        InformationComponent[] ics = createComponents(6);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        // 5 -> 4 -> (associated 0) -> 3, 2 unrelated, 1 on a cycle
+        ics[5].addChild(ics[4]);
+        ics[4].addParent(ics[5]);
+        ics[4].addChild(ics[0]);
+        ics[0].addParent(ics[4]);
+        ics[0].addChild(ics[3]);
+        ics[3].addParent(ics[0]);
+        ics[1].addChild(ics[1]);
+        ics[1].addParent(ics[1]);
+        for (int i = 1; i < 6; i++)
+            as.add(ics[i]);
+        as.sortHierarchically();
+        assertSame(ics[2], as.get(0));
+        assertSame(ics[5], as.get(1));
+        assertSame(ics[4], as.get(2));
+        assertSame(ics[3], as.get(3));
+        assertSame(ics[1], as.get(4));
+        assertEquals(2, as.indexOf(ics[4]));
+        List<List<InformationComponent>> layers = as.getLayers();
+        assertEquals(4, layers.size());
+        assertEquals(2, layers.get(0).size());
+        assertSame(ics[4], layers.get(1).get(0));
+        assertTrue(layers.get(2).isEmpty());
+        assertSame(ics[3], layers.get(3).get(0));
+    }
+
+    @Test
+    public void sortHierarchicallyTest2() {
+        Random random = new Random(11);
+        InformationComponent[] ics = createComponents(40);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int step = 0; step < 80; step++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a < b) {
+                ics[a].addChild(ics[b]);
+                ics[b].addParent(ics[a]);
+            }
+        }
+        ArrayList<InformationComponent> shuffled =
+            new ArrayList<InformationComponent>();
+        for (InformationComponent ic : ics)
+            shuffled.add(ic);
+        Collections.shuffle(shuffled, random);
+        as.addAll(shuffled);
+        as.sortHierarchically();
+        assertEquals(ics.length, as.size());
+        for (int i = 0; i < as.size(); i++)
+            for (int j = 0; j < i; j++)
+                assertFalse(as.get(i).isAncestorOf(as.get(j)));
+        // stable within a layer
+        int position = 0;
+        for (List<InformationComponent> layer : as.getLayers()) {
+            for (InformationComponent ic : layer)
+                assertSame(ic, as.get(position++));
+            for (int i = 1; i < layer.size(); i++)
+                assertTrue(shuffled.indexOf(layer.get(i - 1))
+                    < shuffled.indexOf(layer.get(i)));
+        }
+        assertEquals(ics.length, position);
+    }
+
+    @Test
+    public void containsRelativeTest() {
+        Random random = new Random(5);
+        InformationComponent[] ics = createComponents(50);
+        for (int step = 0; step < 70; step++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a < b) {
+                ics[a].addChild(ics[b]);
+                ics[b].addParent(ics[a]);
+            }
+        }
+        // a cycle through a member
+        ics[49].addChild(ics[48]);
+        ics[48].addParent(ics[49]);
+        ics[48].addChild(ics[49]);
+        ics[49].addParent(ics[48]);
+        for (int indexed = 0; indexed < 2; indexed++) {
+            ArrayScheme<InformationComponent> as =
+                new ArrayScheme<InformationComponent>();
+            as.setMembershipIndexed(indexed == 1);
+            for (int i = 0; i < ics.length; i += 4)
+                as.add(ics[i]);
+            as.add(ics[49]);
+            for (InformationComponent ic : ics) {
+                boolean ancestor = false;
+                boolean descendant = false;
+                for (InformationComponent member : as) {
+                    ancestor |= member.isAncestorOf(ic);
+                    descendant |= member.isDescendantOf(ic);
+                }
+                assertEquals(ancestor, as.containsAncestorOf(ic));
+                assertEquals(descendant, as.containsDescendantOf(ic));
+            }
+        }
+    }
+
+    @Test
+    public void bidirectionalSearchTest() {
+        Random random = new Random(9);
+        for (int cyclic = 0; cyclic < 2; cyclic++) {
+            InformationComponent[] ics = createComponents(120);
+            ArrayScheme<InformationComponent> as =
+                new ArrayScheme<InformationComponent>();
+            for (int i = 0; i < ics.length; i += 2)
+                as.add(ics[i]);
+            for (int step = 0; step < 200; step++) {
+                int a = random.nextInt(ics.length);
+                int b = random.nextInt(ics.length);
+                if (a < b || cyclic == 1 && a != b) {
+                    ics[a].addChild(ics[b]);
+                    ics[b].addParent(ics[a]);
+                }
+            }
+            // the cycle check prunes by the topological order
+            as.setCycleChecked(cyclic == 0);
+            for (int a = 0; a < ics.length; a += 3) {
+                for (int b = 0; b < ics.length; b++) {
+                    assertEquals(ics[a].isAncestorOf(ics[b]),
+                        as.isAncestorOf(ics[a], ics[b]));
+                    assertEquals(ics[a].isDescendantOf(ics[b]),
+                        as.isDescendantOf(ics[a], ics[b]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void batchReachabilityTest() {
+        Random random = new Random(13);
+        InformationComponent[] ics = createComponents(150);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < ics.length; i++)
+            if (i % 5 != 0) // leave some components associated only
+                as.add(ics[i]);
+        for (int step = 0; step < 250; step++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            ics[a].addChild(ics[b]); // cycles and self loops included
+            ics[b].addParent(ics[a]);
+        }
+        InformationComponent outside = new InformationComponent("outside");
+        // more than 64 distinct ancestors, so several sweeps are needed
+        List<InformationComponent> ancestors =
+            new ArrayList<InformationComponent>();
+        List<InformationComponent> descendants =
+            new ArrayList<InformationComponent>();
+        for (int i = 0; i < 3000; i++) {
+            ancestors.add(ics[random.nextInt(ics.length)]);
+            descendants.add(ics[random.nextInt(ics.length)]);
+        }
+        ancestors.add(outside);
+        descendants.add(ics[0]);
+        ancestors.add(null);
+        descendants.add(ics[0]);
+        for (int indexed = 0; indexed < 2; indexed++) {
+            if (indexed == 1)
+                as.setReachabilityIndex(new ClosureReachabilityIndex());
+            boolean[] result = as.areAncestorsOf(ancestors, descendants);
+            assertEquals(ancestors.size(), result.length);
+            for (int i = 0; i < ancestors.size() - 1; i++)
+                assertEquals(ancestors.get(i).isAncestorOf(
+                    descendants.get(i)), result[i]);
+            assertFalse(result[ancestors.size() - 1]);
+        }
+        try {
+            as.areAncestorsOf(ancestors, descendants.subList(0, 1));
+            fail();
+        }
+        catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    int longestPath(InformationComponent[] ics, int i, int[] memo,
+            boolean down) {
+        if (memo[i] < 0) {
+            memo[i] = 0;
+            for (int j = 0; j < ics.length; j++)
+                if (down ? ics[j].isParentOf(ics[i])
+                        : ics[i].isParentOf(ics[j]))
+                    memo[i] = Math.max(memo[i],
+                        longestPath(ics, j, memo, down) + 1);
+        }
+        return memo[i];
+    }
+
+    @Test
+    public void depthsTest() {
+        Random random = new Random(17);
+        InformationComponent[] ics = createComponents(60);
+        ArrayScheme<InformationComponent> tracked =
+            new ArrayScheme<InformationComponent>();
+        ArrayScheme<InformationComponent> computed =
+            new ArrayScheme<InformationComponent>();
+        tracked.addAll(Arrays.asList(ics));
+        computed.addAll(Arrays.asList(ics));
+        tracked.setDepthsTracked(true);
+        assertTrue(tracked.isDepthsTracked());
+        for (int step = 0; step < 120; step++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a < b) { // acyclic
+                ics[a].addChild(ics[b]);
+                ics[b].addParent(ics[a]);
+            }
+        }
+        int[] depths = new int[ics.length];
+        int[] heights = new int[ics.length];
+        Arrays.fill(depths, -1);
+        Arrays.fill(heights, -1);
+        for (int i = 0; i < ics.length; i++) {
+            assertEquals(longestPath(ics, i, depths, true),
+                tracked.getDepths()[i]);
+            assertEquals(longestPath(ics, i, heights, false),
+                tracked.getHeights()[i]);
+        }
+        assertArrayEquals(computed.getDepths(), tracked.getDepths());
+        assertArrayEquals(computed.getHeights(), tracked.getHeights());
+        assertArrayEquals(tracked.getDepths(),
+            new FrozenScheme<InformationComponent>(tracked).getDepths());
+        // edges added and removed on one side only, cycles included
+        List<InformationComponent[]> edges =
+            new ArrayList<InformationComponent[]>();
+        for (int step = 0; step < 200; step++) {
+            if (step % 3 == 2 && !edges.isEmpty()) {
+                InformationComponent[] edge =
+                    edges.remove(random.nextInt(edges.size()));
+                edge[0].removeChild(edge[1]);
+            }
+            else {
+                InformationComponent[] edge = {
+                    ics[random.nextInt(ics.length)],
+                    ics[random.nextInt(ics.length)] };
+                if (edge[0].addChild(edge[1]))
+                    edges.add(edge);
+            }
+            assertArrayEquals(computed.getDepths(), tracked.getDepths());
+            assertArrayEquals(computed.getHeights(), tracked.getHeights());
+        }
+        // a new component is tracked with its relatives
+        InformationComponent extra = new InformationComponent("extra");
+        InformationComponent below = new InformationComponent("below");
+        extra.addChild(below);
+        tracked.add(extra);
+        computed.add(extra);
+        assertArrayEquals(computed.getDepths(), tracked.getDepths());
+        assertArrayEquals(computed.getHeights(), tracked.getHeights());
+        ics[0].addParent(below);
+        assertArrayEquals(computed.getDepths(), tracked.getDepths());
+        assertArrayEquals(computed.getHeights(), tracked.getHeights());
+        tracked.setDepthsTracked(false);
+        assertFalse(tracked.isDepthsTracked());
+        assertArrayEquals(computed.getDepths(), tracked.getDepths());
+    }
+
+    @Test
+    public void deepCopyTest() throws CloneNotSupportedException {
+        // a chain too deep for recursion, with an associated component
+        int n = 100000;
+        InformationComponent[] ics = createComponents(n + 1);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>(n);
+        for (int i = 0; i < n; i++) {
+            ics[i].addChild(ics[i + 1]);
+            ics[i + 1].addParent(ics[i]);
+            as.add(ics[i]);
+        }
+        as.add(ics[0]);
+        ArrayScheme<InformationComponent> copy =
+            (ArrayScheme<InformationComponent>)as.deepCopy();
+        assertEquals(n + 1, copy.size());
+        assertSame(copy.get(0), copy.get(n));
+        assertEquals(1, copy.getRoots().size());
+        InformationComponent c = copy.get(0);
+        for (int i = 0; i < n; i++) {
+            assertNotSame(ics[i], c);
+            assertEquals(ics[i], c);
+            c = (InformationComponent)c.childrenIterator().next();
+        }
+        // the associated leaf is cloned but not added
+        assertEquals(ics[n], c);
+        assertNotSame(ics[n], c);
+        assertFalse(copy.contains(c));
+        assertTrue(copy.getLeaves().isEmpty());
+    }
+
+    @Test
+    public void deepEqualsTest() throws CloneNotSupportedException {
+        Random random = new Random(3);
+        InformationComponent[] ics = createComponents(60);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int step = 0; step < 120; step++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a < b) {
+                ics[a].addChild(ics[b]);
+                ics[b].addParent(ics[a]);
+            }
+        }
+        for (InformationComponent ic : ics)
+            as.add(ic);
+        ArrayScheme<InformationComponent> copy =
+            (ArrayScheme<InformationComponent>)as.deepCopy();
+        assertTrue(as.deepEquals(copy));
+        assertTrue(copy.deepEquals(as));
+        assertTrue(ics[0].deepEquals(copy.get(0)));
+        // one more edge
+        copy.get(0).addChild(copy.get(59));
+        copy.get(59).addParent(copy.get(0));
+        assertFalse(as.deepEquals(copy));
+        assertFalse(ics[59].deepEquals(copy.get(59)));
+        // a long chain
+        int n = 50000;
+        InformationComponent[] chain = createComponents(n);
+        ArrayScheme<InformationComponent> as2 =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                chain[i - 1].addChild(chain[i]);
+                chain[i].addParent(chain[i - 1]);
+            }
+            as2.add(chain[i]);
+        }
+        ArrayScheme<InformationComponent> copy2 =
+            (ArrayScheme<InformationComponent>)as2.deepCopy();
+        assertTrue(as2.deepEquals(copy2));
+        // only the parents differ
+        copy2.get(n - 1).removeParent(copy2.get(n - 2));
+        assertFalse(as2.deepEquals(copy2));
+    }
+
+    void link(InformationComponent parent, InformationComponent... children) {
+        for (InformationComponent child : children) {
+            parent.addChild(child);
+            child.addParent(parent);
+        }
+    }
+
+    @Test
+    public void deepEqualsOrderTest() {
+        // equal siblings shared in a different order
+        InformationComponent r = new InformationComponent("R");
+        InformationComponent p = new InformationComponent("P");
+        InformationComponent q = new InformationComponent("Q");
+        InformationComponent a1 = new InformationComponent("a");
+        InformationComponent a2 = new InformationComponent("a");
+        link(r, p, q);
+        link(p, a1, a2);
+        link(q, a2, a1);
+        InformationComponent r2 = new InformationComponent("R");
+        InformationComponent p2 = new InformationComponent("P");
+        InformationComponent q2 = new InformationComponent("Q");
+        InformationComponent b1 = new InformationComponent("a");
+        InformationComponent b2 = new InformationComponent("a");
+        link(r2, p2, q2);
+        link(p2, b1, b2);
+        link(q2, b1, b2);
+        assertTrue(r.deepEquals(r2));
+        assertTrue(r2.deepEquals(r));
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>(
+                Arrays.asList(r, p, q, a1, a2));
+        ArrayScheme<InformationComponent> as2 =
+            new ArrayScheme<InformationComponent>(
+                Arrays.asList(r2, q2, p2, b2, b1));
+        assertTrue(as.deepEquals(as2));
+        assertTrue(as2.deepEquals(as));
+        // the same components below, but not as often
+        InformationComponent r3 = new InformationComponent("R");
+        InformationComponent p3 = new InformationComponent("P");
+        InformationComponent q3 = new InformationComponent("Q");
+        InformationComponent c1 = new InformationComponent("a");
+        link(r3, p3, q3);
+        link(p3, c1, c1);
+        link(q3, c1);
+        assertFalse(r.deepEquals(r3));
+        assertFalse(r3.deepEquals(r));
+    }
+
+    @Test
+    public void editTest1() {
+        final InformationComponent[] ics = createComponents(6);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        as.setCycleChecked(true);
+        as.add(ics[0]);
+        as.add(ics[1]);
+        as.edit(new SchemeEdit<InformationComponent>() {
+            @Override
+            public void edit(SchemeTransaction<InformationComponent> tx) {
+                for (int i = 2; i < 6; i++)
+                    tx.add(ics[i]);
+                tx.remove(ics[1]);
+                for (int i = 1; i < 6; i++)
+                    tx.link(ics[i - 1], ics[i]);
+                tx.link(ics[5], ics[0]); // closes a cycle for a moment
+                tx.unlink(ics[5], ics[0]);
+                tx.link(ics[0], ics[5]);
+                tx.link(ics[0], ics[5]);
+            }
+        });
+        assertEquals(5, as.size());
+        assertFalse(as.contains(ics[1]));
+        assertEquals(4, as.indexOf(ics[5]));
+        assertEquals(Collections.singletonList(ics[0]), as.getRoots());
+        assertEquals(Collections.singletonList(ics[5]), as.getLeaves());
+        assertTrue(as.allFamiliesValid());
+        assertTrue(as.containsAncestorOf(ics[2]));
+        int parents = 0; // linked once only
+        for (Iterator<SchemeComponent> it = ics[5].parentsIterator();
+                it.hasNext(); it.next())
+            parents++;
+        assertEquals(2, parents);
+        assertTrue(as.isCycleChecked());
+        // the cycle check works as before
+        try {
+            ics[5].addChild(ics[0]);
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void editTest2() {
+        final InformationComponent[] ics = createComponents(4);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        as.setCycleChecked(true);
+        ics[0].addChild(ics[1]);
+        ics[1].addParent(ics[0]);
+        ics[2].addChild(ics[1]);
+        ics[1].addParent(ics[2]);
+        for (int i = 0; i < 3; i++)
+            as.add(ics[i]);
+        List<InformationComponent> roots = as.getRoots();
+        List<InformationComponent> leaves = as.getLeaves();
+        // a cycle is rejected as a whole
+        try {
+            as.edit(new SchemeEdit<InformationComponent>() {
+                @Override
+                public void edit(SchemeTransaction<InformationComponent> tx) {
+                    tx.add(ics[3]);
+                    tx.remove(ics[0]);
+                    tx.unlink(ics[2], ics[1]);
+                    tx.link(ics[1], ics[3]);
+                    tx.link(ics[3], ics[0]);
+                }
+            });
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertEquals(Arrays.asList(ics[0], ics[1], ics[2]), as);
+        assertEquals(0, as.indexOf(ics[0]));
+        assertFalse(as.contains(ics[3]));
+        assertEquals(roots, as.getRoots());
+        assertEquals(leaves, as.getLeaves());
+        assertTrue(ics[2].isParentOf(ics[1]));
+        assertTrue(ics[1].isChildOf(ics[2]));
+        assertTrue(ics[3].isRoot() && ics[3].isLeaf());
+        assertTrue(ics[1].isLeaf());
+        assertTrue(as.isCycleChecked());
+        // invalid families are rejected if asked for
+        as.setCycleChecked(false);
+        try {
+            as.edit(new SchemeEdit<InformationComponent>() {
+                @Override
+                public void edit(SchemeTransaction<InformationComponent> tx) {
+                    tx.setFamiliesChecked(true);
+                    tx.link(ics[1], ics[0]);
+                }
+            });
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertTrue(as.allFamiliesValid());
+        assertEquals(roots, as.getRoots());
+        // nothing happens if the edit fails itself
+        try {
+            as.edit(new SchemeEdit<InformationComponent>() {
+                @Override
+                public void edit(SchemeTransaction<InformationComponent> tx) {
+                    tx.remove(ics[0]);
+                    tx.link(null, ics[0]);
+                }
+            });
+            fail();
+        }
+        catch (NullPointerException ex) {
+            // expected
+        }
+        assertEquals(3, as.size());
+    }
+
+    @Test
+    public void editTest3() {
+        final InformationComponent[] ics = createComponents(9);
+        final InformationComponent twin = new InformationComponent("IC 2");
+        final ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        as.setCycleChecked(true);
+        for (int i = 0; i < 6; i++)
+            as.add(ics[i]);
+        as.add(twin);
+        EventCollector collector = new EventCollector();
+        as.addSchemeListener(collector);
+        // removals take the first equal occurrence not removed yet
+        List<InformationComponent> expected =
+            new ArrayList<InformationComponent>(as);
+        expected.remove(ics[2]);
+        expected.add(ics[6]);
+        expected.remove(ics[6]);
+        expected.remove(twin);
+        expected.add(ics[7]);
+        as.edit(new SchemeEdit<InformationComponent>() {
+            @Override
+            public void edit(SchemeTransaction<InformationComponent> tx) {
+                tx.remove(ics[2]);
+                tx.add(ics[6]);
+                tx.remove(ics[6]);
+                tx.remove(twin);
+                tx.add(ics[7]);
+                tx.link(ics[0], ics[7]);
+            }
+        });
+        assertEquals(expected, as);
+        for (InformationComponent ic : ics)
+            assertEquals(expected.indexOf(ic), as.indexOf(ic));
+        assertFalse(as.contains(twin));
+        assertEquals("[added IC 7, linked child IC 7 of IC 0, "
+            + "linked parent IC 0 of IC 7, removed IC 2, removed IC 2]",
+            collector.last());
+        assertFalse(as.getRoots().contains(ics[2]));
+        assertFalse(as.getLeaves().contains(ics[0]));
+        // the component added and removed again isn't tracked
+        ics[6].addChild(ics[8]);
+        assertEquals(1, collector.batches.size());
+        // a failed edit restores the order
+        List<InformationComponent> roots = as.getRoots();
+        try {
+            as.edit(new SchemeEdit<InformationComponent>() {
+                @Override
+                public void edit(SchemeTransaction<InformationComponent> tx) {
+                    tx.remove(ics[1]);
+                    tx.remove(ics[4]);
+                    tx.add(ics[8]);
+                    tx.link(ics[7], ics[0]);
+                }
+            });
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertEquals(expected, as);
+        for (InformationComponent ic : ics)
+            assertEquals(expected.indexOf(ic), as.indexOf(ic));
+        assertEquals(roots, as.getRoots());
+        assertEquals(1, collector.batches.size());
+        // the cycle check goes on after edits
+        as.edit(new SchemeEdit<InformationComponent>() {
+            @Override
+            public void edit(SchemeTransaction<InformationComponent> tx) {
+                tx.link(ics[3], ics[4]);
+                tx.link(ics[5], ics[3]); // checked in the end only
+                tx.link(ics[4], ics[5]);
+                tx.unlink(ics[5], ics[3]);
+            }
+        });
+        try {
+            ics[5].addChild(ics[3]);
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        try {
+            ics[7].addParent(ics[0]);
+            ics[7].addChild(ics[0]);
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertTrue(as.allFamiliesValid());
+    }
+
+    @Test
+    public void editRollbackTest() {
+        final InformationComponent[] ics = createComponents(5);
+        final InformationComponent twin = new InformationComponent("IC 1");
+        final ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setCycleChecked(true);
+        for (InformationComponent ic : ics)
+            as.add(ic);
+        for (int i = 1; i < 4; i++) {
+            ics[0].addChild(ics[i]);
+            ics[i].addParent(ics[0]);
+        }
+        ics[4].addParent(twin);
+        ics[4].addParent(ics[1]);
+        try {
+            as.edit(new SchemeEdit<InformationComponent>() {
+                @Override
+                public void edit(SchemeTransaction<InformationComponent> tx) {
+                    tx.unlink(ics[0], ics[1]);
+                    tx.removeRelative(ics[4], SchemeComponent.PARENT, ics[1]);
+                    tx.addRelative(ics[4], SchemeComponent.PARENT, ics[1]);
+                    tx.link(ics[3], ics[0]); // closes a cycle
+                }
+            });
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        // relatives keep their positions, equal ones their identity
+        assertFamily(ics[0].childrenIterator(), ics[1], ics[2], ics[3]);
+        assertFamily(ics[1].parentsIterator(), ics[0]);
+        assertFamily(ics[3].childrenIterator());
+        assertFamily(ics[4].parentsIterator(), twin, ics[1]);
+    }
+
+    /**
+     * Asserts that a family lists exactly the given components, by identity
+     * and in order.
+     */
+    static void assertFamily(Iterator<SchemeComponent> it,
+            SchemeComponent... expected) {
+        for (SchemeComponent c : expected)
+            assertSame(c, it.next());
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Collects all reported batches.
+     */
+    static class EventCollector implements SchemeListener {
+
+        final List<List<SchemeEvent>> batches =
+            new ArrayList<List<SchemeEvent>>();
+
+        @Override
+        public void schemeChanged(List<SchemeEvent> events) {
+            batches.add(events);
+        }
+
+        String last() {
+            return batches.get(batches.size() - 1).toString();
+        }
+    }
+
+    @Test
+    public void schemeListenerTest1() {
+        InformationComponent[] ics = createComponents(3);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        EventCollector collector = new EventCollector();
+        as.addSchemeListener(collector);
+        as.addSchemeListener(collector);
+        as.add(ics[0]);
+        assertEquals(1, collector.batches.size());
+        assertEquals("[added IC 0]", collector.last());
+        as.add(ics[0]); // contained already
+        assertEquals(1, collector.batches.size());
+        as.addAll(Arrays.asList(ics[1], ics[2], ics[1]));
+        assertEquals("[added IC 1, added IC 2]", collector.last());
+        ics[0].addChild(ics[1]);
+        assertEquals("[linked child IC 1 of IC 0]", collector.last());
+        ics[1].addParent(ics[0]);
+        assertEquals("[linked parent IC 0 of IC 1]", collector.last());
+        assertEquals(SchemeComponent.PARENT, 
+            collector.batches.get(3).get(0).getRelation());
+        assertSame(as, collector.batches.get(3).get(0).getScheme());
+        as.remove(ics[0]); // still contained once
+        assertEquals(4, collector.batches.size());
+        as.remove(ics[0]);
+        assertEquals("[removed IC 0]", collector.last());
+        ics[0].removeChild(ics[1]); // not contained anymore
+        assertEquals(5, collector.batches.size());
+        as.removeAll(Arrays.asList(ics[1]));
+        assertEquals("[removed IC 1]", collector.last());
+        as.clear();
+        assertEquals("[removed IC 2]", collector.last());
+        as.removeSchemeListener(collector);
+        as.add(ics[0]);
+        assertEquals(7, collector.batches.size());
+    }
+
+    @Test
+    public void schemeListenerTest2() {
+        final InformationComponent[] ics = createComponents(4);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setCycleChecked(true);
+        as.add(ics[0]);
+        as.add(ics[1]);
+        EventCollector collector = new EventCollector();
+        as.addSchemeListener(collector);
+        // an edit is reported once
+        as.edit(new SchemeEdit<InformationComponent>() {
+            @Override
+            public void edit(SchemeTransaction<InformationComponent> tx) {
+                tx.add(ics[2]);
+                tx.add(ics[3]);
+                tx.remove(ics[3]);
+                tx.remove(ics[1]);
+                tx.link(ics[0], ics[2]);
+            }
+        });
+        assertEquals(1, collector.batches.size());
+        assertEquals("[added IC 2, linked child IC 2 of IC 0, "
+            + "linked parent IC 0 of IC 2, removed IC 1]", collector.last());
+        // a failed edit isn't reported at all
+        try {
+            as.edit(new SchemeEdit<InformationComponent>() {
+                @Override
+                public void edit(SchemeTransaction<InformationComponent> tx) {
+                    tx.add(ics[1]);
+                    tx.link(ics[2], ics[0]);
+                }
+            });
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertEquals(1, collector.batches.size());
+        // a rejected link isn't reported either
+        try {
+            ics[2].addChild(ics[0]);
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertEquals(1, collector.batches.size());
+        as.set(0, ics[1]);
+        assertEquals("[removed IC 0, added IC 1]", collector.last());
+    }
+
+}
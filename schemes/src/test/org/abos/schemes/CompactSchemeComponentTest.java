@@ -0,0 +1,85 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class CompactSchemeComponentTest {
+
+    static class Component extends CompactSchemeComponent {}
+
+    @Test
+    public void familyListTest() {
+        Random random = new Random(7);
+        SchemeComponent[] scs = new SchemeComponent[100];
+        for (int i = 0; i < scs.length; i++)
+            scs[i] = new Component();
+        CompactFamilyList list = new CompactFamilyList();
+        ArrayList<SchemeComponent> reference = new ArrayList<SchemeComponent>();
+        for (int step = 0; step < 20000; step++) {
+            SchemeComponent sc = scs[random.nextInt(scs.length)];
+            // grow and shrink around the hash threshold
+            int bias = (step / 2000) % 2 == 0 ? 3 : 0;
+            switch (random.nextInt(4 + bias)) {
+            case 0:
+                assertEquals(reference.remove(sc), list.remove(sc));
+                break;
+            case 1:
+                if (!reference.isEmpty()) {
+                    int index = random.nextInt(reference.size());
+                    assertSame(reference.remove(index), list.remove(index));
+                }
+                break;
+            case 2:
+                if (!reference.isEmpty()) {
+                    int index = random.nextInt(reference.size());
+                    assertSame(reference.set(index, sc), list.set(index, sc));
+                }
+                break;
+            case 3:
+                int index = random.nextInt(reference.size() + 1);
+                reference.add(index, sc);
+                list.add(index, sc);
+                break;
+            default:
+                reference.add(sc);
+                list.add(sc);
+            }
+            sc = scs[random.nextInt(scs.length)];
+            assertEquals(reference.contains(sc), list.contains(sc));
+            assertEquals(reference.indexOf(sc), list.indexOf(sc));
+            assertEquals(reference.lastIndexOf(sc), list.lastIndexOf(sc));
+        }
+        assertEquals(reference, list);
+    }
+
+    @Test
+    public void familyTest() {
+        Component parent = new Component();
+        Component[] children = new Component[50];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = new Component();
+            assertTrue(parent.addChild(children[i]));
+            assertTrue(children[i].addParent(parent));
+        }
+        assertTrue(parent.hasValidFamily());
+        assertTrue(parent.isParentOf(children[40]));
+        assertTrue(children[40].isChildOf(parent));
+        assertTrue(parent.removeChild(children[40]));
+        assertFalse(parent.isParentOf(children[40]));
+        assertFalse(parent.removeChild(children[40]));
+        parent.trimFamily();
+        assertTrue(parent.isAncestorOf(children[49]));
+        assertTrue(children[0].isDescendantOf(parent));
+        assertFalse(parent.isLeaf());
+        assertTrue(parent.isRoot());
+    }
+
+}
@@ -0,0 +1,158 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class ConcurrentSchemeComponentTest {
+
+    static class Component extends ConcurrentSchemeComponent {}
+
+    @Test
+    public void familyListTest() {
+        Random random = new Random(11);
+        SchemeComponent[] scs = new SchemeComponent[20];
+        for (int i = 0; i < scs.length; i++)
+            scs[i] = new Component();
+        CopyOnWriteFamilyList list = new CopyOnWriteFamilyList();
+        ArrayList<SchemeComponent> reference = new ArrayList<SchemeComponent>();
+        for (int step = 0; step < 5000; step++) {
+            SchemeComponent sc = scs[random.nextInt(scs.length)];
+            Iterator<SchemeComponent> before = list.iterator();
+            int size = list.size();
+            switch (random.nextInt(6)) {
+            case 0:
+                assertEquals(reference.remove(sc), list.remove(sc));
+                break;
+            case 1:
+                if (!reference.isEmpty()) {
+                    int index = random.nextInt(reference.size());
+                    assertSame(reference.remove(index), list.remove(index));
+                }
+                break;
+            case 2:
+                if (!reference.isEmpty()) {
+                    int index = random.nextInt(reference.size());
+                    assertSame(reference.set(index, sc), list.set(index, sc));
+                }
+                break;
+            case 3:
+                int index = random.nextInt(reference.size() + 1);
+                reference.add(index, sc);
+                list.add(index, sc);
+                break;
+            case 4:
+                boolean absent = !reference.contains(sc);
+                if (absent)
+                    reference.add(sc);
+                assertEquals(absent, list.addIfAbsent(sc));
+                break;
+            default:
+                reference.add(sc);
+                list.add(sc);
+            }
+            // iterators keep the elements from before
+            int count = 0;
+            while (before.hasNext()) {
+                before.next();
+                count++;
+            }
+            assertEquals(size, count);
+            sc = scs[random.nextInt(scs.length)];
+            assertEquals(reference.contains(sc), list.contains(sc));
+            assertEquals(reference.indexOf(sc), list.indexOf(sc));
+        }
+        assertEquals(reference, list);
+    }
+
+    @Test
+    public void cloneTest() throws CloneNotSupportedException {
+        Component a = new Component();
+        Component b = new Component();
+        a.addChild(b);
+        Component clone = (Component)a.clone();
+        assertTrue(clone.isLeaf());
+        clone.addChild(a);
+        assertTrue(a.isParentOf(b));
+        assertFalse(a.isParentOf(a));
+    }
+
+    @Test
+    public void concurrencyTest() throws InterruptedException {
+        final Component hub = new Component();
+        final Component[] scs = new Component[500];
+        for (int i = 0; i < scs.length; i++)
+            scs[i] = new Component();
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean writer = t % 2 == 0;
+            final long seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        for (int step = 0; step < 3000; step++) {
+                            Component sc = scs[random.nextInt(scs.length)];
+                            if (writer) {
+                                // every thread links all components to hub
+                                hub.addChildIfAbsent(sc);
+                                sc.addParentIfAbsent(hub);
+                            }
+                            else {
+                                Iterator<SchemeComponent> it =
+                                    hub.childrenIterator();
+                                while (it.hasNext())
+                                    assertNotNull(it.next());
+                                hub.isAncestorOf(sc);
+                            }
+                        }
+                    }
+                    catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        int linked = 0;
+        for (Component sc : scs) {
+            if (!hub.isParentOf(sc))
+                continue;
+            linked++;
+            int parents = 0;
+            Iterator<SchemeComponent> it = sc.parentsIterator();
+            while (it.hasNext()) {
+                assertSame(hub, it.next());
+                parents++;
+            }
+            assertEquals(1, parents);
+        }
+        int children = 0;
+        Iterator<SchemeComponent> it = hub.childrenIterator();
+        while (it.hasNext()) {
+            it.next();
+            children++;
+        }
+        assertEquals(linked, children);
+        assertTrue(linked > scs.length / 2);
+        assertTrue(hub.hasValidFamily());
+    }
+
+}
@@ -0,0 +1,324 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class ConcurrentSchemeTest {
+
+    @Test
+    public void linkTest() {
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setCycleChecked(true);
+        ConcurrentInformationScheme<InformationComponent> cs =
+            new ConcurrentInformationScheme<InformationComponent>(
+                new ArrayInformationScheme<InformationComponent>(as));
+        InformationComponent a = new InformationComponent("a");
+        InformationComponent b = new InformationComponent("b");
+        InformationComponent c = new InformationComponent("c");
+        cs.add(a);
+        cs.add(c);
+        assertTrue(cs.link(a, b));
+        assertTrue(cs.link(b, c));
+        assertFalse(cs.link(b, c));
+        assertTrue(cs.containsAncestorOf(c));
+        assertTrue(cs.isAncestorOf(a, c));
+        assertEquals(2, cs.getByRegex("[ac]", false).size());
+        assertTrue(cs.allFamiliesValid());
+        assertEquals(1, cs.getRoots().size());
+        assertEquals(1, cs.getLeaves().size());
+        assertTrue(cs.unlink(b, c));
+        assertFalse(cs.containsAncestorOf(c));
+        assertEquals(2, cs.getRoots().size());
+    }
+
+    @Test
+    public void linkRejectedTest() {
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        ConcurrentScheme<InformationComponent> cs =
+            new ConcurrentScheme<InformationComponent>(as);
+        InformationComponent a = new InformationComponent("a");
+        InformationComponent b = new InformationComponent("b");
+        cs.add(a);
+        cs.add(b);
+        cs.link(a, b);
+        as.setCycleChecked(true);
+        try {
+            cs.link(b, a);
+            fail();
+        }
+        catch (SchemeDependencyException ex) {
+            // expected
+        }
+        assertFalse(b.isParentOf(a));
+        assertFalse(a.isChildOf(b));
+        assertTrue(cs.allFamiliesValid());
+    }
+
+    @Test
+    public void concurrencyTest() throws InterruptedException {
+        final int n = 200;
+        final InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.setMembershipIndexed(true);
+        as.setReachabilityIndex(new ClosureReachabilityIndex());
+        final ConcurrentScheme<InformationComponent> cs =
+            new ConcurrentScheme<InformationComponent>(as);
+        for (int i = 0; i < n; i += 2)
+            cs.add(ics[i]);
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[6];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean writer = t < 2;
+            final long seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        for (int step = 0; step < 2000; step++) {
+                            // links only go downwards, so no cycles
+                            int i = random.nextInt(n - 1);
+                            int j = i + 1 + random.nextInt(n - 1 - i);
+                            if (writer) {
+                                if (random.nextBoolean())
+                                    cs.link(ics[i], ics[j]);
+                                else
+                                    cs.unlink(ics[i], ics[j]);
+                                if (random.nextInt(10) == 0)
+                                    cs.remove(ics[i]);
+                                if (random.nextInt(10) == 0)
+                                    cs.add(ics[j]);
+                            }
+                            else {
+                                cs.containsAncestorOf(ics[j]);
+                                cs.isAncestorOf(ics[i], ics[j]);
+                                // families may change right after this
+                                List<InformationComponent> roots =
+                                    cs.getRoots();
+                                for (InformationComponent root : roots)
+                                    assertNotNull(root);
+                                for (InformationComponent ic : cs)
+                                    assertNotNull(ic);
+                            }
+                        }
+                    }
+                    catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        assertTrue(cs.allFamiliesValid());
+        ArrayScheme<InformationComponent> check =
+            new ArrayScheme<InformationComponent>(cs);
+        // the order depends on when components became roots or leaves
+        assertEquals(new HashSet<InformationComponent>(check.getRoots()),
+            new HashSet<InformationComponent>(cs.getRoots()));
+        assertEquals(new HashSet<InformationComponent>(check.getLeaves()),
+            new HashSet<InformationComponent>(cs.getLeaves()));
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                assertEquals(ics[i].isAncestorOf(ics[j]),
+                    cs.isAncestorOf(ics[i], ics[j]));
+    }
+
+    @Test
+    public void concurrentQueryTest() throws InterruptedException {
+        final int n = 600;
+        final InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        Random random = new Random(7);
+        for (int step = 0; step < 1500; step++) {
+            // acyclic, so the intervals rarely decide alone
+            int i = random.nextInt(n - 1);
+            int j = i + 1 + random.nextInt(n - 1 - i);
+            ics[i].addChild(ics[j]);
+            ics[j].addParent(ics[i]);
+        }
+        ClosureReachabilityIndex closure = new ClosureReachabilityIndex();
+        closure.rebuild(Arrays.asList(ics));
+        final boolean[][] expected = new boolean[n][n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                expected[i][j] = closure.isAncestorOf(ics[i], ics[j]);
+        closure.clear();
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        // a single traversal leaves many queries to the fallback search
+        as.setReachabilityIndex(new IntervalReachabilityIndex(1));
+        final ConcurrentScheme<InformationComponent> cs =
+            new ConcurrentScheme<InformationComponent>(as);
+        for (InformationComponent ic : ics)
+            cs.add(ic);
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[6];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        for (int step = 0; step < 50000; step++) {
+                            int i = random.nextInt(n);
+                            int j = random.nextInt(n);
+                            assertEquals(expected[i][j],
+                                cs.isAncestorOf(ics[i], ics[j]));
+                            assertEquals(expected[j][i],
+                                cs.isDescendantOf(ics[i], ics[j]));
+                        }
+                    }
+                    catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+    }
+
+    @Test
+    public void concurrentQueryPathsTest() throws InterruptedException {
+        final int n = 50;
+        final InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        for (int i = 0; i + 1 < n; i++) { // a chain
+            ics[i].addChild(ics[i + 1]);
+            ics[i + 1].addParent(ics[i]);
+        }
+        // no reachability index, so queries work on snapshots
+        final ConcurrentScheme<InformationComponent> cs =
+            new ConcurrentScheme<InformationComponent>();
+        for (InformationComponent ic : ics)
+            cs.add(ic);
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        for (int step = 0; step < 300; step++) {
+                            int i = random.nextInt(n);
+                            int j = random.nextInt(n);
+                            assertEquals(Arrays.asList(ics[Math.min(i, j)]),
+                                cs.getLowestCommonAncestors(ics[i], ics[j]));
+                            assertTrue(Arrays.equals(
+                                new boolean[] {i < j, j < i},
+                                cs.areAncestorsOf(
+                                    Arrays.asList(ics[i], ics[j]),
+                                    Arrays.asList(ics[j], ics[i]))));
+                            assertEquals(i, cs.getDepths()[i]);
+                            assertEquals(n - 1 - j, cs.getHeights()[j]);
+                            assertTrue(cs.contains(ics[i], true));
+                        }
+                    }
+                    catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+        // no listener was lost or left behind
+        final int[] calls = new int[1];
+        FamilyListener counter = new FamilyListener() {
+            @Override
+            public void relativeAdding(SchemeComponent source, int type,
+                    SchemeComponent relative) {}
+
+            @Override
+            public void familyChanged(SchemeComponent source, int type,
+                    SchemeComponent relative, boolean added) {
+                calls[0]++;
+            }
+        };
+        for (InformationComponent ic : ics)
+            ic.addFamilyListener(counter);
+        cs.unlink(ics[n / 2], ics[n / 2 + 1]);
+        assertEquals(2, calls[0]);
+        assertFalse(cs.isAncestorOf(ics[0], ics[n - 1]));
+        assertEquals(n - 2 - n / 2, cs.getDepths()[n - 1]);
+    }
+
+    @Test
+    public void familyListenerTest() throws InterruptedException {
+        final InformationComponent ic = new InformationComponent("Shared");
+        final AtomicInteger calls = new AtomicInteger();
+        final FamilyListener[][] listeners = new FamilyListener[8][500];
+        for (FamilyListener[] ls : listeners)
+            for (int i = 0; i < ls.length; i++)
+                ls[i] = new FamilyListener() {
+                    @Override
+                    public void relativeAdding(SchemeComponent source,
+                            int type, SchemeComponent relative) {}
+
+                    @Override
+                    public void familyChanged(SchemeComponent source,
+                            int type, SchemeComponent relative,
+                            boolean added) {
+                        calls.incrementAndGet();
+                    }
+                };
+        Thread[] threads = new Thread[listeners.length];
+        for (int t = 0; t < threads.length; t++) {
+            final FamilyListener[] ls = listeners[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (FamilyListener l : ls)
+                        ic.addFamilyListener(l);
+                    for (int i = 0; i < ls.length; i += 2)
+                        ic.removeFamilyListener(ls[i]);
+                }
+            };
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        ic.addChild(new InformationComponent("Child"));
+        assertEquals(listeners.length * 250, calls.get());
+    }
+
+}
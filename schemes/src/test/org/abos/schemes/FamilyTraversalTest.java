@@ -0,0 +1,123 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class FamilyTraversalTest {
+
+    /**
+     * Collects the components of a traversal, splitting it whenever
+     * possible.
+     */
+    static class Sweep extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final FamilyTraversal traversal;
+
+        final List<SchemeComponent> found;
+
+        Sweep(FamilyTraversal traversal, List<SchemeComponent> found) {
+            this.traversal = traversal;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            List<Sweep> forked = new ArrayList<Sweep>();
+            while (traversal.hasNext()) {
+                FamilyTraversal other = traversal.trySplit();
+                if (other != null) {
+                    Sweep sweep = new Sweep(other, found);
+                    sweep.fork();
+                    forked.add(sweep);
+                }
+                found.add(traversal.next());
+            }
+            for (Sweep sweep : forked)
+                sweep.join();
+        }
+    }
+
+    InformationComponent[] createGraph(int n, int edges, boolean cycles) {
+        Random random = new Random(3);
+        InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        for (int i = 0; i < edges; i++) {
+            int a = random.nextInt(n);
+            int b = random.nextInt(n);
+            if (a == b || (!cycles && a > b))
+                continue;
+            ics[a].addChild(ics[b]);
+            ics[a].forceFamilyTogether();
+        }
+        return ics;
+    }
+
+    @Test
+    public void sequentialTest() {
+        InformationComponent[] ics = createGraph(100, 200, true);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int a = 0; a < ics.length; a += 9) {
+            List<SchemeComponent> descendants =
+                new ArrayList<SchemeComponent>();
+            FamilyTraversal traversal = as.descendants(ics[a]);
+            while (traversal.hasNext())
+                descendants.add(traversal.next());
+            List<SchemeComponent> ancestors = new ArrayList<SchemeComponent>();
+            traversal = as.ancestors(ics[a]);
+            while (traversal.hasNext())
+                ancestors.add(traversal.next());
+            int d = 0;
+            int p = 0;
+            for (InformationComponent c : ics) {
+                if (ics[a].isAncestorOf(c)) {
+                    d++;
+                    assertTrue(descendants.contains(c));
+                }
+                if (ics[a].isDescendantOf(c)) {
+                    p++;
+                    assertTrue(ancestors.contains(c));
+                }
+            }
+            assertEquals(d, descendants.size());
+            assertEquals(p, ancestors.size());
+        }
+        assertFalse(FamilyTraversal.descendants(
+            new InformationComponent("single")).hasNext());
+    }
+
+    @Test
+    public void parallelTest() {
+        InformationComponent[] ics = createGraph(2000, 6000, false);
+        for (int i = 1; i < ics.length; i++) { // everything below IC 0
+            ics[0].addChild(ics[i]);
+            ics[0].forceFamilyTogether();
+        }
+        List<SchemeComponent> found = Collections.synchronizedList(
+            new ArrayList<SchemeComponent>());
+        new ForkJoinPool(4).invoke(new Sweep(
+            FamilyTraversal.descendants(ics[0]), found));
+        assertEquals(ics.length - 1, found.size());
+        LinkedIdentitySet<SchemeComponent> distinct =
+            new LinkedIdentitySet<SchemeComponent>();
+        distinct.addAll(found);
+        assertEquals(found.size(), distinct.size());
+        assertFalse(distinct.contains(ics[0]));
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class FrozenSchemeTest {
+
+    InformationComponent[] createChain(int n) {
+        InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++) {
+            ics[i] = new InformationComponent("IC " + i);
+            if (i > 0) {
+                ics[i - 1].addChild(ics[i]);
+                ics[i - 1].forceFamilyTogether();
+            }
+        }
+        return ics;
+    }
+
+    @Test
+    public void freezeTest() {
+        InformationComponent[] ics = createChain(5);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.add(ics[1]);
+        as.add(ics[3]);
+        as.add(ics[1]);
+        FrozenScheme<InformationComponent> fs = as.freeze();
+        assertEquals(2, fs.size());
+        Iterator<InformationComponent> it = fs.iterator();
+        assertSame(ics[1], it.next());
+        assertSame(ics[3], it.next());
+        assertFalse(it.hasNext());
+        assertTrue(fs.contains(ics[3]));
+        assertFalse(fs.contains(ics[0]));
+        assertTrue(fs.isAncestorOf(ics[0], ics[4]));
+        assertFalse(fs.isAncestorOf(ics[4], ics[0]));
+        assertTrue(fs.isDescendantOf(ics[3], ics[1]));
+        assertTrue(fs.containsAncestorOf(ics[2]));
+        assertTrue(fs.containsDescendantOf(ics[2]));
+        assertTrue(fs.containsAncestorOf(ics[3]));
+        assertFalse(fs.containsAncestorOf(ics[1]));
+        assertFalse(fs.containsDescendantOf(ics[3]));
+        assertTrue(fs.getRoots().isEmpty());
+        assertTrue(fs.getLeaves().isEmpty());
+        assertTrue(fs.allFamiliesValid());
+        // later changes aren't reflected
+        ics[4].addChild(ics[0]);
+        ics[4].forceFamilyTogether();
+        assertFalse(fs.isAncestorOf(ics[4], ics[0]));
+        assertFalse(as.freeze().allFamiliesValid());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutableTest() {
+        InformationComponent[] ics = createChain(2);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.add(ics[0]);
+        as.freeze().add(ics[1]);
+    }
+
+}
@@ -16,4 +16,22 @@ public class InformationComponentTest {
         fail("Not yet implemented");
     }
 
+    @Test
+    public void hashCodeTest() {
+        InformationComponent ic = new InformationComponent("IC", "long text");
+        int hash = ic.hashCode();
+        assertEquals(hash, ic.hashCode());
+        assertEquals(hash, new InformationComponent("IC", "long text")
+            .hashCode());
+        ic.setDescription("other text");
+        InformationComponent same = new InformationComponent("IC",
+            "other text");
+        assertEquals(same.hashCode(), ic.hashCode());
+        assertEquals(same, ic);
+        assertFalse(ic.equals(new InformationComponent("IC", "long text")));
+        ic.setInformation(null, null);
+        assertEquals(new InformationComponent(null, null).hashCode(),
+            ic.hashCode());
+    }
+
 }
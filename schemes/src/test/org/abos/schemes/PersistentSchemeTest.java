@@ -0,0 +1,164 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class PersistentSchemeTest {
+
+    @Test
+    public void identityMapTest() {
+        Random random = new Random(13);
+        Object[] keys = new Object[3000];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = new Object();
+        PersistentIdentityMap<Object, Integer> map =
+            PersistentIdentityMap.empty();
+        IdentityHashMap<Object, Integer> reference =
+            new IdentityHashMap<Object, Integer>();
+        for (int step = 0; step < 20000; step++) {
+            Object key = keys[random.nextInt(keys.length)];
+            PersistentIdentityMap<Object, Integer> old = map;
+            int oldSize = old.size();
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                reference.remove(key);
+            }
+            else {
+                map = map.plus(key, step);
+                reference.put(key, step);
+            }
+            assertEquals(oldSize, old.size());
+            assertEquals(reference.size(), map.size());
+            assertEquals(reference.get(key), map.get(key));
+        }
+        for (Object key : keys)
+            assertEquals(reference.get(key), map.get(key));
+        int count = 0;
+        for (Map.Entry<Object, Integer> entry : map) {
+            assertEquals(reference.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        assertEquals(reference.size(), count);
+    }
+
+    @Test
+    public void versionTest() throws CloneNotSupportedException {
+        InformationComponent[] ics = new InformationComponent[4];
+        for (int i = 0; i < ics.length; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        ics[0].addChild(ics[1]);
+        ics[1].addParent(ics[0]);
+        ics[1].addChild(ics[2]);
+        ics[2].addParent(ics[1]);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.add(ics[0]);
+        as.add(ics[1]);
+        PersistentScheme<InformationComponent> v1 = PersistentScheme.of(as);
+        assertEquals(2, v1.size());
+        assertTrue(v1.deepEquals(as));
+        assertTrue(v1.isAncestorOf(ics[0], ics[2]));
+        assertTrue(v1.containsAncestorOf(ics[2]));
+        assertEquals(1, v1.getRoots().size());
+        assertTrue(v1.getLeaves().isEmpty());
+        // new versions don't change old ones or the components
+        PersistentScheme<InformationComponent> v2 = v1
+            .minusLink(ics[1], ics[2]).plus(ics[3]).plusLink(ics[3], ics[0]);
+        assertTrue(v1.isAncestorOf(ics[0], ics[2]));
+        assertFalse(v2.isAncestorOf(ics[0], ics[2]));
+        assertTrue(v2.isAncestorOf(ics[3], ics[1]));
+        assertTrue(ics[1].isParentOf(ics[2]));
+        assertFalse(ics[3].isParentOf(ics[0]));
+        assertEquals(3, v2.size());
+        assertSame(ics[3], v2.getRoot(0));
+        assertSame(ics[1], v2.getLeaf(0));
+        assertTrue(v2.getChildren(ics[1]).isEmpty());
+        assertTrue(v2.getParents(ics[2]).isEmpty());
+        assertFalse(v2.containsAncestorOf(ics[2]));
+        assertTrue(v2.allFamiliesValid());
+        assertFalse(v2.plusLink(ics[1], ics[3]).allFamiliesValid());
+        ArrayScheme<InformationComponent> copy =
+            (ArrayScheme<InformationComponent>)v2.deepCopy();
+        assertTrue(v2.deepEquals(copy));
+        assertFalse(v1.deepEquals(copy));
+        assertEquals(2, v2.minus(ics[0]).size());
+        assertTrue(v2.minus(ics[0]).isAncestorOf(ics[3], ics[1]));
+    }
+
+    @Test
+    public void randomTest() {
+        Random random = new Random(17);
+        InformationComponent[] ics = new InformationComponent[30];
+        for (int i = 0; i < ics.length; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        boolean[][] links = new boolean[ics.length][ics.length];
+        boolean[] members = new boolean[ics.length];
+        PersistentScheme<InformationComponent> scheme =
+            PersistentScheme.empty();
+        ArrayList<PersistentScheme<InformationComponent>> versions =
+            new ArrayList<PersistentScheme<InformationComponent>>();
+        ArrayList<boolean[][]> linkHistory = new ArrayList<boolean[][]>();
+        for (int step = 0; step < 1500; step++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            switch (random.nextInt(4)) {
+            case 0:
+                scheme = scheme.plus(ics[a]);
+                members[a] = true;
+                break;
+            case 1:
+                scheme = scheme.minus(ics[a]);
+                members[a] = false;
+                break;
+            case 2:
+                scheme = scheme.plusLink(ics[a], ics[b]);
+                links[a][b] = true;
+                break;
+            default:
+                scheme = scheme.minusLink(ics[a], ics[b]);
+                links[a][b] = false;
+            }
+            if (step % 100 == 0) {
+                versions.add(scheme);
+                boolean[][] snapshot = new boolean[ics.length][];
+                for (int i = 0; i < ics.length; i++)
+                    snapshot[i] = links[i].clone();
+                linkHistory.add(snapshot);
+            }
+            int size = 0;
+            for (int i = 0; i < ics.length; i++) {
+                if (members[i])
+                    size++;
+                assertEquals(members[i], scheme.contains(ics[i]));
+                boolean root = true;
+                boolean leaf = true;
+                for (int j = 0; j < ics.length; j++) {
+                    root &= !links[j][i];
+                    leaf &= !links[i][j];
+                }
+                assertEquals(members[i] && root,
+                    scheme.getRoots().contains(ics[i]));
+                assertEquals(members[i] && leaf,
+                    scheme.getLeaves().contains(ics[i]));
+            }
+            assertEquals(size, scheme.size());
+        }
+        // old versions still have their links
+        for (int v = 0; v < versions.size(); v++)
+            for (int i = 0; i < ics.length; i++)
+                for (int j = 0; j < ics.length; j++)
+                    assertEquals(linkHistory.get(v)[i][j], versions.get(v)
+                        .getChildren(ics[i]).contains(ics[j]));
+    }
+
+}
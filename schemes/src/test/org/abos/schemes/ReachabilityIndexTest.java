@@ -0,0 +1,310 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class ReachabilityIndexTest {
+
+    /**
+     * Builds a random scheme of 200 components, with cycles if wanted, and
+     * compares the index with the families.
+     */
+    void compareWithFamilies(ReachabilityIndex index, boolean cycles) {
+        Random random = new Random(11);
+        InformationComponent[] ics = new InformationComponent[200];
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < ics.length; i++) {
+            ics[i] = new InformationComponent("IC " + i);
+            if (i % 3 != 0) // leave some components associated only
+                as.add(ics[i]);
+        }
+        for (int i = 0; i < 300; i++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a == b || (!cycles && a > b))
+                continue;
+            ics[a].addChild(ics[b]);
+            ics[a].forceFamilyTogether();
+        }
+        as.setReachabilityIndex(index);
+        for (int a = 0; a < ics.length; a += 3) {
+            for (int b = 0; b < ics.length; b++) {
+                assertEquals(ics[a].isAncestorOf(ics[b]),
+                    as.isAncestorOf(ics[a], ics[b]));
+                assertEquals(ics[a].isDescendantOf(ics[b]),
+                    as.isDescendantOf(ics[a], ics[b]));
+            }
+        }
+        assertTrue(index.isValid());
+    }
+
+    @Test
+    public void closureTest1() {
+        compareWithFamilies(new ClosureReachabilityIndex(), false);
+    }
+
+    @Test
+    public void closureTest2() {
+        compareWithFamilies(new ClosureReachabilityIndex(), true);
+    }
+
+    @Test
+    public void intervalTest1() {
+        compareWithFamilies(new IntervalReachabilityIndex(), false);
+    }
+
+    @Test
+    public void intervalTest2() {
+        compareWithFamilies(new IntervalReachabilityIndex(1), true);
+    }
+
+    @Test
+    public void commonAncestorTest1() {
+        compareWithFamilies(new CommonAncestorIndex(), false);
+    }
+
+    @Test
+    public void commonAncestorTest2() {
+        compareWithFamilies(new CommonAncestorIndex(), true);
+    }
+
+    @Test
+    public void lowestCommonAncestorTest() {
+        Random random = new Random(5);
+        InformationComponent[] ics = new InformationComponent[150];
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < ics.length; i++) {
+            ics[i] = new InformationComponent("IC " + i);
+            as.add(ics[i]);
+        }
+        for (int i = 0; i < 250; i++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a < b) {
+                ics[a].addChild(ics[b]);
+                ics[a].forceFamilyTogether();
+            }
+        }
+        // compare the search and the set index with brute force
+        List<SchemeComponent> searched = as.getLowestCommonAncestors(ics[40],
+            ics[41]);
+        as.setReachabilityIndex(new CommonAncestorIndex());
+        assertEquals(searched, as.getLowestCommonAncestors(ics[40],
+            ics[41]));
+        for (int a = 0; a < ics.length; a += 7) {
+            for (int b = 0; b < ics.length; b += 3) {
+                List<SchemeComponent> lowest = new ArrayList<SchemeComponent>();
+                for (InformationComponent c : ics) {
+                    if (!isCommonAncestor(c, ics[a], ics[b]))
+                        continue;
+                    boolean isLowest = true;
+                    for (InformationComponent d : ics)
+                        if (c.isAncestorOf(d)
+                                && isCommonAncestor(d, ics[a], ics[b]))
+                            isLowest = false;
+                    if (isLowest)
+                        lowest.add(c);
+                }
+                List<SchemeComponent> found = as.getLowestCommonAncestors(
+                    ics[a], ics[b]);
+                assertEquals(lowest.size(), found.size());
+                assertTrue(found.containsAll(lowest));
+            }
+        }
+        // a diamond with a shortcut
+        InformationComponent[] d = new InformationComponent[5];
+        for (int i = 0; i < d.length; i++)
+            d[i] = new InformationComponent("D " + i);
+        d[0].addChild(d[1]);
+        d[0].addChild(d[2]);
+        d[1].addChild(d[3]);
+        d[2].addChild(d[3]);
+        d[1].addChild(d[4]);
+        d[2].addChild(d[4]);
+        d[0].addChild(d[4]);
+        for (InformationComponent c : d)
+            c.forceFamilyTogether();
+        List<SchemeComponent> found = as.getLowestCommonAncestors(d[3], d[4]);
+        assertEquals(2, found.size());
+        assertTrue(found.containsAll(Arrays.asList(d[1], d[2])));
+        assertEquals(Collections.singletonList(d[1]),
+            as.getLowestCommonAncestors(d[1], d[3]));
+        assertTrue(as.getLowestCommonAncestors(d[3], ics[0]).isEmpty());
+    }
+
+    @Test
+    public void lowestCommonAncestorBatchTest() {
+        Random random = new Random(8);
+        InformationComponent[] ics = new InformationComponent[120];
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < ics.length; i++) {
+            ics[i] = new InformationComponent("IC " + i);
+            if (i % 4 != 0) // leave some components associated only
+                as.add(ics[i]);
+        }
+        for (int i = 0; i < 400; i++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            // mostly downwards, some cycles
+            if (a < b || random.nextInt(20) == 0) {
+                ics[a].addChild(ics[b]);
+                ics[a].forceFamilyTogether();
+            }
+        }
+        List<InformationComponent> a = new ArrayList<InformationComponent>();
+        List<InformationComponent> b = new ArrayList<InformationComponent>();
+        for (int i = 0; i < 300; i++) {
+            a.add(ics[random.nextInt(ics.length)]);
+            b.add(ics[random.nextInt(ics.length)]);
+        }
+        a.add(null);
+        b.add(ics[0]);
+        List<List<SchemeComponent>> searched =
+            as.getLowestCommonAncestors(a, b);
+        List<List<SchemeComponent>> frozen =
+            as.freeze().getLowestCommonAncestors(a, b);
+        List<List<SchemeComponent>> persistent =
+            PersistentScheme.of(as).getLowestCommonAncestors(a, b);
+        as.setReachabilityIndex(new CommonAncestorIndex());
+        List<List<SchemeComponent>> indexed =
+            as.getLowestCommonAncestors(a, b);
+        assertEquals(a.size(), searched.size());
+        for (int i = 0; i < a.size(); i++) {
+            List<SchemeComponent> expected =
+                as.getLowestCommonAncestors(a.get(i), b.get(i));
+            assertEquals(expected, indexed.get(i));
+            // incomparable ancestors may come in another topological order
+            for (List<SchemeComponent> found : Arrays.asList(
+                    searched.get(i), frozen.get(i), persistent.get(i))) {
+                assertEquals(expected.size(), found.size());
+                assertTrue(found.containsAll(expected));
+            }
+        }
+        assertTrue(searched.get(a.size() - 1).isEmpty());
+        try {
+            as.getLowestCommonAncestors(a, b.subList(1, b.size()));
+            fail();
+        }
+        catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    boolean isCommonAncestor(SchemeComponent c, SchemeComponent a,
+            SchemeComponent b) {
+        return (c == a || c.isAncestorOf(a)) && (c == b || c.isAncestorOf(b));
+    }
+
+    @Test
+    public void concurrentSearchTest() throws InterruptedException {
+        Random random = new Random(7);
+        final InformationComponent[] ics = new InformationComponent[300];
+        final ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < ics.length; i++) {
+            ics[i] = new InformationComponent("IC " + i);
+            as.add(ics[i]);
+        }
+        for (int i = 0; i < 600; i++) {
+            int a = random.nextInt(ics.length);
+            int b = random.nextInt(ics.length);
+            if (a != b) {
+                ics[a].addChild(ics[b]);
+                ics[a].forceFamilyTogether();
+            }
+        }
+        as.setReachabilityIndex(new ClosureReachabilityIndex());
+        // searches of several threads share the epochs or fall back
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int a = offset; a < ics.length; a += 4)
+                        for (int b = 0; b < ics.length; b += 5)
+                            if (ics[a].isAncestorOf(ics[b])
+                                    != as.isAncestorOf(ics[a], ics[b]))
+                                failed[0] = true;
+                }
+            };
+        }
+        as.isAncestorOf(ics[0], ics[1]); // build the index before
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        assertFalse(failed[0]);
+    }
+
+    @Test
+    public void invalidationTest() {
+        InformationComponent[] ics = new InformationComponent[3];
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        for (int i = 0; i < ics.length; i++) {
+            ics[i] = new InformationComponent("IC " + i);
+            as.add(ics[i]);
+        }
+        ReachabilityIndex index = new ClosureReachabilityIndex();
+        as.setReachabilityIndex(index);
+        assertFalse(as.isAncestorOf(ics[0], ics[2]));
+        assertTrue(index.isValid());
+        ics[0].addChild(ics[1]);
+        assertFalse(index.isValid());
+        ics[1].addParent(ics[0]);
+        ics[1].addChild(ics[2]);
+        ics[1].forceFamilyTogether();
+        assertTrue(as.isAncestorOf(ics[0], ics[2]));
+        assertTrue(as.isDescendantOf(ics[2], ics[0]));
+        assertTrue(as.containsAncestorOf(ics[2]));
+        assertFalse(as.containsDescendantOf(ics[2]));
+        as.remove(ics[2]);
+        assertFalse(index.isValid());
+        assertTrue(as.containsAncestorOf(ics[2]));
+        as.setReachabilityIndex(null);
+        assertFalse(index.isValid());
+        assertTrue(as.isAncestorOf(ics[0], ics[2]));
+    }
+
+    @Test
+    public void unknownComponentTest() {
+        for (ReachabilityIndex index : new ReachabilityIndex[] {
+                new ClosureReachabilityIndex(), 
+                new IntervalReachabilityIndex()}) {
+            InformationComponent[] ics = new InformationComponent[3];
+            for (int i = 0; i < ics.length; i++)
+                ics[i] = new InformationComponent("IC " + i);
+            ArrayScheme<InformationComponent> as =
+                new ArrayScheme<InformationComponent>();
+            as.add(ics[0]);
+            as.add(ics[1]);
+            ics[0].addChild(ics[1]);
+            ics[0].forceFamilyTogether();
+            as.setReachabilityIndex(index);
+            assertTrue(as.isAncestorOf(ics[0], ics[1]));
+            // linked on the side of an unknown component only
+            ics[2].addChild(ics[0]);
+            assertTrue(index.isValid());
+            assertTrue(as.isAncestorOf(ics[2], ics[1]));
+            assertTrue(as.isDescendantOf(ics[1], ics[2]));
+            assertFalse(as.isAncestorOf(ics[1], ics[2]));
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.abos.schemes;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * @author Sebastian Koch
+ *
+ */
+public class SchemeJournalTest {
+
+    InformationComponent[] createComponents(int n) {
+        InformationComponent[] ics = new InformationComponent[n];
+        for (int i = 0; i < n; i++)
+            ics[i] = new InformationComponent("IC " + i);
+        return ics;
+    }
+
+    @Test
+    public void undoRedoTest() {
+        final InformationComponent[] ics = createComponents(4);
+        ArrayInformationScheme<InformationComponent> ais =
+            new ArrayInformationScheme<InformationComponent>();
+        ais.setCycleChecked(true);
+        SchemeJournal<InformationComponent> journal =
+            new SchemeJournal<InformationComponent>(ais, 100);
+        assertFalse(journal.canUndo());
+        ais.add(ics[0]);
+        ais.add(ics[1]);
+        ais.edit(new SchemeEdit<InformationComponent>() {
+            @Override
+            public void edit(SchemeTransaction<InformationComponent> tx) {
+                tx.add(ics[2]);
+                tx.link(ics[0], ics[1]);
+                tx.link(ics[1], ics[2]);
+            }
+        });
+        ics[3].addParent(ics[2]); // one side only, not in the scheme
+        ics[1].setInformation("Renamed", "With description");
+        assertTrue(ais.contains(new InformationComponent("Renamed",
+            "With description")));
+        // undo the renaming
+        journal.undo();
+        assertEquals("IC 1", ics[1].getName());
+        assertEquals("", ics[1].getDescription());
+        assertTrue(ais.contains(new InformationComponent("IC 1")));
+        // undo the edit at once
+        journal.undo();
+        assertEquals(Arrays.asList(ics[0], ics[1]), ais);
+        assertTrue(ics[0].isLeaf() && ics[1].isRoot());
+        assertTrue(ics[2].isLeaf());
+        assertEquals(2, ais.getLeaves().size());
+        assertTrue(ais.getLeaves().containsAll(ais));
+        assertTrue(ics[3].isChildOf(ics[2])); // not recorded
+        // redo both
+        assertTrue(journal.canRedo());
+        journal.redo();
+        journal.redo();
+        assertFalse(journal.canRedo());
+        assertEquals(Arrays.asList(ics[0], ics[1], ics[2]), ais);
+        assertTrue(ics[0].isParentOf(ics[1]) && ics[2].isChildOf(ics[1]));
+        assertEquals("Renamed", ics[1].getName());
+        assertEquals(Collections.singletonList(ics[0]), ais.getRoots());
+        assertTrue(ais.allFamiliesValid());
+        // a new step forgets the steps undone
+        journal.undo();
+        ais.remove(ics[0]);
+        assertFalse(journal.canRedo());
+        journal.undo();
+        assertTrue(ais.contains(ics[0]));
+        journal.undo();
+        journal.undo();
+        journal.undo();
+        assertTrue(ais.isEmpty());
+        assertFalse(journal.canUndo());
+        try {
+            journal.undo();
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            // expected
+        }
+        journal.detach();
+        ais.add(ics[0]);
+        assertFalse(journal.canUndo());
+    }
+
+    @Test
+    public void orderTest() {
+        final InformationComponent[] ics = createComponents(6);
+        InformationComponent twin = new InformationComponent("IC 2");
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        as.addAll(Arrays.asList(ics[0], ics[1], ics[2], twin, ics[3]));
+        ics[3].addChild(ics[1]);
+        ics[3].addChild(twin);
+        ics[3].addChild(ics[2]);
+        SchemeJournal<InformationComponent> journal =
+            new SchemeJournal<InformationComponent>(as, 100);
+        Object[] before = as.toArray();
+        as.remove(ics[1]);
+        as.remove(ics[2]); // the equal twin stays
+        ics[3].removeChild(ics[2]); // removes the twin
+        as.edit(new SchemeEdit<InformationComponent>() {
+            @Override
+            public void edit(SchemeTransaction<InformationComponent> tx) {
+                tx.remove(ics[0]);
+                tx.add(ics[4]);
+                tx.add(ics[5]);
+                tx.unlink(ics[3], ics[1]);
+                tx.link(ics[3], ics[4]);
+                tx.remove(ics[3]);
+            }
+        });
+        Object[] after = as.toArray();
+        assertSame(twin, after[0]);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 4; i++)
+                journal.undo();
+            assertIdentical(before, as.toArray());
+            ArraySchemeTest.assertFamily(ics[3].childrenIterator(), ics[1],
+                twin, ics[2]);
+            for (int i = 0; i < 4; i++)
+                journal.redo();
+            assertIdentical(after, as.toArray());
+            ArraySchemeTest.assertFamily(ics[3].childrenIterator(), ics[2],
+                ics[4]);
+        }
+    }
+
+    static void assertIdentical(Object[] expected, Object[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertSame(expected[i], actual[i]);
+    }
+
+    @Test
+    public void capacityTest() {
+        InformationComponent[] ics = createComponents(10);
+        ArrayScheme<InformationComponent> as =
+            new ArrayScheme<InformationComponent>();
+        SchemeJournal<InformationComponent> journal =
+            new SchemeJournal<InformationComponent>(as, 4);
+        for (int i = 0; i < 6; i++)
+            as.add(ics[i]);
+        // only the last four additions are kept
+        for (int i = 0; i < 4; i++)
+            journal.undo();
+        assertFalse(journal.canUndo());
+        assertEquals(Arrays.asList(ics[0], ics[1]), as);
+        for (int i = 0; i < 4; i++)
+            journal.redo();
+        assertEquals(6, as.size());
+        as.addAll(Arrays.asList(ics).subList(6, 10)); // fits exactly
+        assertTrue(journal.canUndo());
+        journal.undo();
+        assertEquals(6, as.size());
+        assertFalse(journal.canUndo());
+        // a step larger than the journal clears it
+        journal.redo();
+        as.clear();
+        assertFalse(journal.canUndo());
+        assertFalse(journal.canRedo());
+    }
+
+}